@@ -0,0 +1,132 @@
+package com.intelligence.agent;
+
+import com.intelligence.bench.HashingEmbeddingModel;
+import com.intelligence.index.FolderIndex;
+import com.intelligence.index.IndexRegistry;
+import com.intelligence.index.ScoredSegment;
+import com.intelligence.index.SearchFilter;
+import dev.langchain4j.data.document.Metadata;
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.model.output.Response;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Stream;
+
+/**
+ * Vector search throughput with 64 concurrent callers, and the latency of a lone caller, with
+ * micro-batching off ({@code windowMs} 0) and on. The index holds {@code segments} synthetic rows;
+ * the embedding model serves one call at a time and each call costs {@code embedCallMs}, like a
+ * local Ollama (0 isolates the scan).
+ */
+@State(Scope.Benchmark)
+@Warmup(iterations = 1, time = 3)
+@Measurement(iterations = 3, time = 3)
+@Fork(value = 1, jvmArgs = {"-Xms2g", "-Xmx2g"})
+public class BatchedSearchBenchmark {
+    private static final int DIMENSION = 384;
+    private static final int TOP_K = 10;
+
+    @Param({"100000"})
+    int segments;
+
+    @Param({"0", "2"})
+    long windowMs;
+
+    @Param({"0", "1"})
+    long embedCallMs;
+
+    Path snapshots;
+    IndexRegistry registry;
+    ContextRetriever retriever;
+    final AtomicLong queries = new AtomicLong();
+
+    /**
+     * Hashing vectors behind a single slot that charges a fixed cost per call.
+     */
+    static class SingleSlotModel implements EmbeddingModel {
+        private final ReentrantLock slot = new ReentrantLock(true);
+        private final long callMs;
+
+        SingleSlotModel(long callMs) {
+            this.callMs = callMs;
+        }
+
+        @Override
+        public Response<List<Embedding>> embedAll(List<TextSegment> texts) {
+            slot.lock();
+            try {
+                if (callMs > 0) Thread.sleep(callMs);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException(e);
+            } finally {
+                slot.unlock();
+            }
+            return Response.from(texts.stream().map(t -> Embedding.from(HashingEmbeddingModel.vectorFor(t.text(), DIMENSION))).toList());
+        }
+
+        @Override
+        public int dimension() {
+            return DIMENSION;
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        snapshots = Files.createTempDirectory("bench-batched");
+        registry = new IndexRegistry(Long.MAX_VALUE, snapshots, path -> {
+            List<TextSegment> corpus = new ArrayList<>(segments);
+            List<Embedding> vectors = new ArrayList<>(segments);
+            for (int i = 0; i < segments; i++) {
+                String text = "segment " + i;
+                corpus.add(TextSegment.from(text, Metadata.from("file_name", "doc" + (i % 64) + ".txt")));
+                vectors.add(Embedding.from(HashingEmbeddingModel.vectorFor(text, DIMENSION)));
+            }
+            return FolderIndex.of(path, corpus, vectors);
+        });
+        retriever = new ContextRetriever(new SingleSlotModel(embedCallMs), "/bench", registry,
+                new RetrievalPolicy(Duration.ZERO, Integer.MAX_VALUE, Duration.ZERO, Duration.ofMillis(windowMs)));
+        retriever.index();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        registry.close();
+        try (Stream<Path> files = Files.walk(snapshots)) {
+            for (Path p : files.sorted(Comparator.reverseOrder()).toList()) Files.deleteIfExists(p);
+        }
+    }
+
+    private List<ScoredSegment> search() {
+        // Distinct queries so the embedding cache never answers
+        return retriever.search("quarterly roadmap risks " + queries.incrementAndGet(), TOP_K, SearchFilter.NONE);
+    }
+
+    @Benchmark
+    @Threads(64)
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    public List<ScoredSegment> concurrent() {
+        return search();
+    }
+
+    @Benchmark
+    @Threads(1)
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public List<ScoredSegment> single() {
+        return search();
+    }
+}
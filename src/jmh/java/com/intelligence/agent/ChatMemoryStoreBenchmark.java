@@ -0,0 +1,63 @@
+package com.intelligence.agent;
+
+import com.intelligence.bench.Fixtures;
+import dev.langchain4j.data.message.AiMessage;
+import dev.langchain4j.data.message.ChatMessage;
+import dev.langchain4j.data.message.UserMessage;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Read and write cost of {@link PersistentChatMemoryStore} as conversation history grows.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 2, time = 1)
+@Measurement(iterations = 3, time = 1)
+@Fork(1)
+public class ChatMemoryStoreBenchmark {
+    private static final String MEMORY_ID = "bench-user";
+
+    @Param({"10", "100", "1000"})
+    int messages;
+
+    Path storageFile;
+    PersistentChatMemoryStore store;
+    List<ChatMessage> history;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        storageFile = Files.createTempFile("bench-chat-memory", ".json");
+        store = new PersistentChatMemoryStore(storageFile);
+        SplittableRandom random = new SplittableRandom(7);
+        history = new ArrayList<>(messages);
+        for (int i = 0; i < messages; i++) {
+            String text = Fixtures.sentence(random, 60);
+            history.add(i % 2 == 0 ? UserMessage.from(text) : AiMessage.from(text));
+        }
+        store.updateMessages(MEMORY_ID, history);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(storageFile);
+    }
+
+    @Benchmark
+    public List<ChatMessage> read() {
+        return store.getMessages(MEMORY_ID);
+    }
+
+    @Benchmark
+    public void write() {
+        store.updateMessages(MEMORY_ID, history);
+    }
+}
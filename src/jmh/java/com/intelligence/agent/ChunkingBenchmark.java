@@ -0,0 +1,62 @@
+package com.intelligence.agent;
+
+import com.intelligence.bench.Fixtures;
+import dev.langchain4j.data.document.Document;
+import dev.langchain4j.data.document.DocumentSplitter;
+import dev.langchain4j.data.document.splitter.DocumentSplitters;
+import dev.langchain4j.data.segment.TextSegment;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Chunking throughput of the recursive splitter alone, and of the full
+ * read-extract-split ingestion over a folder holding every supported format.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 2)
+@Fork(1)
+public class ChunkingBenchmark {
+    private static final List<String> FORMATS = List.of("txt", "md", "csv", "json", "pdf", "docx");
+
+    @Param({"64", "1024"})
+    int sizeKb;
+
+    Document document;
+    DocumentSplitter splitter;
+    Path folder;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        document = Document.from(String.join(" ", Fixtures.paragraphs(42, sizeKb * 1024)));
+        splitter = DocumentSplitters.recursive(TextSimilarityRanker.CHUNK_SIZE, TextSimilarityRanker.CHUNK_OVERLAP);
+        folder = Files.createTempDirectory("bench-ingest");
+        for (String format : FORMATS) Fixtures.write(folder, format, sizeKb * 1024 / FORMATS.size());
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        try (Stream<Path> files = Files.walk(folder)) {
+            for (Path p : files.sorted(Comparator.reverseOrder()).toList()) Files.deleteIfExists(p);
+        }
+    }
+
+    @Benchmark
+    public List<TextSegment> split() {
+        return splitter.split(document);
+    }
+
+    @Benchmark
+    public List<TextSegment> ingestFolder() {
+        return TextSimilarityRanker.fetchUniqueTextSegmentsFromDirectory(folder.toString());
+    }
+}
@@ -0,0 +1,77 @@
+package com.intelligence.agent;
+
+import com.intelligence.bench.Fixtures;
+import com.intelligence.bench.HashingEmbeddingModel;
+import com.intelligence.index.IndexRegistry;
+import com.intelligence.index.ScoredSegment;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Time to the first search result in a fresh registry: {@code cold} ingests and embeds the
+ * folder, {@code warm} finds a snapshot left by a previous run. Embedding is the offline
+ * hashing model, so the cold figure is a lower bound for a real Ollama-backed start.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 10)
+@Fork(1)
+public class ColdStartBenchmark {
+    private static final List<String> FORMATS = List.of("txt", "md", "csv", "json", "pdf", "docx");
+
+    @Param({"cold", "warm"})
+    String start;
+
+    @Param({"1024"})
+    int sizeKb;
+
+    Path workDir;
+    Path folder;
+    Path snapshots;
+    HashingEmbeddingModel embeddingModel;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        workDir = Files.createTempDirectory("bench-coldstart");
+        folder = Files.createDirectories(workDir.resolve("docs"));
+        for (String format : FORMATS) Fixtures.write(folder, format, sizeKb * 1024 / FORMATS.size());
+        embeddingModel = new HashingEmbeddingModel(384);
+    }
+
+    @Setup(Level.Invocation)
+    public void prepareSnapshots() throws IOException {
+        snapshots = Files.createTempDirectory(workDir, "snapshots");
+        if (start.equals("warm")) {
+            try (IndexRegistry registry = newRegistry()) {
+                registry.get(folder.toString());
+            }
+        }
+    }
+
+    @Benchmark
+    public List<ScoredSegment> firstSearch() {
+        try (IndexRegistry registry = newRegistry()) {
+            return new ContextRetriever(embeddingModel, folder.toString(), registry).search("quarterly revenue", 5);
+        }
+    }
+
+    private IndexRegistry newRegistry() {
+        return new IndexRegistry(Long.MAX_VALUE, snapshots, new DocumentIndexer(embeddingModel));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        try (Stream<Path> files = Files.walk(workDir)) {
+            for (Path p : files.sorted(Comparator.reverseOrder()).toList()) Files.deleteIfExists(p);
+        }
+    }
+}
@@ -0,0 +1,36 @@
+package com.intelligence.agent;
+
+import com.intelligence.bench.HashingEmbeddingModel;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Single pair cosine similarity at the dimensions of common embedding models
+ * (384: MiniLM, 768: nomic-embed-text, 1024: mxbai-embed-large).
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CosineSimilarityBenchmark {
+
+    @Param({"384", "768", "1024"})
+    int dimension;
+
+    float[] query;
+    float[] candidate;
+
+    @Setup
+    public void setUp() {
+        query = HashingEmbeddingModel.vectorFor("query", dimension);
+        candidate = HashingEmbeddingModel.vectorFor("candidate", dimension);
+    }
+
+    @Benchmark
+    public double cosine() {
+        return TextSimilarityRanker.calculateCosineSimilarity(query, candidate);
+    }
+}
@@ -0,0 +1,113 @@
+package com.intelligence.agent;
+
+import com.intelligence.bench.Fixtures;
+import com.intelligence.bench.HashingEmbeddingModel;
+import com.intelligence.index.ScoredSegment;
+import com.intelligence.index.SearchFilter;
+import com.intelligence.model.PrioritizedEmbeddingModel;
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.model.output.Response;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Stream;
+
+/**
+ * Retrieval latency percentiles (SampleTime reports p50/p99) while a background thread keeps
+ * re-embedding a large folder on a simulated single-slot Ollama: {@code shared} sends both
+ * through one queue, {@code prioritized} uses the query lane. {@code budgetMs} 0 waits for the
+ * embedding; otherwise slow queries fall back to keyword search.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1, time = 2)
+@Measurement(iterations = 3, time = 3)
+@Fork(1)
+@Threads(2)
+public class RetrievalUnderLoadBenchmark {
+    private static final int BULK_SEGMENTS_PER_CALL = 128;
+
+    @Param({"shared", "prioritized"})
+    String lane;
+
+    @Param({"0", "100"})
+    long budgetMs;
+
+    Path folder;
+    ContextRetriever retriever;
+    Thread ingestion;
+    final AtomicBoolean running = new AtomicBoolean(true);
+    final AtomicLong queries = new AtomicLong();
+
+    /**
+     * Serves one call at a time, like a local Ollama: 1 ms per call plus 1 ms per segment.
+     */
+    static class SimulatedOllama implements EmbeddingModel {
+        private final ReentrantLock slot = new ReentrantLock(true);
+
+        @Override
+        public Response<List<Embedding>> embedAll(List<TextSegment> segments) {
+            slot.lock();
+            try {
+                Thread.sleep(1 + segments.size());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException(e);
+            } finally {
+                slot.unlock();
+            }
+            return Response.from(segments.stream().map(s -> Embedding.from(HashingEmbeddingModel.vectorFor(s.text(), 64))).toList());
+        }
+
+        @Override
+        public int dimension() {
+            return 64;
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        folder = Files.createTempDirectory("bench-retrieval");
+        for (String format : List.of("txt", "md", "csv")) Fixtures.write(folder, format, 64 * 1024);
+
+        EmbeddingModel ollama = new SimulatedOllama();
+        EmbeddingModel model = lane.equals("prioritized") ? new PrioritizedEmbeddingModel(ollama) : ollama;
+        retriever = new ContextRetriever(model, folder.toString(), null,
+                new RetrievalPolicy(Duration.ofMillis(budgetMs), Integer.MAX_VALUE, Duration.ZERO));
+        retriever.index();
+
+        List<TextSegment> bulk = new ArrayList<>();
+        for (int i = 0; i < BULK_SEGMENTS_PER_CALL; i++) bulk.add(TextSegment.from("re-embedded segment " + i));
+        ingestion = Thread.ofPlatform().daemon().name("bulk-ingestion").start(() -> {
+            while (running.get()) model.embedAll(bulk);
+        });
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException, InterruptedException {
+        running.set(false);
+        ingestion.join();
+        try (Stream<Path> files = Files.walk(folder)) {
+            for (Path p : files.sorted(Comparator.reverseOrder()).toList()) Files.deleteIfExists(p);
+        }
+    }
+
+    @Benchmark
+    public List<ScoredSegment> search() {
+        // Distinct queries so the embedding cache never answers
+        return retriever.search("quarterly revenue forecast " + queries.incrementAndGet(), 5, SearchFilter.NONE);
+    }
+}
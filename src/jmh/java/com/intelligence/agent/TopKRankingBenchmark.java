@@ -0,0 +1,59 @@
+package com.intelligence.agent;
+
+import com.intelligence.bench.HashingEmbeddingModel;
+import com.intelligence.bench.PrecomputedEmbeddingModel;
+import dev.langchain4j.data.document.Metadata;
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Exhaustive scoring plus top-K selection over a pre-embedded corpus, mirroring
+ * what {@link ContextRetriever} does per query once vectors are available.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 2)
+@Fork(value = 1, jvmArgs = {"-Xms3g", "-Xmx3g"})
+public class TopKRankingBenchmark {
+    private static final int TOP_K = 5;
+
+    @Param({"10000", "100000", "1000000"})
+    int segments;
+
+    @Param({"384"})
+    int dimension;
+
+    List<TextSegment> corpus;
+    EmbeddingModel model;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        corpus = new ArrayList<>(segments);
+        List<Embedding> vectors = new ArrayList<>(segments);
+        for (int i = 0; i < segments; i++) {
+            String text = "segment " + i;
+            corpus.add(TextSegment.from(text, Metadata.from("file_name", "doc" + (i % 64) + ".txt")));
+            vectors.add(Embedding.from(HashingEmbeddingModel.vectorFor(text, dimension)));
+        }
+        model = new PrecomputedEmbeddingModel(vectors, dimension);
+    }
+
+    @Benchmark
+    public List<TextSegment> rankTopK() {
+        Map<TextSegment, Double> scores = TextSimilarityRanker.rankSegments(model, "quarterly roadmap risks", corpus);
+        return scores.entrySet().stream()
+                .sorted(Map.Entry.<TextSegment, Double>comparingByValue().reversed())
+                .limit(TOP_K)
+                .map(Map.Entry::getKey)
+                .toList();
+    }
+}
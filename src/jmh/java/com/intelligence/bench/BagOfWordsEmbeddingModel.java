@@ -0,0 +1,70 @@
+package com.intelligence.bench;
+
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.model.output.Response;
+
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * Offline embedding model with a notion of relevance: words are feature-hashed into a signed
+ * bag-of-words vector without stop words, so texts sharing rare words score close together. Unlike
+ * {@link HashingEmbeddingModel}, retrieval quality measured with it means something. Words known
+ * to be common (e.g. the filler vocabulary of {@link Fixtures}) count for little, much as a
+ * trained model learns that frequent words carry little meaning.
+ */
+public class BagOfWordsEmbeddingModel implements EmbeddingModel {
+    private static final Pattern NON_WORD = Pattern.compile("[^a-z0-9]+");
+    // Without IDF weighting, function words would dominate every vector
+    private static final Set<String> STOP_WORDS = Set.of("the", "a", "an", "of", "and", "to", "in", "for", "with",
+            "on", "is", "was", "by", "as", "what", "which", "who", "it", "be", "are");
+
+    private static final float COMMON_WORD_WEIGHT = 0.1f;
+
+    private final int dimension;
+    private final Set<String> commonWords;
+
+    public BagOfWordsEmbeddingModel(int dimension, Set<String> commonWords) {
+        this.dimension = dimension;
+        this.commonWords = commonWords;
+    }
+
+    @Override
+    public Response<Embedding> embed(String text) {
+        return Response.from(Embedding.from(vectorFor(text)));
+    }
+
+    @Override
+    public Response<List<Embedding>> embedAll(List<TextSegment> segments) {
+        return Response.from(segments.stream().map(s -> Embedding.from(vectorFor(s.text()))).toList());
+    }
+
+    @Override
+    public int dimension() {
+        return dimension;
+    }
+
+    private float[] vectorFor(String text) {
+        float[] vector = new float[dimension];
+        for (String word : NON_WORD.split(text.toLowerCase(Locale.ROOT))) {
+            if (word.isEmpty() || STOP_WORDS.contains(word)) continue;
+            int hash = mix(word.hashCode());
+            float weight = commonWords.contains(word) ? COMMON_WORD_WEIGHT : 1f;
+            vector[Math.floorMod(hash, dimension)] += (hash & 0x8000_0000) == 0 ? weight : -weight;
+        }
+        return vector;
+    }
+
+    // Spreads String.hashCode's low-entropy bits before taking the bucket and sign
+    private static int mix(int h) {
+        h ^= h >>> 16;
+        h *= 0x85eb_ca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2_ae35;
+        return h ^ (h >>> 16);
+    }
+}
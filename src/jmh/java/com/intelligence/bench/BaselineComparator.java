@@ -0,0 +1,76 @@
+package com.intelligence.bench;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Diffs two JMH JSON result files and exits non-zero when any benchmark regressed
+ * by more than the threshold. Usage: {@code BaselineComparator baseline.json current.json [0.10]}.
+ */
+public class BaselineComparator {
+    private static final ObjectMapper mapper = new ObjectMapper();
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("Usage: BaselineComparator <baseline.json> <current.json> [threshold]");
+            System.exit(2);
+        }
+        Path baselinePath = Path.of(args[0]);
+        Path currentPath = Path.of(args[1]);
+        double threshold = args.length > 2 ? Double.parseDouble(args[2]) : 0.10;
+
+        if (!Files.exists(baselinePath) || !Files.exists(currentPath)) {
+            System.err.println("Missing results: " + (Files.exists(baselinePath) ? currentPath : baselinePath));
+            System.exit(2);
+        }
+
+        Map<String, JsonNode> baseline = index(baselinePath);
+        Map<String, JsonNode> current = index(currentPath);
+        int regressions = 0;
+
+        System.out.printf("%-90s %14s %14s %9s%n", "BENCHMARK", "BASELINE", "CURRENT", "CHANGE");
+        for (Map.Entry<String, JsonNode> entry : new TreeMap<>(current).entrySet()) {
+            JsonNode before = baseline.get(entry.getKey());
+            JsonNode after = entry.getValue();
+            double now = after.path("primaryMetric").path("score").asDouble();
+            String unit = after.path("primaryMetric").path("scoreUnit").asText();
+            if (before == null) {
+                System.out.printf("%-90s %14s %14.3f %9s  %s%n", entry.getKey(), "-", now, "new", unit);
+                continue;
+            }
+            double then = before.path("primaryMetric").path("score").asDouble();
+            // Throughput is better when higher, every time-based mode when lower
+            boolean higherIsBetter = "thrpt".equals(after.path("mode").asText());
+            double change = then == 0 ? 0 : (now - then) / then;
+            double worsening = higherIsBetter ? -change : change;
+            boolean regressed = worsening > threshold;
+            if (regressed) regressions++;
+            System.out.printf("%-90s %14.3f %14.3f %+8.1f%%  %s%s%n",
+                    entry.getKey(), then, now, change * 100, unit, regressed ? "  << REGRESSION" : "");
+        }
+
+        if (regressions > 0) {
+            System.out.printf("%n%d benchmark(s) regressed by more than %.0f%%%n", regressions, threshold * 100);
+            System.exit(1);
+        }
+    }
+
+    private static Map<String, JsonNode> index(Path file) throws IOException {
+        Map<String, JsonNode> byKey = new LinkedHashMap<>();
+        for (JsonNode run : mapper.readTree(file.toFile())) {
+            StringBuilder key = new StringBuilder(run.path("benchmark").asText());
+            run.path("params").properties().stream()
+                    .sorted(Map.Entry.comparingByKey())
+                    .forEach(p -> key.append(' ').append(p.getKey()).append('=').append(p.getValue().asText()));
+            byKey.put(key.toString(), run);
+        }
+        return byKey;
+    }
+}
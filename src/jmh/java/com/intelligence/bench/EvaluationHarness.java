@@ -0,0 +1,343 @@
+package com.intelligence.bench;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.intelligence.agent.ContextPacker;
+import com.intelligence.agent.ContextRetriever;
+import com.intelligence.agent.DocumentAssistantAgent;
+import com.intelligence.agent.DocumentIndexer;
+import com.intelligence.agent.EvaluationAgent;
+import com.intelligence.agent.KnowledgeBaseTools;
+import com.intelligence.agent.RetrievalPrefetcher;
+import com.intelligence.index.IndexRegistry;
+import com.intelligence.index.ParallelScan;
+import com.intelligence.index.ScoredSegment;
+import com.intelligence.index.SearchFilter;
+import com.intelligence.index.SegmentedIndex;
+import com.intelligence.metrics.LatencyHistogram;
+import dev.langchain4j.memory.chat.MessageWindowChatMemory;
+import dev.langchain4j.model.chat.ChatModel;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.model.ollama.OllamaChatModel;
+import dev.langchain4j.service.AiServices;
+import dev.langchain4j.store.memory.chat.InMemoryChatMemoryStore;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiFunction;
+import java.util.stream.Stream;
+
+/**
+ * Offline quality and load check for the retrieval pipeline. Generates a {@link SyntheticCorpus},
+ * scores every retrieval mode on recall@k, MRR and latency, drives {@link DocumentAssistantAgent}
+ * end to end with a {@link ScriptedStreamingChatModel} at a target concurrency, optionally checks
+ * the agent's answers with {@link EvaluationAgent} on a local Ollama model, and writes everything
+ * to a JSON report.
+ *
+ * <p>Usage: {@code gradle evaluate [-Peval.args="--files=60 --concurrency=32 --verify=true"]};
+ * see {@link #DEFAULTS} for every option.
+ */
+public class EvaluationHarness {
+    private static final Map<String, String> DEFAULTS = defaults();
+    private static final int[] RECALL_AT = {1, 5, 10};
+    private static final int PACKED_CANDIDATES = 10;
+    private static final int PACKED_BASELINE = 5;
+
+    private final Map<String, String> options;
+    private final Map<String, Object> report = new LinkedHashMap<>();
+
+    private record AnswerSample(String answer, String context) {
+    }
+
+    private EvaluationHarness(Map<String, String> options) {
+        this.options = options;
+    }
+
+    private static Map<String, String> defaults() {
+        Map<String, String> defaults = new LinkedHashMap<>();
+        defaults.put("files", "36");
+        defaults.put("chars-per-file", "20000");
+        defaults.put("facts-per-file", "4");
+        defaults.put("seed", "42");
+        defaults.put("dimension", "512");
+        defaults.put("concurrency", "16");
+        defaults.put("requests", "200");
+        defaults.put("turn-latency-ms", "50");
+        defaults.put("token-delay-ms", "2");
+        defaults.put("query-latency-ms", "0");
+        defaults.put("prefetch", "false");
+        defaults.put("verify", "false");
+        defaults.put("verify-url", "http://localhost:11434");
+        defaults.put("verify-model", "llama3.2");
+        defaults.put("verify-samples", "20");
+        defaults.put("verify-concurrency", "4");
+        defaults.put("out", "build/eval/report.json");
+        return defaults;
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new LinkedHashMap<>(DEFAULTS);
+        for (String arg : args) {
+            int eq = arg.indexOf('=');
+            if (!arg.startsWith("--") || eq < 3 || !DEFAULTS.containsKey(arg.substring(2, eq))) {
+                System.err.println("Unknown option " + arg + "; options and defaults: " + DEFAULTS);
+                System.exit(2);
+            }
+            options.put(arg.substring(2, eq), arg.substring(eq + 1));
+        }
+        new EvaluationHarness(options).run();
+    }
+
+    private int intOption(String name) {
+        return Integer.parseInt(options.get(name));
+    }
+
+    private void run() throws Exception {
+        report.put("options", options);
+        Path workDir = Files.createTempDirectory("docintel-eval");
+        try {
+            Path folder = Files.createDirectories(workDir.resolve("docs"));
+            List<SyntheticCorpus.Fact> facts = SyntheticCorpus.generate(folder, intOption("files"),
+                    intOption("chars-per-file"), intOption("facts-per-file"), Long.parseLong(options.get("seed")));
+            EmbeddingModel embeddingModel = new BagOfWordsEmbeddingModel(intOption("dimension"), Fixtures.vocabulary());
+
+            try (IndexRegistry registry = new IndexRegistry(Long.MAX_VALUE, workDir.resolve("snapshots"),
+                    new DocumentIndexer(embeddingModel))) {
+                long start = System.nanoTime();
+                SegmentedIndex index = registry.get(folder.toString());
+                report.put("corpus", Map.of(
+                        "files", intOption("files"),
+                        "facts", facts.size(),
+                        "segments", index.size(),
+                        "index_build_ms", TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)));
+
+                report.put("retrieval", evaluateRetrieval(embeddingModel, folder.toString(), registry, facts));
+                Queue<AnswerSample> samples = new ConcurrentLinkedQueue<>();
+                report.put("agent", loadTestAgent(embeddingModel, folder.toString(), registry, facts, samples));
+                if (Boolean.parseBoolean(options.get("verify"))) report.put("verification", verify(samples));
+            }
+        } finally {
+            try (Stream<Path> files = Files.walk(workDir)) {
+                for (Path p : files.sorted(Comparator.reverseOrder()).toList()) Files.deleteIfExists(p);
+            }
+        }
+
+        Path out = Path.of(options.get("out"));
+        if (out.getParent() != null) Files.createDirectories(out.getParent());
+        ObjectMapper mapper = new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT);
+        mapper.writeValue(out.toFile(), report);
+        System.out.println(mapper.writeValueAsString(report));
+        System.out.println("Report written to " + out.toAbsolutePath());
+    }
+
+    /**
+     * Every mode answers every question once to warm up and once measured; latency covers the
+     * search call only (query embeddings are precomputed) except in {@code retriever}, which
+     * goes through {@link ContextRetriever#search} including the query embedding.
+     */
+    private Map<String, Object> evaluateRetrieval(EmbeddingModel model, String folder, IndexRegistry registry,
+                                                  List<SyntheticCorpus.Fact> facts) {
+        SegmentedIndex index = registry.get(folder);
+        int k = RECALL_AT[RECALL_AT.length - 1];
+        ParallelScan parallel = ParallelScan.of(Math.max(2, Runtime.getRuntime().availableProcessors()), 1);
+        ContextPacker packer = ContextPacker.defaults();
+        Map<String, float[]> queryVectors = new HashMap<>();
+        for (SyntheticCorpus.Fact fact : facts) queryVectors.put(fact.question(), model.embed(fact.question()).content().vector());
+
+        Map<String, BiFunction<SyntheticCorpus.Fact, ContextRetriever, List<String>>> modes = new LinkedHashMap<>();
+        modes.put("vector", (fact, r) -> texts(index.search(queryVectors.get(fact.question()), k, ParallelScan.sequential())));
+        modes.put("vector_parallel", (fact, r) -> texts(index.search(queryVectors.get(fact.question()), k, parallel)));
+        modes.put("vector_filtered_by_format", (fact, r) -> texts(index.search(queryVectors.get(fact.question()), k,
+                ParallelScan.sequential(), SearchFilter.parse("ext:" + extension(fact.fileName())))));
+        modes.put("lexical", (fact, r) -> texts(index.lexicalSearch(fact.question(), k, SearchFilter.NONE)));
+        modes.put("packed", (fact, r) -> packer.pack(index.search(queryVectors.get(fact.question()), PACKED_CANDIDATES,
+                        ParallelScan.sequential()), PACKED_BASELINE).stream().map(ContextPacker.Passage::text).toList());
+        modes.put("retriever", (fact, r) -> texts(r.search(fact.question(), k)));
+
+        Map<String, Object> results = new LinkedHashMap<>();
+        for (Map.Entry<String, BiFunction<SyntheticCorpus.Fact, ContextRetriever, List<String>>> mode : modes.entrySet()) {
+            // A fresh retriever per pass, so the measured pass does not hit the warm-up's query cache
+            for (SyntheticCorpus.Fact fact : facts) mode.getValue().apply(fact, new ContextRetriever(model, folder, registry));
+            ContextRetriever retriever = new ContextRetriever(model, folder, registry);
+            LatencyHistogram micros = new LatencyHistogram();
+            int[] hitsAt = new int[RECALL_AT.length];
+            double reciprocalRanks = 0;
+            for (SyntheticCorpus.Fact fact : facts) {
+                long start = System.nanoTime();
+                List<String> ranked = mode.getValue().apply(fact, retriever);
+                micros.record(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start));
+                int rank = 0;
+                for (int i = 0; i < ranked.size() && rank == 0; i++) if (fact.isAnsweredBy(ranked.get(i))) rank = i + 1;
+                if (rank > 0) reciprocalRanks += 1.0 / rank;
+                for (int i = 0; i < RECALL_AT.length; i++) if (rank > 0 && rank <= RECALL_AT[i]) hitsAt[i]++;
+            }
+            Map<String, Object> result = new LinkedHashMap<>();
+            for (int i = 0; i < RECALL_AT.length; i++) result.put("recall_at_" + RECALL_AT[i], ratio(hitsAt[i], facts.size()));
+            result.put("mrr", ratio(reciprocalRanks, facts.size()));
+            result.put("latency_us", percentiles(micros));
+            results.put(mode.getKey(), result);
+        }
+        return results;
+    }
+
+    /**
+     * Workers ask the agent the corpus questions in a loop until the request count is reached.
+     * An answer counts as correct when it quotes the fact's code.
+     */
+    private Map<String, Object> loadTestAgent(EmbeddingModel embeddingModel, String folder, IndexRegistry registry,
+                                              List<SyntheticCorpus.Fact> facts, Queue<AnswerSample> samples)
+            throws InterruptedException {
+        int sampleLimit = intOption("verify-samples");
+        AtomicInteger sampled = new AtomicInteger();
+        ScriptedStreamingChatModel chatModel = new ScriptedStreamingChatModel(intOption("turn-latency-ms"),
+                intOption("token-delay-ms"), (answer, context) -> {
+            if (sampled.incrementAndGet() <= sampleLimit) samples.add(new AnswerSample(answer, context));
+        });
+        long queryLatencyMs = intOption("query-latency-ms");
+        ContextRetriever retriever = new ContextRetriever(queryLatencyMs > 0
+                ? new SlowQueryEmbeddingModel(embeddingModel, queryLatencyMs) : embeddingModel, folder, registry);
+        RetrievalPrefetcher prefetcher = Boolean.parseBoolean(options.get("prefetch"))
+                ? new RetrievalPrefetcher(retriever, RetrievalPrefetcher.DEFAULT_OVERLAP_PERCENT) : null;
+        InMemoryChatMemoryStore store = new InMemoryChatMemoryStore();
+        DocumentAssistantAgent agent = AiServices.builder(DocumentAssistantAgent.class)
+                .streamingChatModel(chatModel)
+                .tools(new KnowledgeBaseTools(retriever, folder, prefetcher))
+                .chatMemoryProvider(chatId -> MessageWindowChatMemory.builder()
+                        .id(chatId).maxMessages(20).chatMemoryStore(store).build())
+                .build();
+        DocumentAssistantAgent assistant = prefetcher == null ? agent : prefetcher.speculative(agent);
+
+        int requests = intOption("requests");
+        int concurrency = intOption("concurrency");
+        LatencyHistogram firstTokenMs = new LatencyHistogram();
+        LatencyHistogram totalMs = new LatencyHistogram();
+        AtomicInteger next = new AtomicInteger();
+        AtomicInteger correct = new AtomicInteger();
+        AtomicInteger errors = new AtomicInteger();
+
+        long start = System.nanoTime();
+        List<Thread> workers = new ArrayList<>();
+        for (int w = 0; w < concurrency; w++) {
+            String userId = "load-user-" + w;
+            workers.add(Thread.ofVirtual().name(userId).start(() -> {
+                for (int i = next.getAndIncrement(); i < requests; i = next.getAndIncrement()) {
+                    SyntheticCorpus.Fact fact = facts.get(i % facts.size());
+                    long askedAt = System.nanoTime();
+                    AtomicBoolean firstToken = new AtomicBoolean(true);
+                    CompletableFuture<String> answer = new CompletableFuture<>();
+                    assistant.chatStreaming(userId, fact.question())
+                            .onPartialResponse(token -> {
+                                if (firstToken.getAndSet(false)) {
+                                    firstTokenMs.record(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - askedAt));
+                                }
+                            })
+                            .onCompleteResponse(response -> answer.complete(response.aiMessage().text()))
+                            .onError(answer::completeExceptionally)
+                            .start();
+                    try {
+                        if (fact.isAnsweredBy(answer.join())) correct.incrementAndGet();
+                    } catch (RuntimeException e) {
+                        errors.incrementAndGet();
+                    }
+                    totalMs.record(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - askedAt));
+                }
+            }));
+        }
+        for (Thread worker : workers) worker.join();
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("requests", requests);
+        result.put("concurrency", concurrency);
+        result.put("throughput_rps", Math.round(requests / seconds * 10) / 10.0);
+        result.put("answer_accuracy", ratio(correct.get(), requests));
+        result.put("errors", errors.get());
+        result.put("time_to_first_token_ms", percentiles(firstTokenMs));
+        result.put("total_ms", percentiles(totalMs));
+        return result;
+    }
+
+    /**
+     * Checks sampled agent answers against the context they were drawn from, a few at a time.
+     */
+    private Map<String, Object> verify(Queue<AnswerSample> samples) throws InterruptedException {
+        ChatModel chatModel = OllamaChatModel.builder()
+                .baseUrl(options.get("verify-url"))
+                .modelName(options.get("verify-model"))
+                .timeout(Duration.ofMinutes(2))
+                .build();
+        EvaluationAgent evaluator = AiServices.create(EvaluationAgent.class, chatModel);
+        Semaphore slots = new Semaphore(intOption("verify-concurrency"));
+        LatencyHistogram latencyMs = new LatencyHistogram();
+        AtomicInteger verified = new AtomicInteger();
+        AtomicInteger unverified = new AtomicInteger();
+        AtomicInteger errors = new AtomicInteger();
+
+        List<Thread> checks = new ArrayList<>();
+        for (AnswerSample sample : samples) {
+            checks.add(Thread.ofVirtual().name("verify").start(() -> {
+                try {
+                    slots.acquire();
+                    try {
+                        long start = System.nanoTime();
+                        String verdict = evaluator.verify(sample.answer(), sample.context());
+                        latencyMs.record(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+                        (verdict.contains("UNVERIFIED") ? unverified : verified).incrementAndGet();
+                    } finally {
+                        slots.release();
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } catch (RuntimeException e) {
+                    errors.incrementAndGet();
+                }
+            }));
+        }
+        for (Thread check : checks) check.join();
+
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("model", options.get("verify-model"));
+        result.put("samples", checks.size());
+        result.put("verified", verified.get());
+        result.put("unverified", unverified.get());
+        result.put("errors", errors.get());
+        result.put("latency_ms", percentiles(latencyMs));
+        return result;
+    }
+
+    private static List<String> texts(List<ScoredSegment> hits) {
+        return hits.stream().map(hit -> hit.segment().text()).toList();
+    }
+
+    private static String extension(String fileName) {
+        return fileName.substring(fileName.lastIndexOf('.') + 1);
+    }
+
+    private static double ratio(double value, int total) {
+        return total == 0 ? 0 : Math.round(value / total * 1000) / 1000.0;
+    }
+
+    private static Map<String, Long> percentiles(LatencyHistogram histogram) {
+        Map<String, Long> result = new LinkedHashMap<>();
+        result.put("p50", histogram.percentile(50));
+        result.put("p90", histogram.percentile(90));
+        result.put("p99", histogram.percentile(99));
+        result.put("max", histogram.max());
+        return result;
+    }
+}
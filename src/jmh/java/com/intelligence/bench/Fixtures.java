@@ -0,0 +1,153 @@
+package com.intelligence.bench;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.PDPageContentStream;
+import org.apache.pdfbox.pdmodel.font.PDType1Font;
+import org.apache.pdfbox.pdmodel.font.Standard14Fonts;
+import org.apache.poi.xwpf.usermodel.XWPFDocument;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SplittableRandom;
+
+/**
+ * Seeded generators for benchmark corpora and on-disk fixtures in every supported format.
+ */
+public final class Fixtures {
+    private static final String[] WORDS = {
+            "roadmap", "budget", "quarter", "launch", "sleep", "circadian", "telescope", "orbit",
+            "pasta", "recipe", "customer", "contract", "invoice", "latency", "index", "vector",
+            "meeting", "agenda", "decision", "risk", "milestone", "report", "analysis", "summary",
+            "the", "a", "of", "and", "to", "in", "for", "with", "on", "is", "was", "by"
+    };
+
+    private Fixtures() {
+    }
+
+    /**
+     * Every word the prose generators draw from, in lower case.
+     */
+    public static Set<String> vocabulary() {
+        return Set.of(WORDS);
+    }
+
+    public static String sentence(SplittableRandom random, int words) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < words; i++) {
+            if (i > 0) sb.append(' ');
+            sb.append(WORDS[random.nextInt(WORDS.length)]);
+        }
+        return sb.append('.').toString();
+    }
+
+    /**
+     * Generates roughly {@code approxChars} characters of prose split into paragraphs.
+     */
+    public static List<String> paragraphs(long seed, int approxChars) {
+        SplittableRandom random = new SplittableRandom(seed);
+        List<String> paragraphs = new ArrayList<>();
+        int written = 0;
+        while (written < approxChars) {
+            StringBuilder p = new StringBuilder();
+            int sentences = 3 + random.nextInt(5);
+            for (int i = 0; i < sentences; i++) p.append(sentence(random, 8 + random.nextInt(12))).append(' ');
+            String text = p.toString().trim();
+            paragraphs.add(text);
+            written += text.length();
+        }
+        return paragraphs;
+    }
+
+    /**
+     * Writes a fixture of the given format ({@code txt, md, csv, json, pdf, docx}) and returns its path.
+     */
+    public static Path write(Path dir, String format, int approxChars) throws IOException {
+        Path file = dir.resolve("fixture." + format);
+        write(file, format, paragraphs(format.hashCode(), approxChars));
+        return file;
+    }
+
+    /**
+     * Writes the paragraphs to {@code file} in the given format, one paragraph per line, row,
+     * record or PDF text block.
+     */
+    public static void write(Path file, String format, List<String> paragraphs) throws IOException {
+        switch (format) {
+            case "txt" -> Files.write(file, paragraphs);
+            case "md" -> {
+                List<String> lines = new ArrayList<>();
+                for (int i = 0; i < paragraphs.size(); i++) {
+                    if (i % 5 == 0) lines.add("## Section " + i);
+                    lines.add(paragraphs.get(i) + " See [details](http://example.com/" + i + ").");
+                    lines.add("");
+                }
+                Files.write(file, lines);
+            }
+            case "csv" -> {
+                List<String> rows = new ArrayList<>();
+                rows.add("id,title,notes");
+                for (int i = 0; i < paragraphs.size(); i++) {
+                    rows.add(i + ",Row " + i + ",\"" + paragraphs.get(i) + "\"");
+                }
+                Files.write(file, rows);
+            }
+            case "json" -> {
+                List<Map<String, Object>> records = new ArrayList<>();
+                for (int i = 0; i < paragraphs.size(); i++) {
+                    Map<String, Object> record = new LinkedHashMap<>();
+                    record.put("id", i);
+                    record.put("title", "Record " + i);
+                    record.put("body", Map.of("text", paragraphs.get(i)));
+                    records.add(record);
+                }
+                new ObjectMapper().writeValue(file.toFile(), Map.of("records", records));
+            }
+            case "pdf" -> writePdf(file, paragraphs);
+            case "docx" -> writeDocx(file, paragraphs);
+            default -> throw new IllegalArgumentException("Unsupported fixture format: " + format);
+        }
+    }
+
+    private static void writePdf(Path file, List<String> paragraphs) throws IOException {
+        int linesPerPage = 45;
+        List<String> lines = new ArrayList<>();
+        for (String p : paragraphs) {
+            for (int i = 0; i < p.length(); i += 90) lines.add(p.substring(i, Math.min(p.length(), i + 90)));
+        }
+        try (PDDocument doc = new PDDocument()) {
+            PDType1Font font = new PDType1Font(Standard14Fonts.FontName.HELVETICA);
+            for (int start = 0; start < lines.size(); start += linesPerPage) {
+                PDPage page = new PDPage();
+                doc.addPage(page);
+                try (PDPageContentStream content = new PDPageContentStream(doc, page)) {
+                    content.beginText();
+                    content.setFont(font, 10);
+                    content.setLeading(14);
+                    content.newLineAtOffset(40, 750);
+                    for (String line : lines.subList(start, Math.min(lines.size(), start + linesPerPage))) {
+                        content.showText(line);
+                        content.newLine();
+                    }
+                    content.endText();
+                }
+            }
+            doc.save(file.toFile());
+        }
+    }
+
+    private static void writeDocx(Path file, List<String> paragraphs) throws IOException {
+        try (XWPFDocument doc = new XWPFDocument(); OutputStream out = Files.newOutputStream(file)) {
+            for (String p : paragraphs) doc.createParagraph().createRun().setText(p);
+            doc.write(out);
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package com.intelligence.bench;
+
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.model.output.Response;
+
+import java.util.List;
+import java.util.SplittableRandom;
+
+/**
+ * Deterministic offline embedding model: every text maps to a pseudo-random unit-ish
+ * vector seeded by its hash, so benchmark runs are reproducible without Ollama.
+ */
+public class HashingEmbeddingModel implements EmbeddingModel {
+    private final int dimension;
+
+    public HashingEmbeddingModel(int dimension) {
+        this.dimension = dimension;
+    }
+
+    @Override
+    public Response<Embedding> embed(String text) {
+        return Response.from(Embedding.from(vectorFor(text, dimension)));
+    }
+
+    @Override
+    public Response<List<Embedding>> embedAll(List<TextSegment> segments) {
+        return Response.from(segments.stream()
+                .map(s -> Embedding.from(vectorFor(s.text(), dimension)))
+                .toList());
+    }
+
+    @Override
+    public int dimension() {
+        return dimension;
+    }
+
+    public static float[] vectorFor(String text, int dimension) {
+        SplittableRandom random = new SplittableRandom(text.hashCode());
+        float[] vector = new float[dimension];
+        for (int i = 0; i < dimension; i++) vector[i] = (float) (random.nextDouble() * 2 - 1);
+        return vector;
+    }
+}
@@ -0,0 +1,40 @@
+package com.intelligence.bench;
+
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.model.output.Response;
+
+import java.util.List;
+
+/**
+ * Returns a fixed corpus of embeddings from {@code embedAll}, so ranking benchmarks
+ * measure scoring and top-K selection rather than the cost of producing vectors.
+ */
+public class PrecomputedEmbeddingModel implements EmbeddingModel {
+    private final List<Embedding> corpus;
+    private final int dimension;
+
+    public PrecomputedEmbeddingModel(List<Embedding> corpus, int dimension) {
+        this.corpus = corpus;
+        this.dimension = dimension;
+    }
+
+    @Override
+    public Response<Embedding> embed(String text) {
+        return Response.from(Embedding.from(HashingEmbeddingModel.vectorFor(text, dimension)));
+    }
+
+    @Override
+    public Response<List<Embedding>> embedAll(List<TextSegment> segments) {
+        if (segments.size() != corpus.size()) {
+            throw new IllegalArgumentException("Expected " + corpus.size() + " segments but got " + segments.size());
+        }
+        return Response.from(corpus);
+    }
+
+    @Override
+    public int dimension() {
+        return dimension;
+    }
+}
@@ -0,0 +1,104 @@
+package com.intelligence.bench;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import dev.langchain4j.agent.tool.ToolExecutionRequest;
+import dev.langchain4j.agent.tool.ToolSpecification;
+import dev.langchain4j.data.message.AiMessage;
+import dev.langchain4j.data.message.ChatMessage;
+import dev.langchain4j.data.message.ToolExecutionResultMessage;
+import dev.langchain4j.data.message.UserMessage;
+import dev.langchain4j.model.chat.StreamingChatModel;
+import dev.langchain4j.model.chat.request.ChatRequest;
+import dev.langchain4j.model.chat.response.ChatResponse;
+import dev.langchain4j.model.chat.response.StreamingChatResponseHandler;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+
+/**
+ * Stand-in for the Groq model that behaves like the tool-using agent: a user question is
+ * answered with a {@code searchDocuments} call, the tool result with a streamed answer quoting
+ * the first passage. Each turn waits {@code turnLatencyMs} before responding and
+ * {@code tokenDelayMs} between streamed words, on a virtual thread as a network client would.
+ */
+public class ScriptedStreamingChatModel implements StreamingChatModel {
+    private static final ObjectMapper mapper = new ObjectMapper();
+    private static final int ANSWER_CHARS = 2000;
+    private static final String SEARCH_TOOL = "searchDocuments";
+
+    private final long turnLatencyMs;
+    private final long tokenDelayMs;
+    private final BiConsumer<String, String> onAnswer;
+    private final AtomicLong callIds = new AtomicLong();
+
+    /**
+     * @param onAnswer receives each final answer and the tool result it was drawn from
+     */
+    public ScriptedStreamingChatModel(long turnLatencyMs, long tokenDelayMs, BiConsumer<String, String> onAnswer) {
+        this.turnLatencyMs = turnLatencyMs;
+        this.tokenDelayMs = tokenDelayMs;
+        this.onAnswer = onAnswer;
+    }
+
+    @Override
+    public void doChat(ChatRequest request, StreamingChatResponseHandler handler) {
+        Thread.ofVirtual().name("scripted-model").start(() -> {
+            try {
+                sleep(turnLatencyMs);
+                List<ChatMessage> messages = request.messages();
+                ChatMessage last = messages.get(messages.size() - 1);
+                if (last instanceof ToolExecutionResultMessage result) {
+                    streamAnswer(result.text(), handler);
+                } else {
+                    handler.onCompleteResponse(ChatResponse.builder()
+                            .aiMessage(AiMessage.from(List.of(searchCall(request, ((UserMessage) last).singleText()))))
+                            .build());
+                }
+            } catch (RuntimeException e) {
+                handler.onError(e);
+            }
+        });
+    }
+
+    private ToolExecutionRequest searchCall(ChatRequest request, String question) {
+        // Argument names depend on how the tools were compiled, so read them from the offered schema
+        ToolSpecification search = request.toolSpecifications().stream()
+                .filter(spec -> spec.name().equals(SEARCH_TOOL))
+                .findFirst()
+                .orElseThrow(() -> new IllegalStateException(SEARCH_TOOL + " was not offered to the model"));
+        String queryArgument = search.parameters().required().get(0);
+        try {
+            return ToolExecutionRequest.builder()
+                    .id("call-" + callIds.incrementAndGet())
+                    .name(SEARCH_TOOL)
+                    .arguments(mapper.writeValueAsString(Map.of(queryArgument, question)))
+                    .build();
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private void streamAnswer(String toolResult, StreamingChatResponseHandler handler) {
+        String firstPassage = toolResult.split("\n---\n", 2)[0];
+        String answer = "According to the documents: "
+                + firstPassage.substring(0, Math.min(ANSWER_CHARS, firstPassage.length()));
+        for (String word : answer.split("(?<= )")) {
+            handler.onPartialResponse(word);
+            sleep(tokenDelayMs);
+        }
+        onAnswer.accept(answer, toolResult);
+        handler.onCompleteResponse(ChatResponse.builder().aiMessage(AiMessage.from(answer)).build());
+    }
+
+    private static void sleep(long millis) {
+        if (millis <= 0) return;
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,44 @@
+package com.intelligence.bench;
+
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.model.output.Response;
+
+import java.util.List;
+
+/**
+ * Adds a fixed wait to every query embedding, roughly what a round trip to a local Ollama costs,
+ * so latency that overlaps or hides query embedding shows up offline. Bulk embeddings for
+ * ingestion are passed through unchanged.
+ */
+public class SlowQueryEmbeddingModel implements EmbeddingModel {
+    private final EmbeddingModel delegate;
+    private final long queryLatencyMs;
+
+    public SlowQueryEmbeddingModel(EmbeddingModel delegate, long queryLatencyMs) {
+        this.delegate = delegate;
+        this.queryLatencyMs = queryLatencyMs;
+    }
+
+    @Override
+    public Response<Embedding> embed(String text) {
+        try {
+            Thread.sleep(queryLatencyMs);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Query embedding interrupted", e);
+        }
+        return delegate.embed(text);
+    }
+
+    @Override
+    public Response<List<Embedding>> embedAll(List<TextSegment> segments) {
+        return delegate.embedAll(segments);
+    }
+
+    @Override
+    public int dimension() {
+        return delegate.dimension();
+    }
+}
@@ -0,0 +1,83 @@
+package com.intelligence.bench;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.SplittableRandom;
+
+/**
+ * A folder of seeded documents in every supported format with planted facts: each fact is a
+ * sentence carrying a unique code, and its question names the fact's entity without the code,
+ * so a retrieved chunk is relevant exactly when it contains the code.
+ */
+public final class SyntheticCorpus {
+    public static final List<String> FORMATS = List.of("txt", "md", "csv", "json", "pdf", "docx");
+
+    private static final String[] SYLLABLES = {"zor", "vath", "kel", "min", "drav", "ous", "pel", "tra", "quin", "bex", "lor", "yal"};
+    private static final String[] NOUNS = {"project", "vendor", "archive", "satellite", "contract", "warehouse"};
+    private static final String CODE_ALPHABET = "ABCDEFGHJKLMNPQRSTUVWXYZ23456789";
+
+    public record Fact(String fileName, String entity, String noun, String code, int variant) {
+
+        public String sentence() {
+            return variant == 0
+                    ? "The access code for the " + entity + " " + noun + " is " + code + "."
+                    : "Records list " + code + " as the code assigned to the " + noun + " named " + entity + ".";
+        }
+
+        public String question() {
+            return "What do we know about " + entity + ", the " + noun + "?";
+        }
+
+        public boolean isAnsweredBy(String text) {
+            return text.contains(code);
+        }
+    }
+
+    private SyntheticCorpus() {
+    }
+
+    /**
+     * Writes {@code files} documents of about {@code charsPerFile} characters, cycling through
+     * {@link #FORMATS}, each with {@code factsPerFile} facts at random positions.
+     */
+    public static List<Fact> generate(Path folder, int files, int charsPerFile, int factsPerFile, long seed)
+            throws IOException {
+        SplittableRandom random = new SplittableRandom(seed);
+        Set<String> usedEntities = new HashSet<>();
+        List<Fact> facts = new ArrayList<>();
+        for (int f = 0; f < files; f++) {
+            String format = FORMATS.get(f % FORMATS.size());
+            String fileName = String.format("doc-%03d.%s", f, format);
+            List<String> paragraphs = new ArrayList<>(Fixtures.paragraphs(seed * 31 + f, charsPerFile));
+            for (int i = 0; i < factsPerFile; i++) {
+                Fact fact = new Fact(fileName, entity(random, usedEntities), NOUNS[random.nextInt(NOUNS.length)],
+                        code(random), random.nextInt(2));
+                // Its own paragraph, so no format wraps the code across lines
+                paragraphs.add(random.nextInt(paragraphs.size() + 1), fact.sentence());
+                facts.add(fact);
+            }
+            Fixtures.write(folder.resolve(fileName), format, paragraphs);
+        }
+        return facts;
+    }
+
+    private static String entity(SplittableRandom random, Set<String> used) {
+        while (true) {
+            StringBuilder word = new StringBuilder();
+            int syllables = 2 + random.nextInt(2);
+            for (int i = 0; i < syllables; i++) word.append(SYLLABLES[random.nextInt(SYLLABLES.length)]);
+            word.setCharAt(0, Character.toUpperCase(word.charAt(0)));
+            if (used.add(word.toString())) return word.toString();
+        }
+    }
+
+    private static String code(SplittableRandom random) {
+        StringBuilder code = new StringBuilder("K");
+        for (int i = 0; i < 6; i++) code.append(CODE_ALPHABET.charAt(random.nextInt(CODE_ALPHABET.length())));
+        return code.toString();
+    }
+}
@@ -0,0 +1,58 @@
+package com.intelligence.index;
+
+import com.intelligence.bench.HashingEmbeddingModel;
+import dev.langchain4j.data.document.Metadata;
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Scaling curve of the exact top-K scan over {@link FolderIndex} from one worker up to
+ * {@code parallelism} workers. Run on a machine with at least as many cores as the largest
+ * value, e.g. {@code gradle jmh -Pjmh.include=ParallelScan -Pjmh.args="-p parallelism=1,2,4,8,16,32"}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 2)
+@Fork(value = 1, jvmArgs = {"-Xms3g", "-Xmx3g"})
+public class ParallelScanBenchmark {
+    private static final int TOP_K = 5;
+
+    @Param({"100000", "1000000"})
+    int segments;
+
+    @Param({"384"})
+    int dimension;
+
+    @Param({"1", "2", "4"})
+    int parallelism;
+
+    FolderIndex index;
+    float[] query;
+    ParallelScan scan;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        List<TextSegment> corpus = new ArrayList<>(segments);
+        List<Embedding> vectors = new ArrayList<>(segments);
+        for (int i = 0; i < segments; i++) {
+            String text = "segment " + i;
+            corpus.add(TextSegment.from(text, Metadata.from("file_name", "doc" + (i % 64) + ".txt")));
+            vectors.add(Embedding.from(HashingEmbeddingModel.vectorFor(text, dimension)));
+        }
+        index = FolderIndex.of("/bench", corpus, vectors);
+        query = HashingEmbeddingModel.vectorFor("quarterly roadmap risks", dimension);
+        scan = parallelism == 1 ? ParallelScan.sequential() : ParallelScan.of(parallelism, 1);
+    }
+
+    @Benchmark
+    public List<ScoredSegment> search() {
+        return index.search(query, TOP_K, scan);
+    }
+}
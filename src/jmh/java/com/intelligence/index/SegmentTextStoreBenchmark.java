@@ -0,0 +1,133 @@
+package com.intelligence.index;
+
+import dev.langchain4j.data.document.Document;
+import dev.langchain4j.data.document.DocumentSplitter;
+import dev.langchain4j.data.document.Metadata;
+import dev.langchain4j.data.document.splitter.DocumentSplitters;
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Memory held for segment texts per GB of source text, as heap strings ({@code strings}) or in a
+ * {@link SegmentTextStore} ({@code compressed}), and the cost of reading the ten texts of a
+ * query's final hits. The corpus is Zipf-distributed prose over a 20,000-word synthetic
+ * vocabulary, chunked like ingestion (500 characters, 100 overlap). The memory figures are
+ * printed once per trial: heap retained by the index after a full GC (row metadata included, the
+ * same in both), the store's own share of it, and the mapped file, the most the store can keep
+ * resident in the page cache.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 2)
+@Fork(value = 1, jvmArgs = {"-Xms2g", "-Xmx2g"})
+public class SegmentTextStoreBenchmark {
+    private static final int FILES = 256;
+    private static final int HITS = 10;
+
+    @Param({"strings", "compressed"})
+    String storage;
+
+    @Param({"64"})
+    int sourceMb;
+
+    FolderIndex index;
+    SplittableRandom random = new SplittableRandom(7);
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        long heapBefore = usedHeapAfterGc();
+        long sourceBytes = 0;
+        List<TextSegment> segments = new ArrayList<>();
+        DocumentSplitter splitter = DocumentSplitters.recursive(500, 100);
+        ZipfProse prose = new ZipfProse(20_000, 42);
+        for (int f = 0; f < FILES; f++) {
+            // One metadata per file, copied per chunk, as ingestion does
+            Metadata file = Metadata.from("file_name", "doc" + f + ".txt");
+            String text = prose.text(sourceMb * 1024 * 1024 / FILES);
+            sourceBytes += text.length();
+            int chunk = 0;
+            for (TextSegment segment : splitter.split(Document.from(text))) {
+                segments.add(TextSegment.from(segment.text(),
+                        file.copy().put("chunk_index", chunk++)));
+            }
+        }
+        List<Embedding> vectors = segments.stream().map(s -> Embedding.from(new float[]{1f})).toList();
+        FolderIndex heap = FolderIndex.of("/bench", segments, vectors);
+        segments = null;
+        vectors = null;
+        index = storage.equals("compressed") ? heap.withCompressedText() : heap;
+        heap = null;
+
+        double perGb = (1024.0 * 1024 * 1024) / sourceBytes;
+        long heapBytes = usedHeapAfterGc() - heapBefore;
+        long storeHeapBytes = index.isCompressed() ? index.texts().heapBytes() : 0;
+        long mappedBytes = index.isCompressed() ? index.texts().compressedBytes() : 0;
+        System.out.printf("%n# %s: %,d rows; per GB of source text: heap %.0f MB (store tables and cache %.0f MB), mapped %.0f MB%n",
+                storage, index.size(), heapBytes * perGb / (1 << 20), storeHeapBytes * perGb / (1 << 20),
+                mappedBytes * perGb / (1 << 20));
+    }
+
+    @Benchmark
+    public void readHits(Blackhole blackhole) {
+        for (int i = 0; i < HITS; i++) blackhole.consume(index.segment(random.nextInt(index.size())).text());
+    }
+
+    private static long usedHeapAfterGc() {
+        for (int i = 0; i < 3; i++) System.gc();
+        return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+    }
+
+    /**
+     * Words drawn with Zipf frequencies (exponent 1) from pseudo-words of 2 to 11 letters, in sentences.
+     */
+    static final class ZipfProse {
+        private final String[] words;
+        private final double[] cumulative;
+        private final SplittableRandom random;
+
+        ZipfProse(int vocabulary, long seed) {
+            random = new SplittableRandom(seed);
+            words = new String[vocabulary];
+            cumulative = new double[vocabulary];
+            double sum = 0;
+            for (int rank = 0; rank < vocabulary; rank++) {
+                StringBuilder word = new StringBuilder();
+                int length = 2 + Math.min(9, rank / 2000 + random.nextInt(4));
+                for (int i = 0; i < length; i++) word.append((char) ('a' + random.nextInt(26)));
+                words[rank] = word.toString();
+                sum += 1.0 / (rank + 1);
+                cumulative[rank] = sum;
+            }
+            for (int rank = 0; rank < vocabulary; rank++) cumulative[rank] /= sum;
+        }
+
+        String text(int chars) {
+            StringBuilder text = new StringBuilder(chars + 64);
+            int inSentence = 0;
+            while (text.length() < chars) {
+                int found = Arrays.binarySearch(cumulative, random.nextDouble());
+                String word = words[found >= 0 ? found : Math.min(words.length - 1, -found - 1)];
+                if (inSentence == 0) word = Character.toUpperCase(word.charAt(0)) + word.substring(1);
+                text.append(word);
+                if (++inSentence >= 8 + random.nextInt(12)) {
+                    text.append(random.nextInt(6) == 0 ? ".\n\n" : ". ");
+                    inSentence = 0;
+                } else {
+                    text.append(' ');
+                }
+            }
+            return text.toString();
+        }
+    }
+}
@@ -0,0 +1,147 @@
+package com.intelligence.index;
+
+import com.intelligence.bench.HashingEmbeddingModel;
+import com.sun.management.GarbageCollectionNotificationInfo;
+import dev.langchain4j.data.document.Metadata;
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import org.openjdk.jmh.annotations.*;
+
+import javax.management.NotificationEmitter;
+import javax.management.NotificationListener;
+import javax.management.openmbean.CompositeData;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAccumulator;
+
+/**
+ * GC cost of fully re-indexing a folder that stays searchable throughout, file by file as
+ * {@link IndexRegistry} refreshes do. {@code embeddings} keeps the folder as a
+ * {@code List<Embedding>} (one {@code float[]} per chunk), {@code heap} is the packed
+ * {@link SegmentedIndex}, {@code offheap} the same index over a {@link VectorArena}.
+ * Besides the time per re-index, the secondary results report GC pauses (count, total and
+ * longest, from GC notifications) and the heap still in use after a full collection; JMH sums
+ * these over the measured iterations, so divide by the iteration count for per-re-index values.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgs = {"-Xms2g", "-Xmx2g", "-XX:+UseG1GC"})
+public class VectorArenaBenchmark {
+    private static final int ROWS_PER_FILE = 1_000;
+
+    @Param({"embeddings", "heap", "offheap"})
+    String storage;
+
+    @Param({"200000"})
+    int rows;
+
+    @Param({"384"})
+    int dimension;
+
+    List<Embedding> embeddings;
+    SegmentedIndex index;
+    int generation;
+
+    /**
+     * Collector activity during one iteration; JMH reports the fields as secondary results.
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class GcCounters {
+        private static final AtomicLong pauses = new AtomicLong();
+        private static final AtomicLong pauseMillis = new AtomicLong();
+        private static final LongAccumulator longestPause = new LongAccumulator(Math::max, 0);
+        private static volatile boolean listening;
+
+        public long gcPauses;
+        public long gcPauseMs;
+        public long gcLongestPauseMs;
+        public long heapUsedMb;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            listen();
+            pauses.set(0);
+            pauseMillis.set(0);
+            longestPause.reset();
+        }
+
+        @TearDown(Level.Iteration)
+        public void collect() {
+            gcPauses = pauses.get();
+            gcPauseMs = pauseMillis.get();
+            gcLongestPauseMs = longestPause.get();
+            System.gc();
+            heapUsedMb = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed() >> 20;
+        }
+
+        private static synchronized void listen() {
+            if (listening) return;
+            NotificationListener listener = (notification, handback) -> {
+                if (!notification.getType().equals(GarbageCollectionNotificationInfo.GARBAGE_COLLECTION_NOTIFICATION)) return;
+                GarbageCollectionNotificationInfo info =
+                        GarbageCollectionNotificationInfo.from((CompositeData) notification.getUserData());
+                if (info.getGcCause().equals("System.gc()")) return; // our own measurement collection
+                long millis = info.getGcInfo().getDuration();
+                pauses.incrementAndGet();
+                pauseMillis.addAndGet(millis);
+                longestPause.accumulate(millis);
+            };
+            for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+                ((NotificationEmitter) gc).addNotificationListener(listener, null, null);
+            }
+            listening = true;
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        if (storage.equals("embeddings")) {
+            embeddings = reembedAll();
+        } else {
+            index = new SegmentedIndex(file(0, 0), SegmentedIndex.DEFAULT_BUFFER_ROWS,
+                    SegmentedIndex.DEFAULT_MAX_SEGMENTS, storage.equals("offheap"));
+            reindex(new GcCounters());
+        }
+    }
+
+    @Benchmark
+    public int reindex(GcCounters counters) {
+        generation++;
+        if (embeddings != null) {
+            embeddings = reembedAll();
+            return embeddings.size();
+        }
+        for (int f = 0; f < rows / ROWS_PER_FILE; f++) index.apply(file(f, generation), Set.of());
+        return index.size();
+    }
+
+    private List<Embedding> reembedAll() {
+        List<Embedding> all = new ArrayList<>(rows);
+        for (int i = 0; i < rows; i++) all.add(Embedding.from(HashingEmbeddingModel.vectorFor("row " + generation + i, dimension)));
+        return all;
+    }
+
+    // One file's chunks as the embedding model returns them: a fresh float[] per chunk
+    private FolderIndex file(int file, int generation) {
+        String name = "doc" + file + ".txt";
+        List<TextSegment> segments = new ArrayList<>(ROWS_PER_FILE);
+        List<Embedding> vectors = new ArrayList<>(ROWS_PER_FILE);
+        for (int i = 0; i < ROWS_PER_FILE; i++) {
+            String text = name + " chunk " + i + " v" + generation;
+            segments.add(TextSegment.from(text, Metadata.from("file_name", name)));
+            vectors.add(Embedding.from(HashingEmbeddingModel.vectorFor(text, dimension)));
+        }
+        FolderManifest manifest = new FolderManifest(Map.of(name, new FolderManifest.FileStamp(generation, generation)));
+        return FolderIndex.of("/bench", segments, vectors, manifest, "bench");
+    }
+}
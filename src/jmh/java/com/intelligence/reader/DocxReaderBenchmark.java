@@ -0,0 +1,158 @@
+package com.intelligence.reader;
+
+import com.intelligence.bench.Fixtures;
+import org.apache.poi.openxml4j.util.ZipSecureFile;
+import org.apache.poi.util.IOUtils;
+import org.apache.poi.xwpf.usermodel.XWPFDocument;
+import org.apache.poi.xwpf.usermodel.XWPFParagraph;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Time and peak heap to extract a large .docx: {@code stax} is {@link WordContentReader}, which
+ * streams word/document.xml, {@code xwpf} the previous extraction through POI's
+ * {@code XWPFDocument}. The fixture is written straight to the zip with about {@code sizeMb} of
+ * document XML: body paragraphs under a heading every 50 paragraphs and a three-column table
+ * every 200. The peak heap of each iteration is printed after it; the pools' peaks are reset
+ * (after a full GC) before each one.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+@Fork(value = 1, jvmArgs = {"-Xms3g", "-Xmx3g"})
+public class DocxReaderBenchmark {
+    private static final String W = "http://schemas.openxmlformats.org/wordprocessingml/2006/main";
+
+    @Param({"stax", "xwpf"})
+    String reader;
+
+    @Param({"128"})
+    int sizeMb;
+
+    Path fixture;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        fixture = Files.createTempFile("bench-docx", ".docx");
+        long xmlBytes = write(fixture, sizeMb * 1024L * 1024);
+        System.out.printf("%n# %,d MB of document XML in a %,d MB .docx%n", xmlBytes >> 20, Files.size(fixture) >> 20);
+        // The generated document compresses well enough to trip POI's zip bomb check, and its
+        // main part is larger than POI reads into one array by default
+        ZipSecureFile.setMinInflateRatio(0);
+        IOUtils.setByteArrayMaxOverride(Integer.MAX_VALUE);
+    }
+
+    @Setup(Level.Iteration)
+    public void resetPeak() {
+        System.gc();
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) pool.resetPeakUsage();
+    }
+
+    @TearDown(Level.Iteration)
+    public void printPeak() {
+        long peak = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) peak += pool.getPeakUsage().getUsed();
+        }
+        System.out.printf("%n# %s peak heap %,d MB%n", reader, peak >> 20);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(fixture);
+    }
+
+    @Benchmark
+    public long read() throws Exception {
+        long[] chars = new long[1];
+        if (reader.equals("stax")) {
+            new WordContentReader().read(fixture, block -> chars[0] += block.text().length());
+        } else {
+            try (InputStream in = Files.newInputStream(fixture); XWPFDocument doc = new XWPFDocument(in)) {
+                HeadingPath headings = new HeadingPath();
+                for (XWPFParagraph paragraph : doc.getParagraphs()) {
+                    String text = paragraph.getText();
+                    int level = WordContentReader.headingLevel(paragraph.getStyle());
+                    if (level > 0 && !text.isBlank()) headings.enter(level, text.trim());
+                    chars[0] += headings.block(text).text().length();
+                }
+            }
+        }
+        return chars[0];
+    }
+
+    // Writes a minimal package XWPF accepts and returns the size of word/document.xml
+    private static long write(Path file, long xmlBytes) throws IOException {
+        List<String> paragraphs = Fixtures.paragraphs(7, 256 * 1024);
+        long written = 0;
+        try (OutputStream out = Files.newOutputStream(file); ZipOutputStream zip = new ZipOutputStream(out)) {
+            Writer xml = new OutputStreamWriter(zip, StandardCharsets.UTF_8);
+            zip.putNextEntry(new ZipEntry("[Content_Types].xml"));
+            xml.write("<Types xmlns=\"http://schemas.openxmlformats.org/package/2006/content-types\">"
+                    + "<Default Extension=\"rels\" ContentType=\"application/vnd.openxmlformats-package.relationships+xml\"/>"
+                    + "<Default Extension=\"xml\" ContentType=\"application/xml\"/>"
+                    + "<Override PartName=\"/word/document.xml\" ContentType=\"application/vnd.openxmlformats-officedocument"
+                    + ".wordprocessingml.document.main+xml\"/></Types>");
+            xml.flush();
+            zip.putNextEntry(new ZipEntry("_rels/.rels"));
+            xml.write("<Relationships xmlns=\"http://schemas.openxmlformats.org/package/2006/relationships\">"
+                    + "<Relationship Id=\"rId1\" Type=\"http://schemas.openxmlformats.org/officeDocument/2006/relationships/"
+                    + "officeDocument\" Target=\"word/document.xml\"/></Relationships>");
+            xml.flush();
+            zip.putNextEntry(new ZipEntry("word/document.xml"));
+            StringBuilder chunk = new StringBuilder("<w:document xmlns:w=\"" + W + "\"><w:body>");
+            for (int i = 0; written < xmlBytes; i++) {
+                String text = paragraphs.get(i % paragraphs.size());
+                if (i % 50 == 0) {
+                    chunk.append("<w:p><w:pPr><w:pStyle w:val=\"Heading").append(1 + (i / 50) % 3)
+                            .append("\"/></w:pPr><w:r><w:t>Section ").append(i / 50).append("</w:t></w:r></w:p>");
+                }
+                if (i % 200 == 199) {
+                    chunk.append("<w:tbl>");
+                    for (int row = 0; row < 4; row++) {
+                        chunk.append("<w:tr>");
+                        for (int col = 0; col < 3; col++) {
+                            chunk.append("<w:tc><w:p><w:r><w:t>Cell ").append(row).append('.').append(col)
+                                    .append("</w:t></w:r></w:p></w:tc>");
+                        }
+                        chunk.append("</w:tr>");
+                    }
+                    chunk.append("</w:tbl>");
+                }
+                chunk.append("<w:p><w:r><w:t xml:space=\"preserve\">").append(escape(text)).append("</w:t></w:r></w:p>");
+                if (chunk.length() > 1 << 20) {
+                    xml.write(chunk.toString());
+                    written += chunk.length();
+                    chunk.setLength(0);
+                }
+            }
+            chunk.append("</w:body></w:document>");
+            xml.write(chunk.toString());
+            written += chunk.length();
+            xml.flush();
+            zip.closeEntry();
+        }
+        return written;
+    }
+
+    private static String escape(String text) {
+        return text.replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;");
+    }
+}
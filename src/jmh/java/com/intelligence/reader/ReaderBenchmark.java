@@ -0,0 +1,48 @@
+package com.intelligence.reader;
+
+import com.intelligence.bench.Fixtures;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Extraction cost of each content reader on a generated fixture of roughly {@code sizeKb} of text,
+ * streamed through {@link ContentReaders} into a sink that only counts characters.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 2)
+@Fork(1)
+public class ReaderBenchmark {
+
+    @Param({"pdf", "docx", "csv", "json", "md"})
+    String format;
+
+    @Param({"256"})
+    int sizeKb;
+
+    Path fixture;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        fixture = Fixtures.write(Files.createTempDirectory("bench-reader"), format, sizeKb * 1024);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(fixture);
+        Files.deleteIfExists(fixture.getParent());
+    }
+
+    @Benchmark
+    public int read() throws Exception {
+        int[] chars = new int[1];
+        ContentReaders.defaults().read(fixture, block -> chars[0] += block.text().length());
+        return chars[0];
+    }
+}
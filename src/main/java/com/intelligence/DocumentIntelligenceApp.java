@@ -1,23 +1,52 @@
 package com.intelligence;
 
+import com.intelligence.agent.CompactingChatMemory;
+import com.intelligence.agent.ConversationSummarizer;
 import com.intelligence.agent.DocumentAssistantAgent;
 import com.intelligence.agent.ContextRetriever;
+import com.intelligence.agent.DocumentIndexer;
 import com.intelligence.agent.KnowledgeBaseTools;
 import com.intelligence.agent.PersistentChatMemoryStore;
-import dev.langchain4j.memory.chat.MessageWindowChatMemory;
+import com.intelligence.agent.RetrievalPolicy;
+import com.intelligence.agent.RetrievalPrefetcher;
+import com.intelligence.index.IndexRegistry;
+import com.intelligence.index.ScoredSegment;
+import com.intelligence.metrics.Metrics;
+import com.intelligence.metrics.MetricsExporter;
+import com.intelligence.metrics.QueryTrace;
+import com.intelligence.model.LazyEmbeddingModel;
+import com.intelligence.model.LazyStreamingChatModel;
+import com.intelligence.model.PrioritizedEmbeddingModel;
+import com.intelligence.server.DocumentQueryServer;
+import com.intelligence.shard.ShardCluster;
+import com.intelligence.shard.ShardWorker;
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
 import dev.langchain4j.model.chat.StreamingChatModel;
 import dev.langchain4j.model.embedding.EmbeddingModel;
 import dev.langchain4j.model.ollama.OllamaEmbeddingModel;
+import dev.langchain4j.model.output.Response;
 import dev.langchain4j.model.openai.OpenAiStreamingChatModel;
 import dev.langchain4j.service.AiServices;
 import dev.langchain4j.store.memory.chat.ChatMemoryStore;
+import dev.langchain4j.store.memory.chat.InMemoryChatMemoryStore;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Random;
 import java.util.Scanner;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.atomic.AtomicBoolean;
 
@@ -31,17 +60,48 @@ public class DocumentIntelligenceApp {
     private static final String EMBEDDING_MODEL_NAME = "nomic-embed-text:latest";
 
     private static final String DEFAULT_DATA_PATH = "./src/main/resources/";
-    private static final int CHAT_MEMORY_MAX_MESSAGES = 20;
     private static final int MODEL_TIMEOUT_SECONDS = 120;
+    private static final String METRICS_DIR = "metrics";
+    private static final int METRICS_EXPORT_INTERVAL_SECONDS = 15;
 
-    public static void main(String[] args) {
+    private static final String INDEX_SNAPSHOT_DIR = "index-cache";
+    private static final String INDEX_BUDGET_PROPERTY = "docintel.index.budget.mb";
+
+    private static final String SERVER_FLAG = "--server";
+    private static final String CDS_TRAINING_FLAG = "--cds-training";
+    private static final String SHARD_WORKER_FLAG = "--shard-worker";
+    private static final String DEFAULT_BIND_ADDRESS = "127.0.0.1";
+    private static final int DEFAULT_SERVER_PORT = 8080;
+    private static final int DEFAULT_MAX_CONCURRENT_LLM_CALLS = 4;
+    private static final int MAX_CONCURRENT_SUMMARIES = 1;
+
+    public static void main(String[] args) throws Exception {
         System.setProperty("file.encoding", "UTF-8");
 
+        if (args.length > 0 && args[0].equals(SERVER_FLAG)) {
+            runServer(parseOptions(args));
+            return;
+        }
+        if (args.length > 0 && args[0].equals(CDS_TRAINING_FLAG)) {
+            runCdsTraining();
+            return;
+        }
+        if (args.length > 0 && args[0].equals(SHARD_WORKER_FLAG)) {
+            ShardWorker.run(parseOptions(args), new DocumentIndexer(createEmbeddingModel()), Paths.get(INDEX_SNAPSHOT_DIR));
+            return;
+        }
+
         StreamingChatModel chatModel = createStreamingModel();
         EmbeddingModel embeddingModel = createEmbeddingModel();
         ChatMemoryStore store = new PersistentChatMemoryStore();
+        IndexRegistry indexRegistry = createIndexRegistry(embeddingModel);
+        MetricsExporter metricsExporter = MetricsExporter.start(Paths.get(METRICS_DIR),
+                Duration.ofSeconds(METRICS_EXPORT_INTERVAL_SECONDS));
         Scanner scanner = new Scanner(System.in);
         String userId = "user-" + System.getProperty("user.name");
+        ConversationSummarizer summarizer = ConversationSummarizer.using(chatModel, new Semaphore(MAX_CONCURRENT_SUMMARIES));
+        int shardCount = Integer.getInteger(ShardCluster.SHARDS_PROPERTY, 0);
+        ShardCluster shardCluster = null;
 
         System.out.println("\n==============================================");
         System.out.println("   DOCUMENT INTELLIGENCE AGENT (v2.0)");
@@ -60,8 +120,18 @@ public class DocumentIntelligenceApp {
                     ? DEFAULT_DATA_PATH : inputDir;
 
             System.out.println(">> Loading context from: " + resolvedPath);
-            ContextRetriever contextRetriever = new ContextRetriever(embeddingModel, resolvedPath);
-            DocumentAssistantAgent assistant = buildAssistant(chatModel, contextRetriever, store, resolvedPath);
+            ContextRetriever contextRetriever;
+            if (shardCount > 0) {
+                if (shardCluster != null) shardCluster.close();
+                shardCluster = ShardCluster.launch(resolvedPath, shardCount,
+                        List.of(DocumentIntelligenceApp.class.getName(), SHARD_WORKER_FLAG));
+                contextRetriever = ContextRetriever.sharded(embeddingModel, resolvedPath, shardCluster.coordinator(),
+                        RetrievalPolicy.defaults());
+            } else {
+                contextRetriever = new ContextRetriever(embeddingModel, resolvedPath, indexRegistry);
+                prewarm(contextRetriever);
+            }
+            DocumentAssistantAgent assistant = buildAssistant(chatModel, contextRetriever, store, resolvedPath, summarizer);
 
             // 2. Question Loop for the current folder
             while (true) {
@@ -70,6 +140,10 @@ public class DocumentIntelligenceApp {
 
                 if (isExitCommand(query)) break outerLoop;
                 if (query.isEmpty()) continue;
+                if (query.equalsIgnoreCase("trace")) {
+                    printLastTrace(userId);
+                    continue;
+                }
 
                 executeStreamingChat(assistant, userId, query);
 
@@ -87,9 +161,109 @@ public class DocumentIntelligenceApp {
         }
 
         System.out.println("\nAI: Goodbye! Have a productive day.");
+        if (shardCluster != null) shardCluster.close();
+        metricsExporter.close();
+        indexRegistry.close();
         scanner.close();
     }
 
+    /**
+     * Headless mode: {@code --server [--port=8080] [--bind=127.0.0.1] [--root=./src/main/resources/] [--max-llm=4]}.
+     * Conversations are kept in memory per request memoryId rather than in the single-user chat-memory.json.
+     */
+    private static void runServer(Map<String, String> options) throws IOException, InterruptedException {
+        StreamingChatModel chatModel = createStreamingModel();
+        EmbeddingModel embeddingModel = createEmbeddingModel();
+        ChatMemoryStore store = new InMemoryChatMemoryStore();
+        IndexRegistry indexRegistry = createIndexRegistry(embeddingModel);
+        // Conversation summaries are model calls too and count against the same cap as answers
+        Semaphore llmPermits = new Semaphore(
+                Integer.parseInt(options.getOrDefault("max-llm", String.valueOf(DEFAULT_MAX_CONCURRENT_LLM_CALLS))), true);
+        ConversationSummarizer summarizer = ConversationSummarizer.using(chatModel, llmPermits);
+
+        DocumentQueryServer server = new DocumentQueryServer(
+                Paths.get(options.getOrDefault("root", DEFAULT_DATA_PATH)),
+                embeddingModel,
+                indexRegistry,
+                retriever -> buildAssistant(chatModel, retriever, store, retriever.directoryPath(), summarizer),
+                llmPermits);
+        MetricsExporter metricsExporter = MetricsExporter.start(Paths.get(METRICS_DIR),
+                Duration.ofSeconds(METRICS_EXPORT_INTERVAL_SECONDS));
+
+        server.start(new InetSocketAddress(options.getOrDefault("bind", DEFAULT_BIND_ADDRESS),
+                Integer.parseInt(options.getOrDefault("port", String.valueOf(DEFAULT_SERVER_PORT)))));
+
+        CountDownLatch shutdown = new CountDownLatch(1);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            server.close();
+            metricsExporter.close();
+            indexRegistry.close();
+            shutdown.countDown();
+        }));
+        shutdown.await();
+    }
+
+    /**
+     * Keeps recently used folders resident so switching back to one is instant.
+     * Budget defaults to a quarter of the max heap; override with -Ddocintel.index.budget.mb.
+     */
+    private static IndexRegistry createIndexRegistry(EmbeddingModel embeddingModel) {
+        long defaultBudgetMb = Runtime.getRuntime().maxMemory() / (4 * 1024 * 1024);
+        long budgetMb = Long.getLong(INDEX_BUDGET_PROPERTY, defaultBudgetMb);
+        return new IndexRegistry(budgetMb * 1024 * 1024, Paths.get(INDEX_SNAPSHOT_DIR), new DocumentIndexer(embeddingModel));
+    }
+
+    /**
+     * Loads (or starts building) the folder's index while the user is still typing the first question.
+     */
+    private static void prewarm(ContextRetriever retriever) {
+        Thread.ofVirtual().name("index-prewarm").start(() -> {
+            try {
+                retriever.index();
+                retriever.packer(); // loads the tokenizer vocabulary off the first question's path
+            } catch (RuntimeException e) {
+                log.warn("Could not prepare index for {}: {}", retriever.directoryPath(), e.getMessage());
+            }
+        });
+    }
+
+    /**
+     * Walks the startup and first-query code paths offline so {@code -XX:ArchiveClassesAtExit}
+     * captures the classes they load. Used by the Gradle {@code cdsArchive} task.
+     */
+    private static void runCdsTraining() throws IOException {
+        buildStreamingModel("cds-training");
+        buildEmbeddingModel();
+        EmbeddingModel offlineModel = new EmbeddingModel() {
+            @Override
+            public Response<List<Embedding>> embedAll(List<TextSegment> segments) {
+                return Response.from(segments.stream().map(s -> Embedding.from(new float[]{s.text().length(), 1f})).toList());
+            }
+        };
+        Path workDir = Files.createTempDirectory("cds-training");
+        Path folder = Files.createDirectories(workDir.resolve("docs"));
+        Files.writeString(folder.resolve("sample.txt"), "Class data sharing keeps startup classes pre-parsed.");
+        try (IndexRegistry registry = new IndexRegistry(Long.MAX_VALUE, workDir.resolve("snapshots"), new DocumentIndexer(offlineModel))) {
+            ContextRetriever retriever = new ContextRetriever(offlineModel, folder.toString(), registry);
+            List<ScoredSegment> hits = retriever.search("training query", 5);
+            StreamingChatModel chatModel = createStreamingModel();
+            buildAssistant(chatModel, retriever, new InMemoryChatMemoryStore(), folder.toString(),
+                    ConversationSummarizer.using(chatModel, new Semaphore(MAX_CONCURRENT_SUMMARIES)));
+            MetricsExporter.toPrometheus();
+            log.info("CDS training run loaded {} hits", hits.size());
+        }
+    }
+
+    private static Map<String, String> parseOptions(String[] args) {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            if (!arg.startsWith("--") || arg.equals(SERVER_FLAG)) continue;
+            int eq = arg.indexOf('=');
+            if (eq > 2) options.put(arg.substring(2, eq), arg.substring(eq + 1));
+        }
+        return options;
+    }
+
     private static boolean isExitCommand(String input) {
         return input.equalsIgnoreCase("exit") ||
                 input.equalsIgnoreCase("quit") ||
@@ -98,16 +272,27 @@ public class DocumentIntelligenceApp {
 
     // --- Helper & Builder Methods ---
 
+    // Clients are built on first use: a start served from index snapshots never touches Ollama
     private static StreamingChatModel createStreamingModel() {
+        return new LazyStreamingChatModel(() -> buildStreamingModel(System.getenv(GROQ_API_KEY_ENV)));
+    }
+
+    // Query embeddings jump ahead of folder re-embedding on the shared local Ollama
+    private static EmbeddingModel createEmbeddingModel() {
+        return new PrioritizedEmbeddingModel(
+                new LazyEmbeddingModel(EMBEDDING_MODEL_NAME, DocumentIntelligenceApp::buildEmbeddingModel));
+    }
+
+    private static StreamingChatModel buildStreamingModel(String apiKey) {
         return OpenAiStreamingChatModel.builder()
-                .apiKey(System.getenv(GROQ_API_KEY_ENV))
+                .apiKey(apiKey)
                 .baseUrl(GROQ_BASE_URL)
                 .modelName(GROQ_MODEL_NAME)
                 .timeout(Duration.ofSeconds(MODEL_TIMEOUT_SECONDS))
                 .build();
     }
 
-    private static EmbeddingModel createEmbeddingModel() {
+    private static EmbeddingModel buildEmbeddingModel() {
         return OllamaEmbeddingModel.builder()
                 .baseUrl(OLLAMA_SERVICE_URL)
                 .modelName(EMBEDDING_MODEL_NAME)
@@ -119,11 +304,7 @@ public class DocumentIntelligenceApp {
         return AiServices.builder(DocumentAssistantAgent.class)
                 .streamingChatModel(chatModel)
                 .contentRetriever(retriever)
-                .chatMemoryProvider(chatId -> MessageWindowChatMemory.builder()
-                        .id(chatId)
-                        .maxMessages(CHAT_MEMORY_MAX_MESSAGES)
-                        .chatMemoryStore(store)
-                        .build())
+                .chatMemoryProvider(chatId -> CompactingChatMemory.of(chatId, store, ConversationSummarizer.using(chatModel)))
                 .build();
     } */
 
@@ -132,22 +313,24 @@ public class DocumentIntelligenceApp {
             StreamingChatModel chatModel,
             ContextRetriever retriever,
             ChatMemoryStore store,
-            String dataFolderPath) {
+            String dataFolderPath,
+            ConversationSummarizer summarizer) {
 
-        return AiServices.builder(DocumentAssistantAgent.class)
+        // Speculative retrieval for the raw question overlaps the model's first round trip when enabled
+        RetrievalPrefetcher prefetcher = RetrievalPrefetcher.of(retriever);
+        DocumentAssistantAgent assistant = AiServices.builder(DocumentAssistantAgent.class)
                 .streamingChatModel(chatModel)
-                .tools(new KnowledgeBaseTools(retriever, dataFolderPath))
-                .chatMemoryProvider(chatId -> MessageWindowChatMemory.builder()
-                        .id(chatId)
-                        .maxMessages(CHAT_MEMORY_MAX_MESSAGES)
-                        .chatMemoryStore(store)
-                        .build())
+                .tools(new KnowledgeBaseTools(retriever, dataFolderPath, prefetcher))
+                .chatMemoryProvider(chatId -> CompactingChatMemory.of(chatId, store, summarizer))
                 .build();
+        return prefetcher == null ? assistant : prefetcher.speculative(assistant);
     }
 
     private static void executeStreamingChat(DocumentAssistantAgent assistant, String userId, String question) {
         CompletableFuture<Void> future = new CompletableFuture<>();
         AtomicBoolean isFirstToken = new AtomicBoolean(true);
+        long startNanos = System.nanoTime();
+        QueryTrace trace = QueryTrace.begin(userId, question);
 
         System.out.print("AI: thinking...");
         System.out.flush();
@@ -155,6 +338,10 @@ public class DocumentIntelligenceApp {
         assistant.chatStreaming(userId, question)
                 .onPartialResponse(token -> {
                     if (isFirstToken.getAndSet(false)) {
+                        try (QueryTrace.Scope scope = QueryTrace.bind(trace)) {
+                            Metrics.timer(Metrics.CHAT_FIRST_TOKEN).recordNanos(System.nanoTime() - startNanos);
+                        }
+                        Metrics.recordFirstAnswer();
                         System.out.print("\rAI:               \rAI: ");
                         System.out.flush();
                     }
@@ -162,6 +349,7 @@ public class DocumentIntelligenceApp {
                 })
                 .onCompleteResponse(response -> future.complete(null))
                 .onError(err -> {
+                    Metrics.counter("chat.errors").increment();
                     System.out.print("\rAI: [ERROR]       \n");
                     System.err.println(err.getMessage());
                     future.complete(null);
@@ -169,6 +357,13 @@ public class DocumentIntelligenceApp {
                 .start();
 
         future.join();
+        Metrics.timer(Metrics.CHAT_STREAM).recordNanos(System.nanoTime() - startNanos);
+        QueryTrace.finish(trace);
+    }
+
+    private static void printLastTrace(String userId) {
+        QueryTrace trace = QueryTrace.last(userId);
+        System.out.print(trace != null ? trace.format() : "No query has been traced yet.\n");
     }
 
     private static void stochasticPrint(String chunk) {
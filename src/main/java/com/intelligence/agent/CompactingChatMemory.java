@@ -0,0 +1,322 @@
+package com.intelligence.agent;
+
+import com.intelligence.metrics.Metrics;
+import dev.langchain4j.data.message.AiMessage;
+import dev.langchain4j.data.message.ChatMessage;
+import dev.langchain4j.data.message.SystemMessage;
+import dev.langchain4j.data.message.ToolExecutionResultMessage;
+import dev.langchain4j.data.message.UserMessage;
+import dev.langchain4j.memory.ChatMemory;
+import dev.langchain4j.model.TokenCountEstimator;
+import dev.langchain4j.store.memory.chat.ChatMemoryStore;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Chat memory that keeps the prompt within a token budget however long the session runs.
+ * Once a turn has been answered, its bulky tool results are cut to a short stub; the model has
+ * already used them and can call the tool again. When the history passes three quarters of the
+ * budget, every turn but the most recent ones is folded into a running summary by a
+ * {@link ConversationSummarizer} on a virtual thread, so no request waits for it. Until the
+ * summary lands, {@link #messages()} leaves out the oldest turns that no longer fit.
+ *
+ * <p>Budgets come from {@value #BUDGET_PROPERTY} (default {@value #DEFAULT_BUDGET_TOKENS}),
+ * {@value #RECENT_TURNS_PROPERTY} (turns always kept verbatim, default {@value #DEFAULT_RECENT_TURNS})
+ * and {@value #TOOL_RESULT_PROPERTY} (longest tool result kept after use, default
+ * {@value #DEFAULT_TOOL_RESULT_TOKENS} tokens). The summary is persisted in the store as a
+ * second system message, so it survives restarts.
+ */
+public class CompactingChatMemory implements ChatMemory {
+    private static final Logger log = LoggerFactory.getLogger(CompactingChatMemory.class);
+
+    public static final String BUDGET_PROPERTY = "docintel.memory.budget.tokens";
+    public static final String RECENT_TURNS_PROPERTY = "docintel.memory.recent.turns";
+    public static final String TOOL_RESULT_PROPERTY = "docintel.memory.tool.result.tokens";
+    static final int DEFAULT_BUDGET_TOKENS = 3_000;
+    static final int DEFAULT_RECENT_TURNS = 2;
+    static final int DEFAULT_TOOL_RESULT_TOKENS = 200;
+    static final String SUMMARY_PREFIX = "Summary of the earlier conversation:\n";
+    // Roughly four characters per token, and a quarter of the budget for the summary
+    private static final int CHARS_PER_TOKEN = 4;
+
+    private final Object id;
+    private final ChatMemoryStore store;
+    private final TokenCountEstimator estimator;
+    private final ConversationSummarizer summarizer;
+    private final int budgetTokens;
+    private final int recentTurns;
+    private final int toolResultTokens;
+
+    // Virtual threads may add from stream callbacks while a summary completes, so all state is guarded
+    private final ReentrantLock lock = new ReentrantLock();
+    private SystemMessage system;
+    private String summary = "";
+    private int summaryTokens;
+    private final List<ChatMessage> history = new ArrayList<>();
+    private final List<Integer> historyTokens = new ArrayList<>();
+    private Thread summarizing;
+    private long generation;
+    // Turns messages() currently leaves out, so each trimmed turn is counted once rather than per read
+    private int trimmedTurns;
+
+    public CompactingChatMemory(Object id, ChatMemoryStore store, TokenCountEstimator estimator,
+                                ConversationSummarizer summarizer, int budgetTokens, int recentTurns, int toolResultTokens) {
+        this.id = id;
+        this.store = store;
+        this.estimator = estimator;
+        this.summarizer = summarizer;
+        this.budgetTokens = budgetTokens;
+        this.recentTurns = Math.max(1, recentTurns);
+        this.toolResultTokens = toolResultTokens;
+        for (ChatMessage message : store.getMessages(id)) {
+            if (message instanceof SystemMessage s && s.text().startsWith(SUMMARY_PREFIX)) {
+                setSummary(s.text().substring(SUMMARY_PREFIX.length()));
+            } else if (message instanceof SystemMessage s) {
+                system = s;
+            } else {
+                append(message);
+            }
+        }
+        trimmedTurns = turnStarts(0, firstTurnWithin(budgetTokens - fixedTokens()));
+    }
+
+    /**
+     * Memory with the budgets from system properties and the context packer's tokenizer.
+     */
+    public static CompactingChatMemory of(Object id, ChatMemoryStore store, ConversationSummarizer summarizer) {
+        return new CompactingChatMemory(id, store, ContextPacker.defaults().estimator(), summarizer,
+                Integer.getInteger(BUDGET_PROPERTY, DEFAULT_BUDGET_TOKENS),
+                Integer.getInteger(RECENT_TURNS_PROPERTY, DEFAULT_RECENT_TURNS),
+                Integer.getInteger(TOOL_RESULT_PROPERTY, DEFAULT_TOOL_RESULT_TOKENS));
+    }
+
+    @Override
+    public Object id() {
+        return id;
+    }
+
+    @Override
+    public void add(ChatMessage message) {
+        lock.lock();
+        try {
+            if (message instanceof SystemMessage s) {
+                if (s.equals(system)) return;
+                system = s;
+            } else {
+                append(message);
+                if (message instanceof AiMessage ai && !ai.hasToolExecutionRequests()) stubAnsweredToolResults();
+                maybeCompact();
+            }
+            countTrimmed();
+            persist();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * The system message with the summary folded in, then the newest turns that fit the budget.
+     * The turn in progress is always included, whatever its size.
+     */
+    @Override
+    public List<ChatMessage> messages() {
+        lock.lock();
+        try {
+            List<ChatMessage> messages = new ArrayList<>(history.size() + 1);
+            if (system != null || !summary.isEmpty()) {
+                String text = system == null ? "" : system.text();
+                if (!summary.isEmpty()) text = (text.isEmpty() ? "" : text + "\n\n") + SUMMARY_PREFIX + summary;
+                messages.add(SystemMessage.from(text));
+            }
+            int from = firstTurnWithin(budgetTokens - fixedTokens());
+            messages.addAll(history.subList(from, history.size()));
+            return messages;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void clear() {
+        lock.lock();
+        try {
+            system = null;
+            setSummary("");
+            history.clear();
+            historyTokens.clear();
+            trimmedTurns = 0;
+            generation++; // a summary still running is for the old history and gets discarded
+            store.deleteMessages(id);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Tokens {@link #messages()} would currently send.
+     */
+    public int promptTokens() {
+        lock.lock();
+        try {
+            int from = firstTurnWithin(budgetTokens - fixedTokens());
+            int tokens = fixedTokens();
+            for (int i = from; i < historyTokens.size(); i++) tokens += historyTokens.get(i);
+            return tokens;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public String summary() {
+        lock.lock();
+        try {
+            return summary;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Waits for a summary in progress, if any, to replace the turns it folds.
+     */
+    void awaitSummary() throws InterruptedException {
+        Thread running;
+        lock.lock();
+        try {
+            running = summarizing;
+        } finally {
+            lock.unlock();
+        }
+        if (running != null) running.join();
+    }
+
+    // Caller holds the lock (or is the constructor)
+    private void append(ChatMessage message) {
+        history.add(message);
+        historyTokens.add(estimator.estimateTokenCountInMessage(message));
+    }
+
+    private void setSummary(String text) {
+        summary = text;
+        summaryTokens = text.isEmpty() ? 0 : estimator.estimateTokenCountInText(SUMMARY_PREFIX + text);
+    }
+
+    /**
+     * The turn just answered used its tool results; keep only the beginning of the large ones.
+     */
+    private void stubAnsweredToolResults() {
+        for (int i = history.size() - 2; i >= 0 && !(history.get(i) instanceof UserMessage); i--) {
+            if (!(history.get(i) instanceof ToolExecutionResultMessage result) || historyTokens.get(i) <= toolResultTokens) {
+                continue;
+            }
+            int keepChars = toolResultTokens * CHARS_PER_TOKEN / 2;
+            String stub = result.text().substring(0, Math.min(keepChars, result.text().length()))
+                    + "\n[... " + (historyTokens.get(i) - toolResultTokens / 2) + " more tokens of this tool result were "
+                    + "dropped after use; call the tool again if they are needed]";
+            ToolExecutionResultMessage stubbed = ToolExecutionResultMessage.from(result.id(), result.toolName(), stub);
+            int saved = historyTokens.get(i) - estimator.estimateTokenCountInMessage(stubbed);
+            history.set(i, stubbed);
+            historyTokens.set(i, historyTokens.get(i) - saved);
+            Metrics.counter("memory.tool_results_stubbed").increment();
+            Metrics.counter("memory.tool_tokens_dropped").add(saved);
+        }
+    }
+
+    /**
+     * Starts folding all but the recent turns into the summary once the history passes three
+     * quarters of the budget. The turns stay in place until the summary replaces them.
+     */
+    private void maybeCompact() {
+        if (summarizing != null || fixedTokens() + historyTotal() <= budgetTokens * 3 / 4) return;
+        int cut = recentTurnsStart();
+        if (cut <= 0) return;
+        List<ChatMessage> folded = List.copyOf(history.subList(0, cut));
+        String previous = summary;
+        long startedIn = generation;
+        int maxChars = Math.max(200, budgetTokens / 4 * CHARS_PER_TOKEN);
+        summarizing = Thread.ofVirtual().name("memory-summary").start(() -> {
+            String updated;
+            try {
+                updated = summarizer.summarize(previous, folded, maxChars);
+            } catch (RuntimeException e) {
+                log.warn("Summarizing conversation {} failed: {}", id, e.getMessage());
+                updated = ConversationSummarizer.extractive().summarize(previous, folded, maxChars);
+            }
+            lock.lock();
+            try {
+                summarizing = null;
+                if (generation != startedIn) return;
+                setSummary(updated);
+                // Only appends happen meanwhile, so the folded turns are still the head of the history
+                trimmedTurns = Math.max(0, trimmedTurns - turnStarts(0, folded.size()));
+                history.subList(0, folded.size()).clear();
+                historyTokens.subList(0, folded.size()).clear();
+                countTrimmed();
+                Metrics.counter("memory.compactions").increment();
+                persist();
+            } finally {
+                lock.unlock();
+            }
+        });
+    }
+
+    private int fixedTokens() {
+        return (system == null ? 0 : estimator.estimateTokenCountInMessage(system)) + summaryTokens;
+    }
+
+    private int historyTotal() {
+        int total = 0;
+        for (int tokens : historyTokens) total += tokens;
+        return total;
+    }
+
+    // Index of the first message of the oldest turn kept verbatim; 0 when there are no older turns
+    private int recentTurnsStart() {
+        int turns = 0;
+        for (int i = history.size() - 1; i >= 0; i--) {
+            if (history.get(i) instanceof UserMessage && ++turns == recentTurns) return i;
+        }
+        return 0;
+    }
+
+    // Index of the oldest turn start from which the rest fits; the newest turn is kept regardless
+    private int firstTurnWithin(int tokens) {
+        int used = 0;
+        int from = history.size();
+        for (int i = history.size() - 1; i >= 0; i--) {
+            used += historyTokens.get(i);
+            boolean turnStart = history.get(i) instanceof UserMessage || i == 0;
+            if (!turnStart) continue;
+            if (used > tokens && from < history.size()) break;
+            from = i;
+        }
+        return from;
+    }
+
+    // Called whenever the history or summary changes; adds the turns that just dropped out of the window
+    private void countTrimmed() {
+        int trimmed = turnStarts(0, firstTurnWithin(budgetTokens - fixedTokens()));
+        if (trimmed > trimmedTurns) Metrics.counter("memory.turns_trimmed").add(trimmed - trimmedTurns);
+        trimmedTurns = trimmed;
+    }
+
+    private int turnStarts(int from, int to) {
+        int turns = 0;
+        for (int i = from; i < to; i++) {
+            if (history.get(i) instanceof UserMessage) turns++;
+        }
+        return turns;
+    }
+
+    private void persist() {
+        List<ChatMessage> stored = new ArrayList<>(history.size() + 2);
+        if (system != null) stored.add(system);
+        if (!summary.isEmpty()) stored.add(SystemMessage.from(SUMMARY_PREFIX + summary));
+        stored.addAll(history);
+        store.updateMessages(id, stored);
+    }
+}
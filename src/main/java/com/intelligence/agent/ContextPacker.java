@@ -0,0 +1,247 @@
+package com.intelligence.agent;
+
+import com.intelligence.index.ScoredSegment;
+import com.intelligence.metrics.Metrics;
+import dev.langchain4j.model.TokenCountEstimator;
+import dev.langchain4j.model.openai.OpenAiTokenCountEstimator;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * Turns ranked segments into as little prompt text as possible: neighbouring chunks of the
+ * same file are stitched back together without their {@code CHUNK_OVERLAP}, sentences already
+ * included elsewhere are dropped, and passages are taken by score per token until the token
+ * budget is full. Token counts come from a local tokenizer, so packing costs no model call.
+ */
+public class ContextPacker {
+    public static final String BUDGET_PROPERTY = "docintel.context.budget.tokens";
+    public static final String DOCUMENT_BUDGET_PROPERTY = "docintel.context.document.budget.tokens";
+    static final int DEFAULT_BUDGET_TOKENS = 512;
+    static final int DEFAULT_DOCUMENT_BUDGET_TOKENS = 4_000;
+
+    // Groq serves Llama models; the GPT-4o (o200k) vocabulary is a close enough local estimate
+    private static final String ESTIMATOR_MODEL = "gpt-4o";
+    private static final Pattern SENTENCE_END = Pattern.compile("(?<=[.!?])\\s+");
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+    // Shorter matches are more likely coincidence (a shared word or punctuation) than splitter overlap
+    private static final int MIN_OVERLAP_CHARS = 4;
+    private static volatile ContextPacker defaults;
+
+    private final TokenCountEstimator estimator;
+    private final int budgetTokens;
+    private final int documentBudgetTokens;
+
+    /**
+     * A stitched run of chunks from one file.
+     */
+    public record Passage(String fileName, String text, double score, int tokens) {
+
+        public String format() {
+            return format(fileName, text);
+        }
+
+        static String format(String fileName, String text) {
+            return String.format("Source File: %s\nContent: %s", fileName, text);
+        }
+    }
+
+    public ContextPacker(TokenCountEstimator estimator, int budgetTokens, int documentBudgetTokens) {
+        this.estimator = estimator;
+        this.budgetTokens = budgetTokens;
+        this.documentBudgetTokens = documentBudgetTokens;
+    }
+
+    /**
+     * Local GPT-4o tokenizer with the budgets from {@value #BUDGET_PROPERTY} and
+     * {@value #DOCUMENT_BUDGET_PROPERTY}.
+     */
+    public static ContextPacker defaults() {
+        ContextPacker current = defaults;
+        if (current == null) {
+            // Loading the vocabulary takes a moment, so it happens once and on first use
+            current = new ContextPacker(new OpenAiTokenCountEstimator(ESTIMATOR_MODEL),
+                    Integer.getInteger(BUDGET_PROPERTY, DEFAULT_BUDGET_TOKENS),
+                    Integer.getInteger(DOCUMENT_BUDGET_PROPERTY, DEFAULT_DOCUMENT_BUDGET_TOKENS));
+            defaults = current;
+        }
+        return current;
+    }
+
+    public int budgetTokens() {
+        return budgetTokens;
+    }
+
+    /**
+     * The local tokenizer, shared with anything else that budgets prompt tokens.
+     */
+    public TokenCountEstimator estimator() {
+        return estimator;
+    }
+
+    /**
+     * Packs the hits into passages that fit the budget, best first.
+     *
+     * @param baselineCount how many raw snippets would have been sent unpacked; the tokens of
+     *                      that many top hits are compared with the packed result for the savings metric
+     */
+    public List<Passage> pack(List<ScoredSegment> hits, int baselineCount) {
+        if (hits.isEmpty()) return List.of();
+        int baselineTokens = 0;
+        for (ScoredSegment hit : hits.subList(0, Math.min(baselineCount, hits.size()))) {
+            baselineTokens += tokens(Passage.format(hit.fileName(), hit.segment().text()));
+        }
+
+        List<Passage> passages = dropRepeatedSentences(stitch(hits));
+        List<Passage> chosen = selectWithinBudget(passages);
+
+        int packedTokens = chosen.stream().mapToInt(Passage::tokens).sum();
+        Metrics.counter("context.tokens_packed").add(packedTokens);
+        Metrics.counter("context.tokens_saved").add(Math.max(0, baselineTokens - packedTokens));
+        Metrics.histogram("context.tokens_saved_per_call").record(Math.max(0, baselineTokens - packedTokens));
+        return chosen;
+    }
+
+    /**
+     * Drops repeated sentences (running headers, boilerplate) and cuts the text at a sentence
+     * boundary once the document budget is reached.
+     */
+    public String fitDocument(String text) {
+        StringBuilder fitted = new StringBuilder();
+        Set<String> seen = new HashSet<>();
+        int used = 0;
+        boolean truncated = false;
+        for (String sentence : SENTENCE_END.split(text)) {
+            if (!seen.add(normalize(sentence))) continue;
+            int cost = tokens(sentence) + 1;
+            if (used + cost > documentBudgetTokens) {
+                truncated = true;
+                break;
+            }
+            if (!fitted.isEmpty()) fitted.append(' ');
+            fitted.append(sentence);
+            used += cost;
+        }
+        if (truncated) fitted.append(" ... [Text truncated to fit the context budget]");
+        String result = fitted.toString();
+        Metrics.counter("context.document_tokens_dropped").add(Math.max(0, tokens(text) - used));
+        return result;
+    }
+
+    // Chunks of one file with consecutive indexes become one passage; the best hit's score is kept
+    private List<Passage> stitch(List<ScoredSegment> hits) {
+        Map<String, List<ScoredSegment>> byFile = new LinkedHashMap<>();
+        for (ScoredSegment hit : hits) byFile.computeIfAbsent(hit.fileName(), f -> new ArrayList<>()).add(hit);
+
+        List<Passage> passages = new ArrayList<>();
+        for (Map.Entry<String, List<ScoredSegment>> file : byFile.entrySet()) {
+            List<ScoredSegment> chunks = new ArrayList<>(file.getValue());
+            chunks.sort(Comparator.comparingInt(ContextPacker::chunkIndex));
+            StringBuilder text = null;
+            double score = 0;
+            int lastIndex = Integer.MIN_VALUE;
+            for (ScoredSegment chunk : chunks) {
+                int index = chunkIndex(chunk);
+                if (text != null && index >= 0 && index == lastIndex + 1) {
+                    appendWithoutOverlap(text, chunk.segment().text());
+                    score = Math.max(score, chunk.score());
+                    Metrics.counter("context.chunks_merged").increment();
+                } else if (text == null || index < 0 || index != lastIndex) {
+                    if (text != null) passages.add(new Passage(file.getKey(), text.toString(), score, 0));
+                    text = new StringBuilder(chunk.segment().text());
+                    score = chunk.score();
+                }
+                lastIndex = index;
+            }
+            if (text != null) passages.add(new Passage(file.getKey(), text.toString(), score, 0));
+        }
+        passages.sort(Comparator.comparingDouble(Passage::score).reversed());
+        return passages;
+    }
+
+    // The splitter repeats up to CHUNK_OVERLAP characters of the previous chunk at the start of the next
+    static void appendWithoutOverlap(StringBuilder text, String next) {
+        int max = Math.min(Math.min(text.length(), next.length()), TextSimilarityRanker.CHUNK_OVERLAP * 2);
+        for (int overlap = max; overlap >= MIN_OVERLAP_CHARS; overlap--) {
+            if (text.lastIndexOf(next.substring(0, overlap)) == text.length() - overlap) {
+                text.append(next, overlap, next.length());
+                return;
+            }
+        }
+        text.append(' ').append(next);
+    }
+
+    // Best passages claim their sentences first; later passages lose any sentence already present
+    private List<Passage> dropRepeatedSentences(List<Passage> passages) {
+        Set<String> seen = new HashSet<>();
+        List<Passage> deduplicated = new ArrayList<>(passages.size());
+        for (Passage passage : passages) {
+            StringBuilder kept = new StringBuilder();
+            for (String sentence : SENTENCE_END.split(passage.text())) {
+                if (!seen.add(normalize(sentence))) {
+                    Metrics.counter("context.sentences_dropped").increment();
+                    continue;
+                }
+                if (!kept.isEmpty()) kept.append(' ');
+                kept.append(sentence);
+            }
+            if (kept.isEmpty()) continue;
+            String text = kept.toString();
+            deduplicated.add(new Passage(passage.fileName(), text, passage.score(),
+                    tokens(Passage.format(passage.fileName(), text))));
+        }
+        return deduplicated;
+    }
+
+    // The best passage always goes in (trimmed if needed); the rest greedily by score per token
+    private List<Passage> selectWithinBudget(List<Passage> passages) {
+        List<Passage> chosen = new ArrayList<>();
+        Passage best = passages.get(0);
+        if (best.tokens() > budgetTokens) best = trim(best, budgetTokens);
+        chosen.add(best);
+        int remaining = budgetTokens - best.tokens();
+
+        List<Passage> rest = new ArrayList<>(passages.subList(1, passages.size()));
+        rest.sort(Comparator.comparingDouble((Passage p) -> p.score() / Math.max(1, p.tokens())).reversed());
+        for (Passage passage : rest) {
+            if (passage.tokens() > remaining) continue;
+            chosen.add(passage);
+            remaining -= passage.tokens();
+        }
+        chosen.sort(Comparator.comparingDouble(Passage::score).reversed());
+        return chosen;
+    }
+
+    private Passage trim(Passage passage, int budget) {
+        StringBuilder kept = new StringBuilder();
+        int used = tokens(Passage.format(passage.fileName(), ""));
+        for (String sentence : SENTENCE_END.split(passage.text())) {
+            int cost = tokens(sentence) + 1;
+            if (used + cost > budget && !kept.isEmpty()) break;
+            if (!kept.isEmpty()) kept.append(' ');
+            kept.append(sentence);
+            used += cost;
+        }
+        return new Passage(passage.fileName(), kept.toString(), passage.score(), used);
+    }
+
+    private int tokens(String text) {
+        return estimator.estimateTokenCountInText(text);
+    }
+
+    private static int chunkIndex(ScoredSegment hit) {
+        Integer index = hit.segment().metadata().getInteger("chunk_index");
+        return index != null ? index : -1;
+    }
+
+    private static String normalize(String sentence) {
+        return WHITESPACE.matcher(sentence.trim().toLowerCase(Locale.ROOT)).replaceAll(" ");
+    }
+}
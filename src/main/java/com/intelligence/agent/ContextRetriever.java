@@ -1,41 +1,312 @@
 package com.intelligence.agent;
 
+import com.intelligence.index.IndexRegistry;
+import com.intelligence.index.ParallelScan;
+import com.intelligence.index.ScoredSegment;
+import com.intelligence.index.SearchFilter;
+import com.intelligence.index.SegmentedIndex;
+import com.intelligence.metrics.Metrics;
+import com.intelligence.metrics.QueryTrace;
+import com.intelligence.model.CircuitBreaker;
+import com.intelligence.shard.ShardCoordinator;
 import dev.langchain4j.model.embedding.EmbeddingModel;
 import dev.langchain4j.rag.content.retriever.ContentRetriever;
 import dev.langchain4j.rag.query.Query;
-import dev.langchain4j.data.segment.TextSegment;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.locks.ReentrantLock;
 
 public class ContextRetriever implements ContentRetriever {
+    private static final Logger log = LoggerFactory.getLogger(ContextRetriever.class);
+    private static final int DEFAULT_TOP_K = 5;
+    // Extra candidates give the packer neighbouring chunks to stitch and room to fill its budget
+    private static final int PACKING_CANDIDATES = 10;
+    private static final int QUERY_CACHE_SIZE = 256;
+
     private final EmbeddingModel embeddingModel;
     private final String directoryPath;
+    private final IndexRegistry registry;
+    private final RetrievalPolicy policy;
+    private final CircuitBreaker breaker;
+    private final ContextPacker packer;
+    // Null unless the policy has a batch window
+    private final QueryBatcher batcher;
+    // Set when the folder's index is split across worker processes instead of held here
+    private final ShardCoordinator shards;
+
+    // Recent query embeddings, served when the same question comes back (e.g. a retry after a fallback)
+    private final ReentrantLock cacheLock = new ReentrantLock();
+    private final Map<String, float[]> queryCache = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, float[]> eldest) {
+            return size() > QUERY_CACHE_SIZE;
+        }
+    };
+
+    // Without a registry the index is built on first use and shared by every caller;
+    // a lock (not synchronized) so waiting virtual threads don't pin their carriers
+    private final ReentrantLock indexLock = new ReentrantLock();
+    private volatile SegmentedIndex index;
 
     public ContextRetriever(EmbeddingModel model, String path) {
+        this(model, path, null);
+    }
+
+    /**
+     * Serves the folder's index from a shared registry so it survives switching folders.
+     */
+    public ContextRetriever(EmbeddingModel model, String path, IndexRegistry registry) {
+        this(model, path, registry, RetrievalPolicy.defaults());
+    }
+
+    public ContextRetriever(EmbeddingModel model, String path, IndexRegistry registry, RetrievalPolicy policy) {
+        this(model, path, registry, policy, null);
+    }
+
+    /**
+     * @param packer shapes retrieved segments into the model's context; null uses {@link ContextPacker#defaults()}
+     */
+    public ContextRetriever(EmbeddingModel model, String path, IndexRegistry registry, RetrievalPolicy policy,
+                            ContextPacker packer) {
+        this(model, path, registry, policy, packer, null);
+    }
+
+    private ContextRetriever(EmbeddingModel model, String path, IndexRegistry registry, RetrievalPolicy policy,
+                             ContextPacker packer, ShardCoordinator shards) {
         this.embeddingModel = model;
         this.directoryPath = path;
+        this.registry = registry;
+        this.policy = policy;
+        this.packer = packer;
+        this.shards = shards;
+        this.breaker = new CircuitBreaker("breaker.query_embedding", policy.breakerFailures(), policy.breakerOpenFor());
+        this.batcher = policy.batchWindow().isZero() || shards != null ? null
+                : new QueryBatcher(model, this::index, policy.batchWindow(), breaker, policy.embeddingBudget());
+    }
+
+    /**
+     * Searches a folder served by shard worker processes: the query is embedded here once and
+     * scattered to the shards through the coordinator. {@link #index()} is not available.
+     */
+    public static ContextRetriever sharded(EmbeddingModel model, String path, ShardCoordinator shards,
+                                           RetrievalPolicy policy) {
+        return new ContextRetriever(model, path, null, policy, null, shards);
     }
 
     @Override
     public List<dev.langchain4j.rag.content.Content> retrieve(Query query) {
-        // This calls your existing "fetch" and "rank" logic
-        List<TextSegment> segments = TextSimilarityRanker.fetchUniqueTextSegmentsFromDirectory(directoryPath);
-        Map<TextSegment, Double> ranked = TextSimilarityRanker.rankSegments(embeddingModel, query.text(), segments);
-
-        return ranked.entrySet().stream()
-                .sorted(Map.Entry.<TextSegment, Double>comparingByValue().reversed())
-                .limit(5)
-                .map(entry -> {
-                    TextSegment segment = entry.getKey();
-                    String fileName = segment.metadata().getString("file_name");
-
-                    // We format the text so the source is part of the content body
-                    String enrichedText = String.format("Source File: %s\nContent: %s",
-                            (fileName != null ? fileName : "Unknown"),
-                            segment.text());
-
-                    return dev.langchain4j.rag.content.Content.from(enrichedText);
-                })
-                .toList();
-    }
-}
\ No newline at end of file
+        return retrieve(query.text(), SearchFilter.NONE);
+    }
+
+    /**
+     * Best segments among those matching the filter, merged and deduplicated into passages that
+     * fit the packer's token budget, each formatted with its source file for the model.
+     */
+    public List<dev.langchain4j.rag.content.Content> retrieve(String query, SearchFilter filter) {
+        return retrieve(query, filter, null);
+    }
+
+    /**
+     * Like {@link #retrieve(String, SearchFilter)}, but gives up once {@code cancel} completes:
+     * a query embedding still pending is abandoned and the result is empty. Cancelling never
+     * interrupts the calling thread, which may be loading the shared index for other callers.
+     */
+    List<dev.langchain4j.rag.content.Content> retrieve(String query, SearchFilter filter, CompletableFuture<?> cancel) {
+        return Metrics.timer(Metrics.RETRIEVE).time(() -> packer().pack(search(query, PACKING_CANDIDATES, filter, cancel), DEFAULT_TOP_K)
+                .stream()
+                // We format the text so the source is part of the content body
+                .map(passage -> dev.langchain4j.rag.content.Content.from(passage.format()))
+                .toList());
+    }
+
+    /**
+     * Ranks the folder's segments against the query and returns the best {@code topK}, best first.
+     */
+    public List<ScoredSegment> search(String query, int topK) {
+        return search(query, topK, SearchFilter.NONE);
+    }
+
+    /**
+     * Like {@link #search(String, int)}, but only segments matching the filter are scored.
+     * If the query cannot be embedded within the policy's budget, or the breaker is open,
+     * the result comes from keyword (BM25) search instead. With a batch window, concurrent
+     * searches are embedded and ranked together.
+     */
+    public List<ScoredSegment> search(String query, int topK, SearchFilter filter) {
+        return search(query, topK, filter, null);
+    }
+
+    // cancel: completes when the caller no longer wants the result; null if it cannot be cancelled
+    private List<ScoredSegment> search(String query, int topK, SearchFilter filter, CompletableFuture<?> cancel) {
+        if (shards != null) return shardedSearch(query, topK, filter, cancel);
+        SegmentedIndex folderIndex = index();
+        if (folderIndex.size() == 0 || cancelled(cancel)) return List.of();
+        if (batcher != null) return batchedSearch(folderIndex, query, topK, filter, cancel);
+        float[] queryVec = embedWithinBudget(query, cancel);
+        if (queryVec == null) {
+            if (cancelled(cancel)) return List.of();
+            Metrics.counter("retriever.fallback.lexical").increment();
+            return folderIndex.lexicalSearch(query, topK, filter);
+        }
+        return folderIndex.search(queryVec, topK, ParallelScan.defaults(), filter);
+    }
+
+    private List<ScoredSegment> shardedSearch(String query, int topK, SearchFilter filter, CompletableFuture<?> cancel) {
+        float[] queryVec = embedWithinBudget(query, cancel);
+        ShardCoordinator.Result result;
+        if (queryVec == null) {
+            if (cancelled(cancel)) return List.of();
+            Metrics.counter("retriever.fallback.lexical").increment();
+            result = shards.lexicalSearch(query, topK, filter);
+        } else {
+            result = shards.search(queryVec, topK, filter);
+        }
+        if (result.partial()) {
+            log.warn("Partial result: {} of {} shards answered", result.answered(), result.shards());
+        }
+        return result.hits();
+    }
+
+    private List<ScoredSegment> batchedSearch(SegmentedIndex folderIndex, String query, int topK, SearchFilter filter,
+                                              CompletableFuture<?> cancel) {
+        float[] cached = cachedEmbedding(query);
+        if (cached != null) Metrics.counter("retriever.query_cache.hits").increment();
+        if (cached == null && !breaker.allowRequest()) {
+            Metrics.counter("retriever.fallback.lexical").increment();
+            return folderIndex.lexicalSearch(query, topK, filter);
+        }
+        QueryBatcher.Request request = batcher.submit(query, cached, topK, filter);
+        if (cancel != null) cancel.whenComplete((ignored, error) -> request.vector().cancel(false));
+        try {
+            // The batch's embedding call goes on for the others if this caller gives up, and the
+            // batcher records its outcome on the breaker once for all of them
+            if (cached == null && awaitEmbedding(query, request.vector(), request::abandon, false) == null) {
+                if (cancelled(cancel)) return List.of();
+                Metrics.counter("retriever.fallback.lexical").increment();
+                return folderIndex.lexicalSearch(query, topK, filter);
+            }
+            return request.hits().join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) throw cause;
+            throw e;
+        } finally {
+            batcher.leave();
+        }
+    }
+
+    /**
+     * Returns the query's embedding, or null when the caller should fall back.
+     */
+    private float[] embedWithinBudget(String query, CompletableFuture<?> cancel) {
+        float[] cached = cachedEmbedding(query);
+        if (cached != null) {
+            Metrics.counter("retriever.query_cache.hits").increment();
+            return cached;
+        }
+        if (!breaker.allowRequest()) return null;
+
+        QueryTrace trace = QueryTrace.current();
+        CompletableFuture<float[]> pending = new CompletableFuture<>();
+        Thread worker = Thread.ofVirtual().name("query-embedding").start(() -> {
+            try (QueryTrace.Scope scope = QueryTrace.bind(trace)) {
+                pending.complete(Metrics.timer(Metrics.EMBED_QUERY).time(() -> embeddingModel.embed(query).content().vector()));
+            } catch (Throwable t) {
+                pending.completeExceptionally(t);
+            }
+        });
+        // Only the embedding thread is interrupted, never the caller's
+        if (cancel != null) cancel.whenComplete((ignored, error) -> pending.cancel(false));
+        return awaitEmbedding(query, pending, worker::interrupt, true);
+    }
+
+    /**
+     * Waits for the query's embedding within the budget and caches it; null on a timeout or
+     * error, which is a breaker failure if {@code recordOutcome}. {@code abandon} runs when the
+     * caller stops waiting.
+     */
+    private float[] awaitEmbedding(String query, CompletableFuture<float[]> pending, Runnable abandon,
+                                   boolean recordOutcome) {
+        try {
+            float[] vector = policy.embeddingBudget().isZero() ? pending.get()
+                    : pending.get(policy.embeddingBudget().toNanos(), TimeUnit.NANOSECONDS);
+            if (recordOutcome) breaker.recordSuccess();
+            cacheEmbedding(query, vector);
+            return vector;
+        } catch (TimeoutException e) {
+            abandon.run(); // leaves the embedding queue if it has not reached the model yet
+            if (recordOutcome) breaker.recordFailure();
+            Metrics.counter("retriever.embedding_timeouts").increment();
+            log.debug("Query embedding exceeded {} ms, using keyword search", policy.embeddingBudget().toMillis());
+            return null;
+        } catch (ExecutionException e) {
+            if (recordOutcome) breaker.recordFailure();
+            log.warn("Query embedding failed, using keyword search: {}", e.getCause().getMessage());
+            return null;
+        } catch (InterruptedException | CancellationException e) {
+            if (e instanceof InterruptedException) Thread.currentThread().interrupt();
+            abandon.run();
+            // No outcome, but a half-open trial must not stay taken
+            if (recordOutcome) breaker.release();
+            return null;
+        }
+    }
+
+    // A cancelled caller wants no result, not a keyword search on its behalf
+    private static boolean cancelled(CompletableFuture<?> cancel) {
+        return Thread.currentThread().isInterrupted() || (cancel != null && cancel.isDone());
+    }
+
+    private float[] cachedEmbedding(String query) {
+        cacheLock.lock();
+        try {
+            return queryCache.get(query);
+        } finally {
+            cacheLock.unlock();
+        }
+    }
+
+    private void cacheEmbedding(String query, float[] vector) {
+        cacheLock.lock();
+        try {
+            queryCache.put(query, vector);
+        } finally {
+            cacheLock.unlock();
+        }
+    }
+
+    public ContextPacker packer() {
+        return packer != null ? packer : ContextPacker.defaults();
+    }
+
+    public CircuitBreaker.State breakerState() {
+        return breaker.state();
+    }
+
+    public SegmentedIndex index() {
+        if (shards != null) throw new IllegalStateException("The index of " + directoryPath + " is held by shard workers");
+        if (registry != null) return registry.get(directoryPath);
+        SegmentedIndex current = index;
+        if (current != null) return current;
+        indexLock.lock();
+        try {
+            if (index == null) index = SegmentedIndex.of(new DocumentIndexer(embeddingModel).build(directoryPath));
+            return index;
+        } finally {
+            indexLock.unlock();
+        }
+    }
+
+    public String directoryPath() {
+        return directoryPath;
+    }
+}
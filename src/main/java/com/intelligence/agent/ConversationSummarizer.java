@@ -0,0 +1,133 @@
+package com.intelligence.agent;
+
+import com.intelligence.metrics.Metrics;
+import com.intelligence.metrics.Timer;
+import dev.langchain4j.data.message.AiMessage;
+import dev.langchain4j.data.message.ChatMessage;
+import dev.langchain4j.data.message.SystemMessage;
+import dev.langchain4j.data.message.UserMessage;
+import dev.langchain4j.model.chat.StreamingChatModel;
+import dev.langchain4j.model.chat.request.ChatRequest;
+import dev.langchain4j.model.chat.response.ChatResponse;
+import dev.langchain4j.model.chat.response.StreamingChatResponseHandler;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Folds older conversation turns into a running summary for {@link CompactingChatMemory}.
+ * Summaries are produced off the request path, so an implementation may take its time.
+ */
+@FunctionalInterface
+public interface ConversationSummarizer {
+
+    /**
+     * @param previousSummary what earlier compactions kept, empty at first
+     * @param messages        the turns to fold in, oldest first
+     * @param maxChars        the summary must not be longer than this
+     */
+    String summarize(String previousSummary, List<ChatMessage> messages, int maxChars);
+
+    /**
+     * One line per turn, the question and the first sentence of the answer, keeping the newest
+     * lines that fit. Needs no model, so it is also the fallback when the model fails.
+     */
+    static ConversationSummarizer extractive() {
+        return (previousSummary, messages, maxChars) -> {
+            Deque<String> lines = new ArrayDeque<>();
+            if (!previousSummary.isBlank()) lines.addAll(List.of(previousSummary.split("\n")));
+            String question = null;
+            for (ChatMessage message : messages) {
+                if (message instanceof UserMessage user && user.hasSingleText()) {
+                    question = user.singleText();
+                } else if (message instanceof AiMessage ai && !ai.hasToolExecutionRequests() && ai.text() != null) {
+                    String answer = ai.text().strip().split("(?<=[.!?])\\s+", 2)[0];
+                    lines.add("- User asked: " + oneLine(question) + " Answer: " + oneLine(answer));
+                    question = null;
+                }
+            }
+            int length = lines.stream().mapToInt(line -> line.length() + 1).sum();
+            while (length > maxChars && lines.size() > 1) length -= lines.removeFirst().length() + 1;
+            String summary = String.join("\n", lines);
+            return summary.length() <= maxChars ? summary : summary.substring(summary.length() - maxChars);
+        };
+    }
+
+    /**
+     * Asks the chat model for the summary, falling back to {@link #extractive()} if it fails or
+     * takes longer than two minutes. A model call needs one of {@code permits}, held until the model
+     * finishes; pass the permits that cap answer streams so summaries count against the same limit.
+     * When none is free the summary is extractive instead of waiting.
+     */
+    static ConversationSummarizer using(StreamingChatModel model, Semaphore permits) {
+        Logger log = LoggerFactory.getLogger(ConversationSummarizer.class);
+        ConversationSummarizer fallback = extractive();
+        return (previousSummary, messages, maxChars) -> {
+            if (!permits.tryAcquire()) {
+                Metrics.counter("memory.summarize.rejected").increment();
+                return fallback.summarize(previousSummary, messages, maxChars);
+            }
+            StringBuilder transcript = new StringBuilder();
+            if (!previousSummary.isBlank()) transcript.append("Summary so far:\n").append(previousSummary).append("\n\n");
+            transcript.append("New turns:\n");
+            for (ChatMessage message : messages) {
+                if (message instanceof UserMessage user && user.hasSingleText()) {
+                    transcript.append("User: ").append(user.singleText()).append('\n');
+                } else if (message instanceof AiMessage ai && ai.text() != null && !ai.text().isBlank()) {
+                    transcript.append("Assistant: ").append(ai.text()).append('\n');
+                }
+            }
+            ChatRequest request = ChatRequest.builder().messages(
+                    SystemMessage.from("Update the summary of a conversation between a user and a document assistant. "
+                            + "Keep the facts, file names and open questions the user may refer back to; drop pleasantries. "
+                            + "Answer with the summary only, at most " + maxChars / 6 + " words."),
+                    UserMessage.from(transcript.toString())).build();
+            CompletableFuture<String> summary = new CompletableFuture<>();
+            summary.whenComplete((text, error) -> permits.release());
+            try (Timer.Sample ignored = Metrics.timer("memory.summarize").start()) {
+                startChat(model, request, summary);
+                String text = summary.get(2, TimeUnit.MINUTES);
+                if (text == null || text.isBlank()) return fallback.summarize(previousSummary, messages, maxChars);
+                return text.length() <= maxChars ? text.strip() : text.substring(0, maxChars).strip();
+            } catch (Exception e) {
+                if (e instanceof InterruptedException) Thread.currentThread().interrupt();
+                Metrics.counter("memory.summarize.fallbacks").increment();
+                log.warn("Conversation summary failed, keeping an extractive one: {}", e.getMessage());
+                return fallback.summarize(previousSummary, messages, maxChars);
+            }
+        };
+    }
+
+    // Completes the summary only from the model's callbacks, or at once if the call cannot start
+    private static void startChat(StreamingChatModel model, ChatRequest request, CompletableFuture<String> summary) {
+        try {
+            model.chat(request, new StreamingChatResponseHandler() {
+                @Override
+                public void onPartialResponse(String partialResponse) {
+                }
+
+                @Override
+                public void onCompleteResponse(ChatResponse response) {
+                    summary.complete(response.aiMessage().text());
+                }
+
+                @Override
+                public void onError(Throwable error) {
+                    summary.completeExceptionally(error);
+                }
+            });
+        } catch (RuntimeException e) {
+            summary.completeExceptionally(e);
+        }
+    }
+
+    private static String oneLine(String text) {
+        return text == null ? "" : text.replaceAll("\\s+", " ").strip();
+    }
+}
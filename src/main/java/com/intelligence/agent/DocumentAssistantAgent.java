@@ -4,8 +4,12 @@ import dev.langchain4j.service.MemoryId;
 import dev.langchain4j.service.SystemMessage;
 import dev.langchain4j.service.UserMessage;
 import dev.langchain4j.service.TokenStream;
+import dev.langchain4j.service.memory.ChatMemoryAccess;
 
-public interface DocumentAssistantAgent {
+/**
+ * The chat memory access lets a long-running host evict conversations that have gone idle.
+ */
+public interface DocumentAssistantAgent extends ChatMemoryAccess {
 
     @SystemMessage({
             "You are a professional Document Intelligence Assistant.",
@@ -19,6 +23,7 @@ public interface DocumentAssistantAgent {
     @SystemMessage({
             "You are a professional Document Intelligence Assistant with access to a local knowledge base.",
             "If the user asks a question about documents or specific data, use your 'searchDocuments' tool to find the answer.",
+            "When the user names files, formats or dates (e.g. 'only the PDFs', 'modified this week'), pass them as the tool's filter.",
             "Every context snippet from the tool starts with 'Source File: [name]'.",
             "You MUST cite the specific Source File for every claim you make.",
             "If you cannot find the info after searching, state that clearly."
@@ -0,0 +1,89 @@
+package com.intelligence.agent;
+
+import com.intelligence.index.FolderIndex;
+import com.intelligence.index.FolderManifest;
+import com.intelligence.index.IndexSource;
+import com.intelligence.metrics.Metrics;
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Stream;
+
+/**
+ * Builds folder indexes with the regular ingestion pipeline and describes them well enough
+ * for a stored snapshot to be validated on the next start.
+ */
+public class DocumentIndexer implements IndexSource {
+    private static final Logger log = LoggerFactory.getLogger(DocumentIndexer.class);
+    // Bumped whenever segments gain metadata or a reader extracts different text, so older
+    // snapshots are rebuilt rather than served without it
+    private static final int SEGMENT_METADATA_VERSION = 5;
+
+    private final EmbeddingModel embeddingModel;
+
+    public DocumentIndexer(EmbeddingModel embeddingModel) {
+        this.embeddingModel = embeddingModel;
+    }
+
+    @Override
+    public FolderIndex build(String directoryPath) {
+        // Capture the manifest first so a file edited mid-build shows up as stale next time
+        FolderManifest manifest = manifest(directoryPath);
+        List<TextSegment> segments = TextSimilarityRanker.fetchUniqueTextSegmentsFromDirectory(directoryPath);
+        return FolderIndex.of(directoryPath, segments, embed(segments), manifest, fingerprint());
+    }
+
+    @Override
+    public FolderIndex buildFiles(String directoryPath, Set<String> fileNames) {
+        List<Path> files = fileNames.stream().map(name -> Paths.get(directoryPath, name)).filter(Files::isRegularFile).toList();
+        FolderManifest manifest = stamps(files);
+        List<TextSegment> segments = files.isEmpty() ? List.of() : TextSimilarityRanker.fetchTextSegments(files);
+        return FolderIndex.of(directoryPath, segments, embed(segments), manifest, fingerprint());
+    }
+
+    private List<Embedding> embed(List<TextSegment> segments) {
+        return segments.isEmpty() ? List.of()
+                : Metrics.timer(Metrics.EMBED_ALL).time(() -> embeddingModel.embedAll(segments).content());
+    }
+
+    @Override
+    public FolderManifest manifest(String directoryPath) {
+        try (Stream<Path> stream = Files.list(Paths.get(directoryPath))) {
+            return stamps(stream.filter(Files::isRegularFile).filter(TextSimilarityRanker::isSupportedFormat).toList());
+        } catch (IOException e) {
+            log.warn("Could not scan {} for changes: {}", directoryPath, e.getMessage());
+            return FolderManifest.EMPTY;
+        }
+    }
+
+    private static FolderManifest stamps(List<Path> files) {
+        Map<String, FolderManifest.FileStamp> stamps = new HashMap<>();
+        for (Path file : files) {
+            try {
+                stamps.put(file.getFileName().toString(),
+                        new FolderManifest.FileStamp(Files.size(file), Files.getLastModifiedTime(file).toMillis()));
+            } catch (IOException e) {
+                log.warn("Could not stat {}: {}", file, e.getMessage());
+            }
+        }
+        return new FolderManifest(stamps);
+    }
+
+    @Override
+    public String fingerprint() {
+        return embeddingModel.modelName()
+                + "|chunk=" + TextSimilarityRanker.CHUNK_SIZE + "/" + TextSimilarityRanker.CHUNK_OVERLAP
+                + "|metadata=" + SEGMENT_METADATA_VERSION;
+    }
+}
@@ -1,8 +1,14 @@
 package com.intelligence.agent;
 
-import com.intelligence.reader.*;
+import com.intelligence.index.SearchFilter;
+import com.intelligence.metrics.Metrics;
+import com.intelligence.metrics.QueryTrace;
+import com.intelligence.metrics.Timer;
+import com.intelligence.reader.ContentReaders;
 import dev.langchain4j.agent.tool.P;
 import dev.langchain4j.agent.tool.Tool;
+import dev.langchain4j.agent.tool.ToolMemoryId;
+import dev.langchain4j.rag.content.Content;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.List;
@@ -10,30 +16,39 @@ import java.util.List;
 public class KnowledgeBaseTools {
     private final ContextRetriever retriever;
     private final String currentFolderPath; // Pass the folder path here
+    private final RetrievalPrefetcher prefetcher;
 
     public KnowledgeBaseTools(ContextRetriever retriever, String currentFolderPath) {
+        this(retriever, currentFolderPath, null);
+    }
+
+    /**
+     * @param prefetcher serves searches that match the question from its speculative retrieval; may be null
+     */
+    public KnowledgeBaseTools(ContextRetriever retriever, String currentFolderPath, RetrievalPrefetcher prefetcher) {
         this.retriever = retriever;
         this.currentFolderPath = currentFolderPath;
+        this.prefetcher = prefetcher;
     }
 
     @Tool("Summarizes a specific document by its filename. Use this when the user says 'summarize' or 'summarise'.")
-    public String summarizeDocument(@P("the exact filename to summarize (e.g., roadmap.pdf)") String fileName) {
-        try {
-            Path path = Paths.get(currentFolderPath, fileName);
-            List<String> lines;
-
-            // Reusing your existing readers based on extension
-            if (fileName.endsWith(".pdf")) lines = PdfContentReader.read(path);
-            else if (fileName.endsWith(".docx")) lines = WordContentReader.read(path);
-            else if (fileName.endsWith(".md")) lines = MarkdownContentReader.read(path);
-            else lines = List.of(java.nio.file.Files.readString(path));
-
-            String fullText = String.join("\n", lines);
-
-            // Limit text if it's massive to avoid token overflow
-            if (fullText.length() > 20000) {
-                fullText = fullText.substring(0, 20000) + "... [Text truncated for brevity]";
+    public String summarizeDocument(@ToolMemoryId String memoryId,
+                                    @P("the exact filename to summarize (e.g., roadmap.pdf)") String fileName) {
+        // Tools run on the model client's threads, so re-attach the caller's query trace here
+        try (QueryTrace.Scope scope = QueryTrace.join(memoryId);
+             Timer.Sample ignored = Metrics.timer(Metrics.TOOL_SUMMARIZE).start()) {
+            if (prefetcher != null) prefetcher.discard(memoryId);
+            Path folder = Paths.get(currentFolderPath).toAbsolutePath().normalize();
+            Path path = folder.resolve(fileName).normalize();
+            // The name comes from the model or an HTTP caller; never read outside the folder
+            if (!path.startsWith(folder) || path.equals(folder)) {
+                return "Error: " + fileName + " is not a document in this folder.";
             }
+            // Same single-pass extraction path as ingestion, whatever the format
+            String fullText = ContentReaders.defaults().extract(path, "\n").text();
+
+            // Drop repeated boilerplate and keep the text within the document token budget
+            fullText = retriever.packer().fitDocument(fullText);
 
             return "Full Content of " + fileName + ":\n" + fullText;
         } catch (Exception e) {
@@ -41,9 +56,19 @@ public class KnowledgeBaseTools {
         }
     }
 
-    @Tool("Searches for snippets across all documents.")
-    public String searchDocuments(@P("query") String query) {
-        return retriever.retrieve(dev.langchain4j.rag.query.Query.from(query))
-                .stream().map(c -> c.textSegment().text()).collect(java.util.stream.Collectors.joining("\n---\n"));
+    @Tool("Searches for snippets across all documents, optionally only in matching files.")
+    public String searchDocuments(@ToolMemoryId String memoryId, @P("query") String query,
+                                  @P(value = "optional file filter, space separated: file:roadmap.docx, ext:pdf,docx, "
+                                          + "dir:reports, modified:7d, after:2026-01-01, before:2026-02-01",
+                                          required = false) String filter) {
+        try (QueryTrace.Scope scope = QueryTrace.join(memoryId);
+             Timer.Sample ignored = Metrics.timer(Metrics.TOOL_SEARCH).start()) {
+            SearchFilter parsed = SearchFilter.parse(filter);
+            List<Content> contents = prefetcher == null ? null : prefetcher.take(memoryId, query, parsed);
+            if (contents == null) contents = retriever.retrieve(query, parsed);
+            return contents.stream().map(c -> c.textSegment().text()).collect(java.util.stream.Collectors.joining("\n---\n"));
+        } catch (IllegalArgumentException e) {
+            return "Error: invalid filter. " + e.getMessage();
+        }
     }
 }
\ No newline at end of file
@@ -14,7 +14,15 @@ import java.util.List;
 
 public class PersistentChatMemoryStore implements ChatMemoryStore {
 
-    private final Path storagePath = Paths.get("chat-memory.json");
+    private final Path storagePath;
+
+    public PersistentChatMemoryStore() {
+        this(Paths.get("chat-memory.json"));
+    }
+
+    public PersistentChatMemoryStore(Path storagePath) {
+        this.storagePath = storagePath;
+    }
 
     @Override
     public List<ChatMessage> getMessages(Object memoryId) {
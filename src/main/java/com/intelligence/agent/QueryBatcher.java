@@ -0,0 +1,220 @@
+package com.intelligence.agent;
+
+import com.intelligence.index.ParallelScan;
+import com.intelligence.index.ScoredSegment;
+import com.intelligence.index.SearchFilter;
+import com.intelligence.index.SegmentedIndex;
+import com.intelligence.metrics.Metrics;
+import com.intelligence.model.CircuitBreaker;
+import com.intelligence.model.PrioritizedEmbeddingModel;
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Micro-batches concurrent vector searches for {@link ContextRetriever}. Searches that arrive
+ * together are embedded with one {@code embedAll} call (in the query lane of a
+ * {@link PrioritizedEmbeddingModel}) and ranked in one blocked pass over the
+ * index ({@link SegmentedIndex#searchBatch}), so each block of vectors is read from memory once
+ * per batch instead of once per query.
+ *
+ * <p>One dispatcher thread forms the batches, and only while there is work. A search that is the
+ * only one in flight is dispatched at once, so a lone query pays nothing for batching; otherwise
+ * the dispatcher waits up to the window for the other searches in flight to join, taking at most
+ * {@value #MAX_BATCH}. Searches that queue up while a batch runs form the next one.
+ */
+final class QueryBatcher {
+    static final int MAX_BATCH = 64;
+    // The in-flight count is re-read this often while waiting, so a caller that gave up ends the wait early
+    private static final long RECHECK_NANOS = TimeUnit.MICROSECONDS.toNanos(200);
+
+    private final EmbeddingModel model;
+    private final Supplier<SegmentedIndex> index;
+    private final long windowNanos;
+    private final CircuitBreaker breaker;
+    private final long budgetNanos;
+    private final LinkedBlockingQueue<Request> queue = new LinkedBlockingQueue<>();
+    // Callers between submit() and leave(), whether queued, batched or reading their result
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicBoolean dispatching = new AtomicBoolean();
+
+    /**
+     * One caller's search: {@code vector} completes once its batch is embedded (at once for a
+     * {@code cached} embedding), {@code hits} once it is ranked.
+     */
+    record Request(String query, int topK, SearchFilter filter, boolean cached, CompletableFuture<float[]> vector,
+                   CompletableFuture<List<ScoredSegment>> hits) {
+        /**
+         * The caller stopped waiting (e.g. it fell back to keyword search); the batch skips this request.
+         */
+        void abandon() {
+            hits.cancel(false);
+        }
+
+        boolean abandoned() {
+            return hits.isCancelled();
+        }
+    }
+
+    /**
+     * @param breaker gets one outcome per batch embedding call, not one per caller sharing it
+     * @param budget  deadline of a batch embedding call, which then counts as a failure and stops
+     *                holding up later batches; zero for no deadline
+     */
+    QueryBatcher(EmbeddingModel model, Supplier<SegmentedIndex> index, Duration window, CircuitBreaker breaker,
+                 Duration budget) {
+        this.model = model;
+        this.index = index;
+        this.windowNanos = window.toNanos();
+        this.breaker = breaker;
+        this.budgetNanos = budget.toNanos();
+    }
+
+    /**
+     * Queues a search; {@code vector} is the query's cached embedding, or null to embed it with
+     * the batch. The caller must call {@link #leave()} once it stops waiting for the result.
+     */
+    Request submit(String query, float[] vector, int topK, SearchFilter filter) {
+        Request request = new Request(query, topK, filter, vector != null,
+                vector == null ? new CompletableFuture<>() : CompletableFuture.completedFuture(vector),
+                new CompletableFuture<>());
+        inFlight.incrementAndGet();
+        queue.add(request);
+        if (dispatching.compareAndSet(false, true)) Thread.ofVirtual().name("query-batcher").start(this::dispatch);
+        return request;
+    }
+
+    void leave() {
+        inFlight.decrementAndGet();
+    }
+
+    private void dispatch() {
+        while (true) {
+            Request first;
+            while ((first = queue.poll()) != null) run(collect(first));
+            dispatching.set(false);
+            // A search queued between the last poll and clearing the flag did not start a dispatcher
+            if (queue.isEmpty() || !dispatching.compareAndSet(false, true)) return;
+        }
+    }
+
+    private List<Request> collect(Request first) {
+        List<Request> batch = new ArrayList<>();
+        batch.add(first);
+        queue.drainTo(batch, MAX_BATCH - 1);
+        long deadline = System.nanoTime() + windowNanos;
+        try {
+            while (batch.size() < MAX_BATCH && batch.size() < inFlight.get()) {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) break;
+                Request next = queue.poll(Math.min(remaining, RECHECK_NANOS), TimeUnit.NANOSECONDS);
+                if (next == null) continue;
+                batch.add(next);
+                queue.drainTo(batch, MAX_BATCH - batch.size());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return batch;
+    }
+
+    private void run(List<Request> batch) {
+        Metrics.histogram("retriever.batch.size").record(batch.size());
+        embed(batch);
+        // One pass per filter; requests asking for fewer hits get a prefix of the largest top-k
+        Map<SearchFilter, List<Request>> byFilter = new LinkedHashMap<>();
+        for (Request request : batch) {
+            if (request.abandoned()) {
+                Metrics.counter("retriever.batch.abandoned").increment();
+            } else if (!request.vector().isCompletedExceptionally()) {
+                byFilter.computeIfAbsent(request.filter(), f -> new ArrayList<>()).add(request);
+            }
+        }
+        for (Map.Entry<SearchFilter, List<Request>> group : byFilter.entrySet()) {
+            List<Request> requests = group.getValue();
+            float[][] queries = new float[requests.size()][];
+            int k = 0;
+            for (int i = 0; i < queries.length; i++) {
+                queries[i] = requests.get(i).vector().join();
+                k = Math.max(k, requests.get(i).topK());
+            }
+            try {
+                List<List<ScoredSegment>> ranked = index.get().searchBatch(queries, k, ParallelScan.defaults(), group.getKey());
+                for (int i = 0; i < queries.length; i++) {
+                    List<ScoredSegment> hits = ranked.get(i);
+                    int topK = requests.get(i).topK();
+                    requests.get(i).hits().complete(hits.size() <= topK ? hits : List.copyOf(hits.subList(0, topK)));
+                }
+            } catch (RuntimeException e) {
+                for (Request request : requests) request.hits().completeExceptionally(e);
+            }
+        }
+        Metrics.counter("retriever.batches").increment();
+    }
+
+    // Queries must not wait behind ingestion: embedAll is the bulk lane of a prioritized model
+    private List<Embedding> embedAll(List<TextSegment> queries) {
+        return model instanceof PrioritizedEmbeddingModel prioritized
+                ? prioritized.embedQueries(queries).content()
+                : model.embedAll(queries).content();
+    }
+
+    /**
+     * One embedAll call for every query in the batch that still has a caller and no cached
+     * embedding, and one breaker outcome for it. The call runs on its own thread with the budget
+     * as deadline, so a hung model fails the batch instead of blocking the dispatcher.
+     */
+    private void embed(List<Request> batch) {
+        List<Request> pending = batch.stream().filter(r -> !r.vector().isDone() && !r.abandoned()).toList();
+        if (pending.isEmpty()) {
+            // Every caller that was let through the breaker left first; one may hold its half-open trial
+            if (batch.stream().anyMatch(r -> !r.cached())) breaker.release();
+            return;
+        }
+        List<TextSegment> queries = pending.stream().map(r -> TextSegment.from(r.query())).toList();
+        CompletableFuture<List<Embedding>> call = new CompletableFuture<>();
+        Thread caller = Thread.ofVirtual().name("query-batch-embedding").start(() -> {
+            try {
+                call.complete(Metrics.timer("embedding.embed_query_batch").time(() -> embedAll(queries)));
+            } catch (Throwable t) {
+                call.completeExceptionally(t);
+            }
+        });
+        Throwable failure;
+        try {
+            List<Embedding> embeddings = budgetNanos > 0 ? call.get(budgetNanos, TimeUnit.NANOSECONDS) : call.get();
+            for (int i = 0; i < pending.size(); i++) pending.get(i).vector().complete(embeddings.get(i).vector());
+            breaker.recordSuccess();
+            return;
+        } catch (TimeoutException e) {
+            caller.interrupt(); // leaves the embedding queue if it has not reached the model yet
+            Metrics.counter("retriever.batch.timeouts").increment();
+            // Its callers' budgets have run out too: one failure, however many they were
+            breaker.recordFailure();
+            failure = e;
+        } catch (ExecutionException e) {
+            breaker.recordFailure();
+            failure = e.getCause();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            caller.interrupt();
+            breaker.release();
+            failure = e;
+        }
+        for (Request request : pending) request.vector().completeExceptionally(failure);
+    }
+}
@@ -0,0 +1,40 @@
+package com.intelligence.agent;
+
+import java.time.Duration;
+
+/**
+ * Latency bounds for {@link ContextRetriever}: how long a query embedding may take before the
+ * retriever falls back to keyword search, when to stop trying the embedding model for a while,
+ * and how long concurrent searches may wait for each other to be batched.
+ *
+ * @param embeddingBudget maximum wait for the query embedding; zero waits indefinitely
+ * @param breakerFailures consecutive timeouts or errors that open the circuit breaker
+ * @param breakerOpenFor  how long an open breaker skips the embedding model before a trial call
+ * @param batchWindow     longest a search waits for concurrent ones to join its batch; zero searches one by one
+ */
+public record RetrievalPolicy(Duration embeddingBudget, int breakerFailures, Duration breakerOpenFor,
+                              Duration batchWindow) {
+    public static final String BUDGET_PROPERTY = "docintel.retrieval.embedding.budget.ms";
+    public static final String BREAKER_FAILURES_PROPERTY = "docintel.retrieval.breaker.failures";
+    public static final String BREAKER_OPEN_PROPERTY = "docintel.retrieval.breaker.open.ms";
+    public static final String BATCH_WINDOW_PROPERTY = "docintel.retrieval.batch.window.ms";
+
+    /**
+     * Without batching.
+     */
+    public RetrievalPolicy(Duration embeddingBudget, int breakerFailures, Duration breakerOpenFor) {
+        this(embeddingBudget, breakerFailures, breakerOpenFor, Duration.ZERO);
+    }
+
+    /**
+     * 1.5 s budget, breaker opening after 3 failures for 30 s and no batching, each overridable
+     * by system property.
+     */
+    public static RetrievalPolicy defaults() {
+        return new RetrievalPolicy(
+                Duration.ofMillis(Long.getLong(BUDGET_PROPERTY, 1_500)),
+                Integer.getInteger(BREAKER_FAILURES_PROPERTY, 3),
+                Duration.ofMillis(Long.getLong(BREAKER_OPEN_PROPERTY, 30_000)),
+                Duration.ofMillis(Long.getLong(BATCH_WINDOW_PROPERTY, 0)));
+    }
+}
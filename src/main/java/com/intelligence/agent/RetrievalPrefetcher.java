@@ -0,0 +1,319 @@
+package com.intelligence.agent;
+
+import com.intelligence.index.SearchFilter;
+import com.intelligence.metrics.Metrics;
+import com.intelligence.metrics.QueryTrace;
+import dev.langchain4j.memory.ChatMemory;
+import dev.langchain4j.model.chat.response.ChatResponse;
+import dev.langchain4j.model.chat.response.PartialResponse;
+import dev.langchain4j.model.chat.response.PartialResponseContext;
+import dev.langchain4j.model.chat.response.PartialThinking;
+import dev.langchain4j.model.chat.response.PartialThinkingContext;
+import dev.langchain4j.model.chat.response.PartialToolCall;
+import dev.langchain4j.model.chat.response.PartialToolCallContext;
+import dev.langchain4j.rag.content.Content;
+import dev.langchain4j.service.TokenStream;
+import dev.langchain4j.service.tool.BeforeToolExecution;
+import dev.langchain4j.service.tool.ToolExecution;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.regex.Pattern;
+
+/**
+ * Speculative retrieval for the tool-using agent. The model's first round trip usually ends in a
+ * {@code searchDocuments} call for (a rephrasing of) the user's question, and only then does
+ * retrieval start. With prefetching, retrieval for the raw question starts the moment the question
+ * is asked and runs while the model decides; when the tool's query shares enough of its words
+ * with the question, the tool returns the prefetched passages instead of retrieving again.
+ * A prefetch nobody takes is cancelled when the model calls another tool or a query that does not
+ * match, when the answer completes, or when the next question arrives.
+ *
+ * <p>Off unless {@value #ENABLED_PROPERTY} is true, since it spends a query embedding on turns
+ * that never search. {@value #OVERLAP_PROPERTY} is the share, in percent, of the tool query's
+ * words that must occur in the question (default {@value #DEFAULT_OVERLAP_PERCENT}).
+ */
+public class RetrievalPrefetcher {
+    public static final String ENABLED_PROPERTY = "docintel.retrieval.prefetch";
+    public static final String OVERLAP_PROPERTY = "docintel.retrieval.prefetch.overlap";
+    public static final int DEFAULT_OVERLAP_PERCENT = 60;
+
+    private static final Pattern NON_WORD = Pattern.compile("[^\\p{L}\\p{N}]+");
+    private static final Set<String> STOP_WORDS = Set.of("the", "and", "for", "are", "was", "what", "which", "who",
+            "how", "does", "did", "about", "from", "with", "that", "this", "there", "any", "all", "can", "you", "tell",
+            "show", "find", "give", "please", "documents", "document", "files", "file");
+
+    private final ContextRetriever retriever;
+    private final double minOverlap;
+    private final Map<Object, Prefetch> pending = new ConcurrentHashMap<>();
+
+    private static final class Prefetch {
+        final Set<String> terms;
+        final long startNanos = System.nanoTime();
+        final CompletableFuture<List<Content>> result = new CompletableFuture<>();
+        // Cooperative: the worker may be loading the shared index, so it is never interrupted
+        final CompletableFuture<Void> cancelled = new CompletableFuture<>();
+        volatile long doneNanos;
+
+        Prefetch(String question) {
+            terms = terms(question);
+        }
+
+        void cancel() {
+            if (result.isDone()) return;
+            result.cancel(false);
+            cancelled.complete(null); // abandons a query embedding that is still queued
+            Metrics.counter("retriever.prefetch.cancelled").increment();
+        }
+    }
+
+    public RetrievalPrefetcher(ContextRetriever retriever, int minOverlapPercent) {
+        this.retriever = retriever;
+        this.minOverlap = minOverlapPercent / 100.0;
+    }
+
+    /**
+     * A prefetcher for the retriever if {@value #ENABLED_PROPERTY} is set, otherwise null.
+     */
+    public static RetrievalPrefetcher of(ContextRetriever retriever) {
+        if (!Boolean.getBoolean(ENABLED_PROPERTY)) return null;
+        return new RetrievalPrefetcher(retriever, Integer.getInteger(OVERLAP_PROPERTY, DEFAULT_OVERLAP_PERCENT));
+    }
+
+    /**
+     * Wraps the agent so every question starts a prefetch and the answer's end discards what was not used.
+     */
+    public DocumentAssistantAgent speculative(DocumentAssistantAgent assistant) {
+        return new DocumentAssistantAgent() {
+            @Override
+            public String chat(String userId, String message) {
+                Prefetch prefetch = begin(userId, message);
+                try {
+                    return assistant.chat(userId, message);
+                } finally {
+                    discard(userId, prefetch);
+                }
+            }
+
+            @Override
+            public TokenStream chatStreaming(String userId, String message) {
+                Prefetch prefetch = begin(userId, message);
+                return new DiscardingTokenStream(assistant.chatStreaming(userId, message), () -> discard(userId, prefetch));
+            }
+
+            @Override
+            public ChatMemory getChatMemory(Object memoryId) {
+                return assistant.getChatMemory(memoryId);
+            }
+
+            @Override
+            public boolean evictChatMemory(Object memoryId) {
+                discard(memoryId);
+                return assistant.evictChatMemory(memoryId);
+            }
+        };
+    }
+
+    /**
+     * Starts retrieving the question's passages for the session, replacing an earlier prefetch.
+     */
+    public void start(Object memoryId, String question) {
+        begin(memoryId, question);
+    }
+
+    private Prefetch begin(Object memoryId, String question) {
+        Prefetch prefetch = new Prefetch(question);
+        Prefetch previous = pending.put(memoryId, prefetch);
+        if (previous != null) previous.cancel();
+        QueryTrace trace = QueryTrace.current();
+        Thread.ofVirtual().name("retrieval-prefetch").start(() -> {
+            try (QueryTrace.Scope scope = QueryTrace.bind(trace)) {
+                List<Content> contents = retriever.retrieve(question, SearchFilter.NONE, prefetch.cancelled);
+                prefetch.doneNanos = System.nanoTime();
+                prefetch.result.complete(contents);
+            } catch (Throwable t) {
+                prefetch.result.completeExceptionally(t);
+            }
+        });
+        Metrics.counter("retriever.prefetch.started").increment();
+        return prefetch;
+    }
+
+    /**
+     * The prefetched passages if the tool's query and filter match the question, waiting for
+     * them if retrieval is still running; otherwise null, and the prefetch is cancelled.
+     */
+    public List<Content> take(Object memoryId, String query, SearchFilter filter) {
+        Prefetch prefetch = memoryId == null ? null : pending.remove(memoryId);
+        if (prefetch == null) return null;
+        if (!filter.isEmpty() || overlap(terms(query), prefetch.terms) < minOverlap) {
+            prefetch.cancel();
+            Metrics.counter("retriever.prefetch.misses").increment();
+            return null;
+        }
+        long askedNanos = System.nanoTime();
+        try {
+            List<Content> contents = prefetch.result.get();
+            // The part of retrieval that ran before the model asked for it is latency taken off the turn
+            long saved = Math.min(askedNanos, prefetch.doneNanos) - prefetch.startNanos;
+            Metrics.timer("retriever.prefetch.saved").recordNanos(saved);
+            Metrics.counter("retriever.prefetch.hits").increment();
+            return contents;
+        } catch (ExecutionException | CancellationException e) {
+            Metrics.counter("retriever.prefetch.misses").increment();
+            return null;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            prefetch.cancel();
+            return null;
+        }
+    }
+
+    /**
+     * Cancels the session's prefetch, if any; the turn no longer needs it.
+     */
+    public void discard(Object memoryId) {
+        Prefetch prefetch = memoryId == null ? null : pending.remove(memoryId);
+        if (prefetch != null) prefetch.cancel();
+    }
+
+    // Only the turn's own prefetch; the session may already have asked its next question
+    private void discard(Object memoryId, Prefetch prefetch) {
+        if (pending.remove(memoryId, prefetch)) prefetch.cancel();
+    }
+
+    /**
+     * Share of the query's words that also occur in the question; 0 for a query without words.
+     */
+    static double overlap(Set<String> query, Set<String> question) {
+        if (query.isEmpty()) return 0;
+        int shared = 0;
+        for (String term : query) if (question.contains(term)) shared++;
+        return (double) shared / query.size();
+    }
+
+    static Set<String> terms(String text) {
+        Set<String> terms = new HashSet<>();
+        for (String token : NON_WORD.split(text.toLowerCase(Locale.ROOT))) {
+            if (token.length() < 3 || STOP_WORDS.contains(token)) continue;
+            // Crude plural folding, so "budgets" in the question matches "budget" in the query
+            terms.add(token.length() > 4 && token.endsWith("s") ? token.substring(0, token.length() - 1) : token);
+        }
+        return terms;
+    }
+
+    /**
+     * Passes everything through to the agent's stream and runs {@code onEnd} when it completes or fails.
+     */
+    private static final class DiscardingTokenStream implements TokenStream {
+        private final TokenStream delegate;
+        private final Runnable onEnd;
+        // The agent's stream accepts each handler once, so ours are folded into the caller's
+        private boolean completionHooked;
+
+        DiscardingTokenStream(TokenStream delegate, Runnable onEnd) {
+            this.delegate = delegate;
+            this.onEnd = onEnd;
+        }
+
+        @Override
+        public TokenStream onPartialResponse(Consumer<String> handler) {
+            delegate.onPartialResponse(handler);
+            return this;
+        }
+
+        @Override
+        public TokenStream onPartialResponseWithContext(BiConsumer<PartialResponse, PartialResponseContext> handler) {
+            delegate.onPartialResponseWithContext(handler);
+            return this;
+        }
+
+        @Override
+        public TokenStream onPartialThinking(Consumer<PartialThinking> handler) {
+            delegate.onPartialThinking(handler);
+            return this;
+        }
+
+        @Override
+        public TokenStream onPartialThinkingWithContext(BiConsumer<PartialThinking, PartialThinkingContext> handler) {
+            delegate.onPartialThinkingWithContext(handler);
+            return this;
+        }
+
+        @Override
+        public TokenStream onPartialToolCall(Consumer<PartialToolCall> handler) {
+            delegate.onPartialToolCall(handler);
+            return this;
+        }
+
+        @Override
+        public TokenStream onPartialToolCallWithContext(BiConsumer<PartialToolCall, PartialToolCallContext> handler) {
+            delegate.onPartialToolCallWithContext(handler);
+            return this;
+        }
+
+        @Override
+        public TokenStream onRetrieved(Consumer<List<Content>> handler) {
+            delegate.onRetrieved(handler);
+            return this;
+        }
+
+        @Override
+        public TokenStream onIntermediateResponse(Consumer<ChatResponse> handler) {
+            delegate.onIntermediateResponse(handler);
+            return this;
+        }
+
+        @Override
+        public TokenStream beforeToolExecution(Consumer<BeforeToolExecution> handler) {
+            delegate.beforeToolExecution(handler);
+            return this;
+        }
+
+        @Override
+        public TokenStream onToolExecuted(Consumer<ToolExecution> handler) {
+            delegate.onToolExecuted(handler);
+            return this;
+        }
+
+        @Override
+        public TokenStream onCompleteResponse(Consumer<ChatResponse> handler) {
+            completionHooked = true;
+            delegate.onCompleteResponse(response -> {
+                onEnd.run();
+                handler.accept(response);
+            });
+            return this;
+        }
+
+        @Override
+        public TokenStream onError(Consumer<Throwable> handler) {
+            delegate.onError(error -> {
+                onEnd.run();
+                handler.accept(error);
+            });
+            return this;
+        }
+
+        @Override
+        public TokenStream ignoreErrors() {
+            delegate.onError(error -> onEnd.run());
+            return this;
+        }
+
+        @Override
+        public void start() {
+            if (!completionHooked) delegate.onCompleteResponse(response -> onEnd.run());
+            delegate.start();
+        }
+    }
+}
@@ -1,6 +1,10 @@
 package com.intelligence.agent;
 
-import com.intelligence.reader.*;
+import com.intelligence.metrics.Metrics;
+import com.intelligence.metrics.QueryTrace;
+import com.intelligence.metrics.Timer;
+import com.intelligence.reader.ContentReaders;
+import com.intelligence.reader.TextCollector;
 import dev.langchain4j.data.document.Document;
 import dev.langchain4j.data.document.DocumentSplitter;
 import dev.langchain4j.data.document.Metadata;
@@ -13,7 +17,6 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
-import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
@@ -34,8 +37,8 @@ public class TextSimilarityRanker {
     private static final String EMBEDDING_MODEL_NAME = "nomic-embed-text:latest";
     private static final int DEFAULT_TOP_K_RESULTS = 5;
 
-    private static final int CHUNK_SIZE = 500;
-    private static final int CHUNK_OVERLAP = 100;
+    static final int CHUNK_SIZE = 500;
+    static final int CHUNK_OVERLAP = 100;
 
     public static void main(String[] args) {
         Scanner scanner = new Scanner(System.in);
@@ -93,42 +96,38 @@ public class TextSimilarityRanker {
     static List<TextSegment> fetchUniqueTextSegmentsFromDirectory(String directoryPath) {
         log.debug("Scanning directory for supported files...");
 
-        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
-            List<Path> files;
-            try (Stream<Path> stream = Files.list(Paths.get(directoryPath))) {
-                files = stream.filter(Files::isRegularFile)
-                        .filter(TextSimilarityRanker::isSupportedFormat)
-                        .toList();
-            }
+        List<Path> files;
+        try (Stream<Path> stream = Files.list(Paths.get(directoryPath))) {
+            files = stream.filter(Files::isRegularFile)
+                    .filter(TextSimilarityRanker::isSupportedFormat)
+                    .toList();
+        } catch (IOException e) {
+            log.error("IO Error while accessing directory {}: {}", directoryPath, e.getMessage());
+            return Collections.emptyList();
+        }
 
-            if (files.isEmpty()) {
-                log.debug("No supported files found in {}", directoryPath);
-                return Collections.emptyList();
-            }
+        if (files.isEmpty()) {
+            log.debug("No supported files found in {}", directoryPath);
+            return Collections.emptyList();
+        }
+        return fetchTextSegments(files);
+    }
 
+    /**
+     * Extracts and chunks the given files concurrently, one virtual thread per file.
+     */
+    static List<TextSegment> fetchTextSegments(List<Path> files) {
+        QueryTrace trace = QueryTrace.current();
+        try (Timer.Sample ignored = Metrics.timer(Metrics.INGEST_DIRECTORY).start();
+             ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
             log.debug("Found {} files. Initializing Recursive Splitter.", files.size());
             DocumentSplitter splitter = DocumentSplitters.recursive(CHUNK_SIZE, CHUNK_OVERLAP);
 
             List<Future<List<TextSegment>>> futures = files.stream()
                     .map(path -> executor.submit(() -> {
-                        log.debug("Extracting and chunking: {}", path.getFileName());
-
-                        // 1. Extract the text
-                        String rawText = String.join(" ", extractContent(path));
-                        String fileName = path.getFileName().toString();
-
-                        // 2. Create the Document with the filename metadata
-                        Metadata metadata = Metadata.from("file_name", fileName);
-                        Document doc = Document.from(rawText, metadata);
-
-                        // 3. Split the document into segments
-                        List<TextSegment> splitSegments = splitter.split(doc);
-
-                        // 4. FIX: Manually re-map segments to guarantee they carry the metadata
-                        // This bypasses issues where some splitters don't propagate metadata correctly
-                        return splitSegments.stream()
-                                .map(segment -> TextSegment.from(segment.text(), Metadata.from("file_name", fileName)))
-                                .toList();
+                        try (QueryTrace.Scope scope = QueryTrace.bind(trace)) {
+                            return extractAndSplit(path, splitter);
+                        }
                     }))
                     .toList();
 
@@ -141,25 +140,73 @@ public class TextSimilarityRanker {
                 }
             }
 
+            Metrics.counter("ingest.files").add(files.size());
+            Metrics.counter("ingest.segments").add(allSegments.size());
             log.info("Successfully created {} total segments from {} files.", allSegments.size(), files.size());
             return allSegments;
+        }
+    }
 
+    private static List<TextSegment> extractAndSplit(Path path, DocumentSplitter splitter) {
+        log.debug("Extracting and chunking: {}", path.getFileName());
+
+        // 1. Extract the text, remembering where each page, row or heading starts
+        TextCollector content = extractContent(path);
+        String rawText = content.text();
+
+        // 2. Create the Document with the file metadata
+        Metadata metadata = fileMetadata(path);
+        Document doc = Document.from(rawText, metadata);
+
+        // 3. Split the document into segments
+        List<TextSegment> splitSegments = Metrics.timer(Metrics.INGEST_SPLIT).time(() -> splitter.split(doc));
+
+        // 4. FIX: Manually re-map segments to guarantee they carry the metadata
+        // This bypasses issues where some splitters don't propagate metadata correctly;
+        // the chunk index lets the context packer stitch neighbouring hits back together
+        // and the position says where in the source the chunk starts
+        List<TextSegment> segments = new ArrayList<>(splitSegments.size());
+        int cursor = 0;
+        for (int i = 0; i < splitSegments.size(); i++) {
+            String text = splitSegments.get(i).text();
+            int start = rawText.indexOf(text, cursor);
+            if (start >= 0) cursor = start;
+            Metadata chunk = metadata.copy().put("chunk_index", i);
+            content.positionAt(cursor).forEach((key, value) -> {
+                if (value instanceof Integer number) chunk.put(key, number);
+                else chunk.put(key, value.toString());
+            });
+            segments.add(TextSegment.from(text, chunk));
+        }
+        return segments;
+    }
+
+    // File name, parent directory and modification time; the latter two back search filters
+    private static Metadata fileMetadata(Path path) {
+        Metadata metadata = Metadata.from("file_name", path.getFileName().toString())
+                .put("directory", path.toAbsolutePath().normalize().getParent().toString());
+        try {
+            metadata.put("last_modified", Files.getLastModifiedTime(path).toMillis());
         } catch (IOException e) {
-            log.error("IO Error while accessing directory {}: {}", directoryPath, e.getMessage());
-            return Collections.emptyList();
+            log.debug("No modification time for {}: {}", path, e.getMessage());
         }
+        return metadata;
     }
+
     static Map<TextSegment, Double> rankSegments(EmbeddingModel model, String query, List<TextSegment> segments) {
         log.debug("Embedding query and segments via Ollama...");
-        float[] queryVec = model.embed(query).content().vector();
-        List<Embedding> docVecs = model.embedAll(segments).content();
+        float[] queryVec = Metrics.timer(Metrics.EMBED_QUERY).time(() -> model.embed(query).content().vector());
+        List<Embedding> docVecs = Metrics.timer(Metrics.EMBED_ALL).time(() -> model.embedAll(segments).content());
 
         log.debug("Performing cosine similarity calculations...");
         Map<TextSegment, Double> scoringMap = new HashMap<>();
-        for (int i = 0; i < segments.size(); i++) {
-            double sim = calculateCosineSimilarity(queryVec, docVecs.get(i).vector());
-            scoringMap.put(segments.get(i), sim);
+        try (Timer.Sample ignored = Metrics.timer(Metrics.RANK_COSINE).start()) {
+            for (int i = 0; i < segments.size(); i++) {
+                double sim = calculateCosineSimilarity(queryVec, docVecs.get(i).vector());
+                scoringMap.put(segments.get(i), sim);
+            }
         }
+        Metrics.counter("ranking.segments_scored").add(segments.size());
         return scoringMap;
     }
 
@@ -173,26 +220,16 @@ public class TextSimilarityRanker {
         return (normA == 0 || normB == 0) ? 0 : dotProduct / (Math.sqrt(normA) * Math.sqrt(normB));
     }
 
-    private static boolean isSupportedFormat(Path path) {
-        String name = path.getFileName().toString().toLowerCase();
-        return name.endsWith(".txt") || name.endsWith(".md") || name.endsWith(".pdf") ||
-                name.endsWith(".docx") || name.endsWith(".csv") || name.endsWith(".json");
+    static boolean isSupportedFormat(Path path) {
+        return ContentReaders.defaults().supports(path);
     }
 
-    private static List<String> extractContent(Path path) {
-        String name = path.getFileName().toString().toLowerCase();
+    private static TextCollector extractContent(Path path) {
         try {
-            if (name.endsWith(".pdf")) return PdfContentReader.read(path);
-            if (name.endsWith(".docx")) return WordContentReader.read(path);
-            if (name.endsWith(".csv")) return CsvContentReader.read(path);
-            if (name.endsWith(".json")) return JsonContentReader.read(path);
-            if (name.endsWith(".md") || name.endsWith(".markdown")) {
-                return MarkdownContentReader.read(path);
-            }
-            return Files.readAllLines(path, StandardCharsets.UTF_8);
-        } catch (Exception e) {
-            log.error("Content Extraction Failed for {}: {}", name, e.getMessage());
-            return Collections.emptyList();
+            return ContentReaders.defaults().extract(path, " ");
+        } catch (IOException e) {
+            log.error("Content Extraction Failed for {}: {}", path.getFileName(), e.getMessage());
+            return new TextCollector(" ");
         }
     }
 
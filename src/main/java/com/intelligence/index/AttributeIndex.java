@@ -0,0 +1,123 @@
+package com.intelligence.index;
+
+import dev.langchain4j.data.document.Metadata;
+import org.roaringbitmap.RoaringBitmap;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Compressed bitmap indexes over the segment metadata of one {@link FolderIndex}: a bitmap of
+ * row ids per file name, extension and directory. Rows of one file are contiguous, so the
+ * bitmaps compress to a few runs. Modification time is per file, so a time range is the union
+ * of the matching files' bitmaps.
+ */
+final class AttributeIndex {
+    static final String FILE_NAME = "file_name";
+    static final String LAST_MODIFIED = "last_modified";
+    static final String DIRECTORY = "directory";
+    // Rough heap per key: map entry, String and its array, bitmap or boxed value header
+    private static final int KEY_OVERHEAD_BYTES = 100;
+
+    private final Map<String, RoaringBitmap> byFile = new HashMap<>();
+    private final Map<String, RoaringBitmap> byExtension = new HashMap<>();
+    private final Map<String, RoaringBitmap> byDirectory = new HashMap<>();
+    private final Map<String, Long> modifiedByFile = new HashMap<>();
+
+    private AttributeIndex() {
+    }
+
+    static AttributeIndex of(List<Metadata> rows) {
+        AttributeIndex index = new AttributeIndex();
+        for (int row = 0; row < rows.size(); row++) {
+            Metadata metadata = rows.get(row);
+            String file = metadata.getString(FILE_NAME);
+            if (file == null) continue;
+            String key = file.toLowerCase(Locale.ROOT);
+            index.byFile.computeIfAbsent(key, k -> new RoaringBitmap()).add(row);
+            index.byExtension.computeIfAbsent(extension(key), k -> new RoaringBitmap()).add(row);
+            String directory = metadata.getString(DIRECTORY);
+            if (directory != null) index.byDirectory.computeIfAbsent(directory, k -> new RoaringBitmap()).add(row);
+            Long modified = metadata.getLong(LAST_MODIFIED);
+            if (modified != null) index.modifiedByFile.put(key, modified);
+        }
+        index.byFile.values().forEach(RoaringBitmap::runOptimize);
+        index.byExtension.values().forEach(RoaringBitmap::runOptimize);
+        index.byDirectory.values().forEach(RoaringBitmap::runOptimize);
+        return index;
+    }
+
+    /**
+     * Approximate heap held by the bitmaps and their keys.
+     */
+    long estimatedBytes() {
+        long bytes = (long) modifiedByFile.size() * KEY_OVERHEAD_BYTES;
+        for (Map<String, RoaringBitmap> bitmaps : List.of(byFile, byExtension, byDirectory)) {
+            for (Map.Entry<String, RoaringBitmap> entry : bitmaps.entrySet()) {
+                bytes += KEY_OVERHEAD_BYTES + entry.getKey().length() + entry.getValue().getSizeInBytes();
+            }
+        }
+        return bytes;
+    }
+
+    /**
+     * Rows matching every criterion of the filter, or null when the filter is empty (all rows).
+     */
+    RoaringBitmap matching(SearchFilter filter) {
+        if (filter.isEmpty()) return null;
+        RoaringBitmap result = null;
+        if (!filter.fileNames().isEmpty()) result = intersect(result, union(byFile, filter.fileNames()));
+        if (!filter.extensions().isEmpty()) result = intersect(result, union(byExtension, filter.extensions()));
+        if (!filter.directories().isEmpty()) {
+            RoaringBitmap dirs = new RoaringBitmap();
+            byDirectory.forEach((directory, rows) -> {
+                if (matchesDirectory(directory, filter.directories())) dirs.or(rows);
+            });
+            result = intersect(result, dirs);
+        }
+        if (filter.modifiedAfter() != null || filter.modifiedBefore() != null) {
+            RoaringBitmap recent = new RoaringBitmap();
+            modifiedByFile.forEach((file, modified) -> {
+                if (filter.modifiedAfter() != null && modified < filter.modifiedAfter().toEpochMilli()) return;
+                if (filter.modifiedBefore() != null && modified >= filter.modifiedBefore().toEpochMilli()) return;
+                recent.or(byFile.get(file));
+            });
+            result = intersect(result, recent);
+        }
+        return result;
+    }
+
+    private static RoaringBitmap union(Map<String, RoaringBitmap> bitmaps, Set<String> keys) {
+        RoaringBitmap union = new RoaringBitmap();
+        for (String key : keys) {
+            RoaringBitmap rows = bitmaps.get(key);
+            if (rows != null) union.or(rows);
+        }
+        return union;
+    }
+
+    private static RoaringBitmap intersect(RoaringBitmap current, RoaringBitmap next) {
+        if (current == null) return next;
+        current.and(next);
+        return current;
+    }
+
+    // "reports" matches any directory named reports; an absolute path must match exactly
+    private static boolean matchesDirectory(String directory, Set<String> wanted) {
+        Path path = Paths.get(directory);
+        for (String candidate : wanted) {
+            if (path.equals(Paths.get(candidate).toAbsolutePath().normalize()) || path.endsWith(candidate)) return true;
+        }
+        return false;
+    }
+
+    private static String extension(String fileName) {
+        int dot = fileName.lastIndexOf('.');
+        return dot < 0 ? "" : fileName.substring(dot + 1);
+    }
+}
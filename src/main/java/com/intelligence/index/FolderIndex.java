@@ -0,0 +1,524 @@
+package com.intelligence.index;
+
+import com.intelligence.metrics.Metrics;
+import com.intelligence.metrics.Timer;
+import dev.langchain4j.data.document.Metadata;
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import org.roaringbitmap.PeekableIntIterator;
+import org.roaringbitmap.RoaringBitmap;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Immutable, embedded snapshot of one data folder. Vectors are packed row-major into a
+ * single array with their norms precomputed, so a query only pays for the dot products.
+ * Alternatively the rows live off-heap in a shared {@link VectorArena} and the index only
+ * keeps their slot numbers. Likewise the segment texts may live compressed in a
+ * {@link SegmentTextStore}, with only the metadata on the heap; a search then decompresses
+ * just the texts of the hits it returns.
+ */
+public class FolderIndex {
+    private final String directoryPath;
+    private final List<TextSegment> segments;
+    // Set when the texts live compressed; segments is then a view that decompresses on access
+    private final List<Metadata> metadata;
+    private final SegmentTextStore texts;
+    private final int dimension;
+    private final float[] vectors;
+    private final float[] norms;
+    // Set instead of vectors and norms when the rows live off-heap
+    private final VectorArena arena;
+    private final int[] slots;
+    private final FolderManifest manifest;
+    private final String fingerprint;
+    private volatile AttributeIndex attributes;
+    private volatile LexicalIndex lexical;
+
+    // Rough per-segment heap overhead: TextSegment, Metadata and its map, String headers
+    private static final int SEGMENT_OVERHEAD_BYTES = 200;
+    // Queries scored together per pass over a row in a batched scan
+    private static final int QUERY_TILE = 4;
+
+    FolderIndex(String directoryPath, List<TextSegment> segments, int dimension, float[] vectors, float[] norms,
+                FolderManifest manifest, String fingerprint) {
+        this(directoryPath, segments, null, null, dimension, vectors, norms, null, null, manifest, fingerprint);
+    }
+
+    private FolderIndex(String directoryPath, List<TextSegment> segments, List<Metadata> metadata, SegmentTextStore texts,
+                        int dimension, float[] vectors, float[] norms, VectorArena arena, int[] slots,
+                        FolderManifest manifest, String fingerprint) {
+        this.directoryPath = directoryPath;
+        this.metadata = metadata;
+        this.texts = texts;
+        this.segments = texts == null ? segments : new AbstractList<>() {
+            @Override
+            public TextSegment get(int row) {
+                return segment(row);
+            }
+
+            @Override
+            public int size() {
+                return metadata.size();
+            }
+        };
+        this.dimension = dimension;
+        this.vectors = vectors;
+        this.norms = norms;
+        this.arena = arena;
+        this.slots = slots;
+        this.manifest = manifest;
+        this.fingerprint = fingerprint;
+    }
+
+    public static FolderIndex of(String directoryPath, List<TextSegment> segments, List<Embedding> embeddings) {
+        return of(directoryPath, segments, embeddings, FolderManifest.EMPTY, "");
+    }
+
+    /**
+     * @param manifest    the files the segments were read from
+     * @param fingerprint the embedding model and chunking settings that produced the vectors
+     */
+    public static FolderIndex of(String directoryPath, List<TextSegment> segments, List<Embedding> embeddings,
+                                 FolderManifest manifest, String fingerprint) {
+        if (segments.size() != embeddings.size()) {
+            throw new IllegalArgumentException("Got " + embeddings.size() + " embeddings for " + segments.size() + " segments");
+        }
+        int dimension = embeddings.isEmpty() ? 0 : embeddings.get(0).dimension();
+        float[] vectors = new float[segments.size() * dimension];
+        float[] norms = new float[segments.size()];
+        for (int row = 0; row < embeddings.size(); row++) {
+            float[] v = embeddings.get(row).vector();
+            System.arraycopy(v, 0, vectors, row * dimension, dimension);
+            norms[row] = norm(v, 0, dimension);
+        }
+        return new FolderIndex(directoryPath, List.copyOf(segments), dimension, vectors, norms, manifest, fingerprint);
+    }
+
+    /**
+     * Returns the {@code k} segments most similar to the query vector, best first,
+     * scanning in parallel per {@link ParallelScan#defaults()} when the index is large enough.
+     */
+    public List<ScoredSegment> search(float[] query, int k) {
+        return search(query, k, ParallelScan.defaults());
+    }
+
+    public List<ScoredSegment> search(float[] query, int k, ParallelScan scan) {
+        if (segments.isEmpty() || k <= 0) return List.of();
+        try (Timer.Sample ignored = Metrics.timer(Metrics.RANK_COSINE).start()) {
+            return toScored(rank(query, norm(query, 0, query.length), k, scan, null, null));
+        }
+    }
+
+    /**
+     * A row and its score; the segment text is only read when the hit is turned into a {@link ScoredSegment}.
+     */
+    record Hit(FolderIndex index, int row, double score) {
+
+        ScoredSegment toScored() {
+            return new ScoredSegment(index.segment(row), score);
+        }
+    }
+
+    static List<ScoredSegment> toScored(List<Hit> hits) {
+        List<ScoredSegment> scored = new ArrayList<>(hits.size());
+        for (Hit hit : hits) scored.add(hit.toScored());
+        return scored;
+    }
+
+    /**
+     * Untimed top-k, best first, over the rows in {@code allowed} (null for all) that are not set
+     * in {@code deleted} (null for none).
+     */
+    List<Hit> rank(float[] query, float queryNorm, int k, ParallelScan scan, BitSet deleted, RoaringBitmap allowed) {
+        int candidates = allowed == null ? segments.size() : allowed.getCardinality();
+        int limit = Math.min(k, candidates);
+        if (limit <= 0) return List.of();
+        TopK top;
+        if (scan.appliesTo(candidates)) {
+            top = scan.scan(this, query, queryNorm, limit, deleted, allowed);
+            Metrics.counter("ranking.parallel_scans").increment();
+        } else {
+            // Bounded min-heap keeps only the current top-k instead of sorting every segment
+            top = new TopK(limit);
+            scoreRange(query, queryNorm, 0, segments.size(), deleted, allowed, top);
+        }
+        Metrics.counter("ranking.segments_scored").add(candidates);
+        return hits(top);
+    }
+
+    /**
+     * Untimed top-k for several queries at once, each list as {@link #rank} would return it. Rows
+     * are scored a cache-sized block at a time against every query, so each vector is read from
+     * memory once per batch rather than once per query.
+     */
+    List<List<Hit>> rankBatch(float[][] queries, float[] queryNorms, int k, ParallelScan scan, BitSet deleted,
+                              RoaringBitmap allowed) {
+        int candidates = allowed == null ? segments.size() : allowed.getCardinality();
+        int limit = Math.min(k, candidates);
+        List<List<Hit>> ranked = new ArrayList<>(queries.length);
+        if (limit <= 0) {
+            for (int q = 0; q < queries.length; q++) ranked.add(List.of());
+            return ranked;
+        }
+        TopK[] tops;
+        if (scan.appliesTo(candidates)) {
+            tops = scan.scanBatch(this, queries, queryNorms, limit, deleted, allowed);
+            Metrics.counter("ranking.parallel_scans").increment();
+        } else {
+            tops = TopK.array(queries.length, limit);
+            scoreBlocks(queries, queryNorms, 0, segments.size(), deleted, allowed, tops);
+        }
+        Metrics.counter("ranking.segments_scored").add((long) candidates * queries.length);
+        for (TopK top : tops) ranked.add(hits(top));
+        return ranked;
+    }
+
+    /**
+     * Untimed BM25 keyword top-k, best first, with the same row restrictions as
+     * {@link #rank}. Scores are BM25, not cosine similarities.
+     */
+    List<Hit> rankLexical(Set<String> queryTerms, int k, BitSet deleted, RoaringBitmap allowed) {
+        if (k <= 0 || queryTerms.isEmpty()) return List.of();
+        return hits(lexical().search(queryTerms, k, deleted, allowed));
+    }
+
+    private List<Hit> hits(TopK top) {
+        double[] scores = new double[top.size()];
+        int[] rows = top.drainRows(scores);
+        List<Hit> ranked = new ArrayList<>(rows.length);
+        for (int i = 0; i < rows.length; i++) ranked.add(new Hit(this, rows[i], scores[i]));
+        return ranked;
+    }
+
+    void scoreRange(float[] query, float queryNorm, int from, int to, BitSet deleted, RoaringBitmap allowed, TopK top) {
+        if (allowed != null) {
+            // Walk only the pre-filtered row ids that fall into this block
+            PeekableIntIterator rows = allowed.getIntIterator();
+            rows.advanceIfNeeded(from);
+            while (rows.hasNext() && rows.peekNext() < to) {
+                int row = rows.next();
+                if (deleted != null && deleted.get(row)) continue;
+                top.offer(row, cosine(query, queryNorm, row));
+            }
+            return;
+        }
+        for (int row = from; row < to; row++) {
+            if (deleted != null && deleted.get(row)) continue;
+            top.offer(row, cosine(query, queryNorm, row));
+        }
+    }
+
+    void scoreBlocks(float[][] queries, float[] queryNorms, int from, int to, BitSet deleted, RoaringBitmap allowed,
+                     TopK[] tops) {
+        int blockRows = ParallelScan.blockRows(dimension);
+        int[] rows = new int[Math.min(blockRows, to - from)];
+        for (int start = from; start < to; start += blockRows) {
+            int count = scoredRows(start, Math.min(to, start + blockRows), deleted, allowed, rows);
+            if (count == 0) continue;
+            int q = 0;
+            if (arena == null) {
+                for (; q + QUERY_TILE <= queries.length; q += QUERY_TILE) scoreTile(queries, queryNorms, q, rows, count, tops);
+            }
+            for (; q < queries.length; q++) {
+                for (int i = 0; i < count; i++) tops[q].offer(rows[i], cosine(queries[q], queryNorms[q], rows[i]));
+            }
+        }
+    }
+
+    // The rows of [from, to) to score, resolved once per block instead of once per query
+    private static int scoredRows(int from, int to, BitSet deleted, RoaringBitmap allowed, int[] rows) {
+        int count = 0;
+        if (allowed != null) {
+            PeekableIntIterator it = allowed.getIntIterator();
+            it.advanceIfNeeded(from);
+            while (it.hasNext() && it.peekNext() < to) {
+                int row = it.next();
+                if (deleted == null || !deleted.get(row)) rows[count++] = row;
+            }
+            return count;
+        }
+        for (int row = from; row < to; row++) {
+            if (deleted == null || !deleted.get(row)) rows[count++] = row;
+        }
+        return count;
+    }
+
+    // Four dot products per pass over a row, so each element is loaded once for all of them;
+    // accumulated exactly as cosine() does, so the scores match a single-query scan
+    private void scoreTile(float[][] queries, float[] queryNorms, int q, int[] rows, int count, TopK[] tops) {
+        float[] a = queries[q];
+        float[] b = queries[q + 1];
+        float[] c = queries[q + 2];
+        float[] d = queries[q + 3];
+        for (int i = 0; i < count; i++) {
+            int row = rows[i];
+            int offset = row * dimension;
+            double dotA = 0.0;
+            double dotB = 0.0;
+            double dotC = 0.0;
+            double dotD = 0.0;
+            for (int j = 0; j < dimension; j++) {
+                float v = vectors[offset + j];
+                dotA += a[j] * v;
+                dotB += b[j] * v;
+                dotC += c[j] * v;
+                dotD += d[j] * v;
+            }
+            tops[q].offer(row, cosine(dotA, queryNorms[q], norms[row]));
+            tops[q + 1].offer(row, cosine(dotB, queryNorms[q + 1], norms[row]));
+            tops[q + 2].offer(row, cosine(dotC, queryNorms[q + 2], norms[row]));
+            tops[q + 3].offer(row, cosine(dotD, queryNorms[q + 3], norms[row]));
+        }
+    }
+
+    /**
+     * Keyword index over the segment texts, built on first use (the first fallback search).
+     * Compressed texts are streamed once, a block at a time, rather than read row by row.
+     */
+    LexicalIndex lexical() {
+        LexicalIndex current = lexical;
+        if (current == null) {
+            current = texts == null ? LexicalIndex.of(segments) : LexicalIndex.of(texts);
+            lexical = current;
+        }
+        return current;
+    }
+
+    /**
+     * Bitmap indexes over file name, extension, directory and modification time, built on first use.
+     */
+    AttributeIndex attributes() {
+        AttributeIndex current = attributes;
+        if (current == null) {
+            current = AttributeIndex.of(metadata()); // idempotent, so a racing rebuild is harmless
+            attributes = current;
+        }
+        return current;
+    }
+
+    /**
+     * Concatenates the rows of several indexes that are not set in their {@code deleted} bitset
+     * (entries may be null), copying vectors instead of re-embedding. When {@code rowMaps} is given,
+     * {@code rowMaps[i][row]} receives each source row's position in the result, or -1 if dropped.
+     */
+    static FolderIndex concat(String directoryPath, List<FolderIndex> parts, List<BitSet> deleted, int[][] rowMaps,
+                              FolderManifest manifest, String fingerprint) {
+        return concat(null, false, directoryPath, parts, deleted, rowMaps, manifest, fingerprint);
+    }
+
+    /**
+     * Like {@link #concat(String, List, List, int[][], FolderManifest, String)}, but with an arena the
+     * result lives off-heap: rows already in that arena keep their slots (nothing is copied) and the
+     * others are appended to it. Slots of dropped rows stay allocated; freeing them is up to the caller.
+     * With {@code compressText} the texts are streamed into a new {@link SegmentTextStore}.
+     */
+    static FolderIndex concat(VectorArena arena, boolean compressText, String directoryPath, List<FolderIndex> parts, List<BitSet> deleted,
+                              int[][] rowMaps, FolderManifest manifest, String fingerprint) {
+        int dimension = 0;
+        int rows = 0;
+        for (int p = 0; p < parts.size(); p++) {
+            FolderIndex part = parts.get(p);
+            if (part.size() == 0) continue;
+            if (dimension != 0 && part.dimension != dimension) {
+                throw new IllegalArgumentException("Cannot merge " + part.dimension + "-d vectors into a " + dimension + "-d index");
+            }
+            dimension = part.dimension;
+            BitSet gone = deleted.get(p);
+            rows += part.size() - (gone == null ? 0 : gone.cardinality());
+        }
+        List<TextSegment> mergedSegments = compressText ? null : new ArrayList<>(rows);
+        List<Metadata> mergedMetadata = compressText ? new ArrayList<>(rows) : null;
+        SegmentTextStore.Builder mergedTexts = compressText ? SegmentTextStore.builder() : null;
+        float[] mergedVectors = arena == null ? new float[rows * dimension] : null;
+        float[] mergedNorms = arena == null ? new float[rows] : null;
+        int[] mergedSlots = arena == null ? null : new int[rows];
+        float[] row = arena == null ? null : new float[dimension];
+        int target = 0;
+        for (int p = 0; p < parts.size(); p++) {
+            FolderIndex part = parts.get(p);
+            BitSet gone = deleted.get(p);
+            int[] map = rowMaps == null ? null : (rowMaps[p] = new int[part.size()]);
+            for (int r = 0; r < part.size(); r++) {
+                if (gone != null && gone.get(r)) {
+                    if (map != null) map[r] = -1;
+                    continue;
+                }
+                if (compressText) {
+                    mergedMetadata.add(part.metadata(r));
+                    mergedTexts.add(part.text(r));
+                } else {
+                    mergedSegments.add(part.segment(r));
+                }
+                if (arena == null) {
+                    part.copyRow(r, mergedVectors, target * dimension);
+                    mergedNorms[target] = part.norm(r);
+                } else if (part.arena == arena) {
+                    mergedSlots[target] = part.slots[r];
+                } else {
+                    part.copyRow(r, row, 0);
+                    mergedSlots[target] = arena.append(row, 0, part.norm(r));
+                }
+                if (map != null) map[r] = target;
+                target++;
+            }
+        }
+        return new FolderIndex(directoryPath, compressText ? null : List.copyOf(mergedSegments),
+                compressText ? List.copyOf(mergedMetadata) : null, compressText ? mergedTexts.build() : null,
+                dimension, mergedVectors, mergedNorms, arena, mergedSlots, manifest, fingerprint);
+    }
+
+    /**
+     * The same rows and vectors with the texts moved into a new {@link SegmentTextStore}.
+     */
+    FolderIndex withCompressedText() {
+        if (texts != null) return this;
+        SegmentTextStore.Builder builder = SegmentTextStore.builder();
+        List<Metadata> rowMetadata = new ArrayList<>(segments.size());
+        for (TextSegment segment : segments) {
+            builder.add(segment.text());
+            rowMetadata.add(segment.metadata());
+        }
+        return new FolderIndex(directoryPath, null, List.copyOf(rowMetadata), builder.build(), dimension, vectors, norms,
+                arena, slots, manifest, fingerprint);
+    }
+
+    private double cosine(float[] query, float queryNorm, int row) {
+        if (arena != null) return arena.cosine(slots[row], query, queryNorm);
+        if (queryNorm == 0 || norms[row] == 0) return 0;
+        int offset = row * dimension;
+        double dot = 0.0;
+        for (int i = 0; i < dimension; i++) dot += query[i] * vectors[offset + i];
+        return cosine(dot, queryNorm, norms[row]);
+    }
+
+    private static double cosine(double dot, float queryNorm, float rowNorm) {
+        return queryNorm == 0 || rowNorm == 0 ? 0 : dot / ((double) queryNorm * rowNorm);
+    }
+
+    static float norm(float[] v, int offset, int length) {
+        double sum = 0.0;
+        for (int i = offset; i < offset + length; i++) sum += v[i] * v[i];
+        return (float) Math.sqrt(sum);
+    }
+
+    private void copyRow(int row, float[] target, int offset) {
+        if (arena != null) arena.copy(slots[row], target, offset);
+        else System.arraycopy(vectors, row * dimension, target, offset, dimension);
+    }
+
+    private float norm(int row) {
+        return arena != null ? arena.norm(slots[row]) : norms[row];
+    }
+
+    /**
+     * The arena slot holding the row, for indexes that live off-heap.
+     */
+    int slot(int row) {
+        return slots[row];
+    }
+
+    boolean isOffHeap() {
+        return arena != null;
+    }
+
+    boolean isCompressed() {
+        return texts != null;
+    }
+
+    /**
+     * The row's segment; for a compressed index this decompresses its text.
+     */
+    TextSegment segment(int row) {
+        return texts == null ? segments.get(row) : TextSegment.from(texts.text(row), metadata.get(row));
+    }
+
+    String text(int row) {
+        return texts == null ? segments.get(row).text() : texts.text(row);
+    }
+
+    Metadata metadata(int row) {
+        return texts == null ? segments.get(row).metadata() : metadata.get(row);
+    }
+
+    /**
+     * Every row's metadata, without touching the texts.
+     */
+    List<Metadata> metadata() {
+        return texts == null ? segments.stream().map(TextSegment::metadata).toList() : metadata;
+    }
+
+    /**
+     * The compressed texts, or null when they are heap strings.
+     */
+    SegmentTextStore texts() {
+        return texts;
+    }
+
+    /**
+     * Approximate footprint (heap, plus the off-heap rows for an arena-backed index and the mapped
+     * texts for a compressed one), used by {@link IndexRegistry} to enforce its memory budget.
+     * The keyword and attribute indexes count once they have been built.
+     */
+    public long estimatedBytes() {
+        long bytes = arena != null
+                ? (long) slots.length * (Integer.BYTES + Float.BYTES + (long) dimension * Float.BYTES)
+                : (long) vectors.length * Float.BYTES + (long) norms.length * Float.BYTES;
+        LexicalIndex builtLexical = lexical;
+        if (builtLexical != null) bytes += builtLexical.estimatedBytes();
+        AttributeIndex builtAttributes = attributes;
+        if (builtAttributes != null) bytes += builtAttributes.estimatedBytes();
+        if (texts != null) {
+            return bytes + (long) metadata.size() * SEGMENT_OVERHEAD_BYTES + texts.heapBytes() + texts.compressedBytes();
+        }
+        for (TextSegment segment : segments) {
+            bytes += SEGMENT_OVERHEAD_BYTES + (long) segment.text().length() * 2;
+        }
+        return bytes;
+    }
+
+    /**
+     * The packed rows; an off-heap index copies them onto the heap first.
+     */
+    float[] vectors() {
+        if (arena == null) return vectors;
+        float[] copy = new float[slots.length * dimension];
+        for (int row = 0; row < slots.length; row++) copyRow(row, copy, row * dimension);
+        return copy;
+    }
+
+    float[] norms() {
+        if (arena == null) return norms;
+        float[] copy = new float[slots.length];
+        for (int row = 0; row < slots.length; row++) copy[row] = norm(row);
+        return copy;
+    }
+
+    public FolderManifest manifest() {
+        return manifest;
+    }
+
+    public String fingerprint() {
+        return fingerprint;
+    }
+
+    public String directoryPath() {
+        return directoryPath;
+    }
+
+    public List<TextSegment> segments() {
+        return segments;
+    }
+
+    public int size() {
+        return texts == null ? segments.size() : metadata.size();
+    }
+
+    public int dimension() {
+        return dimension;
+    }
+}
@@ -0,0 +1,166 @@
+package com.intelligence.index;
+
+import dev.langchain4j.data.document.Metadata;
+import dev.langchain4j.data.segment.TextSegment;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Compact binary snapshot of a {@link FolderIndex}: model fingerprint, file manifest, segment
+ * text and metadata, then the packed vector and norm arrays, which are copied in large
+ * blocks so reloads are I/O bound.
+ */
+public final class FolderIndexFiles {
+    private static final int MAGIC = 0x44494458; // "DIDX"
+    private static final int VERSION = 2;
+    private static final int FLOAT_BLOCK = 64 * 1024;
+
+    private static final byte TYPE_STRING = 0;
+    private static final byte TYPE_INT = 1;
+    private static final byte TYPE_LONG = 2;
+    private static final byte TYPE_FLOAT = 3;
+    private static final byte TYPE_DOUBLE = 4;
+    private static final byte TYPE_UUID = 5;
+
+    private FolderIndexFiles() {
+    }
+
+    /**
+     * Writes the index to a temporary sibling and atomically moves it into place.
+     */
+    public static void write(FolderIndex index, Path file) throws IOException {
+        Files.createDirectories(file.toAbsolutePath().getParent());
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp), 1 << 16))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeUTF(index.directoryPath());
+            out.writeUTF(index.fingerprint());
+            writeManifest(out, index.manifest());
+            out.writeInt(index.size());
+            out.writeInt(index.dimension());
+            for (TextSegment segment : index.segments()) {
+                writeMetadata(out, segment.metadata());
+                byte[] text = segment.text().getBytes(StandardCharsets.UTF_8);
+                out.writeInt(text.length);
+                out.write(text);
+            }
+            writeFloats(out, index.vectors());
+            writeFloats(out, index.norms());
+        }
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    public static FolderIndex read(Path file) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file), 1 << 16))) {
+            if (in.readInt() != MAGIC) throw new IOException("Not an index file: " + file);
+            int version = in.readInt();
+            if (version != VERSION) throw new IOException("Unsupported index file version " + version + ": " + file);
+            String directoryPath = in.readUTF();
+            String fingerprint = in.readUTF();
+            FolderManifest manifest = readManifest(in);
+            int count = in.readInt();
+            int dimension = in.readInt();
+            List<TextSegment> segments = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                Metadata metadata = readMetadata(in);
+                byte[] text = in.readNBytes(in.readInt());
+                segments.add(TextSegment.from(new String(text, StandardCharsets.UTF_8), metadata));
+            }
+            float[] vectors = readFloats(in, count * dimension);
+            float[] norms = readFloats(in, count);
+            return new FolderIndex(directoryPath, List.copyOf(segments), dimension, vectors, norms, manifest, fingerprint);
+        }
+    }
+
+    private static void writeManifest(DataOutputStream out, FolderManifest manifest) throws IOException {
+        out.writeInt(manifest.files().size());
+        for (Map.Entry<String, FolderManifest.FileStamp> file : manifest.files().entrySet()) {
+            out.writeUTF(file.getKey());
+            out.writeLong(file.getValue().size());
+            out.writeLong(file.getValue().lastModifiedMillis());
+        }
+    }
+
+    private static FolderManifest readManifest(DataInputStream in) throws IOException {
+        int size = in.readInt();
+        Map<String, FolderManifest.FileStamp> files = new HashMap<>(size * 2);
+        for (int i = 0; i < size; i++) {
+            files.put(in.readUTF(), new FolderManifest.FileStamp(in.readLong(), in.readLong()));
+        }
+        return new FolderManifest(files);
+    }
+
+    private static void writeMetadata(DataOutputStream out, Metadata metadata) throws IOException {
+        Map<String, Object> entries = metadata.toMap();
+        out.writeShort(entries.size());
+        for (Map.Entry<String, Object> entry : entries.entrySet()) {
+            out.writeUTF(entry.getKey());
+            Object value = entry.getValue();
+            switch (value) {
+                case Integer v -> { out.writeByte(TYPE_INT); out.writeInt(v); }
+                case Long v -> { out.writeByte(TYPE_LONG); out.writeLong(v); }
+                case Float v -> { out.writeByte(TYPE_FLOAT); out.writeFloat(v); }
+                case Double v -> { out.writeByte(TYPE_DOUBLE); out.writeDouble(v); }
+                case UUID v -> { out.writeByte(TYPE_UUID); out.writeUTF(v.toString()); }
+                default -> { out.writeByte(TYPE_STRING); out.writeUTF(String.valueOf(value)); }
+            }
+        }
+    }
+
+    private static Metadata readMetadata(DataInputStream in) throws IOException {
+        int size = in.readShort();
+        Map<String, Object> entries = new HashMap<>(size * 2);
+        for (int i = 0; i < size; i++) {
+            String key = in.readUTF();
+            byte type = in.readByte();
+            Object value = switch (type) {
+                case TYPE_INT -> in.readInt();
+                case TYPE_LONG -> in.readLong();
+                case TYPE_FLOAT -> in.readFloat();
+                case TYPE_DOUBLE -> in.readDouble();
+                case TYPE_UUID -> UUID.fromString(in.readUTF());
+                default -> in.readUTF();
+            };
+            entries.put(key, value);
+        }
+        return Metadata.from(entries);
+    }
+
+    private static void writeFloats(DataOutputStream out, float[] values) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(FLOAT_BLOCK * Float.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        for (int offset = 0; offset < values.length; offset += FLOAT_BLOCK) {
+            int length = Math.min(FLOAT_BLOCK, values.length - offset);
+            buffer.clear();
+            buffer.asFloatBuffer().put(values, offset, length);
+            out.write(buffer.array(), 0, length * Float.BYTES);
+        }
+    }
+
+    private static float[] readFloats(DataInputStream in, int count) throws IOException {
+        float[] values = new float[count];
+        byte[] block = new byte[FLOAT_BLOCK * Float.BYTES];
+        for (int offset = 0; offset < count; offset += FLOAT_BLOCK) {
+            int length = Math.min(FLOAT_BLOCK, count - offset);
+            in.readFully(block, 0, length * Float.BYTES);
+            ByteBuffer.wrap(block, 0, length * Float.BYTES).order(ByteOrder.LITTLE_ENDIAN)
+                    .asFloatBuffer().get(values, offset, length);
+        }
+        return values;
+    }
+}
@@ -0,0 +1,22 @@
+package com.intelligence.index;
+
+import java.util.Map;
+
+/**
+ * Size and modification time of every file an index was built from, used to tell
+ * whether a snapshot still matches the folder on disk.
+ */
+public record FolderManifest(Map<String, FileStamp> files) {
+    public static final FolderManifest EMPTY = new FolderManifest(Map.of());
+
+    public record FileStamp(long size, long lastModifiedMillis) {
+    }
+
+    public FolderManifest {
+        files = Map.copyOf(files);
+    }
+
+    public boolean isEmpty() {
+        return files.isEmpty();
+    }
+}
@@ -0,0 +1,362 @@
+package com.intelligence.index;
+
+import com.intelligence.metrics.Metrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+
+/**
+ * Keeps several folder indexes resident under a total memory budget.
+ *
+ * <p>Eviction follows GreedyDual-Size-Frequency: each entry's priority is
+ * {@code clock + hits / sizeInMb}, the lowest priority is evicted first and the clock is
+ * raised to it, so small, frequently used indexes stay while large, cold ones go, and
+ * anything not touched for a while eventually ages out. Every built index is written to
+ * the snapshot directory in the background, so eviction only drops the reference and a later
+ * request reloads the file instead of re-reading and re-embedding the folder.
+ *
+ * <p>Snapshots outlive the process: after a restart a folder is served from its snapshot
+ * straight away (if the model fingerprint matches) while a background check compares the
+ * file manifest. The same check re-runs on use at most every {@value #REFRESH_INTERVAL_MILLIS} ms.
+ * Added, changed and removed files are applied to the {@link SegmentedIndex} in place when
+ * the source can build single files; otherwise a rebuilt index is swapped in.
+ */
+public class IndexRegistry implements AutoCloseable {
+    private static final Logger log = LoggerFactory.getLogger(IndexRegistry.class);
+    private static final double BYTES_PER_MB = 1024.0 * 1024.0;
+    static final long REFRESH_INTERVAL_MILLIS = 30_000;
+
+    private final long memoryBudgetBytes;
+    private final Path snapshotDirectory;
+    private final IndexSource source;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Map<String, Entry> entries = new HashMap<>();
+    private long residentBytes;
+    private double clock;
+
+    private static class Entry {
+        final String key;
+        final Path snapshotFile;
+        SegmentedIndex resident;
+        CompletableFuture<SegmentedIndex> loading;
+        volatile CompletableFuture<Void> snapshotWrite;
+        long lastChecked;
+        boolean refreshing;
+        long bytes;
+        long hits;
+        double priority;
+
+        Entry(String key, Path snapshotFile) {
+            this.key = key;
+            this.snapshotFile = snapshotFile;
+        }
+    }
+
+    /**
+     * @param source builds folders from scratch and validates stored snapshots
+     */
+    public IndexRegistry(long memoryBudgetBytes, Path snapshotDirectory, IndexSource source) {
+        this.memoryBudgetBytes = memoryBudgetBytes;
+        this.snapshotDirectory = snapshotDirectory;
+        this.source = source;
+    }
+
+    /**
+     * @param builder ingests and embeds a folder from scratch; snapshots are never considered stale
+     */
+    public IndexRegistry(long memoryBudgetBytes, Path snapshotDirectory, Function<String, FolderIndex> builder) {
+        this(memoryBudgetBytes, snapshotDirectory, IndexSource.of(builder));
+    }
+
+    /**
+     * Returns the index for the folder, loading it from its snapshot or building it if necessary.
+     * Concurrent callers for the same folder share one load.
+     */
+    public SegmentedIndex get(String directoryPath) {
+        String key = normalize(directoryPath);
+        CompletableFuture<SegmentedIndex> pending;
+        boolean owner = false;
+        Entry entry;
+
+        lock.lock();
+        try {
+            entry = entries.computeIfAbsent(key, k -> new Entry(k, snapshotDirectory.resolve(snapshotFileName(k))));
+            entry.hits++;
+            if (entry.resident != null) {
+                entry.priority = priority(entry);
+                Metrics.counter("registry.hits").increment();
+                if (System.currentTimeMillis() - entry.lastChecked > REFRESH_INTERVAL_MILLIS) {
+                    refreshInBackground(entry, entry.resident);
+                }
+                return entry.resident;
+            }
+            if (entry.loading == null) {
+                entry.loading = new CompletableFuture<>();
+                owner = true;
+            }
+            pending = entry.loading;
+        } finally {
+            lock.unlock();
+        }
+
+        if (!owner) return pending.join();
+
+        try {
+            Loaded loaded = load(entry);
+            admit(entry, loaded.index());
+            // Only once admitted, so a quick refresh finds the snapshot resident and can replace it
+            if (loaded.fromSnapshot()) {
+                lock.lock();
+                try {
+                    refreshInBackground(entry, loaded.index());
+                } finally {
+                    lock.unlock();
+                }
+            }
+            pending.complete(loaded.index());
+            return loaded.index();
+        } catch (RuntimeException e) {
+            lock.lock();
+            try {
+                entry.loading = null;
+            } finally {
+                lock.unlock();
+            }
+            pending.completeExceptionally(e);
+            throw e;
+        }
+    }
+
+    private record Loaded(SegmentedIndex index, boolean fromSnapshot) {
+    }
+
+    private Loaded load(Entry entry) {
+        CompletableFuture<Void> pendingWrite = entry.snapshotWrite;
+        if (pendingWrite != null) pendingWrite.exceptionally(e -> null).join();
+
+        if (Files.exists(entry.snapshotFile)) {
+            long start = System.nanoTime();
+            try {
+                FolderIndex index = FolderIndexFiles.read(entry.snapshotFile);
+                if (index.fingerprint().equals(source.fingerprint())) {
+                    Metrics.timer("registry.reload").recordNanos(System.nanoTime() - start);
+                    log.info("Loaded index for {} from snapshot in {} ms", entry.key, (System.nanoTime() - start) / 1_000_000);
+                    return new Loaded(SegmentedIndex.of(index), true);
+                }
+                log.info("Snapshot for {} was built with '{}', rebuilding for '{}'", entry.key,
+                        index.fingerprint(), source.fingerprint());
+            } catch (IOException e) {
+                log.warn("Snapshot {} unreadable, rebuilding: {}", entry.snapshotFile, e.getMessage());
+            }
+        }
+        Metrics.counter("registry.builds").increment();
+        SegmentedIndex index = SegmentedIndex.of(source.build(entry.key));
+        entry.lastChecked = System.currentTimeMillis();
+        writeSnapshot(entry, index);
+        return new Loaded(index, false);
+    }
+
+    private void writeSnapshot(Entry entry, SegmentedIndex index) {
+        CompletableFuture<Void> previous = entry.snapshotWrite;
+        entry.snapshotWrite = CompletableFuture.runAsync(() -> {
+            // Writes of one entry go in order, so an older view never overwrites a newer one
+            if (previous != null) previous.exceptionally(e -> null).join();
+            try {
+                FolderIndexFiles.write(index.toFolderIndex(), entry.snapshotFile);
+            } catch (IOException e) {
+                log.warn("Could not write snapshot {}: {}", entry.snapshotFile, e.getMessage());
+                throw new UncheckedIOException(e);
+            }
+        }, command -> Thread.ofVirtual().name("index-snapshot").start(command));
+    }
+
+    /**
+     * Compares the index's manifest with the folder off the request path and applies added,
+     * changed and removed files. Must be called with the lock held; at most one check per entry runs.
+     */
+    private void refreshInBackground(Entry entry, SegmentedIndex index) {
+        if (entry.refreshing) return;
+        entry.refreshing = true;
+        entry.lastChecked = System.currentTimeMillis();
+        Thread.ofVirtual().name("index-refresh").start(() -> {
+            try {
+                refresh(entry, index);
+            } catch (RuntimeException e) {
+                log.warn("Background refresh of {} failed, keeping the current index: {}", entry.key, e.getMessage());
+            } finally {
+                lock.lock();
+                try {
+                    entry.refreshing = false;
+                } finally {
+                    lock.unlock();
+                }
+            }
+        });
+    }
+
+    private void refresh(Entry entry, SegmentedIndex index) {
+        FolderManifest current = source.manifest(entry.key);
+        FolderManifest known = index.manifest();
+        if (current.equals(known)) return;
+
+        Set<String> changed = new HashSet<>();
+        current.files().forEach((file, stamp) -> {
+            if (!stamp.equals(known.files().get(file))) changed.add(file);
+        });
+        Set<String> removed = new HashSet<>(known.files().keySet());
+        removed.removeAll(current.files().keySet());
+        log.info("Folder {} changed ({} added or modified, {} removed), refreshing in the background",
+                entry.key, changed.size(), removed.size());
+        Metrics.counter("registry.background_refreshes").increment();
+
+        FolderIndex changes = changed.isEmpty()
+                ? FolderIndex.of(entry.key, List.of(), List.of(), FolderManifest.EMPTY, source.fingerprint())
+                : source.buildFiles(entry.key, changed);
+        SegmentedIndex updated = index;
+        if (changes != null) {
+            index.apply(changes, removed);
+        } else {
+            updated = SegmentedIndex.of(source.build(entry.key));
+        }
+
+        lock.lock();
+        try {
+            if (entries.get(entry.key) != entry || entry.resident != index) return; // invalidated or evicted meanwhile
+            residentBytes -= entry.bytes;
+            entry.resident = updated;
+            entry.bytes = updated.estimatedBytes();
+            residentBytes += entry.bytes;
+            evictOverBudget(entry);
+            // Started under the lock so close() always sees and waits for it
+            writeSnapshot(entry, updated);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void admit(Entry entry, SegmentedIndex index) {
+        lock.lock();
+        try {
+            entry.resident = index;
+            entry.bytes = index.estimatedBytes();
+            entry.priority = priority(entry);
+            entry.loading = null;
+            residentBytes += entry.bytes;
+            evictOverBudget(entry);
+            Metrics.histogram("registry.resident_bytes").record(residentBytes);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void evictOverBudget(Entry keep) {
+        while (residentBytes > memoryBudgetBytes) {
+            Entry victim = null;
+            for (Entry candidate : entries.values()) {
+                if (candidate.resident == null || candidate == keep) continue;
+                if (victim == null || candidate.priority < victim.priority) victim = candidate;
+            }
+            if (victim == null) {
+                if (keep.bytes > memoryBudgetBytes) {
+                    log.warn("Index for {} ({} MB) alone exceeds the {} MB budget", keep.key,
+                            keep.bytes / (long) BYTES_PER_MB, memoryBudgetBytes / (long) BYTES_PER_MB);
+                }
+                return;
+            }
+            clock = victim.priority;
+            victim.resident = null;
+            residentBytes -= victim.bytes;
+            Metrics.counter("registry.evictions").increment();
+            log.info("Evicted index for {} ({} MB) to stay within budget", victim.key, victim.bytes / (long) BYTES_PER_MB);
+        }
+    }
+
+    private double priority(Entry entry) {
+        return clock + entry.hits / Math.max(entry.bytes / BYTES_PER_MB, 0.001);
+    }
+
+    /**
+     * Drops a folder's index from memory and disk, e.g. after its files changed.
+     */
+    public void invalidate(String directoryPath) {
+        String key = normalize(directoryPath);
+        Entry removed;
+        lock.lock();
+        try {
+            removed = entries.remove(key);
+            if (removed != null && removed.resident != null) residentBytes -= removed.bytes;
+        } finally {
+            lock.unlock();
+        }
+        if (removed != null) deleteSnapshot(removed);
+    }
+
+    public boolean isResident(String directoryPath) {
+        lock.lock();
+        try {
+            Entry entry = entries.get(normalize(directoryPath));
+            return entry != null && entry.resident != null;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long residentBytes() {
+        lock.lock();
+        try {
+            return residentBytes;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Releases every resident index after waiting for pending snapshot writes; snapshots stay on disk for the next start.
+     */
+    @Override
+    public void close() {
+        lock.lock();
+        try {
+            for (Entry entry : entries.values()) {
+                if (entry.snapshotWrite != null) entry.snapshotWrite.exceptionally(e -> null).join();
+            }
+            entries.clear();
+            residentBytes = 0;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void deleteSnapshot(Entry entry) {
+        try {
+            if (entry.snapshotWrite != null) entry.snapshotWrite.exceptionally(e -> null).join();
+            Files.deleteIfExists(entry.snapshotFile);
+        } catch (IOException e) {
+            log.debug("Could not delete snapshot {}: {}", entry.snapshotFile, e.getMessage());
+        }
+    }
+
+    private static String normalize(String directoryPath) {
+        return Paths.get(directoryPath).toAbsolutePath().normalize().toString();
+    }
+
+    private static String snapshotFileName(String key) {
+        return "index-" + UUID.nameUUIDFromBytes(key.getBytes(StandardCharsets.UTF_8)) + ".bin";
+    }
+}
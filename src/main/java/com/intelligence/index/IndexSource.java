@@ -0,0 +1,56 @@
+package com.intelligence.index;
+
+import java.util.Set;
+import java.util.function.Function;
+
+/**
+ * Where {@link IndexRegistry} gets fresh indexes from, and how it tells whether a stored snapshot is still usable.
+ */
+public interface IndexSource {
+
+    /**
+     * Reads, chunks and embeds the folder from scratch.
+     */
+    FolderIndex build(String directoryPath);
+
+    /**
+     * Reads, chunks and embeds only the named files of the folder, with their stamps in the
+     * returned manifest, so a refresh re-embeds what changed. Returns null when the source can
+     * only rebuild whole folders.
+     */
+    default FolderIndex buildFiles(String directoryPath, Set<String> fileNames) {
+        return null;
+    }
+
+    /**
+     * Cheap scan of the folder's current files; a snapshot whose manifest differs is stale.
+     */
+    FolderManifest manifest(String directoryPath);
+
+    /**
+     * Identifies the embedding model and chunking settings; snapshots built with another fingerprint are unusable.
+     */
+    String fingerprint();
+
+    /**
+     * Adapts a plain builder whose snapshots never go stale (tests, benchmarks).
+     */
+    static IndexSource of(Function<String, FolderIndex> builder) {
+        return new IndexSource() {
+            @Override
+            public FolderIndex build(String directoryPath) {
+                return builder.apply(directoryPath);
+            }
+
+            @Override
+            public FolderManifest manifest(String directoryPath) {
+                return FolderManifest.EMPTY;
+            }
+
+            @Override
+            public String fingerprint() {
+                return "";
+            }
+        };
+    }
+}
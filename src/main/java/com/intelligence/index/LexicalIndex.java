@@ -0,0 +1,147 @@
+package com.intelligence.index;
+
+import dev.langchain4j.data.segment.TextSegment;
+import org.roaringbitmap.RoaringBitmap;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * Inverted index over one {@link FolderIndex}'s segment texts, scored with BM25. It backs the
+ * keyword fallback used when a query cannot be embedded in time, so it needs no model at all.
+ */
+final class LexicalIndex {
+    private static final Pattern NON_WORD = Pattern.compile("[^\\p{L}\\p{N}]+");
+    private static final double K1 = 1.2;
+    private static final double B = 0.75;
+
+    // Rough heap per term: map entry, String and its array, Postings and its two array headers
+    private static final int TERM_OVERHEAD_BYTES = 150;
+
+    private final Map<String, Postings> postings;
+    private final int[] lengths;
+    private final double averageLength;
+    private final long estimatedBytes;
+
+    private record Postings(int[] rows, int[] frequencies) {
+    }
+
+    private LexicalIndex(Map<String, Postings> postings, int[] lengths, double averageLength, long estimatedBytes) {
+        this.postings = postings;
+        this.lengths = lengths;
+        this.averageLength = averageLength;
+        this.estimatedBytes = estimatedBytes;
+    }
+
+    static LexicalIndex of(List<TextSegment> segments) {
+        Builder builder = new Builder();
+        for (TextSegment segment : segments) builder.add(segment.text());
+        return builder.build();
+    }
+
+    /**
+     * Streams the texts block by block instead of decompressing them row by row through the cache.
+     */
+    static LexicalIndex of(SegmentTextStore texts) {
+        Builder builder = new Builder();
+        texts.forEachText(builder::add);
+        return builder.build();
+    }
+
+    /**
+     * Approximate heap held by the postings and row lengths.
+     */
+    long estimatedBytes() {
+        return estimatedBytes;
+    }
+
+    /**
+     * Adds texts in row order; only the postings are kept, never the texts.
+     */
+    static final class Builder {
+        private final Map<String, List<int[]>> building = new HashMap<>();
+        private int[] lengths = new int[256];
+        private int rows;
+        private long total;
+
+        void add(String text) {
+            Map<String, Integer> counts = new HashMap<>();
+            int length = 0;
+            for (String term : tokenizeAll(text)) {
+                counts.merge(term, 1, Integer::sum);
+                length++;
+            }
+            if (rows == lengths.length) lengths = Arrays.copyOf(lengths, rows * 2);
+            lengths[rows] = length;
+            total += length;
+            int row = rows++;
+            counts.forEach((term, count) -> building.computeIfAbsent(term, t -> new ArrayList<>()).add(new int[]{row, count}));
+        }
+
+        LexicalIndex build() {
+            Map<String, Postings> postings = new HashMap<>(building.size() * 2);
+            long bytes = (long) rows * Integer.BYTES;
+            for (Map.Entry<String, List<int[]>> entry : building.entrySet()) {
+                List<int[]> entries = entry.getValue();
+                int[] rowIds = new int[entries.size()];
+                int[] frequencies = new int[entries.size()];
+                for (int i = 0; i < entries.size(); i++) {
+                    rowIds[i] = entries.get(i)[0];
+                    frequencies[i] = entries.get(i)[1];
+                }
+                postings.put(entry.getKey(), new Postings(rowIds, frequencies));
+                bytes += TERM_OVERHEAD_BYTES + entry.getKey().length() + 2L * Integer.BYTES * entries.size();
+            }
+            return new LexicalIndex(postings, Arrays.copyOf(lengths, rows), rows == 0 ? 0 : (double) total / rows, bytes);
+        }
+    }
+
+    static Set<String> tokenize(String text) {
+        Set<String> terms = new LinkedHashSet<>();
+        for (String token : NON_WORD.split(text.toLowerCase(Locale.ROOT))) {
+            if (token.length() > 1) terms.add(token);
+        }
+        return terms;
+    }
+
+    // Keeps duplicates, for term frequencies
+    private static List<String> tokenizeAll(String text) {
+        List<String> terms = new ArrayList<>();
+        for (String token : NON_WORD.split(text.toLowerCase(Locale.ROOT))) {
+            if (token.length() > 1) terms.add(token);
+        }
+        return terms;
+    }
+
+    /**
+     * BM25 top-k over rows in {@code allowed} (null for all) that are not tombstoned.
+     */
+    TopK search(Set<String> queryTerms, int k, BitSet deleted, RoaringBitmap allowed) {
+        Map<Integer, Double> scores = new HashMap<>();
+        int documents = lengths.length;
+        for (String term : queryTerms) {
+            Postings p = postings.get(term);
+            if (p == null) continue;
+            double idf = Math.log(1 + (documents - p.rows().length + 0.5) / (p.rows().length + 0.5));
+            for (int i = 0; i < p.rows().length; i++) {
+                int row = p.rows()[i];
+                if (deleted != null && deleted.get(row)) continue;
+                if (allowed != null && !allowed.contains(row)) continue;
+                double tf = p.frequencies()[i];
+                double norm = tf + K1 * (1 - B + B * lengths[row] / Math.max(averageLength, 1e-9));
+                scores.merge(row, idf * tf * (K1 + 1) / norm, Double::sum);
+            }
+        }
+        TopK top = new TopK(Math.max(1, Math.min(k, scores.size())));
+        scores.forEach(top::offer);
+        return top;
+    }
+}
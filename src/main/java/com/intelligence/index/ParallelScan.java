@@ -0,0 +1,175 @@
+package com.intelligence.index;
+
+import org.roaringbitmap.RoaringBitmap;
+
+import java.util.BitSet;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * How {@link FolderIndex} splits an exact scan across cores. The vector matrix is cut into
+ * blocks of roughly {@value #BLOCK_BYTES} bytes (about an L2 cache), each block keeps its own
+ * top-k and the partial results are merged pairwise as the fork-join tasks complete.
+ *
+ * <p>Defaults come from the system properties {@value #PARALLELISM_PROPERTY} (worker count,
+ * default: available processors) and {@value #MIN_ROWS_PROPERTY} (smallest index scanned in
+ * parallel, default {@value #DEFAULT_MIN_ROWS}); below that, forking costs more than it saves.
+ */
+public final class ParallelScan {
+    public static final String PARALLELISM_PROPERTY = "docintel.search.parallelism";
+    public static final String MIN_ROWS_PROPERTY = "docintel.search.parallel.min.rows";
+    static final int DEFAULT_MIN_ROWS = 50_000;
+    static final int BLOCK_BYTES = 256 * 1024;
+
+    private static final ParallelScan SEQUENTIAL = new ParallelScan(1, Integer.MAX_VALUE);
+    private static volatile ParallelScan defaults;
+
+    private final int parallelism;
+    private final int minRows;
+    // Dedicated so the configured parallelism holds regardless of the common pool's size; workers start lazily
+    private final ForkJoinPool pool;
+
+    private ParallelScan(int parallelism, int minRows) {
+        this.parallelism = Math.max(1, parallelism);
+        this.minRows = Math.max(1, minRows);
+        this.pool = this.parallelism > 1 ? new ForkJoinPool(this.parallelism) : null;
+    }
+
+    /**
+     * @param parallelism number of fork-join workers
+     * @param minRows     indexes with fewer rows are scanned on the calling thread
+     */
+    public static ParallelScan of(int parallelism, int minRows) {
+        return new ParallelScan(parallelism, minRows);
+    }
+
+    public static ParallelScan sequential() {
+        return SEQUENTIAL;
+    }
+
+    /**
+     * Settings used by {@link FolderIndex#search(float[], int)}, read once from system properties.
+     */
+    public static ParallelScan defaults() {
+        ParallelScan current = defaults;
+        if (current == null) {
+            current = of(Integer.getInteger(PARALLELISM_PROPERTY, Runtime.getRuntime().availableProcessors()),
+                    Integer.getInteger(MIN_ROWS_PROPERTY, DEFAULT_MIN_ROWS));
+            defaults = current;
+        }
+        return current;
+    }
+
+    public int parallelism() {
+        return parallelism;
+    }
+
+    public int minRows() {
+        return minRows;
+    }
+
+    boolean appliesTo(int rows) {
+        return parallelism > 1 && rows >= minRows;
+    }
+
+    static int blockRows(int dimension) {
+        return Math.max(64, BLOCK_BYTES / (Math.max(1, dimension) * Float.BYTES));
+    }
+
+    TopK scan(FolderIndex index, float[] query, float queryNorm, int k, BitSet deleted, RoaringBitmap allowed) {
+        return pool.invoke(new BlockTask(index, query, queryNorm, k, deleted, allowed, 0, index.size(),
+                blockRows(index.dimension())));
+    }
+
+    TopK[] scanBatch(FolderIndex index, float[][] queries, float[] queryNorms, int k, BitSet deleted,
+                     RoaringBitmap allowed) {
+        return pool.invoke(new BatchBlockTask(index, queries, queryNorms, k, deleted, allowed, 0, index.size(),
+                blockRows(index.dimension())));
+    }
+
+    private static final class BlockTask extends RecursiveTask<TopK> {
+        private final FolderIndex index;
+        private final float[] query;
+        private final float queryNorm;
+        private final int k;
+        private final BitSet deleted;
+        private final RoaringBitmap allowed;
+        private final int from;
+        private final int to;
+        private final int blockRows;
+
+        BlockTask(FolderIndex index, float[] query, float queryNorm, int k, BitSet deleted, RoaringBitmap allowed,
+                  int from, int to, int blockRows) {
+            this.index = index;
+            this.query = query;
+            this.queryNorm = queryNorm;
+            this.k = k;
+            this.deleted = deleted;
+            this.allowed = allowed;
+            this.from = from;
+            this.to = to;
+            this.blockRows = blockRows;
+        }
+
+        @Override
+        protected TopK compute() {
+            if (to - from <= blockRows) {
+                TopK top = new TopK(k);
+                index.scoreRange(query, queryNorm, from, to, deleted, allowed, top);
+                return top;
+            }
+            int mid = (from + to) >>> 1;
+            BlockTask left = new BlockTask(index, query, queryNorm, k, deleted, allowed, from, mid, blockRows);
+            BlockTask right = new BlockTask(index, query, queryNorm, k, deleted, allowed, mid, to, blockRows);
+            left.fork();
+            TopK merged = right.compute();
+            merged.addAll(left.join());
+            return merged;
+        }
+    }
+
+    /**
+     * {@link BlockTask} for a batch of queries: each leaf scores its block against all of them.
+     */
+    private static final class BatchBlockTask extends RecursiveTask<TopK[]> {
+        private final FolderIndex index;
+        private final float[][] queries;
+        private final float[] queryNorms;
+        private final int k;
+        private final BitSet deleted;
+        private final RoaringBitmap allowed;
+        private final int from;
+        private final int to;
+        private final int blockRows;
+
+        BatchBlockTask(FolderIndex index, float[][] queries, float[] queryNorms, int k, BitSet deleted,
+                       RoaringBitmap allowed, int from, int to, int blockRows) {
+            this.index = index;
+            this.queries = queries;
+            this.queryNorms = queryNorms;
+            this.k = k;
+            this.deleted = deleted;
+            this.allowed = allowed;
+            this.from = from;
+            this.to = to;
+            this.blockRows = blockRows;
+        }
+
+        @Override
+        protected TopK[] compute() {
+            if (to - from <= blockRows) {
+                TopK[] tops = TopK.array(queries.length, k);
+                index.scoreBlocks(queries, queryNorms, from, to, deleted, allowed, tops);
+                return tops;
+            }
+            int mid = (from + to) >>> 1;
+            BatchBlockTask left = new BatchBlockTask(index, queries, queryNorms, k, deleted, allowed, from, mid, blockRows);
+            BatchBlockTask right = new BatchBlockTask(index, queries, queryNorms, k, deleted, allowed, mid, to, blockRows);
+            left.fork();
+            TopK[] merged = right.compute();
+            TopK[] other = left.join();
+            for (int q = 0; q < merged.length; q++) merged[q].addAll(other[q]);
+            return merged;
+        }
+    }
+}
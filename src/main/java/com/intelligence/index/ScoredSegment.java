@@ -0,0 +1,14 @@
+package com.intelligence.index;
+
+import dev.langchain4j.data.segment.TextSegment;
+
+/**
+ * A retrieved segment together with its cosine similarity to the query.
+ */
+public record ScoredSegment(TextSegment segment, double score) {
+
+    public String fileName() {
+        String fileName = segment.metadata().getString("file_name");
+        return fileName != null ? fileName : "Unknown";
+    }
+}
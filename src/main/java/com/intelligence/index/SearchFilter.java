@@ -0,0 +1,96 @@
+package com.intelligence.index;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.format.DateTimeParseException;
+import java.time.temporal.ChronoUnit;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * Restricts a search to segments whose source file matches every given criterion; within a
+ * criterion any value matches (e.g. extensions {@code pdf, docx}). Empty sets and null bounds
+ * mean "no restriction". Matching is resolved against each segment's bitmap indexes before
+ * scoring, so non-matching segments are never scored.
+ */
+public record SearchFilter(Set<String> fileNames, Set<String> extensions, Set<String> directories,
+                           Instant modifiedAfter, Instant modifiedBefore) {
+    public static final SearchFilter NONE = new SearchFilter(Set.of(), Set.of(), Set.of(), null, null);
+
+    public SearchFilter {
+        fileNames = lowerCase(fileNames);
+        extensions = lowerCase(extensions);
+        directories = Set.copyOf(directories);
+    }
+
+    public boolean isEmpty() {
+        return fileNames.isEmpty() && extensions.isEmpty() && directories.isEmpty()
+                && modifiedAfter == null && modifiedBefore == null;
+    }
+
+    /**
+     * Parses space separated {@code key:value[,value]} terms, as typed by users or passed by the model:
+     * {@code file:roadmap.docx}, {@code ext:pdf,docx}, {@code dir:reports}, {@code modified:7d}
+     * (within the last 7 days; also {@code h}), {@code after:2026-01-01}, {@code before:2026-02-01}.
+     *
+     * @throws IllegalArgumentException for unknown keys or malformed values
+     */
+    public static SearchFilter parse(String expression) {
+        if (expression == null || expression.isBlank()) return NONE;
+        Set<String> files = new HashSet<>();
+        Set<String> extensions = new HashSet<>();
+        Set<String> directories = new HashSet<>();
+        Instant after = null;
+        Instant before = null;
+        for (String term : expression.trim().split("\\s+")) {
+            int colon = term.indexOf(':');
+            if (colon <= 0 || colon == term.length() - 1) {
+                throw new IllegalArgumentException("Expected key:value but got '" + term + "'");
+            }
+            String value = term.substring(colon + 1);
+            switch (term.substring(0, colon).toLowerCase(Locale.ROOT)) {
+                case "file", "name" -> files.addAll(Arrays.asList(value.split(",")));
+                case "ext", "type", "format" -> {
+                    for (String ext : value.split(",")) extensions.add(ext.startsWith(".") ? ext.substring(1) : ext);
+                }
+                case "dir", "directory" -> directories.addAll(Arrays.asList(value.split(",")));
+                case "modified" -> after = Instant.now().truncatedTo(ChronoUnit.SECONDS).minus(parseAge(value));
+                case "after" -> after = parseDate(value);
+                case "before" -> before = parseDate(value);
+                default -> throw new IllegalArgumentException("Unknown filter key '" + term.substring(0, colon) + "'");
+            }
+        }
+        return new SearchFilter(files, extensions, directories, after, before);
+    }
+
+    private static Duration parseAge(String value) {
+        try {
+            long amount = Long.parseLong(value.substring(0, value.length() - 1));
+            return switch (Character.toLowerCase(value.charAt(value.length() - 1))) {
+                case 'd' -> Duration.ofDays(amount);
+                case 'h' -> Duration.ofHours(amount);
+                default -> throw new IllegalArgumentException("Age must end in d or h: '" + value + "'");
+            };
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Not an age like 7d or 12h: '" + value + "'");
+        }
+    }
+
+    private static Instant parseDate(String value) {
+        try {
+            return LocalDate.parse(value).atStartOfDay(ZoneId.systemDefault()).toInstant();
+        } catch (DateTimeParseException e) {
+            throw new IllegalArgumentException("Not a date like 2026-01-31: '" + value + "'");
+        }
+    }
+
+    private static Set<String> lowerCase(Set<String> values) {
+        Set<String> lower = new HashSet<>();
+        for (String value : values) lower.add(value.toLowerCase(Locale.ROOT));
+        return Set.copyOf(lower);
+    }
+}
@@ -0,0 +1,360 @@
+package com.intelligence.index;
+
+import com.intelligence.metrics.Metrics;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Segment texts of one {@link FolderIndex}, compressed in blocks of about {@value #BLOCK_BYTES}
+ * bytes of UTF-8 and kept in a memory-mapped file instead of as heap {@code String}s (two bytes
+ * per character, plus every chunk overlap). Blocks are deflated against a dictionary taken from
+ * the store's first block, so small blocks still share the corpus's common vocabulary. The heap
+ * only holds one int per row and a small LRU of decompressed blocks ({@value #CACHE_BLOCKS_PROPERTY},
+ * default {@value #DEFAULT_CACHE_BLOCKS}); a query decompresses only the blocks of the hits it returns.
+ *
+ * <p>Stores are written once through a {@link Builder} and immutable afterwards. The backing file
+ * lives in {@value #DIRECTORY_PROPERTY} (default: the temp directory) and is unlinked as soon as it
+ * is mapped, so it disappears with the mapping when the store becomes unreachable.
+ */
+public final class SegmentTextStore {
+    public static final String COMPRESSED_PROPERTY = "docintel.index.text.compressed";
+    public static final String DIRECTORY_PROPERTY = "docintel.index.text.dir";
+    public static final String CACHE_BLOCKS_PROPERTY = "docintel.index.text.cache.blocks";
+    static final int BLOCK_BYTES = 4 * 1024;
+    static final int DEFAULT_CACHE_BLOCKS = 16;
+    // Deflate looks back at most 32 KB, so a longer dictionary would be wasted
+    private static final int MAX_DICTIONARY_BYTES = 32 * 1024;
+    // Blocks never straddle a mapped region, so any block is one contiguous read
+    private static final long REGION_BYTES = 1L << 30;
+
+    private final MappedByteBuffer[] regions;
+    private final long[] blockOffsets;
+    private final int[] compressedLengths;
+    private final int[] rawLengths;
+    private final int[] blockFirstRows;
+    private final int[] rowOffsets;
+    private final byte[] dictionary;
+    private final long rawBytes;
+    private final long compressedBytes;
+
+    private final int cacheBlocks;
+    private final ReentrantLock cacheLock = new ReentrantLock();
+    private final Map<Integer, byte[]> cache;
+    private final AtomicLong textsRead = new AtomicLong();
+
+    private SegmentTextStore(MappedByteBuffer[] regions, long[] blockOffsets, int[] compressedLengths, int[] rawLengths,
+                             int[] blockFirstRows, int[] rowOffsets, byte[] dictionary, long rawBytes, int cacheBlocks) {
+        this.regions = regions;
+        this.blockOffsets = blockOffsets;
+        this.compressedLengths = compressedLengths;
+        this.rawLengths = rawLengths;
+        this.blockFirstRows = blockFirstRows;
+        this.rowOffsets = rowOffsets;
+        this.dictionary = dictionary;
+        this.rawBytes = rawBytes;
+        this.compressedBytes = Arrays.stream(compressedLengths).asLongStream().sum();
+        this.cacheBlocks = Math.max(1, cacheBlocks);
+        this.cache = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, byte[]> eldest) {
+                return size() > SegmentTextStore.this.cacheBlocks;
+            }
+        };
+    }
+
+    /**
+     * True when {@value #COMPRESSED_PROPERTY} asks for segment texts to be kept compressed.
+     */
+    public static boolean enabled() {
+        return Boolean.getBoolean(COMPRESSED_PROPERTY);
+    }
+
+    public static Builder builder() {
+        return new Builder(Paths.get(System.getProperty(DIRECTORY_PROPERTY, System.getProperty("java.io.tmpdir"))),
+                Integer.getInteger(CACHE_BLOCKS_PROPERTY, DEFAULT_CACHE_BLOCKS));
+    }
+
+    /**
+     * The text of the given row, decompressing its block unless it is cached.
+     */
+    public String text(int row) {
+        int block = blockOf(row);
+        byte[] raw = block(block);
+        int offset = rowOffsets[row];
+        int end = row + 1 < rowOffsets.length && (block + 1 >= blockFirstRows.length || row + 1 < blockFirstRows[block + 1])
+                ? rowOffsets[row + 1] : rawLengths[block];
+        textsRead.incrementAndGet();
+        Metrics.counter("index.text.reads").increment();
+        return new String(raw, offset, end - offset, StandardCharsets.UTF_8);
+    }
+
+    public int size() {
+        return rowOffsets.length;
+    }
+
+    /**
+     * Passes every row's text to {@code action} in row order, inflating each block once. The pass
+     * bypasses the block cache, so it neither evicts the blocks of recent hits nor counts as reads,
+     * and holds one block at a time.
+     */
+    void forEachText(Consumer<String> action) {
+        for (int block = 0; block < blockFirstRows.length; block++) {
+            byte[] raw = inflate(block);
+            int end = block + 1 < blockFirstRows.length ? blockFirstRows[block + 1] : rowOffsets.length;
+            for (int row = blockFirstRows[block]; row < end; row++) {
+                int to = row + 1 < end ? rowOffsets[row + 1] : rawLengths[block];
+                action.accept(new String(raw, rowOffsets[row], to - rowOffsets[row], StandardCharsets.UTF_8));
+            }
+        }
+    }
+
+    /**
+     * UTF-8 bytes of all texts before compression.
+     */
+    public long rawBytes() {
+        return rawBytes;
+    }
+
+    /**
+     * Bytes of the mapped file, the most the store can keep resident in the page cache.
+     */
+    public long compressedBytes() {
+        return compressedBytes;
+    }
+
+    /**
+     * Heap held by the store: row and block tables, the dictionary and at most the cached blocks.
+     */
+    public long heapBytes() {
+        return (long) rowOffsets.length * Integer.BYTES
+                + (long) blockOffsets.length * (Long.BYTES + 3 * Integer.BYTES)
+                + dictionary.length
+                + (long) Math.min(cacheBlocks, blockOffsets.length) * BLOCK_BYTES;
+    }
+
+    /**
+     * Texts returned so far, for checking that queries only decompress what they return.
+     */
+    long textsRead() {
+        return textsRead.get();
+    }
+
+    private int blockOf(int row) {
+        int found = Arrays.binarySearch(blockFirstRows, row);
+        return found >= 0 ? found : -found - 2;
+    }
+
+    private byte[] block(int block) {
+        cacheLock.lock();
+        try {
+            byte[] cached = cache.get(block);
+            if (cached != null) {
+                Metrics.counter("index.text.cache.hits").increment();
+                return cached;
+            }
+        } finally {
+            cacheLock.unlock();
+        }
+        // Inflate outside the lock; two threads missing on the same block both decompress it
+        Metrics.counter("index.text.cache.misses").increment();
+        byte[] raw = inflate(block);
+        cacheLock.lock();
+        try {
+            cache.put(block, raw);
+        } finally {
+            cacheLock.unlock();
+        }
+        return raw;
+    }
+
+    private byte[] inflate(int block) {
+        long offset = blockOffsets[block];
+        ByteBuffer compressed = regions[(int) (offset / REGION_BYTES)]
+                .slice((int) (offset % REGION_BYTES), compressedLengths[block]);
+        byte[] raw = new byte[rawLengths[block]];
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(compressed);
+            int read = 0;
+            while (read < raw.length) {
+                int n = inflater.inflate(raw, read, raw.length - read);
+                if (n == 0) {
+                    if (inflater.needsDictionary()) inflater.setDictionary(dictionary);
+                    else if (inflater.finished() || inflater.needsInput()) break;
+                }
+                read += n;
+            }
+            if (read != raw.length) throw new IllegalStateException("Text block " + block + " is truncated");
+            return raw;
+        } catch (DataFormatException e) {
+            throw new IllegalStateException("Text block " + block + " is corrupt", e);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    /**
+     * Appends texts in row order and seals them into a store. Not thread-safe.
+     */
+    public static final class Builder {
+        private final Path directory;
+        private final int cacheBlocks;
+        private Path file;
+        private FileChannel channel;
+        private final Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        private byte[] dictionary;
+
+        private byte[] pending = new byte[BLOCK_BYTES];
+        private int pendingLength;
+        private int pendingRows;
+        private byte[] compressed = new byte[BLOCK_BYTES];
+
+        private long position;
+        private int blocks;
+        private long[] blockOffsets = new long[16];
+        private int[] compressedLengths = new int[16];
+        private int[] rawLengths = new int[16];
+        private int[] blockFirstRows = new int[16];
+        private int rows;
+        private int[] rowOffsets = new int[256];
+        private long rawBytes;
+
+        private Builder(Path directory, int cacheBlocks) {
+            this.directory = directory;
+            this.cacheBlocks = cacheBlocks;
+        }
+
+        /**
+         * Adds the next row's text.
+         */
+        public Builder add(String text) {
+            byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+            if (pendingRows > 0 && pendingLength + bytes.length > BLOCK_BYTES) flush();
+            if (pendingRows == 0) {
+                if (blocks == blockFirstRows.length) growBlocks();
+                blockFirstRows[blocks] = rows;
+            }
+            if (pendingLength + bytes.length > pending.length) {
+                pending = Arrays.copyOf(pending, pendingLength + bytes.length);
+            }
+            if (rows == rowOffsets.length) rowOffsets = Arrays.copyOf(rowOffsets, rows * 2);
+            rowOffsets[rows++] = pendingLength;
+            System.arraycopy(bytes, 0, pending, pendingLength, bytes.length);
+            pendingLength += bytes.length;
+            pendingRows++;
+            rawBytes += bytes.length;
+            return this;
+        }
+
+        /**
+         * Writes the last block and maps the file; the builder cannot be used afterwards.
+         */
+        public SegmentTextStore build() {
+            try {
+                if (pendingRows > 0) flush();
+                MappedByteBuffer[] regions = new MappedByteBuffer[(int) ((position + REGION_BYTES - 1) / REGION_BYTES)];
+                for (int r = 0; r < regions.length; r++) {
+                    long start = r * REGION_BYTES;
+                    regions[r] = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(REGION_BYTES, position - start));
+                }
+                Metrics.counter("index.text.raw_bytes").add(rawBytes);
+                Metrics.counter("index.text.compressed_bytes").add(position);
+                return new SegmentTextStore(regions, Arrays.copyOf(blockOffsets, blocks),
+                        Arrays.copyOf(compressedLengths, blocks), Arrays.copyOf(rawLengths, blocks),
+                        Arrays.copyOf(blockFirstRows, blocks), Arrays.copyOf(rowOffsets, rows),
+                        dictionary == null ? new byte[0] : dictionary, rawBytes, cacheBlocks);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Cannot map segment text store " + file, e);
+            } finally {
+                deflater.end();
+                close();
+            }
+        }
+
+        private void flush() {
+            if (dictionary == null) {
+                dictionary = Arrays.copyOfRange(pending, Math.max(0, pendingLength - MAX_DICTIONARY_BYTES), pendingLength);
+            }
+            deflater.reset();
+            if (dictionary.length > 0) deflater.setDictionary(dictionary);
+            deflater.setInput(pending, 0, pendingLength);
+            deflater.finish();
+            int length = 0;
+            while (!deflater.finished()) {
+                if (length == compressed.length) compressed = Arrays.copyOf(compressed, compressed.length * 2);
+                length += deflater.deflate(compressed, length, compressed.length - length);
+            }
+            // Skip to the next region rather than let the block straddle two mappings
+            if (position / REGION_BYTES != (position + length - 1) / REGION_BYTES) {
+                position = (position / REGION_BYTES + 1) * REGION_BYTES;
+            }
+            write(compressed, length, position);
+            blockOffsets[blocks] = position;
+            compressedLengths[blocks] = length;
+            rawLengths[blocks] = pendingLength;
+            blocks++;
+            position += length;
+            pendingLength = 0;
+            pendingRows = 0;
+        }
+
+        private void write(byte[] bytes, int length, long at) {
+            try {
+                if (channel == null) open();
+                ByteBuffer buffer = ByteBuffer.wrap(bytes, 0, length);
+                long target = at;
+                while (buffer.hasRemaining()) target += channel.write(buffer, target);
+            } catch (IOException e) {
+                close();
+                throw new UncheckedIOException("Cannot write segment text store in " + directory, e);
+            }
+        }
+
+        private void open() throws IOException {
+            Files.createDirectories(directory);
+            file = Files.createTempFile(directory, "segments-", ".txtz");
+            channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            // Unlinked right away: the open channel and later the mapping keep the data reachable
+            try {
+                Files.delete(file);
+            } catch (IOException e) {
+                file.toFile().deleteOnExit();
+            }
+        }
+
+        private void close() {
+            if (channel == null) return;
+            try {
+                channel.close();
+            } catch (IOException ignored) {
+                // the mapping, if any, stays valid without the channel
+            }
+        }
+
+        private void growBlocks() {
+            int size = blocks * 2;
+            blockOffsets = Arrays.copyOf(blockOffsets, size);
+            compressedLengths = Arrays.copyOf(compressedLengths, size);
+            rawLengths = Arrays.copyOf(rawLengths, size);
+            blockFirstRows = Arrays.copyOf(blockFirstRows, size);
+        }
+    }
+}
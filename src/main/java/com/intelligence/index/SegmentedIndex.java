@@ -0,0 +1,520 @@
+package com.intelligence.index;
+
+import com.intelligence.metrics.Metrics;
+import com.intelligence.metrics.Timer;
+import dev.langchain4j.data.document.Metadata;
+import org.roaringbitmap.RoaringBitmap;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.IntStream;
+
+/**
+ * A folder index that changes file by file without rewriting everything, in the style of an
+ * LSM tree: immutable {@link FolderIndex} segments plus a small buffer segment that new files
+ * are appended to and that is sealed once it reaches {@link #DEFAULT_BUFFER_ROWS} rows.
+ * Removed or replaced files are only marked in per-segment tombstone bitsets; a background
+ * merger later rewrites segments that are mostly dead and folds the smallest ones together
+ * when there are more than {@link #DEFAULT_MAX_SEGMENTS}.
+ *
+ * <p>All state lives in one immutable {@link View}. Queries read it from a volatile field and
+ * never lock, so ingestion and merging never block them; writers serialize on a lock and
+ * publish a new view, copying only the buffer and the bitsets they touch.
+ *
+ * <p>With {@value VectorArena#OFF_HEAP_PROPERTY} set, every segment keeps its vectors in one
+ * shared {@link VectorArena}. Merges then move slot numbers instead of copying vectors, and the
+ * slots of expunged rows are freed for reuse once no query that could still see them is running.
+ *
+ * <p>With {@value SegmentTextStore#COMPRESSED_PROPERTY} set, sealed segments keep their texts in
+ * a {@link SegmentTextStore}; only the small buffer holds strings. Hits are ranked across all
+ * segments first and only the final top-k texts are decompressed.
+ */
+public class SegmentedIndex {
+    private static final Logger log = LoggerFactory.getLogger(SegmentedIndex.class);
+
+    static final int DEFAULT_BUFFER_ROWS = 4_096;
+    static final int DEFAULT_MAX_SEGMENTS = 8;
+    static final int MERGE_FACTOR = 4;
+    static final double EXPUNGE_RATIO = 0.3;
+
+    private final String directoryPath;
+    private final String fingerprint;
+    private final int bufferRows;
+    private final int maxSegments;
+
+    private final ReentrantLock writeLock = new ReentrantLock();
+    /** One merge at a time: two merges picking the same segments would publish both copies. */
+    private final ReentrantLock mergeLock = new ReentrantLock();
+    private final AtomicBoolean merging = new AtomicBoolean();
+    private volatile View view;
+
+    private final boolean offHeap;
+    private final boolean compressText;
+    private volatile VectorArena arena;
+    // Queries in flight, and arena slots that are unreachable from the current view but may
+    // still be scored by one of them; they are freed once no query is running
+    private final AtomicInteger readers = new AtomicInteger();
+    private final ConcurrentLinkedQueue<int[]> retired = new ConcurrentLinkedQueue<>();
+
+    /**
+     * One immutable segment with its tombstones; {@code deleted} is never mutated once published.
+     */
+    record Segment(FolderIndex index, BitSet deleted, int deletedCount, Map<String, int[]> rowsByFile) {
+
+        static Segment of(FolderIndex index) {
+            Map<String, List<Integer>> rows = new HashMap<>();
+            for (int row = 0; row < index.size(); row++) {
+                rows.computeIfAbsent(fileName(index.metadata(row)), f -> new ArrayList<>()).add(row);
+            }
+            Map<String, int[]> rowsByFile = new HashMap<>();
+            rows.forEach((file, list) -> rowsByFile.put(file, list.stream().mapToInt(Integer::intValue).toArray()));
+            return new Segment(index, new BitSet(), 0, Map.copyOf(rowsByFile));
+        }
+
+        int live() {
+            return index.size() - deletedCount;
+        }
+
+        Segment without(Set<String> fileNames) {
+            BitSet copy = null;
+            for (String file : fileNames) {
+                int[] rows = rowsByFile.get(file);
+                if (rows == null) continue;
+                if (copy == null) copy = (BitSet) deleted.clone();
+                for (int row : rows) copy.set(row);
+            }
+            return copy == null ? this : new Segment(index, copy, copy.cardinality(), rowsByFile);
+        }
+    }
+
+    /**
+     * Sealed segments oldest first, the buffer, and the files the live rows came from.
+     */
+    record View(List<Segment> sealed, Segment buffer, FolderManifest manifest) {
+
+        List<Segment> all() {
+            List<Segment> all = new ArrayList<>(sealed);
+            all.add(buffer);
+            return all;
+        }
+    }
+
+    SegmentedIndex(FolderIndex base, int bufferRows, int maxSegments) {
+        this(base, bufferRows, maxSegments, false);
+    }
+
+    SegmentedIndex(FolderIndex base, int bufferRows, int maxSegments, boolean offHeap) {
+        this(base, bufferRows, maxSegments, offHeap, false);
+    }
+
+    SegmentedIndex(FolderIndex base, int bufferRows, int maxSegments, boolean offHeap, boolean compressText) {
+        this.directoryPath = base.directoryPath();
+        this.fingerprint = base.fingerprint();
+        this.bufferRows = bufferRows;
+        this.maxSegments = maxSegments;
+        this.offHeap = offHeap;
+        this.compressText = compressText;
+        base = adopt(base);
+        List<Segment> sealed = base.size() == 0 ? List.of() : List.of(Segment.of(base));
+        this.view = new View(sealed, Segment.of(empty(base.manifest())), base.manifest());
+    }
+
+    /**
+     * Starts from a fully built (or snapshot-loaded) folder as a single sealed segment.
+     */
+    public static SegmentedIndex of(FolderIndex base) {
+        return new SegmentedIndex(base, DEFAULT_BUFFER_ROWS, DEFAULT_MAX_SEGMENTS, VectorArena.enabled(),
+                SegmentTextStore.enabled());
+    }
+
+    /**
+     * Replaces every file present in {@code changes} and drops {@code removedFiles}. Rows of the
+     * old versions are tombstoned; the new rows go to the buffer, or straight to a new segment
+     * when the change alone fills one.
+     */
+    public void apply(FolderIndex changes, Set<String> removedFiles) {
+        Set<String> replaced = new HashSet<>(removedFiles);
+        replaced.addAll(changes.manifest().files().keySet());
+        for (int row = 0; row < changes.size(); row++) replaced.add(fileName(changes.metadata(row)));
+
+        Segment dropped = null;
+        writeLock.lock();
+        try {
+            View current = view;
+            List<Segment> sealed = new ArrayList<>(current.sealed().size() + 1);
+            for (Segment segment : current.sealed()) sealed.add(segment.without(replaced));
+            Segment buffer = current.buffer().without(replaced);
+
+            if (changes.size() >= bufferRows) {
+                sealed.add(Segment.of(adopt(changes)));
+            } else if (changes.size() > 0) {
+                FolderIndex grown = FolderIndex.concat(arenaFor(changes), false, directoryPath, List.of(buffer.index(), changes),
+                        Arrays.asList(buffer.deleted(), null), null, FolderManifest.EMPTY, fingerprint);
+                dropped = buffer;
+                buffer = Segment.of(grown);
+            }
+            if (buffer.index().size() >= bufferRows) {
+                // Same rows and tombstones, with the texts compressed now that the segment is sealed
+                sealed.add(compressText ? new Segment(buffer.index().withCompressedText(), buffer.deleted(),
+                        buffer.deletedCount(), buffer.rowsByFile()) : buffer);
+                buffer = Segment.of(empty(FolderManifest.EMPTY));
+                Metrics.counter("index.buffer_flushes").increment();
+            }
+
+            Map<String, FolderManifest.FileStamp> files = new HashMap<>(current.manifest().files());
+            files.keySet().removeAll(replaced);
+            files.putAll(changes.manifest().files());
+            view = new View(List.copyOf(sealed), buffer, new FolderManifest(files));
+        } finally {
+            writeLock.unlock();
+        }
+        if (dropped != null) retire(dropped, dropped.deleted());
+        Metrics.counter("index.files_applied").add(replaced.size());
+        maybeMerge();
+    }
+
+    /**
+     * Returns the {@code k} live segments most similar to the query vector across all segments, best first.
+     */
+    public List<ScoredSegment> search(float[] query, int k) {
+        return search(query, k, ParallelScan.defaults());
+    }
+
+    public List<ScoredSegment> search(float[] query, int k, ParallelScan scan) {
+        return search(query, k, scan, SearchFilter.NONE);
+    }
+
+    /**
+     * Like {@link #search(float[], int, ParallelScan)} but only scores segments matching the filter,
+     * resolved per segment through its bitmap indexes.
+     */
+    public List<ScoredSegment> search(float[] query, int k, ParallelScan scan, SearchFilter filter) {
+        if (k <= 0) return List.of();
+        readers.incrementAndGet();
+        View current = view;
+        try (Timer.Sample ignored = Metrics.timer(Metrics.RANK_COSINE).start()) {
+            float queryNorm = FolderIndex.norm(query, 0, query.length);
+            List<FolderIndex.Hit> candidates = new ArrayList<>();
+            for (Segment segment : current.all()) {
+                if (segment.live() == 0) continue;
+                RoaringBitmap allowed = filter.isEmpty() ? null : segment.index().attributes().matching(filter);
+                if (allowed != null && allowed.isEmpty()) continue;
+                candidates.addAll(segment.index().rank(query, queryNorm, k, scan,
+                        segment.deletedCount() == 0 ? null : segment.deleted(), allowed));
+            }
+            return best(candidates, k);
+        } finally {
+            release();
+        }
+    }
+
+    /**
+     * Top-k for several query vectors under one filter, each list as
+     * {@link #search(float[], int, ParallelScan, SearchFilter)} would return it, ranked in one pass
+     * over each segment's vectors instead of one pass per query.
+     */
+    public List<List<ScoredSegment>> searchBatch(float[][] queries, int k, ParallelScan scan, SearchFilter filter) {
+        if (k <= 0) return Collections.nCopies(queries.length, List.of());
+        readers.incrementAndGet();
+        View current = view;
+        try (Timer.Sample ignored = Metrics.timer("ranking.cosine_batch").start()) {
+            float[] queryNorms = new float[queries.length];
+            List<List<FolderIndex.Hit>> candidates = new ArrayList<>(queries.length);
+            for (int q = 0; q < queries.length; q++) {
+                queryNorms[q] = FolderIndex.norm(queries[q], 0, queries[q].length);
+                candidates.add(new ArrayList<>());
+            }
+            for (Segment segment : current.all()) {
+                if (segment.live() == 0) continue;
+                RoaringBitmap allowed = filter.isEmpty() ? null : segment.index().attributes().matching(filter);
+                if (allowed != null && allowed.isEmpty()) continue;
+                List<List<FolderIndex.Hit>> ranked = segment.index().rankBatch(queries, queryNorms, k, scan,
+                        segment.deletedCount() == 0 ? null : segment.deleted(), allowed);
+                for (int q = 0; q < queries.length; q++) candidates.get(q).addAll(ranked.get(q));
+            }
+            List<List<ScoredSegment>> results = new ArrayList<>(queries.length);
+            for (List<FolderIndex.Hit> hits : candidates) results.add(best(hits, k));
+            return results;
+        } finally {
+            release();
+        }
+    }
+
+    /**
+     * Keyword (BM25) ranking over the live segments matching the filter, for when the query
+     * cannot be embedded. Needs no model; each segment's inverted index is built on first use.
+     */
+    public List<ScoredSegment> lexicalSearch(String query, int k, SearchFilter filter) {
+        if (k <= 0) return List.of();
+        View current = view;
+        Set<String> terms = LexicalIndex.tokenize(query);
+        try (Timer.Sample ignored = Metrics.timer("ranking.lexical").start()) {
+            List<FolderIndex.Hit> candidates = new ArrayList<>();
+            for (Segment segment : current.all()) {
+                if (segment.live() == 0) continue;
+                RoaringBitmap allowed = filter.isEmpty() ? null : segment.index().attributes().matching(filter);
+                if (allowed != null && allowed.isEmpty()) continue;
+                candidates.addAll(segment.index().rankLexical(terms, k,
+                        segment.deletedCount() == 0 ? null : segment.deleted(), allowed));
+            }
+            return best(candidates, k);
+        }
+    }
+
+    // Only the hits that make the final cut have their text read, which for compressed segments means decompressed
+    private static List<ScoredSegment> best(List<FolderIndex.Hit> candidates, int k) {
+        candidates.sort(Comparator.comparingDouble(FolderIndex.Hit::score).reversed());
+        return FolderIndex.toScored(candidates.size() <= k ? candidates : candidates.subList(0, k));
+    }
+
+    /**
+     * Live rows only, as one compact index, e.g. for writing a snapshot.
+     */
+    public FolderIndex toFolderIndex() {
+        readers.incrementAndGet();
+        try {
+            View current = view;
+            List<Segment> live = current.all().stream().filter(s -> s.live() > 0).toList();
+            if (live.size() == 1 && live.get(0).deletedCount() == 0 && !live.get(0).index().isOffHeap()
+                    && !live.get(0).index().isCompressed()) {
+                FolderIndex only = live.get(0).index();
+                return new FolderIndex(directoryPath, only.segments(), only.dimension(), only.vectors(), only.norms(),
+                        current.manifest(), fingerprint);
+            }
+            // Off-heap rows are copied onto the heap, since the result outlives this call; texts are decompressed
+            return FolderIndex.concat(directoryPath, live.stream().map(Segment::index).toList(),
+                    live.stream().map(Segment::deleted).toList(), null, current.manifest(), fingerprint);
+        } finally {
+            release();
+        }
+    }
+
+    private void maybeMerge() {
+        if (mergePlan(view).isEmpty() || !merging.compareAndSet(false, true)) return;
+        Thread.ofVirtual().name("index-merge").start(() -> {
+            try {
+                while (compactOnce()) {
+                    // keep going until the policy is satisfied
+                }
+            } catch (RuntimeException e) {
+                log.warn("Background merge of {} failed: {}", directoryPath, e.getMessage());
+            } finally {
+                merging.set(false);
+            }
+        });
+    }
+
+    /**
+     * Rewrites one group of sealed segments chosen by {@link #mergePlan(View)} into a single
+     * segment without their tombstoned rows. The copy runs without the lock; rows deleted while
+     * it ran are carried over to the merged segment before it is published.
+     *
+     * @return false when nothing needed merging
+     */
+    boolean compactOnce() {
+        mergeLock.lock();
+        try {
+            return mergeOnce();
+        } finally {
+            mergeLock.unlock();
+        }
+    }
+
+    private boolean mergeOnce() {
+        List<Segment> picks = mergePlan(view);
+        if (picks.isEmpty()) return false;
+
+        long start = System.nanoTime();
+        int[][] rowMaps = new int[picks.size()][];
+        FolderIndex merged = FolderIndex.concat(arena, compressText, directoryPath, picks.stream().map(Segment::index).toList(),
+                picks.stream().map(Segment::deleted).toList(), rowMaps, FolderManifest.EMPTY, fingerprint);
+        Segment replacement;
+
+        writeLock.lock();
+        try {
+            View current = view;
+            Map<FolderIndex, Segment> now = new IdentityHashMap<>();
+            for (Segment segment : current.sealed()) now.put(segment.index(), segment);
+
+            BitSet lateDeletes = new BitSet();
+            for (int p = 0; p < picks.size(); p++) {
+                BitSet since = (BitSet) now.get(picks.get(p).index()).deleted().clone();
+                since.andNot(picks.get(p).deleted());
+                for (int row = since.nextSetBit(0); row >= 0; row = since.nextSetBit(row + 1)) {
+                    lateDeletes.set(rowMaps[p][row]);
+                }
+            }
+            replacement = Segment.of(merged);
+            if (!lateDeletes.isEmpty()) {
+                replacement = new Segment(merged, lateDeletes, lateDeletes.cardinality(), replacement.rowsByFile());
+            }
+
+            Set<FolderIndex> pickedIndexes = Collections.newSetFromMap(new IdentityHashMap<>());
+            picks.forEach(p -> pickedIndexes.add(p.index()));
+            List<Segment> sealed = new ArrayList<>();
+            boolean placed = false;
+            for (Segment segment : current.sealed()) {
+                if (!pickedIndexes.contains(segment.index())) {
+                    sealed.add(segment);
+                } else if (!placed) {
+                    if (replacement.live() > 0) sealed.add(replacement);
+                    placed = true;
+                }
+            }
+            view = new View(List.copyOf(sealed), current.buffer(), current.manifest());
+        } finally {
+            writeLock.unlock();
+        }
+        // Merged rows keep their slots; only the expunged ones, or all of a fully dead merge, are freed
+        for (Segment pick : picks) retire(pick, pick.deleted());
+        if (replacement.live() == 0) retire(replacement, null);
+        Metrics.timer("index.merge").recordNanos(System.nanoTime() - start);
+        Metrics.counter("index.merges").increment();
+        log.debug("Merged {} segments of {} into one of {} rows", picks.size(), directoryPath, merged.size());
+        return true;
+    }
+
+    /**
+     * Mostly-dead segments are expunged on their own first; otherwise, above the segment limit,
+     * the {@value #MERGE_FACTOR} smallest are merged so the result stays size-tiered.
+     */
+    private List<Segment> mergePlan(View current) {
+        for (Segment segment : current.sealed()) {
+            if (segment.deletedCount() > 0 && segment.deletedCount() >= EXPUNGE_RATIO * segment.index().size()) {
+                return List.of(segment);
+            }
+        }
+        if (current.sealed().size() <= maxSegments) return List.of();
+        return current.sealed().stream()
+                .sorted(Comparator.comparingInt(Segment::live))
+                .limit(MERGE_FACTOR)
+                .toList();
+    }
+
+    /**
+     * Moves a heap index into the arena when running off-heap and its texts into a store when
+     * compressing; otherwise returns it unchanged.
+     */
+    private FolderIndex adopt(FolderIndex index) {
+        VectorArena target = arenaFor(index);
+        boolean moveVectors = target != null && !index.isOffHeap();
+        boolean moveTexts = compressText && !index.isCompressed() && index.size() > 0;
+        if (!moveVectors && !moveTexts) return index;
+        if (!moveVectors) return index.withCompressedText();
+        return FolderIndex.concat(target, moveTexts, directoryPath, List.of(index), Collections.singletonList(null), null,
+                index.manifest(), fingerprint);
+    }
+
+    // The arena is created with the first non-empty index, whose dimension it takes
+    private VectorArena arenaFor(FolderIndex index) {
+        if (!offHeap || index.size() == 0) return arena;
+        VectorArena current = arena;
+        if (current == null) {
+            current = new VectorArena(index.dimension());
+            arena = current;
+        }
+        return current;
+    }
+
+    /**
+     * Schedules the arena slots of the segment's rows in {@code rows} (all rows when null) for
+     * freeing. The segment must already be unreachable from the published view.
+     */
+    private void retire(Segment segment, BitSet rows) {
+        FolderIndex index = segment.index();
+        if (!index.isOffHeap() || index.size() == 0) return;
+        int[] slots = rows == null
+                ? IntStream.range(0, index.size()).map(index::slot).toArray()
+                : rows.stream().map(index::slot).toArray();
+        if (slots.length == 0) return;
+        retired.add(slots);
+        if (readers.get() == 0) reclaim();
+    }
+
+    private void release() {
+        if (readers.decrementAndGet() == 0 && !retired.isEmpty()) reclaim();
+    }
+
+    // Slots drained before seeing zero readers were retired before any query now running started
+    private void reclaim() {
+        List<int[]> batch = new ArrayList<>();
+        for (int[] slots = retired.poll(); slots != null; slots = retired.poll()) batch.add(slots);
+        if (batch.isEmpty()) return;
+        if (readers.get() != 0) {
+            retired.addAll(batch);
+            return;
+        }
+        int freed = 0;
+        for (int[] slots : batch) {
+            for (int slot : slots) arena.free(slot);
+            freed += slots.length;
+        }
+        Metrics.counter("index.offheap.slots_freed").add(freed);
+    }
+
+    private FolderIndex empty(FolderManifest manifest) {
+        return new FolderIndex(directoryPath, List.of(), 0, new float[0], new float[0], manifest, fingerprint);
+    }
+
+    private static String fileName(Metadata metadata) {
+        String fileName = metadata.getString("file_name");
+        return fileName != null ? fileName : "";
+    }
+
+    /**
+     * Live segments across all segments and the buffer.
+     */
+    public int size() {
+        return view.all().stream().mapToInt(Segment::live).sum();
+    }
+
+    public int segmentCount() {
+        View current = view;
+        return current.sealed().size() + (current.buffer().index().size() > 0 ? 1 : 0);
+    }
+
+    /**
+     * Approximate heap footprint including dead rows not yet merged away.
+     */
+    public long estimatedBytes() {
+        return view.all().stream().mapToLong(s -> s.index().estimatedBytes() + s.deleted().size() / 8).sum();
+    }
+
+    View view() {
+        return view;
+    }
+
+    /**
+     * The arena holding the vectors when running off-heap, else null.
+     */
+    VectorArena arena() {
+        return arena;
+    }
+
+    public FolderManifest manifest() {
+        return view.manifest();
+    }
+
+    public String fingerprint() {
+        return fingerprint;
+    }
+
+    public String directoryPath() {
+        return directoryPath;
+    }
+}
@@ -0,0 +1,96 @@
+package com.intelligence.index;
+
+/**
+ * Bounded min-heap of (row, score) pairs on primitive arrays, so scanning a block does not
+ * allocate per candidate. Ties keep the earlier row, matching a sequential scan.
+ */
+final class TopK {
+    private final int capacity;
+    private final int[] rows;
+    private final double[] scores;
+    private int size;
+
+    TopK(int capacity) {
+        this.capacity = capacity;
+        this.rows = new int[capacity];
+        this.scores = new double[capacity];
+    }
+
+    static TopK[] array(int count, int capacity) {
+        TopK[] tops = new TopK[count];
+        for (int i = 0; i < count; i++) tops[i] = new TopK(capacity);
+        return tops;
+    }
+
+    void offer(int row, double score) {
+        if (size < capacity) {
+            rows[size] = row;
+            scores[size] = score;
+            siftUp(size++);
+        } else if (worse(0, row, score)) {
+            rows[0] = row;
+            scores[0] = score;
+            siftDown(0);
+        }
+    }
+
+    void addAll(TopK other) {
+        for (int i = 0; i < other.size; i++) offer(other.rows[i], other.scores[i]);
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * Rows ordered best first; consumes the heap.
+     */
+    int[] drainRows(double[] scoresOut) {
+        int[] ordered = new int[size];
+        for (int i = size - 1; i >= 0; i--) {
+            ordered[i] = rows[0];
+            scoresOut[i] = scores[0];
+            size--;
+            rows[0] = rows[size];
+            scores[0] = scores[size];
+            siftDown(0);
+        }
+        return ordered;
+    }
+
+    // True when the heap slot ranks below the candidate: lower score, or equal score but a later row
+    private boolean worse(int slot, int row, double score) {
+        return scores[slot] < score || (scores[slot] == score && rows[slot] > row);
+    }
+
+    private void siftUp(int i) {
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            if (!worse(i, rows[parent], scores[parent])) break;
+            swap(i, parent);
+            i = parent;
+        }
+    }
+
+    private void siftDown(int i) {
+        while (true) {
+            int left = 2 * i + 1;
+            if (left >= size) return;
+            int smallest = left;
+            int right = left + 1;
+            if (right < size && worse(right, rows[left], scores[left])) smallest = right;
+            if (!worse(smallest, rows[i], scores[i])) return;
+            swap(i, smallest);
+            i = smallest;
+        }
+    }
+
+    private void swap(int a, int b) {
+        int row = rows[a];
+        rows[a] = rows[b];
+        rows[b] = row;
+        double score = scores[a];
+        scores[a] = scores[b];
+        scores[b] = score;
+    }
+}
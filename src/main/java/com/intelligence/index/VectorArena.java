@@ -0,0 +1,157 @@
+package com.intelligence.index;
+
+import com.intelligence.metrics.Metrics;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Off-heap store of fixed-dimension vectors and their norms, addressed by int slot. Rows live
+ * in direct buffers of about {@value #PAGE_BYTES} bytes, outside the collected heap, so a
+ * million-row folder costs the garbage collector a few hundred buffer objects instead of a
+ * matrix it has to trace and copy. Every row starts on a {@value #ALIGNMENT}-byte boundary so
+ * it never straddles a cache line and a vectorized scorer can load it with aligned reads.
+ *
+ * <p>Slots freed with {@link #free(int)} are handed out again by {@link #append(float[])} before
+ * the arena grows, so churn does not leak memory. Freeing is the caller's responsibility once no
+ * reader can still score the slot; {@link SegmentedIndex} defers it until in-flight queries finish.
+ * Reads never lock; appends and frees serialize on a lock.
+ *
+ * <p>Pages are released when the arena becomes unreachable (direct buffers have no explicit free);
+ * Java 22's {@code java.lang.foreign.Arena} would allow that deterministically.
+ */
+public final class VectorArena {
+    public static final String OFF_HEAP_PROPERTY = "docintel.index.offheap";
+    static final int PAGE_BYTES = 8 * 1024 * 1024;
+    static final int ALIGNMENT = 64;
+
+    private final int dimension;
+    private final int strideBytes;
+    private final int rowsPerPage;
+    private final int normsOffset;
+    private final int pageBytes;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    // Grows copy-on-write so lock-free readers always see fully initialized pages
+    private volatile ByteBuffer[] pages = new ByteBuffer[0];
+    private int nextSlot;
+    private int[] freeSlots = new int[16];
+    private int freeCount;
+
+    public VectorArena(int dimension) {
+        if (dimension <= 0) throw new IllegalArgumentException("Dimension must be positive: " + dimension);
+        this.dimension = dimension;
+        this.strideBytes = (dimension * Float.BYTES + ALIGNMENT - 1) / ALIGNMENT * ALIGNMENT;
+        this.rowsPerPage = Math.max(1, PAGE_BYTES / (strideBytes + Float.BYTES));
+        this.normsOffset = rowsPerPage * strideBytes;
+        this.pageBytes = (normsOffset + rowsPerPage * Float.BYTES + ALIGNMENT - 1) / ALIGNMENT * ALIGNMENT;
+    }
+
+    /**
+     * True when {@value #OFF_HEAP_PROPERTY} asks for folder vectors to be kept off the heap.
+     */
+    public static boolean enabled() {
+        return Boolean.getBoolean(OFF_HEAP_PROPERTY);
+    }
+
+    /**
+     * Stores the vector and returns its slot, reusing a freed slot if there is one.
+     */
+    public int append(float[] vector) {
+        return append(vector, 0, FolderIndex.norm(vector, 0, dimension));
+    }
+
+    int append(float[] source, int offset, float norm) {
+        lock.lock();
+        try {
+            int slot = freeCount > 0 ? freeSlots[--freeCount] : nextSlot++;
+            ByteBuffer page = page(slot);
+            int base = (slot % rowsPerPage) * strideBytes;
+            for (int i = 0; i < dimension; i++) page.putFloat(base + i * Float.BYTES, source[offset + i]);
+            page.putFloat(normsOffset + (slot % rowsPerPage) * Float.BYTES, norm);
+            return slot;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Makes the slot available to later appends. The caller guarantees nobody reads it afterwards.
+     */
+    public void free(int slot) {
+        lock.lock();
+        try {
+            if (freeCount == freeSlots.length) freeSlots = Arrays.copyOf(freeSlots, freeCount * 2);
+            freeSlots[freeCount++] = slot;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public float norm(int slot) {
+        return pages[slot / rowsPerPage].getFloat(normsOffset + (slot % rowsPerPage) * Float.BYTES);
+    }
+
+    /**
+     * Cosine similarity between the stored row and the query, 0 when either has no length.
+     */
+    public double cosine(int slot, float[] query, float queryNorm) {
+        ByteBuffer page = pages[slot / rowsPerPage];
+        int row = slot % rowsPerPage;
+        float norm = page.getFloat(normsOffset + row * Float.BYTES);
+        if (queryNorm == 0 || norm == 0) return 0;
+        int base = row * strideBytes;
+        double dot = 0.0;
+        for (int i = 0; i < dimension; i++) dot += query[i] * page.getFloat(base + i * Float.BYTES);
+        return dot / ((double) queryNorm * norm);
+    }
+
+    /**
+     * Copies the row into {@code target} starting at {@code offset}.
+     */
+    public void copy(int slot, float[] target, int offset) {
+        ByteBuffer page = pages[slot / rowsPerPage];
+        int base = (slot % rowsPerPage) * strideBytes;
+        for (int i = 0; i < dimension; i++) target[offset + i] = page.getFloat(base + i * Float.BYTES);
+    }
+
+    public int dimension() {
+        return dimension;
+    }
+
+    /**
+     * Slots currently holding a row.
+     */
+    public int liveSlots() {
+        lock.lock();
+        try {
+            return nextSlot - freeCount;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Off-heap bytes reserved by the arena's pages.
+     */
+    public long reservedBytes() {
+        return (long) pages.length * pageBytes;
+    }
+
+    // Caller holds the lock
+    private ByteBuffer page(int slot) {
+        int index = slot / rowsPerPage;
+        ByteBuffer[] current = pages;
+        if (index < current.length) return current[index];
+        ByteBuffer[] grown = Arrays.copyOf(current, index + 1);
+        // Over-allocate by the alignment so the slice can start on a 64-byte boundary
+        grown[index] = ByteBuffer.allocateDirect(pageBytes + ALIGNMENT)
+                .alignedSlice(ALIGNMENT)
+                .order(ByteOrder.nativeOrder());
+        pages = grown;
+        Metrics.counter("index.offheap.bytes_reserved").add(pageBytes + ALIGNMENT);
+        return grown[index];
+    }
+}
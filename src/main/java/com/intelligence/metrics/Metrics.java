@@ -0,0 +1,81 @@
+package com.intelligence.metrics;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Process-wide registry of pipeline timers, counters and value histograms.
+ * Names are dot separated (e.g. {@code reader.pdf}, {@code embedding.embed_all}).
+ */
+public final class Metrics {
+    private static final Logger log = LoggerFactory.getLogger(Metrics.class);
+
+    // Stage names shared by the instrumented call sites
+    public static final String INGEST_DIRECTORY = "ingest.directory";
+    public static final String INGEST_SPLIT = "ingest.split";
+    public static final String READER_PREFIX = "reader.";
+    public static final String EMBED_QUERY = "embedding.embed_query";
+    public static final String EMBED_ALL = "embedding.embed_all";
+    public static final String RANK_COSINE = "ranking.cosine";
+    public static final String RETRIEVE = "retriever.retrieve";
+    public static final String TOOL_SEARCH = "tool.search_documents";
+    public static final String TOOL_SUMMARIZE = "tool.summarize_document";
+    public static final String CHAT_FIRST_TOKEN = "chat.time_to_first_token";
+    public static final String CHAT_STREAM = "chat.stream";
+    public static final String TIME_TO_FIRST_ANSWER = "startup.time_to_first_answer";
+
+    private static final Map<String, Timer> TIMERS = new ConcurrentHashMap<>();
+    private static final Map<String, Counter> COUNTERS = new ConcurrentHashMap<>();
+    private static final Map<String, LatencyHistogram> HISTOGRAMS = new ConcurrentHashMap<>();
+
+    private static final AtomicBoolean FIRST_ANSWER_RECORDED = new AtomicBoolean();
+
+    private Metrics() {
+    }
+
+    /**
+     * Records JVM uptime at the first streamed answer token, once per process, so cold
+     * (no snapshot) and warm (snapshot) starts can be compared.
+     */
+    public static void recordFirstAnswer() {
+        if (!FIRST_ANSWER_RECORDED.compareAndSet(false, true)) return;
+        long uptimeMs = ManagementFactory.getRuntimeMXBean().getUptime();
+        timer(TIME_TO_FIRST_ANSWER).recordNanos(uptimeMs * 1_000_000);
+        log.info("Time to first answer: {} ms since JVM start ({} index build(s), {} snapshot load(s))",
+                uptimeMs, counter("registry.builds").count(), timer("registry.reload").histogram().count());
+    }
+
+    public static Timer timer(String name) {
+        Timer timer = TIMERS.get(name);
+        return timer != null ? timer : TIMERS.computeIfAbsent(name, Timer::new);
+    }
+
+    public static Counter counter(String name) {
+        Counter counter = COUNTERS.get(name);
+        return counter != null ? counter : COUNTERS.computeIfAbsent(name, n -> new Counter());
+    }
+
+    /**
+     * Histogram for non-latency values such as segment counts or token sizes.
+     */
+    public static LatencyHistogram histogram(String name) {
+        return HISTOGRAMS.computeIfAbsent(name, n -> new LatencyHistogram());
+    }
+
+    static Map<String, Timer> timers() {
+        return TIMERS;
+    }
+
+    static Map<String, Counter> counters() {
+        return COUNTERS;
+    }
+
+    static Map<String, LatencyHistogram> histograms() {
+        return HISTOGRAMS;
+    }
+}
@@ -0,0 +1,141 @@
+package com.intelligence.metrics;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Renders the {@link Metrics} registry as a JSON snapshot or in the Prometheus text
+ * exposition format, and can write both periodically to a directory for scraping.
+ */
+public class MetricsExporter implements AutoCloseable {
+    private static final Logger log = LoggerFactory.getLogger(MetricsExporter.class);
+    private static final ObjectMapper mapper = new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT);
+
+    private static final String PROMETHEUS_PREFIX = "docintel_";
+    private static final double[] QUANTILES = {50, 90, 99, 99.9};
+
+    public static final String JSON_FILE = "metrics.json";
+    public static final String PROMETHEUS_FILE = "metrics.prom";
+
+    private final Path outputDir;
+    private final ScheduledExecutorService scheduler;
+
+    private MetricsExporter(Path outputDir, Duration interval) {
+        this.outputDir = outputDir;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "metrics-exporter");
+            t.setDaemon(true);
+            return t;
+        });
+        long millis = interval.toMillis();
+        scheduler.scheduleAtFixedRate(this::writeSnapshot, millis, millis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Starts writing {@value #JSON_FILE} and {@value #PROMETHEUS_FILE} into the directory at a fixed interval.
+     */
+    public static MetricsExporter start(Path outputDir, Duration interval) {
+        log.info("Exporting metrics to {} every {}s", outputDir.toAbsolutePath(), interval.toSeconds());
+        return new MetricsExporter(outputDir, interval);
+    }
+
+    void writeSnapshot() {
+        try {
+            Files.createDirectories(outputDir);
+            writeAtomically(outputDir.resolve(JSON_FILE), toJson());
+            writeAtomically(outputDir.resolve(PROMETHEUS_FILE), toPrometheus());
+        } catch (IOException e) {
+            log.warn("Could not write metrics snapshot to {}: {}", outputDir, e.getMessage());
+        }
+    }
+
+    private static void writeAtomically(Path target, String content) throws IOException {
+        Path tmp = target.resolveSibling(target.getFileName() + ".tmp");
+        Files.writeString(tmp, content, StandardCharsets.UTF_8);
+        Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    public static String toJson() {
+        Map<String, Object> root = new LinkedHashMap<>();
+        root.put("timestamp", Instant.now().toString());
+
+        Map<String, Object> timers = new LinkedHashMap<>();
+        new TreeMap<>(Metrics.timers()).forEach((name, timer) -> timers.put(name, describe(timer.histogram(), 1e6)));
+        root.put("timers_ms", timers);
+
+        Map<String, Object> counters = new LinkedHashMap<>();
+        new TreeMap<>(Metrics.counters()).forEach((name, counter) -> counters.put(name, counter.count()));
+        root.put("counters", counters);
+
+        Map<String, Object> histograms = new LinkedHashMap<>();
+        new TreeMap<>(Metrics.histograms()).forEach((name, h) -> histograms.put(name, describe(h, 1)));
+        root.put("histograms", histograms);
+
+        try {
+            return mapper.writeValueAsString(root);
+        } catch (IOException e) {
+            throw new IllegalStateException("Metrics snapshot is not serializable", e);
+        }
+    }
+
+    private static Map<String, Object> describe(LatencyHistogram h, double scale) {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("count", h.count());
+        stats.put("mean", h.mean() / scale);
+        stats.put("p50", h.percentile(50) / scale);
+        stats.put("p90", h.percentile(90) / scale);
+        stats.put("p99", h.percentile(99) / scale);
+        stats.put("p999", h.percentile(99.9) / scale);
+        stats.put("max", h.max() / scale);
+        return stats;
+    }
+
+    public static String toPrometheus() {
+        StringBuilder sb = new StringBuilder();
+        new TreeMap<>(Metrics.timers()).forEach((name, timer) ->
+                appendSummary(sb, promName(name) + "_seconds", timer.histogram(), 1e9));
+        new TreeMap<>(Metrics.counters()).forEach((name, counter) -> {
+            String metric = promName(name) + "_total";
+            sb.append("# TYPE ").append(metric).append(" counter\n");
+            sb.append(metric).append(' ').append(counter.count()).append('\n');
+        });
+        new TreeMap<>(Metrics.histograms()).forEach((name, h) -> appendSummary(sb, promName(name), h, 1));
+        return sb.toString();
+    }
+
+    private static void appendSummary(StringBuilder sb, String metric, LatencyHistogram h, double scale) {
+        sb.append("# TYPE ").append(metric).append(" summary\n");
+        for (double q : QUANTILES) {
+            sb.append(metric).append("{quantile=\"").append(q / 100).append("\"} ")
+                    .append(h.percentile(q) / scale).append('\n');
+        }
+        sb.append(metric).append("_sum ").append(h.sum() / scale).append('\n');
+        sb.append(metric).append("_count ").append(h.count()).append('\n');
+    }
+
+    private static String promName(String name) {
+        return PROMETHEUS_PREFIX + name.replaceAll("[^a-zA-Z0-9_]", "_");
+    }
+
+    @Override
+    public void close() {
+        scheduler.shutdownNow();
+        writeSnapshot();
+    }
+}
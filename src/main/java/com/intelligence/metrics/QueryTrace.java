@@ -0,0 +1,133 @@
+package com.intelligence.metrics;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Per-query breakdown of where time went. A trace is opened per request of a chat session,
+ * bound to whichever thread is doing work for that session (tool calls run on
+ * the model client's threads), and kept after completion so it can be printed on demand.
+ * Only the last trace of the {@value #MAX_RETAINED} most recently finished sessions is kept.
+ */
+public final class QueryTrace {
+    static final int MAX_RETAINED = 256;
+
+    private static final ThreadLocal<QueryTrace> CURRENT = new ThreadLocal<>();
+    // A session's requests in flight, oldest first; each is finished on its own
+    private static final Map<Object, List<QueryTrace>> ACTIVE = new ConcurrentHashMap<>();
+    private static final Map<Object, QueryTrace> LAST = Collections.synchronizedMap(
+            new LinkedHashMap<>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<Object, QueryTrace> eldest) {
+                    return size() > MAX_RETAINED;
+                }
+            });
+
+    private final Object sessionId;
+    private final String query;
+    private final long startNanos = System.nanoTime();
+    private final Map<String, long[]> stages = new LinkedHashMap<>(); // stage -> {calls, totalNanos}
+    private volatile long totalNanos = -1;
+
+    private QueryTrace(Object sessionId, String query) {
+        this.sessionId = sessionId;
+        this.query = query;
+    }
+
+    /**
+     * Opens a trace for one request of the given session and binds it to the calling thread.
+     */
+    public static QueryTrace begin(Object sessionId, String query) {
+        QueryTrace trace = new QueryTrace(sessionId, query);
+        ACTIVE.compute(sessionId, (id, traces) -> {
+            List<QueryTrace> active = traces == null ? new ArrayList<>(1) : traces;
+            active.add(trace);
+            return active;
+        });
+        CURRENT.set(trace);
+        return trace;
+    }
+
+    /**
+     * Closes the request's trace and keeps it as the session's most recent one for {@link #last(Object)}.
+     * Other requests of the session still running keep their own traces.
+     */
+    public static void finish(QueryTrace trace) {
+        if (trace == null) return;
+        boolean[] removed = new boolean[1];
+        ACTIVE.computeIfPresent(trace.sessionId, (id, traces) -> {
+            removed[0] = traces.remove(trace);
+            return traces.isEmpty() ? null : traces;
+        });
+        if (!removed[0]) return;
+        trace.totalNanos = System.nanoTime() - trace.startNanos;
+        LAST.put(trace.sessionId, trace);
+        if (CURRENT.get() == trace) CURRENT.remove();
+    }
+
+    public static QueryTrace last(Object sessionId) {
+        return LAST.get(sessionId);
+    }
+
+    public static QueryTrace current() {
+        return CURRENT.get();
+    }
+
+    /**
+     * Binds the session's newest request trace to the calling thread until the scope is closed.
+     * Tools only know the session, so while requests of one session overlap, their tool time
+     * goes to the latest one.
+     */
+    public static Scope join(Object sessionId) {
+        if (sessionId == null) return bind(null);
+        QueryTrace[] newest = new QueryTrace[1];
+        ACTIVE.computeIfPresent(sessionId, (id, traces) -> {
+            newest[0] = traces.get(traces.size() - 1);
+            return traces;
+        });
+        return bind(newest[0]);
+    }
+
+    /**
+     * Binds an explicit trace (possibly null) to the calling thread, e.g. inside a worker task.
+     */
+    public static Scope bind(QueryTrace trace) {
+        QueryTrace previous = CURRENT.get();
+        if (trace != null) CURRENT.set(trace);
+        return () -> {
+            if (previous != null) CURRENT.set(previous);
+            else CURRENT.remove();
+        };
+    }
+
+    synchronized void record(String stage, long nanos) {
+        long[] entry = stages.computeIfAbsent(stage, s -> new long[2]);
+        entry[0]++;
+        entry[1] += nanos;
+    }
+
+    public synchronized Map<String, Long> stageNanos() {
+        Map<String, Long> copy = new LinkedHashMap<>();
+        stages.forEach((stage, entry) -> copy.put(stage, entry[1]));
+        return copy;
+    }
+
+    public synchronized String format() {
+        long total = totalNanos >= 0 ? totalNanos : System.nanoTime() - startNanos;
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format("--- QUERY TRACE: \"%s\" (%.1f ms total) ---%n", query, total / 1e6));
+        stages.forEach((stage, entry) -> sb.append(String.format("  %-28s %6d call(s) %10.2f ms%n",
+                stage, entry[0], entry[1] / 1e6)));
+        return sb.toString();
+    }
+
+    @FunctionalInterface
+    public interface Scope extends AutoCloseable {
+        @Override
+        void close();
+    }
+}
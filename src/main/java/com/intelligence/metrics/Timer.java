@@ -0,0 +1,50 @@
+package com.intelligence.metrics;
+
+import java.util.function.Supplier;
+
+/**
+ * Wall-clock timer for one pipeline stage. Every sample lands in the global
+ * histogram and, when a {@link QueryTrace} is bound to the calling thread, in that trace too.
+ */
+public class Timer {
+    private final String name;
+    private final LatencyHistogram histogram = new LatencyHistogram();
+
+    Timer(String name) {
+        this.name = name;
+    }
+
+    public String name() {
+        return name;
+    }
+
+    public LatencyHistogram histogram() {
+        return histogram;
+    }
+
+    public void recordNanos(long nanos) {
+        histogram.record(nanos);
+        QueryTrace trace = QueryTrace.current();
+        if (trace != null) trace.record(name, nanos);
+    }
+
+    public <T> T time(Supplier<T> body) {
+        try (Sample ignored = start()) {
+            return body.get();
+        }
+    }
+
+    /**
+     * Starts a sample meant for try-with-resources around code that throws checked exceptions.
+     */
+    public Sample start() {
+        return new Sample(this, System.nanoTime());
+    }
+
+    public record Sample(Timer timer, long startNanos) implements AutoCloseable {
+        @Override
+        public void close() {
+            timer.recordNanos(System.nanoTime() - startNanos);
+        }
+    }
+}
@@ -0,0 +1,115 @@
+package com.intelligence.model;
+
+import com.intelligence.metrics.Metrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Stops calling a dependency after {@code failureThreshold} consecutive failures (timeouts
+ * included) and lets callers take their fallback immediately. After {@code openFor} one trial
+ * call is let through: success closes the breaker, failure opens it again.
+ */
+public class CircuitBreaker {
+    private static final Logger log = LoggerFactory.getLogger(CircuitBreaker.class);
+
+    public enum State { CLOSED, OPEN, HALF_OPEN }
+
+    private final String name;
+    private final int failureThreshold;
+    private final long openForNanos;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private State state = State.CLOSED;
+    private int consecutiveFailures;
+    private long openedAt;
+    private boolean trialInFlight;
+
+    /**
+     * @param name used in logs and as the metrics prefix, e.g. {@code breaker.query_embedding}
+     */
+    public CircuitBreaker(String name, int failureThreshold, Duration openFor) {
+        this.name = name;
+        this.failureThreshold = Math.max(1, failureThreshold);
+        this.openForNanos = openFor.toNanos();
+    }
+
+    /**
+     * Whether the caller may try the dependency now; if false, use the fallback.
+     */
+    public boolean allowRequest() {
+        lock.lock();
+        try {
+            switch (state) {
+                case CLOSED -> {
+                    return true;
+                }
+                case OPEN -> {
+                    if (System.nanoTime() - openedAt < openForNanos) return false;
+                    state = State.HALF_OPEN;
+                    trialInFlight = true;
+                    return true;
+                }
+                default -> {
+                    if (trialInFlight) return false;
+                    trialInFlight = true;
+                    return true;
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void recordSuccess() {
+        lock.lock();
+        try {
+            if (state != State.CLOSED) log.info("Circuit {} closed again", name);
+            state = State.CLOSED;
+            consecutiveFailures = 0;
+            trialInFlight = false;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * For a caller that got through {@link #allowRequest()} but ended without an outcome (it was
+     * cancelled): the half-open trial goes to the next caller instead of staying taken for good.
+     */
+    public void release() {
+        lock.lock();
+        try {
+            if (state == State.HALF_OPEN) trialInFlight = false;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void recordFailure() {
+        lock.lock();
+        try {
+            consecutiveFailures++;
+            trialInFlight = false;
+            if (state == State.HALF_OPEN || (state == State.CLOSED && consecutiveFailures >= failureThreshold)) {
+                state = State.OPEN;
+                openedAt = System.nanoTime();
+                Metrics.counter(name + ".opened").increment();
+                log.warn("Circuit {} opened after {} consecutive failure(s)", name, consecutiveFailures);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public State state() {
+        lock.lock();
+        try {
+            return state;
+        } finally {
+            lock.unlock();
+        }
+    }
+}
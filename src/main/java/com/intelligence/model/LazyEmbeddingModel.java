@@ -0,0 +1,70 @@
+package com.intelligence.model;
+
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.model.output.Response;
+
+import java.util.List;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+/**
+ * Defers building the real embedding client until the first embedding is requested,
+ * so a start served entirely from index snapshots never pays for it.
+ */
+public class LazyEmbeddingModel implements EmbeddingModel {
+    private final String modelName;
+    private final Supplier<EmbeddingModel> factory;
+    private final ReentrantLock lock = new ReentrantLock();
+    private volatile EmbeddingModel delegate;
+
+    /**
+     * @param modelName reported without initializing the client (it feeds the index fingerprint)
+     */
+    public LazyEmbeddingModel(String modelName, Supplier<EmbeddingModel> factory) {
+        this.modelName = modelName;
+        this.factory = factory;
+    }
+
+    private EmbeddingModel delegate() {
+        EmbeddingModel current = delegate;
+        if (current != null) return current;
+        lock.lock();
+        try {
+            if (delegate == null) delegate = factory.get();
+            return delegate;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public boolean isInitialized() {
+        return delegate != null;
+    }
+
+    @Override
+    public Response<Embedding> embed(String text) {
+        return delegate().embed(text);
+    }
+
+    @Override
+    public Response<Embedding> embed(TextSegment textSegment) {
+        return delegate().embed(textSegment);
+    }
+
+    @Override
+    public Response<List<Embedding>> embedAll(List<TextSegment> textSegments) {
+        return delegate().embedAll(textSegments);
+    }
+
+    @Override
+    public int dimension() {
+        return delegate().dimension();
+    }
+
+    @Override
+    public String modelName() {
+        return modelName;
+    }
+}
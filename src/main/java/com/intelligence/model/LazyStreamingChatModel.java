@@ -0,0 +1,48 @@
+package com.intelligence.model;
+
+import dev.langchain4j.model.chat.StreamingChatModel;
+import dev.langchain4j.model.chat.request.ChatRequest;
+import dev.langchain4j.model.chat.response.StreamingChatResponseHandler;
+
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+/**
+ * Defers building the real chat client until the first request is sent. The whole call is
+ * handed to the delegate, so its own default parameters and listeners still apply.
+ */
+public class LazyStreamingChatModel implements StreamingChatModel {
+    private final Supplier<StreamingChatModel> factory;
+    private final ReentrantLock lock = new ReentrantLock();
+    private volatile StreamingChatModel delegate;
+
+    public LazyStreamingChatModel(Supplier<StreamingChatModel> factory) {
+        this.factory = factory;
+    }
+
+    private StreamingChatModel delegate() {
+        StreamingChatModel current = delegate;
+        if (current != null) return current;
+        lock.lock();
+        try {
+            if (delegate == null) delegate = factory.get();
+            return delegate;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public boolean isInitialized() {
+        return delegate != null;
+    }
+
+    @Override
+    public void chat(ChatRequest chatRequest, StreamingChatResponseHandler handler) {
+        delegate().chat(chatRequest, handler);
+    }
+
+    @Override
+    public void doChat(ChatRequest chatRequest, StreamingChatResponseHandler handler) {
+        delegate().chat(chatRequest, handler);
+    }
+}
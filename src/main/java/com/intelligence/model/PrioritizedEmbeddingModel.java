@@ -0,0 +1,133 @@
+package com.intelligence.model;
+
+import com.intelligence.metrics.Metrics;
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.model.output.Response;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+/**
+ * Puts query embeddings ahead of bulk ingestion on a model that serves one request at a time,
+ * as a local Ollama does. Single embeddings ({@code embed}) form the query lane; {@code embedAll}
+ * is the bulk lane and is sent in batches of {@value #DEFAULT_BULK_BATCH} segments, each of
+ * which waits while any query is queued. A query therefore waits for at most one bulk batch
+ * instead of a whole folder's re-embedding. {@link #embedQueries} puts a batch of queries in the
+ * query lane as one call.
+ */
+public class PrioritizedEmbeddingModel implements EmbeddingModel {
+    static final int DEFAULT_BULK_BATCH = 16;
+
+    private final EmbeddingModel delegate;
+    private final int maxConcurrentCalls;
+    private final int bulkBatchSize;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition slotFreed = lock.newCondition();
+    private int inFlight;
+    private int queuedQueries;
+
+    public PrioritizedEmbeddingModel(EmbeddingModel delegate) {
+        this(delegate, 1, DEFAULT_BULK_BATCH);
+    }
+
+    /**
+     * @param maxConcurrentCalls calls passed to the delegate at once, across both lanes
+     * @param bulkBatchSize      segments per bulk call; smaller batches let queries in sooner
+     */
+    public PrioritizedEmbeddingModel(EmbeddingModel delegate, int maxConcurrentCalls, int bulkBatchSize) {
+        this.delegate = delegate;
+        this.maxConcurrentCalls = Math.max(1, maxConcurrentCalls);
+        this.bulkBatchSize = Math.max(1, bulkBatchSize);
+    }
+
+    @Override
+    public Response<Embedding> embed(String text) {
+        return inQueryLane(() -> delegate.embed(text));
+    }
+
+    @Override
+    public Response<Embedding> embed(TextSegment textSegment) {
+        return inQueryLane(() -> delegate.embed(textSegment));
+    }
+
+    @Override
+    public Response<List<Embedding>> embedAll(List<TextSegment> textSegments) {
+        List<Embedding> embeddings = new ArrayList<>(textSegments.size());
+        for (int from = 0; from < textSegments.size(); from += bulkBatchSize) {
+            List<TextSegment> batch = textSegments.subList(from, Math.min(from + bulkBatchSize, textSegments.size()));
+            acquire(false);
+            try {
+                embeddings.addAll(delegate.embedAll(batch).content());
+            } finally {
+                release();
+            }
+        }
+        return Response.from(embeddings);
+    }
+
+    /**
+     * Embeds several queries at once in the query lane, as one call to the delegate.
+     */
+    public Response<List<Embedding>> embedQueries(List<TextSegment> queries) {
+        return inQueryLane(() -> delegate.embedAll(queries));
+    }
+
+    private <T> T inQueryLane(Supplier<T> call) {
+        acquire(true);
+        try {
+            return call.get();
+        } finally {
+            release();
+        }
+    }
+
+    private void acquire(boolean query) {
+        long start = System.nanoTime();
+        lock.lock();
+        try {
+            if (query) queuedQueries++;
+            try {
+                while (inFlight >= maxConcurrentCalls || (!query && queuedQueries > 0)) slotFreed.await();
+                inFlight++;
+            } finally {
+                if (query) {
+                    queuedQueries--;
+                    // bulk callers may have been held back only by this query
+                    slotFreed.signalAll();
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for the embedding model", e);
+        } finally {
+            lock.unlock();
+        }
+        Metrics.timer(query ? "embedding.queue_wait.query" : "embedding.queue_wait.bulk").recordNanos(System.nanoTime() - start);
+    }
+
+    private void release() {
+        lock.lock();
+        try {
+            inFlight--;
+            slotFreed.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public int dimension() {
+        return delegate.dimension();
+    }
+
+    @Override
+    public String modelName() {
+        return delegate.modelName();
+    }
+}
@@ -0,0 +1,47 @@
+package com.intelligence.reader;
+
+import java.nio.file.Path;
+import java.util.Set;
+
+/**
+ * Extracts text from one document format and pushes it, block by block, into a {@link ContentSink}.
+ * Implementations are discovered with {@link java.util.ServiceLoader} (list them in
+ * {@code META-INF/services/com.intelligence.reader.ContentReader}) and need a public no-arg
+ * constructor; {@link ContentReaders} picks one per file by extension and leading bytes.
+ */
+public interface ContentReader {
+
+    /**
+     * Short format name, used for reader metrics (e.g. {@code pdf}).
+     */
+    String format();
+
+    /**
+     * Lower-case file extensions this reader handles, without the dot.
+     */
+    Set<String> extensions();
+
+    /**
+     * True when the leading bytes carry this format's signature (e.g. {@code %PDF}), so the file
+     * is read by this reader whatever its extension says. Formats without magic bytes return false.
+     */
+    default boolean recognizes(byte[] header) {
+        return false;
+    }
+
+    /**
+     * True when a file with one of {@link #extensions()} and these leading bytes can be read.
+     * The default accepts anything that does not look binary.
+     */
+    default boolean accepts(byte[] header) {
+        for (byte b : header) {
+            if (b == 0) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Reads the file in one pass, emitting blocks in document order.
+     */
+    void read(Path path, ContentSink sink) throws Exception;
+}
@@ -0,0 +1,126 @@
+package com.intelligence.reader;
+
+import com.intelligence.metrics.Metrics;
+import com.intelligence.metrics.Timer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+
+/**
+ * The {@link ContentReader}s on the class path and how a file is matched to one. A reader whose
+ * signature {@link ContentReader#recognizes recognizes} the file's leading bytes wins regardless of
+ * the extension (a PDF saved as {@code .txt}); otherwise the first reader for the extension that
+ * {@link ContentReader#accepts accepts} those bytes is used. Ingestion and summarization both read
+ * through here, so every format is extracted the same way, in a single pass.
+ */
+public final class ContentReaders {
+    static final int HEADER_BYTES = 512;
+
+    private static volatile ContentReaders defaults;
+
+    private final List<ContentReader> readers;
+    private final Map<String, List<ContentReader>> byExtension = new HashMap<>();
+
+    public ContentReaders(List<ContentReader> readers) {
+        this.readers = List.copyOf(readers);
+        for (ContentReader reader : this.readers) {
+            for (String extension : reader.extensions()) {
+                byExtension.computeIfAbsent(extension.toLowerCase(Locale.ROOT), e -> new ArrayList<>()).add(reader);
+            }
+        }
+    }
+
+    /**
+     * Readers registered with {@link ServiceLoader}, loaded once.
+     */
+    public static ContentReaders defaults() {
+        ContentReaders current = defaults;
+        if (current == null) {
+            List<ContentReader> found = new ArrayList<>();
+            ServiceLoader.load(ContentReader.class, ContentReaders.class.getClassLoader()).forEach(found::add);
+            current = new ContentReaders(found);
+            defaults = current;
+        }
+        return current;
+    }
+
+    public List<ContentReader> readers() {
+        return readers;
+    }
+
+    /**
+     * True when some reader handles the file's extension; does not touch the file.
+     */
+    public boolean supports(Path path) {
+        return byExtension.containsKey(extension(path));
+    }
+
+    /**
+     * The reader for the file, judged by its leading bytes and extension.
+     */
+    public Optional<ContentReader> readerFor(Path path) throws IOException {
+        byte[] header = header(path);
+        for (ContentReader reader : readers) {
+            if (reader.recognizes(header)) return Optional.of(reader);
+        }
+        for (ContentReader reader : byExtension.getOrDefault(extension(path), List.of())) {
+            if (reader.accepts(header)) return Optional.of(reader);
+        }
+        return Optional.empty();
+    }
+
+    /**
+     * Streams the file's blocks into the sink, timed per format; failures count as {@code reader.errors}.
+     */
+    public void read(Path path, ContentSink sink) throws IOException {
+        ContentReader reader;
+        try {
+            reader = readerFor(path).orElseThrow(() ->
+                    new IOException("No reader for " + path.getFileName() + " (unsupported or mislabelled format)"));
+        } catch (IOException e) {
+            Metrics.counter("reader.errors").increment();
+            throw e;
+        }
+        try (Timer.Sample ignored = Metrics.timer(Metrics.READER_PREFIX + reader.format()).start()) {
+            reader.read(path, sink);
+        } catch (IOException e) {
+            Metrics.counter("reader.errors").increment();
+            throw e;
+        } catch (Exception e) {
+            Metrics.counter("reader.errors").increment();
+            throw new IOException(e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Reads the whole file into a {@link TextCollector} whose blocks are joined by {@code separator}.
+     */
+    public TextCollector extract(Path path, String separator) throws IOException {
+        TextCollector collector = new TextCollector(separator);
+        read(path, collector);
+        return collector;
+    }
+
+    static String extension(Path path) {
+        String name = path.getFileName().toString().toLowerCase(Locale.ROOT);
+        int dot = name.lastIndexOf('.');
+        return dot < 0 ? "" : name.substring(dot + 1);
+    }
+
+    static boolean startsWith(byte[] header, byte[] magic) {
+        if (header.length < magic.length) return false;
+        for (int i = 0; i < magic.length; i++) {
+            if (header[i] != magic[i]) return false;
+        }
+        return true;
+    }
+
+    private static byte[] header(Path path) throws IOException {
+        try (InputStream in = Files.newInputStream(path)) {
+            return in.readNBytes(HEADER_BYTES);
+        }
+    }
+}
@@ -0,0 +1,9 @@
+package com.intelligence.reader;
+
+/**
+ * Receives the text blocks a {@link ContentReader} extracts, in document order.
+ */
+@FunctionalInterface
+public interface ContentSink {
+    void accept(TextBlock block);
+}
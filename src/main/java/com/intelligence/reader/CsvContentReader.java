@@ -4,27 +4,38 @@ import com.opencsv.CSVReader;
 
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.List;
+import java.util.Set;
 import java.util.stream.Collectors;
 
-public class CsvContentReader {
+public class CsvContentReader implements ContentReader {
+
+    @Override
+    public String format() {
+        return "csv";
+    }
+
+    @Override
+    public Set<String> extensions() {
+        return Set.of("csv");
+    }
+
     /**
-     * Reads CSV and joins columns into a single descriptive string per row.
+     * Reads CSV and joins columns into a single descriptive string per row, tagged with its 1-based row number.
      */
-    public static List<String> read(Path path) throws Exception {
-        List<String> rows = new ArrayList<>();
+    @Override
+    public void read(Path path, ContentSink sink) throws Exception {
         try (CSVReader reader = new CSVReader(Files.newBufferedReader(path))) {
             String[] nextLine;
+            int row = 0;
             while ((nextLine = reader.readNext()) != null) {
+                row++;
                 // Filter out empty columns and join with spaces
                 String rowText = Arrays.stream(nextLine)
                         .filter(col -> !col.trim().isEmpty())
                         .collect(Collectors.joining(" "));
-                if (!rowText.isEmpty()) rows.add(rowText);
+                if (!rowText.isEmpty()) sink.accept(TextBlock.at(rowText, TextBlock.ROW, row));
             }
         }
-        return rows;
     }
-}
\ No newline at end of file
+}
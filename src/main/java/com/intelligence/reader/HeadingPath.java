@@ -0,0 +1,38 @@
+package com.intelligence.reader;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The chain of headings enclosing the current position: entering a heading drops every open
+ * heading at the same or a deeper level.
+ */
+final class HeadingPath {
+    private final List<Integer> levels = new ArrayList<>();
+    private final List<String> titles = new ArrayList<>();
+
+    void enter(int level, String title) {
+        while (!levels.isEmpty() && levels.getLast() >= level) {
+            levels.removeLast();
+            titles.removeLast();
+        }
+        levels.add(level);
+        titles.add(title);
+    }
+
+    boolean isEmpty() {
+        return titles.isEmpty();
+    }
+
+    @Override
+    public String toString() {
+        return String.join(" > ", titles);
+    }
+
+    /**
+     * The block tagged with the current path, or untagged outside any heading.
+     */
+    TextBlock block(String text) {
+        return isEmpty() ? TextBlock.of(text) : TextBlock.at(text, TextBlock.HEADING, toString());
+    }
+}
@@ -1,31 +1,53 @@
 package com.intelligence.reader;
 
-import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
 
 import java.io.IOException;
 import java.nio.file.Path;
-import java.util.ArrayList;
-import java.util.List;
+import java.util.Set;
 
-public class JsonContentReader {
-    private static final ObjectMapper mapper = new ObjectMapper();
+public class JsonContentReader implements ContentReader {
+    private static final JsonFactory factory = new JsonFactory();
+
+    @Override
+    public String format() {
+        return "json";
+    }
+
+    @Override
+    public Set<String> extensions() {
+        return Set.of("json");
+    }
 
     /**
-     * Reads JSON and extracts all text values recursively.
+     * Accepts text starting (after any BOM and whitespace) like a JSON object, array or string.
      */
-    public static List<String> read(Path path) throws IOException {
-        JsonNode rootNode = mapper.readTree(path.toFile());
-        List<String> values = new ArrayList<>();
-        extractTextValues(rootNode, values);
-        return values;
+    @Override
+    public boolean accepts(byte[] header) {
+        for (int i = 0; i < header.length; i++) {
+            int b = header[i] & 0xFF;
+            if (i < 3 && (b == 0xEF || b == 0xBB || b == 0xBF)) continue;
+            if (Character.isWhitespace(b)) continue;
+            return b == '{' || b == '[' || b == '"';
+        }
+        return true;
     }
 
-    private static void extractTextValues(JsonNode node, List<String> collector) {
-        if (node.isTextual()) {
-            collector.add(node.asText());
-        } else if (node.isArray() || node.isObject()) {
-            node.forEach(child -> extractTextValues(child, collector));
+    /**
+     * Streams the tokens and emits every text value with its JSON pointer, without building a tree.
+     */
+    @Override
+    public void read(Path path, ContentSink sink) throws IOException {
+        try (JsonParser parser = factory.createParser(path.toFile())) {
+            JsonToken token;
+            while ((token = parser.nextToken()) != null) {
+                if (token == JsonToken.VALUE_STRING) {
+                    sink.accept(TextBlock.at(parser.getText(), TextBlock.JSON_PATH,
+                            parser.getParsingContext().pathAsPointer().toString()));
+                }
+            }
         }
     }
-}
\ No newline at end of file
+}
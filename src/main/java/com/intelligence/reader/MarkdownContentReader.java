@@ -8,13 +8,27 @@ import java.io.IOException;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.util.List;
+import java.util.Set;
 
-public class MarkdownContentReader {
+public class MarkdownContentReader implements ContentReader {
     private static final Parser parser = Parser.builder().build();
     private static final TextContentRenderer renderer = TextContentRenderer.builder().build();
 
-    public static List<String> read(Path path) throws IOException {
+    @Override
+    public String format() {
+        return "md";
+    }
+
+    @Override
+    public Set<String> extensions() {
+        return Set.of("md", "markdown");
+    }
+
+    /**
+     * Emits each top-level block as plain text, tagged with the headings it sits under.
+     */
+    @Override
+    public void read(Path path, ContentSink sink) throws IOException {
         String content = Files.readString(path, StandardCharsets.UTF_8);
         Node document = parser.parse(content);
 
@@ -33,6 +47,11 @@ public class MarkdownContentReader {
             }
         });
 
-        return List.of(renderer.render(document).trim());
+        HeadingPath headings = new HeadingPath();
+        for (Node block = document.getFirstChild(); block != null; block = block.getNext()) {
+            String text = renderer.render(block).trim();
+            if (block instanceof Heading heading) headings.enter(heading.getLevel(), text);
+            if (!text.isEmpty()) sink.accept(headings.block(text));
+        }
     }
-}
\ No newline at end of file
+}
@@ -2,19 +2,57 @@ package com.intelligence.reader;
 
 import org.apache.pdfbox.Loader;
 import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
 import org.apache.pdfbox.text.PDFTextStripper;
 
 import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Path;
-import java.util.Arrays;
-import java.util.List;
+import java.util.Set;
 
-public class PdfContentReader {
-    public static List<String> read(Path path) throws IOException {
+public class PdfContentReader implements ContentReader {
+    private static final byte[] MAGIC = "%PDF-".getBytes(StandardCharsets.US_ASCII);
+
+    @Override
+    public String format() {
+        return "pdf";
+    }
+
+    @Override
+    public Set<String> extensions() {
+        return Set.of("pdf");
+    }
+
+    @Override
+    public boolean recognizes(byte[] header) {
+        return ContentReaders.startsWith(header, MAGIC);
+    }
+
+    @Override
+    public boolean accepts(byte[] header) {
+        return recognizes(header);
+    }
+
+    /**
+     * Strips the document once and emits each page's lines as soon as the page is done, tagged with the page number.
+     */
+    @Override
+    public void read(Path path, ContentSink sink) throws IOException {
         try (PDDocument document = Loader.loadPDF(path.toFile())) {
-            PDFTextStripper stripper = new PDFTextStripper();
-            String text = stripper.getText(document);
-            return Arrays.asList(text.split("\\r?\\n"));
+            StringWriter pageText = new StringWriter();
+            PDFTextStripper stripper = new PDFTextStripper() {
+                @Override
+                protected void endPage(PDPage page) throws IOException {
+                    super.endPage(page);
+                    int pageNumber = getCurrentPageNo();
+                    for (String line : pageText.toString().split("\\r?\\n")) {
+                        sink.accept(TextBlock.at(line, TextBlock.PAGE, pageNumber));
+                    }
+                    pageText.getBuffer().setLength(0);
+                }
+            };
+            stripper.writeText(document, pageText);
         }
     }
-}
\ No newline at end of file
+}
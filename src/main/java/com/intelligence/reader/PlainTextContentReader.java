@@ -0,0 +1,36 @@
+package com.intelligence.reader;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Set;
+
+public class PlainTextContentReader implements ContentReader {
+
+    @Override
+    public String format() {
+        return "txt";
+    }
+
+    @Override
+    public Set<String> extensions() {
+        return Set.of("txt");
+    }
+
+    /**
+     * Streams the file line by line, tagging each line with its 1-based line number as the row.
+     */
+    @Override
+    public void read(Path path, ContentSink sink) throws IOException {
+        try (BufferedReader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+            String line;
+            int row = 0;
+            while ((line = reader.readLine()) != null) {
+                row++;
+                sink.accept(TextBlock.at(line, TextBlock.ROW, row));
+            }
+        }
+    }
+}
@@ -0,0 +1,28 @@
+package com.intelligence.reader;
+
+import java.util.Map;
+
+/**
+ * A run of extracted text and where it came from in the source document. Position keys are
+ * {@link #PAGE} and {@link #ROW} (1-based integers), {@link #JSON_PATH} (a JSON pointer) and
+ * {@link #HEADING} (the enclosing headings, outermost first, joined by {@code " > "}); readers
+ * only set the keys that apply to their format.
+ */
+public record TextBlock(String text, Map<String, Object> position) {
+    public static final String PAGE = "page";
+    public static final String ROW = "row";
+    public static final String JSON_PATH = "json_path";
+    public static final String HEADING = "heading";
+
+    public TextBlock {
+        position = Map.copyOf(position);
+    }
+
+    public static TextBlock of(String text) {
+        return new TextBlock(text, Map.of());
+    }
+
+    public static TextBlock at(String text, String key, Object value) {
+        return new TextBlock(text, Map.of(key, value));
+    }
+}
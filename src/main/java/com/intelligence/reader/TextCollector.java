@@ -0,0 +1,55 @@
+package com.intelligence.reader;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Sink that joins non-blank blocks into one text and remembers at which offset each position
+ * starts, so chunks cut from the text can be traced back to their page, row or heading.
+ */
+public final class TextCollector implements ContentSink {
+    private final String separator;
+    private final StringBuilder text = new StringBuilder();
+    private final List<Integer> offsets = new ArrayList<>();
+    private final List<Map<String, Object>> positions = new ArrayList<>();
+
+    public TextCollector(String separator) {
+        this.separator = separator;
+    }
+
+    @Override
+    public void accept(TextBlock block) {
+        if (block.text().isBlank()) return;
+        if (!text.isEmpty()) text.append(separator);
+        // Consecutive blocks from the same place share one entry
+        if (positions.isEmpty() || !positions.getLast().equals(block.position())) {
+            offsets.add(text.length());
+            positions.add(block.position());
+        }
+        text.append(block.text());
+    }
+
+    public String text() {
+        return text.toString();
+    }
+
+    /**
+     * Position of the block containing the character at {@code offset}; empty before the first block.
+     */
+    public Map<String, Object> positionAt(int offset) {
+        int low = 0;
+        int high = offsets.size() - 1;
+        int found = -1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (offsets.get(mid) <= offset) {
+                found = mid;
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return found < 0 ? Map.of() : positions.get(found);
+    }
+}
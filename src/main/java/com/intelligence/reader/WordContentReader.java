@@ -1,19 +1,317 @@
 package com.intelligence.reader;
 
-import org.apache.poi.xwpf.usermodel.XWPFDocument;
-import org.apache.poi.xwpf.usermodel.XWPFParagraph;
-
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.BufferedInputStream;
 import java.io.IOException;
-import java.nio.file.Files;
+import java.io.InputStream;
 import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Streams the text of a .docx straight from the package's XML with StAX, instead of building
+ * POI's {@code XWPFDocument} object model, which costs many times the file size in heap. Only the
+ * paragraph or table row being read is held in memory, whatever the size of the document.
+ */
+public class WordContentReader implements ContentReader {
+    // Local file header of the ZIP container every .docx is packaged in
+    private static final byte[] MAGIC = {'P', 'K', 3, 4};
+    private static final String DEFAULT_MAIN_PART = "word/document.xml";
+    private static final String OFFICE_DOCUMENT = "/officeDocument";
+    private static final String STYLES = "/styles";
+    // Transitional and Strict OOXML name the same elements in different namespaces
+    private static final Set<String> WORD_NAMESPACES = Set.of(
+            "http://schemas.openxmlformats.org/wordprocessingml/2006/main",
+            "http://purl.oclc.org/ooxml/wordprocessingml/main");
+    private static final String MARKUP_COMPATIBILITY = "http://schemas.openxmlformats.org/markup-compatibility/2006";
+    private static final String CELL_SEPARATOR = " | ";
+    private static final int BUFFER_BYTES = 64 * 1024;
+
+    @Override
+    public String format() {
+        return "docx";
+    }
+
+    @Override
+    public Set<String> extensions() {
+        return Set.of("docx");
+    }
+
+    // Any ZIP (xlsx, jar, ...) starts the same way, so the signature only confirms the extension
+    @Override
+    public boolean accepts(byte[] header) {
+        return ContentReaders.startsWith(header, MAGIC);
+    }
+
+    /**
+     * Emits body paragraphs and table rows (cells joined by {@code " | "}) in document order,
+     * tagged with the enclosing heading paragraphs.
+     */
+    @Override
+    public void read(Path path, ContentSink sink) throws IOException {
+        try (ZipFile zip = new ZipFile(path.toFile())) {
+            String mainPart = relationshipTarget(zip, "_rels/.rels", "", OFFICE_DOCUMENT);
+            if (mainPart == null) mainPart = DEFAULT_MAIN_PART;
+            ZipEntry main = zip.getEntry(mainPart);
+            if (main == null) throw new IOException("No Word document part in " + path);
+            String dir = mainPart.substring(0, mainPart.lastIndexOf('/') + 1);
+            String relsPart = dir + "_rels/" + mainPart.substring(dir.length()) + ".rels";
+            String stylesPart = relationshipTarget(zip, relsPart, dir, STYLES);
+            Map<String, Integer> headingStyles = stylesPart == null ? Map.of() : headingStyles(zip, stylesPart);
+            try (InputStream in = new BufferedInputStream(zip.getInputStream(main), BUFFER_BYTES)) {
+                XMLStreamReader xml = xmlReader(in);
+                try {
+                    new BodyReader(headingStyles, sink).read(xml);
+                } finally {
+                    xml.close();
+                }
+            }
+        } catch (XMLStreamException e) {
+            throw new IOException("Malformed Word XML in " + path + ": " + e.getMessage(), e);
+        }
+    }
+
+    // Word's built-in heading styles have the ids Heading1 .. Heading9
+    static int headingLevel(String styleId) {
+        if (styleId == null || !styleId.startsWith("Heading")) return 0;
+        try {
+            return Integer.parseInt(styleId.substring("Heading".length()));
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    private static XMLStreamReader xmlReader(InputStream in) throws XMLStreamException {
+        XMLInputFactory factory = XMLInputFactory.newDefaultFactory();
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        return factory.createXMLStreamReader(in);
+    }
+
+    /**
+     * The zip entry a relationship of the given type points to, or null if there is none.
+     */
+    private static String relationshipTarget(ZipFile zip, String relsPart, String baseDir, String typeSuffix)
+            throws IOException, XMLStreamException {
+        ZipEntry rels = zip.getEntry(relsPart);
+        if (rels == null) return null;
+        try (InputStream in = zip.getInputStream(rels)) {
+            XMLStreamReader xml = xmlReader(in);
+            try {
+                while (xml.hasNext()) {
+                    if (xml.next() != XMLStreamConstants.START_ELEMENT || !xml.getLocalName().equals("Relationship")) continue;
+                    String type = xml.getAttributeValue(null, "Type");
+                    String target = xml.getAttributeValue(null, "Target");
+                    if (type == null || target == null || !type.endsWith(typeSuffix)) continue;
+                    return target.startsWith("/") ? target.substring(1) : baseDir + target;
+                }
+                return null;
+            } finally {
+                xml.close();
+            }
+        }
+    }
+
+    /**
+     * Heading level by paragraph style id, from each style's name ("heading 2") or outline level,
+     * so localized ids such as "berschrift2" are recognized too.
+     */
+    private static Map<String, Integer> headingStyles(ZipFile zip, String stylesPart) throws IOException, XMLStreamException {
+        ZipEntry styles = zip.getEntry(stylesPart);
+        if (styles == null) return Map.of();
+        Map<String, Integer> levels = new HashMap<>();
+        try (InputStream in = new BufferedInputStream(zip.getInputStream(styles), BUFFER_BYTES)) {
+            XMLStreamReader xml = xmlReader(in);
+            try {
+                String styleId = null;
+                while (xml.hasNext()) {
+                    if (xml.next() != XMLStreamConstants.START_ELEMENT || !WORD_NAMESPACES.contains(xml.getNamespaceURI())) {
+                        continue;
+                    }
+                    switch (xml.getLocalName()) {
+                        case "style" -> styleId = "paragraph".equals(wordAttribute(xml, "type")) ? wordAttribute(xml, "styleId") : null;
+                        case "name" -> {
+                            String name = wordAttribute(xml, "val");
+                            if (styleId != null && name != null && name.toLowerCase(Locale.ROOT).startsWith("heading ")) {
+                                int level = headingLevel("Heading" + name.substring("heading ".length()).trim());
+                                if (level > 0) levels.put(styleId, level);
+                            }
+                        }
+                        case "outlineLvl" -> {
+                            int level = outlineLevel(wordAttribute(xml, "val"));
+                            if (styleId != null && level > 0) levels.putIfAbsent(styleId, level);
+                        }
+                        default -> {
+                        }
+                    }
+                }
+            } finally {
+                xml.close();
+            }
+        }
+        return levels;
+    }
+
+    // w:outlineLvl counts from 0, and 9 means body text
+    private static int outlineLevel(String value) {
+        try {
+            int level = Integer.parseInt(value);
+            return level >= 0 && level < 9 ? level + 1 : 0;
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    private static String wordAttribute(XMLStreamReader xml, String localName) {
+        for (int i = 0; i < xml.getAttributeCount(); i++) {
+            if (xml.getAttributeLocalName(i).equals(localName)) return xml.getAttributeValue(i);
+        }
+        return null;
+    }
+
+    /**
+     * One pass over word/document.xml. Paragraphs nested in a paragraph (text boxes) are folded
+     * into it, paragraphs in a table cell into the cell, and nested tables into their cell.
+     */
+    private static final class BodyReader {
+        private final Map<String, Integer> headingStyles;
+        private final ContentSink sink;
+        private final HeadingPath headings = new HeadingPath();
+        private final Deque<StringBuilder> paragraphs = new ArrayDeque<>();
+        private final Deque<List<StringBuilder>> rows = new ArrayDeque<>();
+        private int paragraphLevel;
+        private int runDepth;
+        private boolean inText;
+        private int skipDepth;
+
+        BodyReader(Map<String, Integer> headingStyles, ContentSink sink) {
+            this.headingStyles = headingStyles;
+            this.sink = sink;
+        }
+
+        void read(XMLStreamReader xml) throws XMLStreamException {
+            while (xml.hasNext()) {
+                switch (xml.next()) {
+                    case XMLStreamConstants.START_ELEMENT -> start(xml);
+                    case XMLStreamConstants.END_ELEMENT -> end(xml);
+                    case XMLStreamConstants.CHARACTERS -> {
+                        if (inText && skipDepth == 0 && !paragraphs.isEmpty()) {
+                            paragraphs.peek().append(xml.getTextCharacters(), xml.getTextStart(), xml.getTextLength());
+                        }
+                    }
+                    default -> {
+                    }
+                }
+            }
+        }
+
+        private void start(XMLStreamReader xml) {
+            if (skipDepth > 0) {
+                skipDepth++;
+                return;
+            }
+            // Drawings carry their text box twice: as DrawingML and as a VML fallback
+            if (xml.getLocalName().equals("Fallback") && MARKUP_COMPATIBILITY.equals(xml.getNamespaceURI())) {
+                skipDepth = 1;
+                return;
+            }
+            if (!WORD_NAMESPACES.contains(xml.getNamespaceURI())) return;
+            switch (xml.getLocalName()) {
+                case "p" -> {
+                    if (paragraphs.isEmpty()) paragraphLevel = 0;
+                    paragraphs.push(new StringBuilder());
+                }
+                case "pStyle" -> {
+                    if (isBodyParagraph()) {
+                        String style = wordAttribute(xml, "val");
+                        paragraphLevel = headingStyles.getOrDefault(style, headingLevel(style));
+                    }
+                }
+                case "outlineLvl" -> {
+                    if (isBodyParagraph()) paragraphLevel = outlineLevel(wordAttribute(xml, "val"));
+                }
+                case "r" -> runDepth++;
+                case "t" -> inText = runDepth > 0;
+                case "tab" -> appendInRun('\t');
+                case "br", "cr" -> appendInRun('\n');
+                case "noBreakHyphen" -> appendInRun('-');
+                case "tr" -> rows.push(new ArrayList<>());
+                case "tc" -> {
+                    if (!rows.isEmpty()) rows.peek().add(new StringBuilder());
+                }
+                default -> {
+                }
+            }
+        }
+
+        private void end(XMLStreamReader xml) {
+            if (skipDepth > 0) {
+                skipDepth--;
+                return;
+            }
+            if (!WORD_NAMESPACES.contains(xml.getNamespaceURI())) return;
+            switch (xml.getLocalName()) {
+                case "t" -> inText = false;
+                case "r" -> runDepth--;
+                case "p" -> endParagraph(paragraphs.pop());
+                case "tr" -> endRow(rows.pop());
+                default -> {
+                }
+            }
+        }
+
+        private boolean isBodyParagraph() {
+            return paragraphs.size() == 1 && rows.isEmpty();
+        }
+
+        private void appendInRun(char c) {
+            // w:tab also defines tab stops in paragraph properties; only a run's tab is text
+            if (runDepth > 0 && skipDepth == 0 && !paragraphs.isEmpty()) paragraphs.peek().append(c);
+        }
+
+        private void endParagraph(StringBuilder text) {
+            if (!paragraphs.isEmpty()) {
+                append(paragraphs.peek(), text, ' ');
+            } else if (!rows.isEmpty() && !rows.peek().isEmpty()) {
+                append(rows.peek().getLast(), text, '\n');
+            } else {
+                String paragraph = text.toString();
+                if (paragraphLevel > 0 && !paragraph.isBlank()) headings.enter(paragraphLevel, paragraph.trim());
+                sink.accept(headings.block(paragraph));
+            }
+        }
+
+        private void endRow(List<StringBuilder> cells) {
+            StringBuilder row = new StringBuilder();
+            for (StringBuilder cell : cells) {
+                String text = cell.toString().strip();
+                if (text.isEmpty()) continue;
+                if (!row.isEmpty()) row.append(CELL_SEPARATOR);
+                row.append(text);
+            }
+            if (!rows.isEmpty()) {
+                // A nested table's rows become lines of the enclosing cell
+                if (!rows.peek().isEmpty()) append(rows.peek().getLast(), row, '\n');
+            } else if (!row.isEmpty()) {
+                sink.accept(headings.block(row.toString()));
+            }
+        }
 
-public class WordContentReader {
-    public static List<String> read(Path path) throws IOException {
-        try (XWPFDocument doc = new XWPFDocument(Files.newInputStream(path))) {
-            return doc.getParagraphs().stream()
-                    .map(XWPFParagraph::getText)
-                    .toList();
+        private static void append(StringBuilder target, CharSequence text, char separator) {
+            if (text.isEmpty()) return;
+            if (!target.isEmpty()) target.append(separator);
+            target.append(text);
         }
     }
-}
\ No newline at end of file
+}
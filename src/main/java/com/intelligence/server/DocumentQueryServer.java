@@ -0,0 +1,528 @@
+package com.intelligence.server;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.intelligence.agent.ContextRetriever;
+import com.intelligence.agent.DocumentAssistantAgent;
+import com.intelligence.index.IndexRegistry;
+import com.intelligence.index.ScoredSegment;
+import com.intelligence.index.SearchFilter;
+import com.intelligence.metrics.Metrics;
+import com.intelligence.metrics.MetricsExporter;
+import com.intelligence.metrics.QueryTrace;
+import com.intelligence.metrics.Timer;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import dev.langchain4j.memory.ChatMemory;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+
+/**
+ * Headless HTTP front end for the assistant. Each request runs on its own virtual thread,
+ * every folder is indexed once and shared by all callers, and a semaphore caps the number
+ * of LLM streams in flight so a burst of users queues instead of overloading the provider.
+ *
+ * <ul>
+ *   <li>{@code GET  /search?folder=&q=&k=&filter=} ranked segments as JSON; {@code filter} as in {@link SearchFilter#parse}</li>
+ *   <li>{@code POST /ask?folder=&q=&memoryId=} streamed answer (Server-Sent Events); without a
+ *   {@code memoryId} (or {@code X-Memory-Id} header) a new conversation starts and its id is returned in that header</li>
+ *   <li>{@code POST /summarize?folder=&file=&memoryId=} streamed summary (Server-Sent Events)</li>
+ *   <li>{@code GET  /metrics} Prometheus text format, {@code GET /health} liveness</li>
+ * </ul>
+ * Parameters may also be sent as a JSON object body on POST. A conversation idle for longer than
+ * {@value #CONVERSATION_IDLE_PROPERTY} minutes (default {@value #DEFAULT_CONVERSATION_IDLE_MINUTES}), or the least
+ * recently used beyond {@value #MAX_CONVERSATIONS}, has its chat memory evicted.
+ */
+public class DocumentQueryServer implements AutoCloseable {
+    private static final Logger log = LoggerFactory.getLogger(DocumentQueryServer.class);
+    private static final ObjectMapper mapper = new ObjectMapper();
+
+    private static final int DEFAULT_TOP_K = 5;
+    private static final int MAX_TOP_K = 50;
+    private static final String MEMORY_ID_HEADER = "X-Memory-Id";
+    private static final Duration DEFAULT_ADMISSION_WAIT = Duration.ofSeconds(10);
+    private static final Duration DEFAULT_STREAM_TIMEOUT = Duration.ofSeconds(180);
+    public static final String CONVERSATION_IDLE_PROPERTY = "docintel.server.conversation.idle.minutes";
+    static final long DEFAULT_CONVERSATION_IDLE_MINUTES = 30;
+    static final int MAX_CONVERSATIONS = 10_000;
+
+    private final Path dataRoot;
+    private final EmbeddingModel embeddingModel;
+    private final IndexRegistry registry;
+    private final Function<ContextRetriever, DocumentAssistantAgent> assistantFactory;
+    private final Semaphore llmPermits;
+    private final Duration admissionWait;
+    private final Duration streamTimeout;
+    private final Duration conversationIdle;
+    private final Map<Path, FolderContext> folders = new ConcurrentHashMap<>();
+    // Access order: the longest idle conversations come first
+    private final LinkedHashMap<String, Conversation> conversations = new LinkedHashMap<>(16, 0.75f, true);
+    private final ReentrantLock conversationLock = new ReentrantLock();
+
+    private HttpServer server;
+    private ExecutorService executor;
+
+    private record FolderContext(ContextRetriever retriever, DocumentAssistantAgent assistant) {
+    }
+
+    private static final class Conversation {
+        long lastUsedNanos;
+        int streams;
+    }
+
+    /**
+     * @param dataRoot              folders named in requests are resolved against (and confined to) this root
+     * @param registry              holds the folder indexes shared by all requests
+     * @param assistantFactory      builds the assistant for a folder around that folder's shared retriever
+     * @param maxConcurrentLlmCalls admission limit for /ask and /summarize streams
+     */
+    public DocumentQueryServer(Path dataRoot,
+                               EmbeddingModel embeddingModel,
+                               IndexRegistry registry,
+                               Function<ContextRetriever, DocumentAssistantAgent> assistantFactory,
+                               int maxConcurrentLlmCalls) {
+        this(dataRoot, embeddingModel, registry, assistantFactory, maxConcurrentLlmCalls, DEFAULT_ADMISSION_WAIT);
+    }
+
+    /**
+     * @param admissionWait how long a stream request may queue for a permit before it gets a 503
+     */
+    public DocumentQueryServer(Path dataRoot,
+                               EmbeddingModel embeddingModel,
+                               IndexRegistry registry,
+                               Function<ContextRetriever, DocumentAssistantAgent> assistantFactory,
+                               int maxConcurrentLlmCalls,
+                               Duration admissionWait) {
+        this(dataRoot, embeddingModel, registry, assistantFactory, new Semaphore(maxConcurrentLlmCalls, true), admissionWait,
+                DEFAULT_STREAM_TIMEOUT, Duration.ofMinutes(Long.getLong(CONVERSATION_IDLE_PROPERTY, DEFAULT_CONVERSATION_IDLE_MINUTES)));
+    }
+
+    /**
+     * @param llmPermits admission limit for /ask and /summarize streams, shared with the assistants'
+     *                   other model calls such as conversation summaries
+     */
+    public DocumentQueryServer(Path dataRoot,
+                               EmbeddingModel embeddingModel,
+                               IndexRegistry registry,
+                               Function<ContextRetriever, DocumentAssistantAgent> assistantFactory,
+                               Semaphore llmPermits) {
+        this(dataRoot, embeddingModel, registry, assistantFactory, llmPermits, DEFAULT_ADMISSION_WAIT,
+                DEFAULT_STREAM_TIMEOUT, Duration.ofMinutes(Long.getLong(CONVERSATION_IDLE_PROPERTY, DEFAULT_CONVERSATION_IDLE_MINUTES)));
+    }
+
+    /**
+     * @param streamTimeout    how long a client waits for the answer; the permit is held until the model finishes regardless
+     * @param conversationIdle how long a conversation may go unused before its chat memory is evicted
+     */
+    DocumentQueryServer(Path dataRoot,
+                        EmbeddingModel embeddingModel,
+                        IndexRegistry registry,
+                        Function<ContextRetriever, DocumentAssistantAgent> assistantFactory,
+                        Semaphore llmPermits,
+                        Duration admissionWait,
+                        Duration streamTimeout,
+                        Duration conversationIdle) {
+        this.dataRoot = dataRoot.toAbsolutePath().normalize();
+        this.embeddingModel = embeddingModel;
+        this.registry = registry;
+        this.assistantFactory = assistantFactory;
+        this.llmPermits = llmPermits;
+        this.admissionWait = admissionWait;
+        this.streamTimeout = streamTimeout;
+        this.conversationIdle = conversationIdle;
+    }
+
+    public void start(InetSocketAddress address) throws IOException {
+        executor = Executors.newVirtualThreadPerTaskExecutor();
+        server = HttpServer.create(address, 0);
+        server.setExecutor(executor);
+        server.createContext("/search", guarded("GET", this::handleSearch));
+        server.createContext("/ask", guarded("POST", (exchange, params) -> handleStream(exchange, params, false)));
+        server.createContext("/summarize", guarded("POST", (exchange, params) -> handleStream(exchange, params, true)));
+        server.createContext("/metrics", guarded("GET", this::handleMetrics));
+        server.createContext("/health", guarded("GET", this::handleHealth));
+        server.start();
+        log.info("Document query server listening on {} (data root: {})", server.getAddress(), dataRoot);
+    }
+
+    public int port() {
+        return server.getAddress().getPort();
+    }
+
+    @Override
+    public void close() {
+        if (server != null) server.stop(1);
+        if (executor != null) executor.close();
+    }
+
+    // --- Handlers ---
+
+    private void handleSearch(HttpExchange exchange, Map<String, String> params) throws IOException {
+        String query = required(params, "q");
+        int topK = Math.min(MAX_TOP_K, parseInt(params.getOrDefault("k", String.valueOf(DEFAULT_TOP_K))));
+        FolderContext folder = folder(params);
+        SearchFilter filter;
+        try {
+            filter = SearchFilter.parse(params.get("filter"));
+        } catch (IllegalArgumentException e) {
+            throw new BadRequestException("Invalid filter: " + e.getMessage());
+        }
+
+        List<ScoredSegment> hits = folder.retriever().search(query, topK, filter);
+        List<Map<String, Object>> results = hits.stream().map(hit -> {
+            Map<String, Object> result = new LinkedHashMap<>();
+            result.put("file", hit.fileName());
+            result.put("score", hit.score());
+            result.put("text", hit.segment().text());
+            return result;
+        }).toList();
+
+        Map<String, Object> body = new LinkedHashMap<>();
+        body.put("folder", folder.retriever().directoryPath());
+        body.put("query", query);
+        body.put("results", results);
+        sendJson(exchange, 200, body);
+    }
+
+    private void handleStream(HttpExchange exchange, Map<String, String> params, boolean summarize)
+            throws IOException, InterruptedException {
+        String message = summarize
+                ? "Summarize the document " + fileName(params) + "."
+                : required(params, "q");
+        String memoryId = memoryId(exchange, params);
+        FolderContext folder = folder(params);
+
+        long waitStart = System.nanoTime();
+        if (!llmPermits.tryAcquire(admissionWait.toMillis(), TimeUnit.MILLISECONDS)) {
+            Metrics.counter("server.llm_rejected").increment();
+            exchange.getResponseHeaders().set("Retry-After", String.valueOf(Math.max(1, admissionWait.toSeconds())));
+            sendJson(exchange, 503, Map.of("error", "Too many concurrent LLM requests, try again shortly"));
+            return;
+        }
+        Metrics.timer("server.admission_wait").recordNanos(System.nanoTime() - waitStart);
+
+        // The permit bounds model streams, not HTTP responses: it goes back when the stream ends
+        openConversation(memoryId);
+        CompletableFuture<Void> done = new CompletableFuture<>();
+        done.whenComplete((ignored, error) -> {
+            closeConversation(memoryId);
+            llmPermits.release();
+        });
+        try {
+            exchange.getResponseHeaders().set("Content-Type", "text/event-stream; charset=utf-8");
+            exchange.getResponseHeaders().set("Cache-Control", "no-cache");
+            exchange.sendResponseHeaders(200, 0);
+        } catch (IOException | RuntimeException e) {
+            done.complete(null);
+            throw e;
+        }
+        try (OutputStream out = exchange.getResponseBody()) {
+            streamAnswer(folder.assistant(), memoryId, message, new SseWriter(out), done);
+        }
+    }
+
+    /**
+     * Streams the answer until {@code done} completes, which only the model's completion or error
+     * callbacks (or a failure to start) do. After the timeout the client is told and the stream
+     * is left to finish on its own.
+     */
+    private void streamAnswer(DocumentAssistantAgent assistant, String memoryId, String message, SseWriter sse,
+                              CompletableFuture<Void> done) throws InterruptedException {
+        long startNanos = System.nanoTime();
+        QueryTrace trace = QueryTrace.begin(memoryId, message);
+        try {
+            startStream(assistant, memoryId, message, sse, done, startNanos);
+            done.get(streamTimeout.toMillis(), TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            Metrics.counter("server.stream_timeouts").increment();
+            sse.send("error", "Timed out after " + streamTimeout.toSeconds() + "s");
+        } catch (ExecutionException e) {
+            sse.send("error", String.valueOf(e.getCause().getMessage()));
+        } finally {
+            Metrics.timer(Metrics.CHAT_STREAM).recordNanos(System.nanoTime() - startNanos);
+            QueryTrace.finish(trace);
+        }
+    }
+
+    private static void startStream(DocumentAssistantAgent assistant, String memoryId, String message, SseWriter sse,
+                                    CompletableFuture<Void> done, long startNanos) {
+        try {
+            assistant.chatStreaming(memoryId, message)
+                    .onPartialResponse(token -> {
+                        if (!sse.hasSentTokens()) {
+                            Metrics.timer(Metrics.CHAT_FIRST_TOKEN).recordNanos(System.nanoTime() - startNanos);
+                            Metrics.recordFirstAnswer();
+                        }
+                        sse.send("token", token);
+                    })
+                    .onCompleteResponse(response -> {
+                        sse.send("done", "");
+                        done.complete(null);
+                    })
+                    .onError(err -> {
+                        Metrics.counter("chat.errors").increment();
+                        sse.send("error", String.valueOf(err.getMessage()));
+                        done.complete(null);
+                    })
+                    .start();
+        } catch (RuntimeException e) {
+            done.completeExceptionally(e);
+        }
+    }
+
+    private void handleMetrics(HttpExchange exchange, Map<String, String> params) throws IOException {
+        send(exchange, 200, "text/plain; version=0.0.4; charset=utf-8", MetricsExporter.toPrometheus());
+    }
+
+    private void handleHealth(HttpExchange exchange, Map<String, String> params) throws IOException {
+        sendJson(exchange, 200, Map.of("status", "ok", "folders", folders.size(),
+                "llmPermitsAvailable", llmPermits.availablePermits()));
+    }
+
+    // --- Conversations ---
+
+    /**
+     * Marks the conversation as streaming and evicts the ones that went idle or exceed
+     * {@value #MAX_CONVERSATIONS}. Conversations with a stream in flight are never evicted.
+     */
+    private void openConversation(String memoryId) {
+        List<String> expired = new ArrayList<>();
+        conversationLock.lock();
+        try {
+            long now = System.nanoTime();
+            Conversation conversation = conversations.computeIfAbsent(memoryId, id -> new Conversation());
+            conversation.streams++;
+            conversation.lastUsedNanos = now;
+            Iterator<Map.Entry<String, Conversation>> it = conversations.entrySet().iterator();
+            while (it.hasNext()) {
+                Map.Entry<String, Conversation> eldest = it.next();
+                boolean idle = now - eldest.getValue().lastUsedNanos > conversationIdle.toNanos();
+                if (!idle && conversations.size() <= MAX_CONVERSATIONS) break;
+                if (eldest.getValue().streams > 0) continue;
+                it.remove();
+                expired.add(eldest.getKey());
+            }
+        } finally {
+            conversationLock.unlock();
+        }
+        expired.forEach(this::evictConversation);
+    }
+
+    private void closeConversation(String memoryId) {
+        conversationLock.lock();
+        try {
+            Conversation conversation = conversations.get(memoryId);
+            if (conversation == null) return;
+            conversation.streams--;
+            conversation.lastUsedNanos = System.nanoTime();
+        } finally {
+            conversationLock.unlock();
+        }
+    }
+
+    // Every folder's assistant may hold the conversation; clearing it also drops it from the store
+    private void evictConversation(String memoryId) {
+        for (FolderContext folder : folders.values()) {
+            ChatMemory memory = folder.assistant().getChatMemory(memoryId);
+            if (memory == null) continue;
+            memory.clear();
+            folder.assistant().evictChatMemory(memoryId);
+        }
+        Metrics.counter("server.conversations_evicted").increment();
+    }
+
+    // --- Folder & parameter helpers ---
+
+    private FolderContext folder(Map<String, String> params) {
+        Path folder = dataRoot.resolve(params.getOrDefault("folder", ".")).toAbsolutePath().normalize();
+        if (!folder.startsWith(dataRoot) || !Files.isDirectory(folder)) {
+            throw new BadRequestException("Unknown folder: " + params.get("folder"));
+        }
+        return folders.computeIfAbsent(folder, f -> {
+            ContextRetriever retriever = new ContextRetriever(embeddingModel, f.toString(), registry);
+            return new FolderContext(retriever, assistantFactory.apply(retriever));
+        });
+    }
+
+    // A bare file name: it goes into the prompt and the tool resolves it inside the folder
+    private static String fileName(Map<String, String> params) {
+        String file = required(params, "file").strip();
+        if (file.indexOf('/') >= 0 || file.indexOf('\\') >= 0 || file.equals(".") || file.equals("..")) {
+            throw new BadRequestException("Invalid file name: " + file);
+        }
+        return file;
+    }
+
+    /**
+     * The caller's conversation id; a caller without one gets a fresh id, so unrelated clients never
+     * share chat memory. It is echoed in the {@value #MEMORY_ID_HEADER} response header to continue with.
+     */
+    private static String memoryId(HttpExchange exchange, Map<String, String> params) {
+        String memoryId = params.get("memoryId");
+        if (memoryId == null || memoryId.isBlank()) memoryId = exchange.getRequestHeaders().getFirst(MEMORY_ID_HEADER);
+        if (memoryId == null || memoryId.isBlank()) memoryId = UUID.randomUUID().toString();
+        exchange.getResponseHeaders().set(MEMORY_ID_HEADER, memoryId);
+        return memoryId;
+    }
+
+    private static String required(Map<String, String> params, String name) {
+        String value = params.get(name);
+        if (value == null || value.isBlank()) throw new BadRequestException("Missing parameter: " + name);
+        return value;
+    }
+
+    private static int parseInt(String value) {
+        try {
+            return Math.max(1, Integer.parseInt(value));
+        } catch (NumberFormatException e) {
+            throw new BadRequestException("Not a number: " + value);
+        }
+    }
+
+    static Map<String, String> parameters(HttpExchange exchange) throws IOException {
+        Map<String, String> params = new HashMap<>(parseQuery(exchange.getRequestURI().getRawQuery()));
+        try (InputStream in = exchange.getRequestBody()) {
+            String body = new String(in.readAllBytes(), StandardCharsets.UTF_8).trim();
+            if (body.isEmpty()) return params;
+            String contentType = exchange.getRequestHeaders().getFirst("Content-Type");
+            if (body.startsWith("{")) {
+                mapper.readTree(body).properties().forEach(e -> params.put(e.getKey(), e.getValue().asText()));
+            } else if (contentType != null && contentType.startsWith("application/x-www-form-urlencoded")) {
+                params.putAll(parseQuery(body));
+            }
+        }
+        return params;
+    }
+
+    private static Map<String, String> parseQuery(String raw) {
+        Map<String, String> params = new HashMap<>();
+        if (raw == null || raw.isEmpty()) return params;
+        for (String pair : raw.split("&")) {
+            int eq = pair.indexOf('=');
+            String key = URLDecoder.decode(eq < 0 ? pair : pair.substring(0, eq), StandardCharsets.UTF_8);
+            String value = eq < 0 ? "" : URLDecoder.decode(pair.substring(eq + 1), StandardCharsets.UTF_8);
+            params.put(key, value);
+        }
+        return params;
+    }
+
+    // --- Response helpers ---
+
+    @FunctionalInterface
+    private interface Endpoint {
+        void handle(HttpExchange exchange, Map<String, String> params) throws Exception;
+    }
+
+    private HttpHandler guarded(String method, Endpoint endpoint) {
+        return exchange -> {
+            String path = exchange.getHttpContext().getPath();
+            try (Timer.Sample ignored = Metrics.timer("server" + path.replace('/', '.')).start()) {
+                if (!exchange.getRequestMethod().equalsIgnoreCase(method)) {
+                    sendJson(exchange, 405, Map.of("error", "Use " + method + " for " + path));
+                    return;
+                }
+                endpoint.handle(exchange, parameters(exchange));
+            } catch (BadRequestException e) {
+                sendError(exchange, 400, e.getMessage());
+            } catch (Exception e) {
+                log.error("Request to {} failed: {}", path, e.getMessage(), e);
+                sendError(exchange, 500, String.valueOf(e.getMessage()));
+            } finally {
+                exchange.close();
+            }
+        };
+    }
+
+    private static void sendError(HttpExchange exchange, int status, String message) {
+        try {
+            sendJson(exchange, status, Map.of("error", message));
+        } catch (IOException e) {
+            // Headers were already sent (e.g. mid-stream); nothing more we can tell the client
+            log.debug("Could not report error to client: {}", e.getMessage());
+        }
+    }
+
+    private static void sendJson(HttpExchange exchange, int status, Object body) throws IOException {
+        send(exchange, status, "application/json; charset=utf-8", mapper.writeValueAsString(body));
+    }
+
+    private static void send(HttpExchange exchange, int status, String contentType, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", contentType);
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    static class BadRequestException extends RuntimeException {
+        BadRequestException(String message) {
+            super(message);
+        }
+    }
+
+    /**
+     * Serializes events onto the response body; tokens may arrive on the model client's threads.
+     */
+    private static class SseWriter {
+        private final OutputStream out;
+        // A lock rather than synchronized: socket writes must not pin the virtual thread's carrier
+        private final ReentrantLock lock = new ReentrantLock();
+        private volatile boolean sentTokens;
+        private boolean broken;
+
+        SseWriter(OutputStream out) {
+            this.out = out;
+        }
+
+        boolean hasSentTokens() {
+            return sentTokens;
+        }
+
+        void send(String event, String data) {
+            StringBuilder frame = new StringBuilder("event: ").append(event).append('\n');
+            for (String line : data.split("\n", -1)) frame.append("data: ").append(line).append('\n');
+            frame.append('\n');
+            lock.lock();
+            try {
+                if (broken) return;
+                if ("token".equals(event)) sentTokens = true;
+                out.write(frame.toString().getBytes(StandardCharsets.UTF_8));
+                out.flush();
+            } catch (IOException e) {
+                // Client went away; keep draining the model stream so the permit is released normally
+                broken = true;
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+}
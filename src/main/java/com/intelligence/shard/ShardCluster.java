@@ -0,0 +1,193 @@
+package com.intelligence.shard;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.net.SocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.stream.Stream;
+
+/**
+ * Runs a folder as {@code N} {@link ShardWorker} processes on this machine, each a JVM with its
+ * own heap holding its share of the index, and a {@link ShardCoordinator} connected to them.
+ * Workers talk over Unix domain sockets in a private temp directory, or loopback TCP when
+ * {@value #TRANSPORT_PROPERTY} is {@code tcp}. {@value #WORKER_HEAP_PROPERTY} sets each worker's
+ * maximum heap in MB (default: the JVM's).
+ */
+public class ShardCluster implements AutoCloseable {
+    private static final Logger log = LoggerFactory.getLogger(ShardCluster.class);
+    public static final String SHARDS_PROPERTY = "docintel.shards";
+    public static final String TRANSPORT_PROPERTY = "docintel.shard.transport";
+    public static final String WORKER_HEAP_PROPERTY = "docintel.shard.worker.heap.mb";
+    // Building a shard's index embeds its files, which can take a while on a cold start
+    private static final Duration START_TIMEOUT = Duration.ofMinutes(30);
+
+    private final List<Process> workers;
+    private final List<SocketAddress> addresses;
+    private final Path socketDirectory;
+    private final ShardCoordinator coordinator;
+
+    private ShardCluster(List<Process> workers, List<SocketAddress> addresses, Path socketDirectory) {
+        this.workers = workers;
+        this.addresses = addresses;
+        this.socketDirectory = socketDirectory;
+        this.coordinator = new ShardCoordinator(addresses);
+    }
+
+    /**
+     * Starts {@code shards} workers for the folder and waits until each has its index loaded.
+     *
+     * @param workerCommand main class and leading arguments of the worker process, e.g. the
+     *                      app's main class and its worker flag; the shard options are appended
+     */
+    public static ShardCluster launch(String folder, int shards, List<String> workerCommand) throws IOException {
+        return launch(folder, shards, workerCommand, START_TIMEOUT);
+    }
+
+    public static ShardCluster launch(String folder, int shards, List<String> workerCommand, Duration startTimeout)
+            throws IOException {
+        if (shards < 1) throw new IllegalArgumentException("shards must be at least 1");
+        boolean tcp = "tcp".equalsIgnoreCase(System.getProperty(TRANSPORT_PROPERTY));
+        Path socketDirectory = tcp ? null : Files.createTempDirectory("docintel-shards");
+        List<Process> workers = new ArrayList<>(shards);
+        List<CompletableFuture<SocketAddress>> ready = new ArrayList<>(shards);
+        try {
+            for (int shard = 0; shard < shards; shard++) {
+                String address = tcp ? "127.0.0.1:0" : socketDirectory.resolve("shard-" + shard + ".sock").toString();
+                Process worker = start(workerCommand, folder, shard, shards, address);
+                workers.add(worker);
+                ready.add(awaitReady(worker, shard));
+            }
+            List<SocketAddress> addresses = new ArrayList<>(shards);
+            long deadline = System.nanoTime() + startTimeout.toNanos();
+            for (CompletableFuture<SocketAddress> address : ready) {
+                addresses.add(address.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS));
+            }
+            log.info("{} shard workers serving {}", shards, folder);
+            return new ShardCluster(workers, List.copyOf(addresses), socketDirectory);
+        } catch (IOException | RuntimeException e) {
+            stop(workers, socketDirectory);
+            throw e;
+        } catch (ExecutionException | TimeoutException e) {
+            stop(workers, socketDirectory);
+            throw new IOException("Shard workers for " + folder + " did not start", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            stop(workers, socketDirectory);
+            throw new IOException("Interrupted while starting shard workers", e);
+        }
+    }
+
+    private static Process start(List<String> workerCommand, String folder, int shard, int shards, String address)
+            throws IOException {
+        List<String> command = new ArrayList<>();
+        command.add(Paths.get(System.getProperty("java.home"), "bin", "java").toString());
+        Long heapMb = Long.getLong(WORKER_HEAP_PROPERTY);
+        if (heapMb != null) command.add("-Xmx" + heapMb + "m");
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.addAll(workerCommand);
+        command.add("--folder=" + folder);
+        command.add("--shard=" + shard);
+        command.add("--shards=" + shards);
+        command.add("--address=" + address);
+        return new ProcessBuilder(command).redirectError(ProcessBuilder.Redirect.INHERIT).start();
+    }
+
+    /**
+     * Completes with the worker's address once it reports ready; its other output is logged.
+     */
+    private static CompletableFuture<SocketAddress> awaitReady(Process worker, int shard) {
+        CompletableFuture<SocketAddress> ready = new CompletableFuture<>();
+        Thread.ofVirtual().name("shard-" + shard + "-output").start(() -> {
+            try (BufferedReader out = new BufferedReader(new InputStreamReader(worker.getInputStream(), StandardCharsets.UTF_8))) {
+                String line;
+                while ((line = out.readLine()) != null) {
+                    if (!ready.isDone() && line.startsWith(ShardProtocol.READY_MARKER + " ")) {
+                        String[] parts = line.split(" ");
+                        ready.complete(ShardProtocol.parseAddress(parts[1]));
+                    } else {
+                        log.debug("shard {}: {}", shard, line);
+                    }
+                }
+            } catch (IOException | RuntimeException e) {
+                ready.completeExceptionally(e);
+            }
+            if (!ready.isDone()) ready.completeExceptionally(new IOException("Shard " + shard + " exited with " + exitCode(worker)));
+        });
+        return ready;
+    }
+
+    private static String exitCode(Process worker) {
+        try {
+            return worker.waitFor(5, TimeUnit.SECONDS) ? String.valueOf(worker.exitValue()) : "no exit code";
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return "no exit code";
+        }
+    }
+
+    public ShardCoordinator coordinator() {
+        return coordinator;
+    }
+
+    /**
+     * Where the workers listen, in shard order, e.g. for a coordinator with another deadline.
+     */
+    public List<SocketAddress> addresses() {
+        return addresses;
+    }
+
+    /**
+     * The worker processes, in shard order.
+     */
+    public List<Process> workers() {
+        return List.copyOf(workers);
+    }
+
+    @Override
+    public void close() {
+        coordinator.close();
+        stop(workers, socketDirectory);
+    }
+
+    // Closing stdin lets a worker exit on its own; one that does not is killed
+    private static void stop(List<Process> workers, Path socketDirectory) {
+        for (Process worker : workers) {
+            try {
+                worker.getOutputStream().close();
+            } catch (IOException ignored) {
+                // already gone
+            }
+        }
+        for (Process worker : workers) {
+            try {
+                if (!worker.waitFor(5, TimeUnit.SECONDS)) worker.destroyForcibly();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                worker.destroyForcibly();
+            }
+        }
+        if (socketDirectory == null) return;
+        try (Stream<Path> files = Files.walk(socketDirectory)) {
+            for (Path p : files.sorted(Comparator.reverseOrder()).toList()) Files.deleteIfExists(p);
+        } catch (IOException | UncheckedIOException e) {
+            log.debug("Could not remove {}: {}", socketDirectory, e.getMessage());
+        }
+    }
+}
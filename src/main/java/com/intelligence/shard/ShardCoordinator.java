@@ -0,0 +1,307 @@
+package com.intelligence.shard;
+
+import com.intelligence.index.ScoredSegment;
+import com.intelligence.index.SearchFilter;
+import com.intelligence.metrics.Metrics;
+import com.intelligence.metrics.Timer;
+import com.intelligence.model.CircuitBreaker;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.net.SocketAddress;
+import java.nio.channels.SocketChannel;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Scatter-gather over the {@link ShardWorker}s of one folder. A query goes to every shard at
+ * once and the partial top-k lists are merged by score. Shards that have not answered by the
+ * deadline, or whose connection failed, are left out: the caller gets the best of what arrived,
+ * marked partial, rather than waiting on the slowest process. A failed connection is reopened
+ * on the next query.
+ *
+ * <p>At most {@value #DEFAULT_MAX_IN_FLIGHT} requests per shard are in flight; beyond that a
+ * shard is left out at once. A shard that misses {@value #DEFAULT_UNHEALTHY_AFTER} deadlines in
+ * a row is marked unhealthy: its connection is dropped and it is left out without a request for
+ * {@value #DEFAULT_RETRY_AFTER_MS} ms, after which one query tries it again over a new connection.
+ *
+ * <p>The deadline defaults to {@value #DEFAULT_DEADLINE_MS} ms, or {@value #DEADLINE_PROPERTY}.
+ */
+public class ShardCoordinator implements AutoCloseable {
+    private static final Logger log = LoggerFactory.getLogger(ShardCoordinator.class);
+    public static final String DEADLINE_PROPERTY = "docintel.shard.deadline.ms";
+    public static final long DEFAULT_DEADLINE_MS = 500;
+    static final int DEFAULT_MAX_IN_FLIGHT = 16;
+    static final int DEFAULT_UNHEALTHY_AFTER = 3;
+    static final long DEFAULT_RETRY_AFTER_MS = 2_000;
+
+    private final List<ShardClient> clients;
+    private final Duration deadline;
+    private final AtomicLong ids = new AtomicLong();
+
+    /**
+     * Merged hits, best first, and how many of the shards contributed to them.
+     */
+    public record Result(List<ScoredSegment> hits, int answered, int shards) {
+        public boolean partial() {
+            return answered < shards;
+        }
+    }
+
+    public ShardCoordinator(List<SocketAddress> shards, Duration deadline) {
+        this(shards, deadline, DEFAULT_MAX_IN_FLIGHT, DEFAULT_UNHEALTHY_AFTER, Duration.ofMillis(DEFAULT_RETRY_AFTER_MS));
+    }
+
+    /**
+     * @param maxInFlight    requests a shard may have outstanding before it is left out
+     * @param unhealthyAfter consecutive missed deadlines that mark a shard unhealthy
+     * @param retryAfter     how long an unhealthy shard is left out before it is tried again
+     */
+    ShardCoordinator(List<SocketAddress> shards, Duration deadline, int maxInFlight, int unhealthyAfter, Duration retryAfter) {
+        this.clients = new ArrayList<>(shards.size());
+        for (int i = 0; i < shards.size(); i++) {
+            clients.add(new ShardClient(i, shards.get(i), maxInFlight,
+                    new CircuitBreaker("breaker.shard_" + i, unhealthyAfter, retryAfter)));
+        }
+        this.deadline = deadline;
+    }
+
+    public ShardCoordinator(List<SocketAddress> shards) {
+        this(shards, Duration.ofMillis(Long.getLong(DEADLINE_PROPERTY, DEFAULT_DEADLINE_MS)));
+    }
+
+    /**
+     * The {@code k} segments most similar to the query vector across all shards that answer in time.
+     */
+    public Result search(float[] vector, int k, SearchFilter filter) {
+        return gather("", vector, k, filter);
+    }
+
+    /**
+     * Keyword (BM25) search on every shard. Each shard scores against its own term statistics,
+     * so scores from different shards are only roughly comparable.
+     */
+    public Result lexicalSearch(String query, int k, SearchFilter filter) {
+        return gather(query, new float[0], k, filter);
+    }
+
+    public int shards() {
+        return clients.size();
+    }
+
+    private Result gather(String query, float[] vector, int k, SearchFilter filter) {
+        if (k <= 0) return new Result(List.of(), clients.size(), clients.size());
+        try (Timer.Sample ignored = Metrics.timer("shard.gather").start()) {
+            long id = ids.incrementAndGet();
+            ShardProtocol.Request request = new ShardProtocol.Request(id, k, filter, query, vector);
+            List<CompletableFuture<List<ScoredSegment>>> replies = new ArrayList<>(clients.size());
+            for (ShardClient client : clients) replies.add(client.send(request));
+
+            long deadlineNanos = System.nanoTime() + deadline.toNanos();
+            List<ScoredSegment> merged = new ArrayList<>();
+            int answered = 0;
+            for (int i = 0; i < replies.size(); i++) {
+                CompletableFuture<List<ScoredSegment>> reply = replies.get(i);
+                try {
+                    merged.addAll(reply.get(Math.max(0, deadlineNanos - System.nanoTime()), TimeUnit.NANOSECONDS));
+                    answered++;
+                } catch (TimeoutException e) {
+                    clients.get(i).abandon(id, reply, true);
+                    Metrics.counter("shard.timeouts").increment();
+                    log.debug("Shard {} missed the {} ms deadline", i, deadline.toMillis());
+                } catch (ExecutionException e) {
+                    Metrics.counter("shard.failures").increment();
+                    log.debug("Shard {} failed: {}", i, e.getCause().getMessage());
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    for (int j = i; j < replies.size(); j++) clients.get(j).abandon(id, replies.get(j), false);
+                    break;
+                }
+            }
+            if (answered < clients.size()) Metrics.counter("shard.partial_results").increment();
+            // Stable, so ties keep shard order
+            merged.sort(Comparator.comparingDouble(ScoredSegment::score).reversed());
+            return new Result(merged.size() <= k ? merged : List.copyOf(merged.subList(0, k)), answered, clients.size());
+        }
+    }
+
+    @Override
+    public void close() {
+        for (ShardClient client : clients) client.close();
+    }
+
+    /**
+     * One multiplexed connection to a worker: requests are written under a lock, and a reader
+     * thread completes the pending reply with the matching id. A request holds one of the
+     * in-flight slots until it is answered or abandoned and its writer is done.
+     */
+    private static final class ShardClient {
+        private final int shard;
+        private final SocketAddress address;
+        private final Semaphore inFlight;
+        private final CircuitBreaker health;
+        private final ReentrantLock lock = new ReentrantLock();
+        private final Map<Long, CompletableFuture<List<ScoredSegment>>> pending = new ConcurrentHashMap<>();
+        private volatile SocketChannel channel;
+        private boolean closed;
+
+        ShardClient(int shard, SocketAddress address, int maxInFlight, CircuitBreaker health) {
+            this.shard = shard;
+            this.address = address;
+            this.inFlight = new Semaphore(Math.max(1, maxInFlight));
+            this.health = health;
+        }
+
+        // Written on a virtual thread, so a stalled shard with a full socket buffer cannot hold up the gather
+        CompletableFuture<List<ScoredSegment>> send(ShardProtocol.Request request) {
+            CompletableFuture<List<ScoredSegment>> reply = new CompletableFuture<>();
+            if (!inFlight.tryAcquire()) {
+                Metrics.counter("shard.rejected").increment();
+                reply.completeExceptionally(new IOException("Shard " + shard + " has too many requests in flight"));
+                return reply;
+            }
+            if (!health.allowRequest()) {
+                inFlight.release();
+                Metrics.counter("shard.rejected").increment();
+                reply.completeExceptionally(new IOException("Shard " + shard + " is unhealthy"));
+                return reply;
+            }
+            reply.whenComplete((hits, error) -> {
+                if (error == null) health.recordSuccess();
+                else if (!(error instanceof CancellationException)) health.recordFailure();
+            });
+            CompletableFuture<Void> written = new CompletableFuture<>();
+            CompletableFuture.allOf(reply, written).whenComplete((ignored, error) -> inFlight.release());
+            Thread.ofVirtual().name("shard-" + shard + "-send").start(() -> {
+                try {
+                    write(request, reply);
+                } finally {
+                    written.complete(null);
+                }
+            });
+            return reply;
+        }
+
+        private void write(ShardProtocol.Request request, CompletableFuture<List<ScoredSegment>> reply) {
+            lock.lock();
+            try {
+                // Abandoned while queued behind earlier writes: the gather has moved on
+                if (reply.isDone()) return;
+                pending.put(request.id(), reply);
+                if (reply.isDone()) {
+                    pending.remove(request.id(), reply);
+                    return;
+                }
+                if (closed) throw new IOException("Coordinator closed");
+                if (channel == null) channel = open();
+                ShardProtocol.writeFrame(channel, ShardProtocol.encode(request));
+            } catch (IOException e) {
+                pending.remove(request.id());
+                disconnect(channel);
+                reply.completeExceptionally(e);
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * Gives up on a request; a late answer is dropped by the reader. A missed deadline counts
+         * against the shard's health, and once that marks it unhealthy the connection is dropped,
+         * which also frees writers stuck behind a full socket buffer.
+         */
+        void abandon(long id, CompletableFuture<List<ScoredSegment>> reply, boolean timedOut) {
+            if (!reply.cancel(false)) return;
+            pending.remove(id, reply);
+            if (!timedOut) {
+                health.release();
+                return;
+            }
+            health.recordFailure();
+            if (health.state() == CircuitBreaker.State.OPEN) {
+                Metrics.counter("shard.unhealthy").increment();
+                log.warn("Shard {} missed its deadline repeatedly; dropping the connection", shard);
+                dropConnection();
+            }
+        }
+
+        // Without the lock, which a writer blocked on the socket may hold; closing wakes it and the reader
+        private void dropConnection() {
+            SocketChannel current = channel;
+            if (current == null) return;
+            try {
+                current.close();
+            } catch (IOException ignored) {
+                // already broken
+            }
+        }
+
+        private SocketChannel open() throws IOException {
+            SocketChannel opened = ShardProtocol.connect(address);
+            Thread.ofVirtual().name("shard-" + shard + "-reader").start(() -> read(opened));
+            return opened;
+        }
+
+        private void read(SocketChannel from) {
+            try {
+                byte[] frame;
+                while ((frame = ShardProtocol.readFrame(from)) != null) {
+                    ShardProtocol.Response response = ShardProtocol.decodeResponse(frame);
+                    CompletableFuture<List<ScoredSegment>> reply = pending.remove(response.id());
+                    if (reply == null) continue;
+                    if (response.error() != null) {
+                        reply.completeExceptionally(new IOException("Shard " + shard + ": " + response.error()));
+                    } else {
+                        reply.complete(response.hits());
+                    }
+                }
+            } catch (IOException e) {
+                log.debug("Lost connection to shard {}: {}", shard, e.getMessage());
+            }
+            disconnect(from);
+        }
+
+        // Fails whatever was waiting on the connection; the next send opens a new one
+        private void disconnect(SocketChannel failed) {
+            lock.lock();
+            try {
+                if (failed == null || channel != failed) return;
+                channel = null;
+                try {
+                    failed.close();
+                } catch (IOException ignored) {
+                    // already broken
+                }
+                IOException lost = new IOException("Connection to shard " + shard + " lost");
+                for (Long id : List.copyOf(pending.keySet())) {
+                    CompletableFuture<List<ScoredSegment>> reply = pending.remove(id);
+                    if (reply != null) reply.completeExceptionally(lost);
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        void close() {
+            lock.lock();
+            try {
+                closed = true;
+                disconnect(channel);
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+}
@@ -0,0 +1,278 @@
+package com.intelligence.shard;
+
+import com.intelligence.index.ScoredSegment;
+import com.intelligence.index.SearchFilter;
+import dev.langchain4j.data.document.Metadata;
+import dev.langchain4j.data.segment.TextSegment;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Wire format between {@link ShardCoordinator} and {@link ShardWorker}: length-prefixed binary
+ * frames over a blocking {@link SocketChannel}, on a Unix domain socket or loopback TCP. Requests
+ * carry an id so one connection can have many in flight; responses may come back in any order.
+ *
+ * <p>A request is {@code id, k, filter, query, vector}; an empty vector asks for keyword search.
+ * A response is {@code id} followed by the hits (score, text, typed metadata) or an error message.
+ */
+final class ShardProtocol {
+    // Printed by a worker on stdout once its index is loaded and it accepts connections
+    static final String READY_MARKER = "SHARD_READY";
+    private static final int MAX_FRAME_BYTES = 64 * 1024 * 1024;
+    private static final byte OK = 0;
+    private static final byte ERROR = 1;
+
+    private ShardProtocol() {
+    }
+
+    record Request(long id, int k, SearchFilter filter, String query, float[] vector) {
+        boolean lexical() {
+            return vector.length == 0;
+        }
+    }
+
+    /**
+     * Hits of one shard, best first, or the error it reported (hits are then empty).
+     */
+    record Response(long id, List<ScoredSegment> hits, String error) {
+    }
+
+    /**
+     * {@code host:port} for loopback TCP, anything else is a Unix domain socket path.
+     */
+    static SocketAddress parseAddress(String address) {
+        int colon = address.lastIndexOf(':');
+        if (colon > 0 && !address.contains("/") && address.substring(colon + 1).chars().allMatch(Character::isDigit)) {
+            return new InetSocketAddress(address.substring(0, colon), Integer.parseInt(address.substring(colon + 1)));
+        }
+        return UnixDomainSocketAddress.of(Path.of(address));
+    }
+
+    static String formatAddress(SocketAddress address) {
+        if (address instanceof InetSocketAddress inet) return inet.getHostString() + ":" + inet.getPort();
+        return ((UnixDomainSocketAddress) address).getPath().toString();
+    }
+
+    static ServerSocketChannel bind(SocketAddress address) throws IOException {
+        ServerSocketChannel server = address instanceof UnixDomainSocketAddress
+                ? ServerSocketChannel.open(StandardProtocolFamily.UNIX) : ServerSocketChannel.open();
+        return server.bind(address);
+    }
+
+    static SocketChannel connect(SocketAddress address) throws IOException {
+        SocketChannel channel = address instanceof UnixDomainSocketAddress
+                ? SocketChannel.open(StandardProtocolFamily.UNIX) : SocketChannel.open();
+        try {
+            channel.connect(address);
+            return channel;
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    static byte[] encode(Request request) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64 + request.vector().length * Float.BYTES);
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeLong(request.id());
+        out.writeInt(request.k());
+        writeFilter(out, request.filter());
+        writeString(out, request.query());
+        out.writeInt(request.vector().length);
+        for (float v : request.vector()) out.writeFloat(v);
+        return bytes.toByteArray();
+    }
+
+    static Request decodeRequest(byte[] frame) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(frame));
+        long id = in.readLong();
+        int k = in.readInt();
+        SearchFilter filter = readFilter(in);
+        String query = readString(in);
+        float[] vector = new float[in.readInt()];
+        for (int i = 0; i < vector.length; i++) vector[i] = in.readFloat();
+        return new Request(id, k, filter, query, vector);
+    }
+
+    static byte[] encode(Response response) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeLong(response.id());
+        if (response.error() != null) {
+            out.writeByte(ERROR);
+            writeString(out, response.error());
+            return bytes.toByteArray();
+        }
+        out.writeByte(OK);
+        out.writeInt(response.hits().size());
+        for (ScoredSegment hit : response.hits()) {
+            out.writeDouble(hit.score());
+            writeString(out, hit.segment().text());
+            writeMetadata(out, hit.segment().metadata());
+        }
+        return bytes.toByteArray();
+    }
+
+    static Response decodeResponse(byte[] frame) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(frame));
+        long id = in.readLong();
+        if (in.readByte() == ERROR) return new Response(id, List.of(), readString(in));
+        int count = in.readInt();
+        List<ScoredSegment> hits = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            double score = in.readDouble();
+            String text = readString(in);
+            hits.add(new ScoredSegment(TextSegment.from(text, readMetadata(in)), score));
+        }
+        return new Response(id, hits, null);
+    }
+
+    static void writeFrame(SocketChannel channel, byte[] payload) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(Integer.BYTES + payload.length).putInt(payload.length).put(payload).flip();
+        while (buffer.hasRemaining()) channel.write(buffer);
+    }
+
+    /**
+     * The next frame's payload, or null if the peer closed the connection between frames.
+     */
+    static byte[] readFrame(SocketChannel channel) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(Integer.BYTES);
+        if (!readFully(channel, header)) return null;
+        int length = header.flip().getInt();
+        if (length < 0 || length > MAX_FRAME_BYTES) throw new IOException("Invalid frame length " + length);
+        ByteBuffer payload = ByteBuffer.allocate(length);
+        if (!readFully(channel, payload)) throw new EOFException("Connection closed mid-frame");
+        return payload.array();
+    }
+
+    // False on end of stream before the first byte
+    private static boolean readFully(SocketChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer) < 0) {
+                if (buffer.position() == 0) return false;
+                throw new EOFException("Connection closed mid-frame");
+            }
+        }
+        return true;
+    }
+
+    private static void writeFilter(DataOutputStream out, SearchFilter filter) throws IOException {
+        writeStrings(out, filter.fileNames());
+        writeStrings(out, filter.extensions());
+        writeStrings(out, filter.directories());
+        out.writeLong(filter.modifiedAfter() == null ? Long.MIN_VALUE : filter.modifiedAfter().toEpochMilli());
+        out.writeLong(filter.modifiedBefore() == null ? Long.MIN_VALUE : filter.modifiedBefore().toEpochMilli());
+    }
+
+    private static SearchFilter readFilter(DataInputStream in) throws IOException {
+        Set<String> fileNames = readStrings(in);
+        Set<String> extensions = readStrings(in);
+        Set<String> directories = readStrings(in);
+        long after = in.readLong();
+        long before = in.readLong();
+        return new SearchFilter(fileNames, extensions, directories,
+                after == Long.MIN_VALUE ? null : Instant.ofEpochMilli(after),
+                before == Long.MIN_VALUE ? null : Instant.ofEpochMilli(before));
+    }
+
+    // Values keep their type, so e.g. last_modified still reads back as a long
+    private static void writeMetadata(DataOutputStream out, Metadata metadata) throws IOException {
+        Map<String, Object> entries = metadata.toMap();
+        out.writeInt(entries.size());
+        for (Map.Entry<String, Object> entry : entries.entrySet()) {
+            writeString(out, entry.getKey());
+            switch (entry.getValue()) {
+                case Integer i -> {
+                    out.writeByte('I');
+                    out.writeInt(i);
+                }
+                case Long l -> {
+                    out.writeByte('L');
+                    out.writeLong(l);
+                }
+                case Float f -> {
+                    out.writeByte('F');
+                    out.writeFloat(f);
+                }
+                case Double d -> {
+                    out.writeByte('D');
+                    out.writeDouble(d);
+                }
+                case UUID u -> {
+                    out.writeByte('U');
+                    writeString(out, u.toString());
+                }
+                default -> {
+                    out.writeByte('S');
+                    writeString(out, String.valueOf(entry.getValue()));
+                }
+            }
+        }
+    }
+
+    private static Metadata readMetadata(DataInputStream in) throws IOException {
+        int count = in.readInt();
+        Map<String, Object> entries = new HashMap<>(count * 2);
+        for (int i = 0; i < count; i++) {
+            String key = readString(in);
+            byte type = in.readByte();
+            entries.put(key, switch (type) {
+                case 'I' -> in.readInt();
+                case 'L' -> in.readLong();
+                case 'F' -> in.readFloat();
+                case 'D' -> in.readDouble();
+                case 'U' -> UUID.fromString(readString(in));
+                case 'S' -> readString(in);
+                default -> throw new IOException("Unknown metadata type " + type);
+            });
+        }
+        return Metadata.from(entries);
+    }
+
+    private static void writeStrings(DataOutputStream out, Set<String> values) throws IOException {
+        out.writeInt(values.size());
+        for (String value : values) writeString(out, value);
+    }
+
+    private static Set<String> readStrings(DataInputStream in) throws IOException {
+        int count = in.readInt();
+        Set<String> values = new HashSet<>(count * 2);
+        for (int i = 0; i < count; i++) values.add(readString(in));
+        return values;
+    }
+
+    // writeUTF caps strings at 64 KB, too little for some chunk texts
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,183 @@
+package com.intelligence.shard;
+
+import com.intelligence.index.FolderIndex;
+import com.intelligence.index.FolderManifest;
+import com.intelligence.index.IndexRegistry;
+import com.intelligence.index.IndexSource;
+import com.intelligence.index.ParallelScan;
+import com.intelligence.index.ScoredSegment;
+import com.intelligence.index.SegmentedIndex;
+import com.intelligence.metrics.Metrics;
+import com.intelligence.metrics.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+/**
+ * One shard of a folder: the files whose name hashes to this shard, indexed in this process and
+ * searched on behalf of a {@link ShardCoordinator}. Each connection is read on its own virtual
+ * thread and each request answered on another, so a slow query does not hold up the next.
+ *
+ * <p>Run as a process through {@link #run}, usually spawned by {@link ShardCluster}: it loads
+ * the shard's index (from its snapshot when still valid), binds its socket, prints
+ * {@code SHARD_READY <address> <rows>} and serves until its standard input closes, which
+ * happens when the coordinator's process exits.
+ */
+public class ShardWorker implements AutoCloseable {
+    private static final Logger log = LoggerFactory.getLogger(ShardWorker.class);
+
+    private final Supplier<SegmentedIndex> index;
+    private final ServerSocketChannel server;
+
+    public ShardWorker(Supplier<SegmentedIndex> index, ServerSocketChannel server) {
+        this.index = index;
+        this.server = server;
+    }
+
+    /**
+     * The shard a file belongs to, from its name alone so every process agrees without coordination.
+     */
+    public static int shardOf(String fileName, int shards) {
+        return Math.floorMod(fileName.hashCode(), shards);
+    }
+
+    /**
+     * Options {@code folder}, {@code shard}, {@code shards} and {@code address} (a Unix socket
+     * path or {@code host:port}; port 0 picks a free one). Snapshots go to a per-shard directory
+     * under {@code snapshotRoot}. Returns when standard input reaches its end.
+     */
+    public static void run(Map<String, String> options, IndexSource source, Path snapshotRoot) throws IOException {
+        String folder = require(options, "folder");
+        int shard = Integer.parseInt(require(options, "shard"));
+        int shards = Integer.parseInt(require(options, "shards"));
+        Path snapshots = snapshotRoot.resolve("shard-" + shard + "-of-" + shards);
+        Files.createDirectories(snapshots);
+
+        try (IndexRegistry registry = new IndexRegistry(Long.MAX_VALUE, snapshots, owned(source, shard, shards));
+             ShardWorker worker = new ShardWorker(() -> registry.get(folder),
+                     ShardProtocol.bind(ShardProtocol.parseAddress(require(options, "address"))))) {
+            int rows = registry.get(folder).size();
+            worker.start();
+            System.out.println(ShardProtocol.READY_MARKER + " " + ShardProtocol.formatAddress(worker.server.getLocalAddress())
+                    + " " + rows);
+            System.out.flush();
+            log.info("Shard {}/{} of {} serving {} segments", shard, shards, folder, rows);
+            // The coordinator holds the other end of stdin; it closes when that process goes away
+            while (System.in.read() >= 0) {
+                // ignore anything written to us
+            }
+        }
+    }
+
+    /**
+     * Accepts connections on a virtual thread until closed.
+     */
+    public void start() {
+        Thread.ofVirtual().name("shard-accept").start(() -> {
+            try {
+                while (true) {
+                    SocketChannel channel = server.accept();
+                    Thread.ofVirtual().name("shard-connection").start(() -> serve(channel));
+                }
+            } catch (ClosedChannelException e) {
+                // closed
+            } catch (IOException e) {
+                log.warn("Shard stopped accepting connections: {}", e.getMessage());
+            }
+        });
+    }
+
+    private void serve(SocketChannel channel) {
+        ReentrantLock writeLock = new ReentrantLock();
+        try (channel) {
+            byte[] frame;
+            while ((frame = ShardProtocol.readFrame(channel)) != null) {
+                ShardProtocol.Request request = ShardProtocol.decodeRequest(frame);
+                Thread.ofVirtual().name("shard-query").start(() -> answer(channel, writeLock, request));
+            }
+        } catch (IOException e) {
+            log.debug("Shard connection closed: {}", e.getMessage());
+        }
+    }
+
+    private void answer(SocketChannel channel, ReentrantLock writeLock, ShardProtocol.Request request) {
+        ShardProtocol.Response response;
+        try (Timer.Sample ignored = Metrics.timer("shard.worker.search").start()) {
+            SegmentedIndex current = index.get();
+            List<ScoredSegment> hits = request.lexical()
+                    ? current.lexicalSearch(request.query(), request.k(), request.filter())
+                    : current.search(request.vector(), request.k(), ParallelScan.defaults(), request.filter());
+            response = new ShardProtocol.Response(request.id(), hits, null);
+        } catch (RuntimeException e) {
+            log.warn("Shard query failed: {}", e.getMessage());
+            response = new ShardProtocol.Response(request.id(), List.of(), String.valueOf(e.getMessage()));
+        }
+        writeLock.lock();
+        try {
+            ShardProtocol.writeFrame(channel, ShardProtocol.encode(response));
+        } catch (IOException e) {
+            log.debug("Could not answer shard query {}: {}", request.id(), e.getMessage());
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        server.close();
+    }
+
+    /**
+     * The source restricted to this shard's files, with its own fingerprint so snapshots of
+     * different shard layouts are never mixed up.
+     */
+    static IndexSource owned(IndexSource source, int shard, int shards) {
+        return new IndexSource() {
+            @Override
+            public FolderIndex build(String directoryPath) {
+                return buildFiles(directoryPath, manifest(directoryPath).files().keySet());
+            }
+
+            @Override
+            public FolderIndex buildFiles(String directoryPath, Set<String> fileNames) {
+                Set<String> mine = fileNames.stream().filter(name -> shardOf(name, shards) == shard).collect(Collectors.toSet());
+                FolderIndex built = source.buildFiles(directoryPath, mine);
+                if (built == null) throw new IllegalStateException("Sharding needs a source that can build single files");
+                return built;
+            }
+
+            @Override
+            public FolderManifest manifest(String directoryPath) {
+                Map<String, FolderManifest.FileStamp> mine = new HashMap<>();
+                source.manifest(directoryPath).files().forEach((name, stamp) -> {
+                    if (shardOf(name, shards) == shard) mine.put(name, stamp);
+                });
+                return new FolderManifest(mine);
+            }
+
+            @Override
+            public String fingerprint() {
+                return source.fingerprint() + "|shard=" + shard + "/" + shards;
+            }
+        };
+    }
+
+    private static String require(Map<String, String> options, String name) {
+        String value = options.get(name);
+        if (value == null) throw new IllegalArgumentException("Missing --" + name + "=");
+        return value;
+    }
+}
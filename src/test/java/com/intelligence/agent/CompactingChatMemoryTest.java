@@ -0,0 +1,129 @@
+package com.intelligence.agent;
+
+import com.intelligence.metrics.Metrics;
+import dev.langchain4j.agent.tool.ToolExecutionRequest;
+import dev.langchain4j.data.message.AiMessage;
+import dev.langchain4j.data.message.ChatMessage;
+import dev.langchain4j.data.message.SystemMessage;
+import dev.langchain4j.data.message.ToolExecutionResultMessage;
+import dev.langchain4j.data.message.UserMessage;
+import dev.langchain4j.model.openai.OpenAiTokenCountEstimator;
+import dev.langchain4j.store.memory.chat.InMemoryChatMemoryStore;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class CompactingChatMemoryTest {
+    private static final OpenAiTokenCountEstimator ESTIMATOR = new OpenAiTokenCountEstimator("gpt-4o");
+    private static final int BUDGET = 3_000;
+
+    private static CompactingChatMemory memory(InMemoryChatMemoryStore store) {
+        return new CompactingChatMemory("user", store, ESTIMATOR, ConversationSummarizer.extractive(), BUDGET, 2, 200);
+    }
+
+    // A question answered with one tool call whose result is about 20,000 characters
+    private static void turn(CompactingChatMemory memory, int i) {
+        memory.add(SystemMessage.from("You answer questions about the user's documents."));
+        memory.add(UserMessage.from("What does report " + i + " say about the budget?"));
+        ToolExecutionRequest call = ToolExecutionRequest.builder()
+                .id("call-" + i).name("searchDocuments").arguments("{\"query\":\"report " + i + "\"}").build();
+        memory.add(AiMessage.from(call));
+        memory.add(ToolExecutionResultMessage.from(call, ("Report " + i + " budget line. ").repeat(800)));
+        memory.add(AiMessage.from("Report " + i + " keeps the budget flat. It also mentions hiring."));
+    }
+
+    @Test
+    @DisplayName("Prompt tokens stay within the budget over a long session with large tool results")
+    void staysWithinBudget() throws InterruptedException {
+        CompactingChatMemory memory = memory(new InMemoryChatMemoryStore());
+
+        for (int i = 0; i < 50; i++) {
+            turn(memory, i);
+            memory.awaitSummary();
+            assertThat(memory.promptTokens()).isLessThanOrEqualTo(BUDGET);
+        }
+
+        List<ChatMessage> messages = memory.messages();
+        assertThat(messages.get(0)).isInstanceOf(SystemMessage.class);
+        assertThat(((SystemMessage) messages.get(0)).text())
+                .startsWith("You answer questions")
+                .contains("User asked: What does report 47 say about the budget? Answer: Report 47 keeps the budget flat.")
+                .doesNotContain("report 48");
+        // System message plus the two recent turns, verbatim apart from their stubbed tool results
+        assertThat(messages).hasSize(9);
+        assertThat(messages.get(messages.size() - 1)).isEqualTo(AiMessage.from("Report 49 keeps the budget flat. It also mentions hiring."));
+    }
+
+    @Test
+    @DisplayName("Tool results are cut to a stub once the turn that used them is answered")
+    void stubsUsedToolResults() {
+        CompactingChatMemory memory = new CompactingChatMemory("user", new InMemoryChatMemoryStore(), ESTIMATOR,
+                ConversationSummarizer.extractive(), 100_000, 2, 200);
+        memory.add(UserMessage.from("What does the report say?"));
+        ToolExecutionRequest call = ToolExecutionRequest.builder().id("c1").name("searchDocuments").arguments("{}").build();
+        memory.add(AiMessage.from(call));
+        memory.add(ToolExecutionResultMessage.from(call, "Budget line. ".repeat(2_000)));
+
+        // While the model is still working on the turn the result is complete
+        assertThat(((ToolExecutionResultMessage) memory.messages().get(2)).text()).hasSize(26_000);
+
+        memory.add(AiMessage.from("The budget is flat."));
+        ToolExecutionResultMessage stubbed = (ToolExecutionResultMessage) memory.messages().get(2);
+        assertThat(stubbed.id()).isEqualTo("c1");
+        assertThat(stubbed.toolName()).isEqualTo("searchDocuments");
+        assertThat(stubbed.text()).startsWith("Budget line.").contains("call the tool again");
+        assertThat(ESTIMATOR.estimateTokenCountInText(stubbed.text())).isLessThan(200);
+    }
+
+    @Test
+    @DisplayName("Trimmed turns are counted once, not on every read of the messages")
+    void countsTrimmedTurnsOnce() throws InterruptedException {
+        CountDownLatch release = new CountDownLatch(1);
+        // The summary does not land during the test, so the oldest turns have to be trimmed
+        ConversationSummarizer held = (previous, messages, maxChars) -> {
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return "Earlier questions about reports.";
+        };
+        CompactingChatMemory memory = new CompactingChatMemory("user", new InMemoryChatMemoryStore(), ESTIMATOR,
+                held, 300, 2, 200);
+        long before = Metrics.counter("memory.turns_trimmed").count();
+
+        for (int i = 0; i < 20; i++) {
+            memory.add(UserMessage.from("What does report " + i + " say about the budget?"));
+            memory.add(AiMessage.from("Report " + i + " keeps the budget flat."));
+        }
+        long kept = memory.messages().stream().filter(UserMessage.class::isInstance).count();
+        for (int i = 0; i < 5; i++) memory.messages();
+
+        assertThat(kept).isLessThan(20);
+        assertThat(Metrics.counter("memory.turns_trimmed").count() - before).isEqualTo(20 - kept);
+        release.countDown();
+        memory.awaitSummary();
+    }
+
+    @Test
+    @DisplayName("The summary and the recent turns survive a reload from the store")
+    void persistsSummary() throws InterruptedException {
+        InMemoryChatMemoryStore store = new InMemoryChatMemoryStore();
+        CompactingChatMemory memory = memory(store);
+        for (int i = 0; i < 10; i++) {
+            turn(memory, i);
+            memory.awaitSummary();
+        }
+
+        CompactingChatMemory reloaded = memory(store);
+
+        assertThat(reloaded.summary()).isNotEmpty().isEqualTo(memory.summary());
+        assertThat(reloaded.messages()).isEqualTo(memory.messages());
+        reloaded.clear();
+        assertThat(store.getMessages("user")).isEmpty();
+    }
+}
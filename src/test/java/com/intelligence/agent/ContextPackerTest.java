@@ -0,0 +1,68 @@
+package com.intelligence.agent;
+
+import com.intelligence.index.ScoredSegment;
+import com.intelligence.metrics.Metrics;
+import dev.langchain4j.data.document.Metadata;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.openai.OpenAiTokenCountEstimator;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ContextPackerTest {
+    private static final OpenAiTokenCountEstimator ESTIMATOR = new OpenAiTokenCountEstimator("gpt-4o");
+
+    private static ScoredSegment hit(String file, int chunk, String text, double score) {
+        return new ScoredSegment(TextSegment.from(text, Metadata.from("file_name", file).put("chunk_index", chunk)), score);
+    }
+
+    @Test
+    @DisplayName("Adjacent chunks are stitched without their overlap and repeated sentences are dropped")
+    void mergesAndDeduplicates() {
+        ContextPacker packer = new ContextPacker(ESTIMATOR, 1_000, 1_000);
+        List<ScoredSegment> hits = List.of(
+                hit("plan.md", 3, "Hiring starts in May. The budget is fixed.", 0.9),
+                hit("plan.md", 4, "The budget is fixed. Travel is capped at ten trips.", 0.7),
+                hit("notes.txt", 0, "Confidential draft. Hiring starts in May.", 0.5),
+                hit("notes.txt", 1, "Confidential draft. Offices reopen in June.", 0.4));
+
+        List<ContextPacker.Passage> passages = packer.pack(hits, 4);
+
+        assertThat(passages).extracting(ContextPacker.Passage::fileName).containsExactly("plan.md", "notes.txt");
+        assertThat(passages.get(0).text())
+                .isEqualTo("Hiring starts in May. The budget is fixed. Travel is capped at ten trips.");
+        // "Hiring starts in May." already came from plan.md and the repeated header appears once
+        assertThat(passages.get(1).text()).isEqualTo("Confidential draft. Offices reopen in June.");
+        assertThat(passages.get(0).score()).isEqualTo(0.9);
+    }
+
+    @Test
+    @DisplayName("Passages fill the budget by score per token and the savings are counted")
+    void respectsTokenBudget() {
+        String longText = IntStream.range(0, 40).mapToObj(i -> "Filler sentence " + i + " about nothing.")
+                .collect(Collectors.joining(" "));
+        List<ScoredSegment> hits = List.of(
+                hit("a.txt", 0, "Revenue grew nine percent.", 0.9),
+                hit("b.txt", 0, longText, 0.8),
+                hit("c.txt", 0, "Costs fell slightly.", 0.3));
+        ContextPacker packer = new ContextPacker(ESTIMATOR, 60, 1_000);
+        long savedBefore = Metrics.counter("context.tokens_saved").count();
+
+        List<ContextPacker.Passage> passages = packer.pack(hits, 3);
+
+        assertThat(passages).extracting(ContextPacker.Passage::fileName).containsExactly("a.txt", "c.txt");
+        assertThat(passages.stream().mapToInt(ContextPacker.Passage::tokens).sum()).isLessThanOrEqualTo(60);
+        assertThat(Metrics.counter("context.tokens_saved").count()).isGreaterThan(savedBefore);
+
+        // An oversized best passage is trimmed at a sentence boundary rather than dropped
+        List<ContextPacker.Passage> trimmed = new ContextPacker(ESTIMATOR, 40, 1_000).pack(List.of(hits.get(1)), 1);
+        assertThat(trimmed).hasSize(1);
+        assertThat(trimmed.get(0).tokens()).isLessThanOrEqualTo(40);
+        assertThat(trimmed.get(0).text()).endsWith("nothing.");
+    }
+}
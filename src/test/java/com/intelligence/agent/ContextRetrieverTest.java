@@ -0,0 +1,336 @@
+package com.intelligence.agent;
+
+import com.intelligence.index.ScoredSegment;
+import com.intelligence.index.SearchFilter;
+import com.intelligence.metrics.Metrics;
+import com.intelligence.model.CircuitBreaker;
+import com.intelligence.model.PrioritizedEmbeddingModel;
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.model.output.Response;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ContextRetrieverTest {
+
+    @TempDir
+    Path folder;
+
+    /**
+     * Bulk embeddings are instant; query embeddings take {@code queryDelayMs}.
+     */
+    private static class SlowQueryModel implements EmbeddingModel {
+        volatile long queryDelayMs;
+        final AtomicInteger queryCalls = new AtomicInteger();
+
+        @Override
+        public Response<Embedding> embed(String text) {
+            queryCalls.incrementAndGet();
+            try {
+                Thread.sleep(queryDelayMs);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return Response.from(Embedding.from(new float[]{1f, text.length()}));
+        }
+
+        @Override
+        public Response<List<Embedding>> embedAll(List<TextSegment> segments) {
+            return Response.from(segments.stream().map(s -> Embedding.from(new float[]{1f, s.text().length()})).toList());
+        }
+    }
+
+    /**
+     * Letter-count vectors; once {@code slow} is set, each embedAll call takes 50 ms and is counted.
+     */
+    private static class BatchingModel implements EmbeddingModel {
+        final AtomicBoolean slow = new AtomicBoolean();
+        final AtomicInteger calls = new AtomicInteger();
+        final AtomicInteger largestBatch = new AtomicInteger();
+
+        @Override
+        public Response<List<Embedding>> embedAll(List<TextSegment> segments) {
+            if (slow.get()) {
+                calls.incrementAndGet();
+                largestBatch.accumulateAndGet(segments.size(), Math::max);
+                try {
+                    Thread.sleep(50);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            return Response.from(segments.stream().map(s -> Embedding.from(letters(s.text()))).toList());
+        }
+
+        static float[] letters(String text) {
+            float[] v = new float[26];
+            for (char c : text.toLowerCase().toCharArray()) if (c >= 'a' && c <= 'z') v[c - 'a']++;
+            return v;
+        }
+    }
+
+    private void writeDocs() throws IOException {
+        Files.writeString(folder.resolve("pasta.txt"), "Carbonara needs guanciale, pecorino and eggs.");
+        Files.writeString(folder.resolve("budget.txt"), "The quarterly budget covers hiring and travel.");
+    }
+
+    @Test
+    @DisplayName("Slow query embeddings fall back to keyword search within the budget")
+    void fallsBackToKeywordSearch() throws IOException {
+        writeDocs();
+        SlowQueryModel model = new SlowQueryModel();
+        model.queryDelayMs = 2_000;
+        ContextRetriever retriever = new ContextRetriever(model, folder.toString(), null,
+                new RetrievalPolicy(Duration.ofMillis(100), 10, Duration.ofSeconds(30)));
+        retriever.index();
+
+        long start = System.nanoTime();
+        List<ScoredSegment> hits = retriever.search("which cheese goes in carbonara", 5, SearchFilter.NONE);
+
+        assertThat(Duration.ofNanos(System.nanoTime() - start)).isLessThan(Duration.ofSeconds(1));
+        assertThat(hits).isNotEmpty();
+        assertThat(hits.get(0).fileName()).isEqualTo("pasta.txt");
+    }
+
+    @Test
+    @DisplayName("Repeated timeouts open the breaker so later queries skip the model")
+    void breakerOpensAfterRepeatedTimeouts() throws IOException {
+        writeDocs();
+        SlowQueryModel model = new SlowQueryModel();
+        model.queryDelayMs = 500;
+        ContextRetriever retriever = new ContextRetriever(model, folder.toString(), null,
+                new RetrievalPolicy(Duration.ofMillis(20), 2, Duration.ofSeconds(30)));
+
+        retriever.search("budget one", 5, SearchFilter.NONE);
+        retriever.search("budget two", 5, SearchFilter.NONE);
+        assertThat(retriever.breakerState()).isEqualTo(CircuitBreaker.State.OPEN);
+
+        retriever.search("budget three", 5, SearchFilter.NONE);
+        assertThat(model.queryCalls).hasValue(2);
+    }
+
+    @Test
+    @DisplayName("A cancelled half-open trial frees the trial instead of keeping the breaker shut")
+    void cancelledTrialReleasesBreaker() throws Exception {
+        writeDocs();
+        AtomicInteger calls = new AtomicInteger();
+        // First query embedding fails, the second (the trial) hangs, later ones answer at once
+        EmbeddingModel model = new SlowQueryModel() {
+            @Override
+            public Response<Embedding> embed(String text) {
+                int call = calls.incrementAndGet();
+                if (call == 1) throw new IllegalStateException("model down");
+                if (call == 2) queryDelayMs = 5_000;
+                else queryDelayMs = 0;
+                return super.embed(text);
+            }
+        };
+        ContextRetriever retriever = new ContextRetriever(model, folder.toString(), null,
+                new RetrievalPolicy(Duration.ofSeconds(10), 1, Duration.ofMillis(50)));
+        retriever.index();
+        retriever.search("budget one", 5, SearchFilter.NONE);
+        assertThat(retriever.breakerState()).isEqualTo(CircuitBreaker.State.OPEN);
+        Thread.sleep(100);
+
+        long fallbacksBefore = Metrics.counter("retriever.fallback.lexical").count();
+        List<List<ScoredSegment>> trial = new ArrayList<>();
+        Thread caller = Thread.ofVirtual().start(() -> trial.add(retriever.search("budget two", 5, SearchFilter.NONE)));
+        while (calls.get() < 2) Thread.sleep(5);
+        caller.interrupt();
+        caller.join();
+
+        assertThat(trial).containsExactly(List.of());
+        assertThat(Metrics.counter("retriever.fallback.lexical").count()).isEqualTo(fallbacksBefore);
+        // The next caller gets the trial, reaches the model and closes the breaker
+        assertThat(retriever.search("budget three", 5, SearchFilter.NONE)).isNotEmpty();
+        assertThat(calls).hasValue(3);
+        assertThat(retriever.breakerState()).isEqualTo(CircuitBreaker.State.CLOSED);
+    }
+
+    @Test
+    @DisplayName("Concurrent searches share one embedAll call and rank exactly like single searches")
+    void batchesConcurrentSearches() throws Exception {
+        writeDocs();
+        Files.writeString(folder.resolve("travel.txt"), "Flights to Lisbon are booked for the offsite.");
+        Files.writeString(folder.resolve("hiring.txt"), "Two engineers join the platform team in March.");
+        BatchingModel model = new BatchingModel();
+        ContextRetriever single = new ContextRetriever(model, folder.toString(), null,
+                new RetrievalPolicy(Duration.ZERO, 10, Duration.ofSeconds(30)));
+        ContextRetriever batched = new ContextRetriever(model, folder.toString(), null,
+                new RetrievalPolicy(Duration.ZERO, 10, Duration.ofSeconds(30), Duration.ofMillis(200)));
+        single.index();
+        batched.index();
+
+        List<String> queries = new ArrayList<>();
+        for (int i = 0; i < 16; i++) queries.add(List.of("carbonara", "budget", "lisbon", "engineers").get(i % 4) + " " + i);
+        SearchFilter txtOnly = SearchFilter.parse("ext:txt");
+        List<List<ScoredSegment>> expected = new ArrayList<>();
+        for (int i = 0; i < queries.size(); i++) {
+            expected.add(single.search(queries.get(i), 1 + i % 3, i % 2 == 0 ? SearchFilter.NONE : txtOnly));
+        }
+
+        model.slow.set(true);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<List<ScoredSegment>>> results = new ArrayList<>();
+        try (ExecutorService pool = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < queries.size(); i++) {
+                int q = i;
+                results.add(pool.submit(() -> {
+                    start.await();
+                    return batched.search(queries.get(q), 1 + q % 3, q % 2 == 0 ? SearchFilter.NONE : txtOnly);
+                }));
+            }
+            start.countDown();
+            for (int i = 0; i < queries.size(); i++) assertThat(results.get(i).get()).isEqualTo(expected.get(i));
+        }
+        // The first search may be dispatched alone; the rest queue up behind it
+        assertThat(model.calls.get()).isLessThanOrEqualTo(3);
+        assertThat(model.largestBatch.get()).isGreaterThan(1);
+    }
+
+    @Test
+    @DisplayName("Batched query embeddings take the query lane, not the bulk lane, of a prioritized model")
+    void batchedQueriesSkipBulkLane() throws Exception {
+        writeDocs();
+        AtomicBoolean busy = new AtomicBoolean();
+        // Bulk (ingestion) calls hold the model's only slot for 300 ms each once busy
+        EmbeddingModel ollama = new BatchingModel() {
+            @Override
+            public Response<List<Embedding>> embedAll(List<TextSegment> segments) {
+                if (busy.get() && segments.get(0).text().startsWith("bulk")) {
+                    try {
+                        Thread.sleep(300);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+                return super.embedAll(segments);
+            }
+        };
+        PrioritizedEmbeddingModel model = new PrioritizedEmbeddingModel(ollama);
+        // A budget longer than the whole re-embedding, so only the lane decides how long a search waits
+        ContextRetriever retriever = new ContextRetriever(model, folder.toString(), null,
+                new RetrievalPolicy(Duration.ofSeconds(10), 10, Duration.ofSeconds(30), Duration.ofMillis(50)));
+        retriever.index();
+
+        busy.set(true);
+        List<TextSegment> folderChunks = new ArrayList<>();
+        for (int i = 0; i < 10 * 16; i++) folderChunks.add(TextSegment.from("bulk chunk " + i));
+        Thread ingestion = Thread.ofVirtual().start(() -> model.embedAll(folderChunks));
+        Thread.sleep(100); // ingestion now holds the slot
+
+        long start = System.nanoTime();
+        List<Future<List<ScoredSegment>>> results = new ArrayList<>();
+        try (ExecutorService pool = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (String query : List.of("carbonara cheese", "quarterly budget", "pecorino eggs")) {
+                results.add(pool.submit(() -> retriever.search(query, 1, SearchFilter.NONE)));
+            }
+            for (Future<List<ScoredSegment>> result : results) assertThat(result.get()).hasSize(1);
+        }
+
+        // Behind the bulk lane this would take the whole 3 s re-embedding
+        assertThat(Duration.ofNanos(System.nanoTime() - start)).isLessThan(Duration.ofMillis(1500));
+        assertThat(ingestion.isAlive()).isTrue();
+        ingestion.join();
+    }
+
+    @Test
+    @DisplayName("Callers timing out on a shared batch count as one breaker failure and are not ranked")
+    void batchTimeoutIsOneBreakerFailure() throws Exception {
+        writeDocs();
+        BatchingModel model = new BatchingModel();
+        ContextRetriever retriever = new ContextRetriever(model, folder.toString(), null,
+                new RetrievalPolicy(Duration.ofMillis(10), 5, Duration.ofSeconds(30), Duration.ofMillis(100)));
+        retriever.index();
+        long abandonedBefore = Metrics.counter("retriever.batch.abandoned").count();
+
+        model.slow.set(true);
+        int callers = 16;
+        try (ExecutorService pool = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < callers; i++) {
+                String query = "carbonara " + i;
+                pool.submit(() -> retriever.search(query, 1, SearchFilter.NONE));
+            }
+        }
+        // Every caller fell back within its 10 ms budget; wait for the batches they left behind
+        long deadline = System.nanoTime() + Duration.ofSeconds(5).toNanos();
+        while (Metrics.counter("retriever.batch.abandoned").count() - abandonedBefore < callers && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+
+        assertThat(Metrics.counter("retriever.batch.abandoned").count() - abandonedBefore).isEqualTo(callers);
+        // One failure per slow embedAll call (at most a few), far from one per caller
+        assertThat(model.calls.get()).isLessThan(5);
+        assertThat(retriever.breakerState()).isEqualTo(CircuitBreaker.State.CLOSED);
+    }
+
+    @Test
+    @DisplayName("A hung model fails each batch at the budget and opens the breaker")
+    void hungBatchOpensBreaker() throws Exception {
+        writeDocs();
+        CountDownLatch hang = new CountDownLatch(1);
+        BatchingModel model = new BatchingModel() {
+            @Override
+            public Response<List<Embedding>> embedAll(List<TextSegment> segments) {
+                if (segments.get(0).text().startsWith("budget")) {
+                    try {
+                        hang.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+                return super.embedAll(segments);
+            }
+        };
+        ContextRetriever retriever = new ContextRetriever(model, folder.toString(), null,
+                new RetrievalPolicy(Duration.ofMillis(100), 2, Duration.ofSeconds(30), Duration.ofMillis(1)));
+        retriever.index();
+
+        try {
+            assertThat(retriever.search("budget one", 1, SearchFilter.NONE)).isNotEmpty();
+            // The first batch gave up on the model, so the dispatcher is free for the second
+            assertThat(retriever.search("budget two", 1, SearchFilter.NONE)).isNotEmpty();
+            long deadline = System.nanoTime() + Duration.ofSeconds(2).toNanos();
+            while (retriever.breakerState() != CircuitBreaker.State.OPEN && System.nanoTime() < deadline) Thread.sleep(5);
+            assertThat(retriever.breakerState()).isEqualTo(CircuitBreaker.State.OPEN);
+
+            long start = System.nanoTime();
+            assertThat(retriever.search("budget three", 1, SearchFilter.NONE)).isNotEmpty();
+            assertThat(Duration.ofNanos(System.nanoTime() - start)).isLessThan(Duration.ofMillis(80));
+        } finally {
+            hang.countDown();
+        }
+    }
+
+    @Test
+    @DisplayName("A lone batched search is dispatched without waiting for the window")
+    void loneSearchSkipsWindow() throws IOException {
+        writeDocs();
+        ContextRetriever retriever = new ContextRetriever(new BatchingModel(), folder.toString(), null,
+                new RetrievalPolicy(Duration.ZERO, 10, Duration.ofSeconds(30), Duration.ofSeconds(5)));
+        retriever.index();
+
+        long start = System.nanoTime();
+        List<ScoredSegment> hits = retriever.search("carbonara cheese", 1, SearchFilter.NONE);
+
+        assertThat(Duration.ofNanos(System.nanoTime() - start)).isLessThan(Duration.ofSeconds(1));
+        assertThat(hits).extracting(ScoredSegment::fileName).containsExactly("pasta.txt");
+    }
+}
@@ -0,0 +1,50 @@
+package com.intelligence.agent;
+
+import com.intelligence.metrics.Metrics;
+import dev.langchain4j.data.message.AiMessage;
+import dev.langchain4j.data.message.ChatMessage;
+import dev.langchain4j.data.message.UserMessage;
+import dev.langchain4j.model.chat.StreamingChatModel;
+import dev.langchain4j.model.chat.request.ChatRequest;
+import dev.langchain4j.model.chat.response.ChatResponse;
+import dev.langchain4j.model.chat.response.StreamingChatResponseHandler;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ConversationSummarizerTest {
+    private static final List<ChatMessage> TURNS = List.of(
+            UserMessage.from("What does the report say?"), AiMessage.from("The budget is flat. Hiring continues."));
+
+    @Test
+    @DisplayName("Model summaries take an LLM permit until the model finishes and are extractive when none is free")
+    void sharesLlmPermits() throws InterruptedException {
+        AtomicInteger calls = new AtomicInteger();
+        Semaphore permits = new Semaphore(1);
+        StreamingChatModel model = new StreamingChatModel() {
+            @Override
+            public void doChat(ChatRequest request, StreamingChatResponseHandler handler) {
+                calls.incrementAndGet();
+                assertThat(permits.availablePermits()).isZero();
+                handler.onCompleteResponse(ChatResponse.builder().aiMessage(AiMessage.from("Budget flat.")).build());
+            }
+        };
+        ConversationSummarizer summarizer = ConversationSummarizer.using(model, permits);
+        long rejected = Metrics.counter("memory.summarize.rejected").count();
+
+        permits.acquire();
+        assertThat(summarizer.summarize("", TURNS, 500)).startsWith("- User asked: What does the report say?");
+        assertThat(calls).hasValue(0);
+        assertThat(Metrics.counter("memory.summarize.rejected").count()).isEqualTo(rejected + 1);
+
+        permits.release();
+        assertThat(summarizer.summarize("", TURNS, 500)).isEqualTo("Budget flat.");
+        assertThat(calls).hasValue(1);
+        assertThat(permits.availablePermits()).isEqualTo(1);
+    }
+}
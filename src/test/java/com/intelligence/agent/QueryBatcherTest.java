@@ -0,0 +1,75 @@
+package com.intelligence.agent;
+
+import com.intelligence.index.SearchFilter;
+import com.intelligence.index.SegmentedIndex;
+import com.intelligence.model.CircuitBreaker;
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.model.output.Response;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class QueryBatcherTest {
+
+    @TempDir
+    Path folder;
+
+    @Test
+    @DisplayName("A batch whose callers all left hands the half-open trial back to the breaker")
+    void abandonedBatchReleasesTrial() throws Exception {
+        Files.writeString(folder.resolve("pasta.txt"), "Carbonara needs guanciale, pecorino and eggs.");
+        AtomicInteger queryCalls = new AtomicInteger();
+        EmbeddingModel model = new EmbeddingModel() {
+            @Override
+            public Response<List<Embedding>> embedAll(List<TextSegment> segments) {
+                if (segments.get(0).text().startsWith("query")) queryCalls.incrementAndGet();
+                return Response.from(segments.stream().map(s -> Embedding.from(new float[]{1f, s.text().length()})).toList());
+            }
+        };
+        SegmentedIndex index = SegmentedIndex.of(new DocumentIndexer(model).build(folder.toString()));
+        CountDownLatch ranking = new CountDownLatch(1);
+        CountDownLatch rankingStarted = new CountDownLatch(1);
+        CircuitBreaker breaker = new CircuitBreaker("breaker.test", 1, Duration.ofMillis(10));
+        // The first batch holds the dispatcher in ranking until released
+        QueryBatcher batcher = new QueryBatcher(model, () -> {
+            rankingStarted.countDown();
+            try {
+                ranking.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return index;
+        }, Duration.ofMillis(1), breaker, Duration.ofSeconds(5));
+
+        QueryBatcher.Request busy = batcher.submit("cached", new float[]{1f, 6f}, 1, SearchFilter.NONE);
+        rankingStarted.await();
+        breaker.recordFailure();
+        Thread.sleep(20);
+        assertThat(breaker.allowRequest()).isTrue(); // this caller takes the half-open trial...
+        QueryBatcher.Request trial = batcher.submit("query", null, 1, SearchFilter.NONE);
+        trial.abandon(); // ...and gives up before its batch runs
+        batcher.leave();
+        assertThat(breaker.allowRequest()).isFalse();
+
+        ranking.countDown();
+        assertThat(busy.hits().get()).hasSize(1);
+        batcher.leave();
+        long deadline = System.nanoTime() + Duration.ofSeconds(2).toNanos();
+        boolean allowed;
+        while (!(allowed = breaker.allowRequest()) && System.nanoTime() < deadline) Thread.sleep(5);
+
+        assertThat(allowed).isTrue();
+        assertThat(queryCalls).hasValue(0);
+    }
+}
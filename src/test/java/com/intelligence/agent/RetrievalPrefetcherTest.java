@@ -0,0 +1,152 @@
+package com.intelligence.agent;
+
+import com.intelligence.index.SearchFilter;
+import com.intelligence.metrics.Metrics;
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.model.output.Response;
+import dev.langchain4j.rag.content.Content;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class RetrievalPrefetcherTest {
+
+    @TempDir
+    Path folder;
+
+    /**
+     * Bulk embeddings are instant; each query embedding takes 200 ms unless interrupted.
+     */
+    private static class SlowQueryModel implements EmbeddingModel {
+        final AtomicInteger queryCalls = new AtomicInteger();
+        final AtomicInteger interrupted = new AtomicInteger();
+
+        @Override
+        public Response<Embedding> embed(String text) {
+            queryCalls.incrementAndGet();
+            try {
+                Thread.sleep(200);
+            } catch (InterruptedException e) {
+                interrupted.incrementAndGet();
+                Thread.currentThread().interrupt();
+            }
+            return Response.from(Embedding.from(new float[]{1f, text.length()}));
+        }
+
+        @Override
+        public Response<List<Embedding>> embedAll(List<TextSegment> segments) {
+            return Response.from(segments.stream().map(s -> Embedding.from(new float[]{1f, s.text().length()})).toList());
+        }
+    }
+
+    private ContextRetriever retriever(SlowQueryModel model) throws IOException {
+        Files.writeString(folder.resolve("pasta.txt"), "Carbonara needs guanciale, pecorino and eggs.");
+        Files.writeString(folder.resolve("budget.txt"), "The quarterly budget covers hiring and travel.");
+        ContextRetriever retriever = new ContextRetriever(model, folder.toString(), null,
+                new RetrievalPolicy(Duration.ZERO, 10, Duration.ofSeconds(30)));
+        retriever.index();
+        return retriever;
+    }
+
+    @Test
+    @DisplayName("Tool queries that rephrase the question match it; other topics and filters do not")
+    void matchesRephrasedQueries() {
+        var question = RetrievalPrefetcher.terms("What does the 2026 roadmap say about budgets for hiring?");
+
+        assertThat(RetrievalPrefetcher.overlap(RetrievalPrefetcher.terms("roadmap 2026 budget"), question)).isEqualTo(1.0);
+        assertThat(RetrievalPrefetcher.overlap(RetrievalPrefetcher.terms("hiring budget travel policy"), question)).isEqualTo(0.5);
+        assertThat(RetrievalPrefetcher.overlap(RetrievalPrefetcher.terms("carbonara recipe"), question)).isZero();
+        assertThat(RetrievalPrefetcher.overlap(RetrievalPrefetcher.terms("the"), question)).isZero();
+    }
+
+    @Test
+    @DisplayName("A matching search gets the prefetched passages, with the retrieval that overlapped the model saved")
+    void servesMatchingSearch() throws Exception {
+        SlowQueryModel model = new SlowQueryModel();
+        ContextRetriever retriever = retriever(model);
+        RetrievalPrefetcher prefetcher = new RetrievalPrefetcher(retriever, 60);
+        long savedBefore = Metrics.timer("retriever.prefetch.saved").histogram().count();
+
+        prefetcher.start("user", "Which cheese goes in carbonara?");
+        Thread.sleep(300); // the model's first round trip
+
+        long start = System.nanoTime();
+        List<Content> contents = prefetcher.take("user", "carbonara cheese", SearchFilter.NONE);
+
+        assertThat(Duration.ofNanos(System.nanoTime() - start)).isLessThan(Duration.ofMillis(150));
+        assertThat(contents).isNotEmpty();
+        assertThat(contents.get(0).textSegment().text()).contains("pasta.txt");
+        assertThat(Metrics.timer("retriever.prefetch.saved").histogram().count()).isEqualTo(savedBefore + 1);
+        assertThat(prefetcher.take("user", "carbonara cheese", SearchFilter.NONE)).isNull(); // used once
+        assertThat(model.queryCalls).hasValue(1);
+    }
+
+    @Test
+    @DisplayName("Cancelling a prefetch that is building the shared index leaves the build alone")
+    void cancelDoesNotInterruptIndexing() throws Exception {
+        Files.writeString(folder.resolve("pasta.txt"), "Carbonara needs guanciale, pecorino and eggs.");
+        AtomicInteger interruptedBuilds = new AtomicInteger();
+        SlowQueryModel model = new SlowQueryModel() {
+            @Override
+            public Response<List<Embedding>> embedAll(List<TextSegment> segments) {
+                try {
+                    Thread.sleep(300);
+                } catch (InterruptedException e) {
+                    interruptedBuilds.incrementAndGet();
+                    Thread.currentThread().interrupt();
+                }
+                return super.embedAll(segments);
+            }
+        };
+        ContextRetriever retriever = new ContextRetriever(model, folder.toString(), null,
+                new RetrievalPolicy(Duration.ZERO, 10, Duration.ofSeconds(30)));
+        RetrievalPrefetcher prefetcher = new RetrievalPrefetcher(retriever, 60);
+
+        prefetcher.start("user", "Which cheese goes in carbonara?"); // the prefetch builds the index
+        Thread.sleep(100);
+        prefetcher.discard("user");
+
+        assertThat(retriever.search("carbonara cheese", 1, SearchFilter.NONE))
+                .extracting(hit -> hit.fileName()).containsExactly("pasta.txt");
+        assertThat(interruptedBuilds).hasValue(0);
+        // Cancelled before its embedding started, so none was spent on it
+        Thread.sleep(300);
+        assertThat(model.queryCalls).hasValue(1);
+    }
+
+    @Test
+    @DisplayName("Unmatched, filtered or discarded prefetches are cancelled while still embedding")
+    void cancelsUnusedPrefetches() throws Exception {
+        SlowQueryModel model = new SlowQueryModel();
+        RetrievalPrefetcher prefetcher = new RetrievalPrefetcher(retriever(model), 60);
+
+        prefetcher.start("user", "Which cheese goes in carbonara?");
+        awaitQueryCalls(model, 1);
+        assertThat(prefetcher.take("user", "quarterly hiring budget", SearchFilter.NONE)).isNull();
+        prefetcher.start("user", "Which cheese goes in carbonara?");
+        awaitQueryCalls(model, 2);
+        assertThat(prefetcher.take("user", "carbonara cheese", SearchFilter.parse("ext:pdf"))).isNull();
+        prefetcher.start("user", "Summarize budget.txt");
+        awaitQueryCalls(model, 3);
+        prefetcher.discard("user");
+
+        Thread.sleep(300);
+        assertThat(model.interrupted).hasValue(3);
+    }
+
+    // Cancelling before the embedding starts skips it altogether; these cancel one that is running
+    private static void awaitQueryCalls(SlowQueryModel model, int calls) throws InterruptedException {
+        while (model.queryCalls.get() < calls) Thread.sleep(5);
+    }
+}
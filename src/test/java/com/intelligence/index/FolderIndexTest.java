@@ -0,0 +1,78 @@
+package com.intelligence.index;
+
+import dev.langchain4j.data.document.Metadata;
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class FolderIndexTest {
+
+    private static FolderIndex randomIndex(int rows, int dimension) {
+        Random random = new Random(7);
+        List<TextSegment> segments = new ArrayList<>();
+        List<Embedding> embeddings = new ArrayList<>();
+        for (int i = 0; i < rows; i++) {
+            float[] v = new float[dimension];
+            for (int d = 0; d < dimension; d++) v[d] = (float) random.nextGaussian();
+            segments.add(TextSegment.from("segment " + i));
+            embeddings.add(Embedding.from(v));
+        }
+        return FolderIndex.of("/data", segments, embeddings);
+    }
+
+    @Test
+    @DisplayName("Parallel block scan returns exactly the sequential top-k")
+    void parallelScanMatchesSequential() {
+        FolderIndex index = randomIndex(20_000, 32);
+        float[] query = randomIndex(1, 32).vectors();
+
+        List<ScoredSegment> sequential = index.search(query, 10, ParallelScan.sequential());
+        List<ScoredSegment> parallel = index.search(query, 10, ParallelScan.of(4, 1));
+
+        assertThat(parallel).hasSize(10).isEqualTo(sequential);
+        assertThat(parallel).isSortedAccordingTo((a, b) -> Double.compare(b.score(), a.score()));
+    }
+
+    @Test
+    @DisplayName("Indexes below the minimum size, and k larger than the index, are handled")
+    void smallIndexesAndLargeK() {
+        FolderIndex index = randomIndex(3, 8);
+        ParallelScan scan = ParallelScan.of(4, 1_000);
+
+        assertThat(scan.appliesTo(index.size())).isFalse();
+        assertThat(index.search(new float[8], 10, scan)).hasSize(3);
+        assertThat(index.search(randomIndex(1, 8).vectors(), 10, ParallelScan.of(2, 1))).hasSize(3);
+    }
+
+    @Test
+    @DisplayName("Keyword search over compressed texts reads only its hits, and built indexes count toward the footprint")
+    void lexicalIndexOverCompressedTexts() {
+        List<TextSegment> segments = new ArrayList<>();
+        List<Embedding> embeddings = new ArrayList<>();
+        for (int i = 0; i < 500; i++) {
+            segments.add(TextSegment.from((i % 10 == 0 ? "Invoice approvals for vendor " : "Travel notes from trip ") + i + ".",
+                    Metadata.from(AttributeIndex.FILE_NAME, "notes" + i / 50 + ".txt")));
+            embeddings.add(Embedding.from(new float[]{i, 1f}));
+        }
+        FolderIndex heap = FolderIndex.of("/data", segments, embeddings);
+        FolderIndex compressed = heap.withCompressedText();
+        long before = compressed.estimatedBytes();
+
+        List<FolderIndex.Hit> expected = heap.rankLexical(Set.of("invoice", "approvals"), 5, null, null);
+        List<FolderIndex.Hit> actual = compressed.rankLexical(Set.of("invoice", "approvals"), 5, null, null);
+
+        assertThat(actual).extracting(FolderIndex.Hit::row).isEqualTo(expected.stream().map(FolderIndex.Hit::row).toList());
+        assertThat(compressed.texts().textsRead()).isZero();
+        assertThat(compressed.estimatedBytes()).isGreaterThan(before);
+        compressed.attributes();
+        assertThat(compressed.estimatedBytes()).isGreaterThan(before + compressed.lexical().estimatedBytes());
+    }
+}
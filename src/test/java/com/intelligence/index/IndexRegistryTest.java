@@ -0,0 +1,152 @@
+package com.intelligence.index;
+
+import dev.langchain4j.data.document.Metadata;
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class IndexRegistryTest {
+
+    @TempDir
+    Path tempDir;
+
+    private final Map<String, AtomicInteger> builds = new ConcurrentHashMap<>();
+
+    private FolderIndex fakeIndex(String path) {
+        builds.computeIfAbsent(path, p -> new AtomicInteger()).incrementAndGet();
+        List<TextSegment> segments = new ArrayList<>();
+        List<Embedding> embeddings = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            Metadata metadata = Metadata.from("file_name", "file" + i + ".txt").put("chunk", i);
+            segments.add(TextSegment.from("segment " + i + " of " + path, metadata));
+            embeddings.add(Embedding.from(new float[]{i, 1.0f, (float) Math.sin(i)}));
+        }
+        return FolderIndex.of(path, segments, embeddings);
+    }
+
+    private int buildCount(String path) {
+        return builds.getOrDefault(Path.of(path).toAbsolutePath().normalize().toString(), new AtomicInteger()).get();
+    }
+
+    @Test
+    @DisplayName("Resident indexes are served without rebuilding")
+    void servesResidentIndex() {
+        try (IndexRegistry registry = new IndexRegistry(Long.MAX_VALUE, tempDir, this::fakeIndex)) {
+            SegmentedIndex first = registry.get("/data/a");
+            SegmentedIndex second = registry.get("/data/a");
+
+            assertThat(second).isSameAs(first);
+            assertThat(buildCount("/data/a")).isEqualTo(1);
+        }
+    }
+
+    @Test
+    @DisplayName("Indexes over budget are evicted and reloaded from their spill file")
+    void evictsAndReloadsFromSpill() {
+        long oneIndex = fakeIndex("/probe").estimatedBytes();
+        try (IndexRegistry registry = new IndexRegistry(oneIndex + oneIndex / 2, tempDir, this::fakeIndex)) {
+            SegmentedIndex a = registry.get("/data/a");
+            registry.get("/data/b");
+
+            assertThat(registry.isResident("/data/a")).isFalse();
+            assertThat(registry.isResident("/data/b")).isTrue();
+            assertThat(registry.residentBytes()).isLessThanOrEqualTo(oneIndex + oneIndex / 2);
+
+            SegmentedIndex reloaded = registry.get("/data/a");
+            assertThat(buildCount("/data/a")).isEqualTo(1);
+            assertThat(reloaded.toFolderIndex().segments()).isEqualTo(a.toFolderIndex().segments());
+            assertThat(reloaded.search(new float[]{50, 1, 0}, 3)).isEqualTo(a.search(new float[]{50, 1, 0}, 3));
+        }
+    }
+
+    @Test
+    @DisplayName("Index files round-trip segments, typed metadata and vectors")
+    void indexFilesRoundTrip() throws IOException {
+        FolderIndex index = fakeIndex("/data/c");
+        Path file = tempDir.resolve("c.bin");
+
+        FolderIndexFiles.write(index, file);
+        FolderIndex loaded = FolderIndexFiles.read(file);
+
+        assertThat(loaded.directoryPath()).isEqualTo("/data/c");
+        assertThat(loaded.segments()).isEqualTo(index.segments());
+        assertThat(loaded.segments().get(7).metadata().getInteger("chunk")).isEqualTo(7);
+        assertThat(loaded.dimension()).isEqualTo(3);
+    }
+
+    @Test
+    @DisplayName("Snapshots survive a restart and are refreshed in the background when the folder changed")
+    void warmStartsFromSnapshotAndRefreshesStaleFolder() throws Exception {
+        AtomicReference<FolderManifest> onDisk = new AtomicReference<>(manifest(1));
+        AtomicReference<String> fingerprint = new AtomicReference<>("model-a");
+        IndexSource source = new IndexSource() {
+            @Override
+            public FolderIndex build(String directoryPath) {
+                FolderIndex built = fakeIndex(directoryPath);
+                return FolderIndex.of(directoryPath, built.segments(), embeddings(built), onDisk.get(), fingerprint.get());
+            }
+
+            @Override
+            public FolderManifest manifest(String directoryPath) {
+                return onDisk.get();
+            }
+
+            @Override
+            public String fingerprint() {
+                return fingerprint.get();
+            }
+        };
+
+        try (IndexRegistry registry = new IndexRegistry(Long.MAX_VALUE, tempDir, source)) {
+            registry.get("/data/d");
+        }
+        assertThat(buildCount("/data/d")).isEqualTo(1);
+
+        try (IndexRegistry registry = new IndexRegistry(Long.MAX_VALUE, tempDir, source)) {
+            registry.get("/data/d");
+            Thread.sleep(100);
+            assertThat(buildCount("/data/d")).as("unchanged folder is served from its snapshot").isEqualTo(1);
+        }
+
+        onDisk.set(manifest(2));
+        try (IndexRegistry registry = new IndexRegistry(Long.MAX_VALUE, tempDir, source)) {
+            SegmentedIndex stale = registry.get("/data/d");
+            assertThat(stale.manifest()).isEqualTo(manifest(1));
+            long deadline = System.nanoTime() + 5_000_000_000L;
+            while (registry.get("/data/d") == stale && System.nanoTime() < deadline) Thread.sleep(10);
+            assertThat(registry.get("/data/d").manifest()).isEqualTo(manifest(2));
+        }
+        assertThat(buildCount("/data/d")).isEqualTo(2);
+
+        fingerprint.set("model-b");
+        try (IndexRegistry registry = new IndexRegistry(Long.MAX_VALUE, tempDir, source)) {
+            assertThat(registry.get("/data/d").fingerprint()).isEqualTo("model-b");
+        }
+        assertThat(buildCount("/data/d")).as("other model's snapshot is rebuilt").isEqualTo(3);
+    }
+
+    private static FolderManifest manifest(long size) {
+        return new FolderManifest(Map.of("notes.txt", new FolderManifest.FileStamp(size, 1_000L)));
+    }
+
+    private static List<Embedding> embeddings(FolderIndex index) {
+        List<Embedding> embeddings = new ArrayList<>();
+        for (int i = 0; i < index.size(); i++) {
+            embeddings.add(Embedding.from(new float[]{i, 1.0f, (float) Math.sin(i)}));
+        }
+        return embeddings;
+    }
+}
@@ -0,0 +1,49 @@
+package com.intelligence.index;
+
+import com.intelligence.metrics.Metrics;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class SegmentTextStoreTest {
+
+    @Test
+    @DisplayName("Texts round-trip across blocks, compress below their UTF-8 size and are read one at a time")
+    void roundTripsAcrossBlocks() {
+        List<String> texts = new ArrayList<>();
+        for (int i = 0; i < 400; i++) {
+            texts.add(i % 50 == 0 ? "" : "Chunk " + i + " of the quarterly report: revenue grew in every région. ".repeat(i % 7 + 1));
+        }
+        SegmentTextStore.Builder builder = SegmentTextStore.builder();
+        texts.forEach(builder::add);
+        SegmentTextStore store = builder.build();
+
+        assertThat(store.size()).isEqualTo(texts.size());
+        for (int row = texts.size() - 1; row >= 0; row -= 3) assertThat(store.text(row)).isEqualTo(texts.get(row));
+        assertThat(store.text(0)).isEmpty();
+        assertThat(store.compressedBytes()).isLessThan(store.rawBytes() / 4);
+        assertThat(store.textsRead()).isEqualTo(135);
+    }
+
+    @Test
+    @DisplayName("A full pass yields every text once per block without the cache or the read count")
+    void streamsEveryTextOnce() {
+        List<String> texts = new ArrayList<>();
+        for (int i = 0; i < 300; i++) texts.add(i % 40 == 0 ? "" : "Row " + i + " lists invoices and approvals. ".repeat(i % 5 + 1));
+        SegmentTextStore.Builder builder = SegmentTextStore.builder();
+        texts.forEach(builder::add);
+        SegmentTextStore store = builder.build();
+        long misses = Metrics.counter("index.text.cache.misses").count();
+
+        List<String> streamed = new ArrayList<>();
+        store.forEachText(streamed::add);
+
+        assertThat(streamed).isEqualTo(texts);
+        assertThat(store.textsRead()).isZero();
+        assertThat(Metrics.counter("index.text.cache.misses").count()).isEqualTo(misses);
+    }
+}
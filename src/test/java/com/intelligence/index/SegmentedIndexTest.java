@@ -0,0 +1,244 @@
+package com.intelligence.index;
+
+import dev.langchain4j.data.document.Metadata;
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class SegmentedIndexTest {
+
+    // One file per call; every row's vector points along the file's own axis so it is easy to query
+    private static FolderIndex file(String name, int rows, int axis, long size) {
+        List<TextSegment> segments = new ArrayList<>();
+        List<Embedding> embeddings = new ArrayList<>();
+        for (int i = 0; i < rows; i++) {
+            segments.add(TextSegment.from(name + " part " + i, Metadata.from("file_name", name)));
+            float[] v = new float[8];
+            v[axis] = 1f;
+            v[(axis + 1) % 8] = i * 0.01f;
+            embeddings.add(Embedding.from(v));
+        }
+        FolderManifest manifest = new FolderManifest(Map.of(name, new FolderManifest.FileStamp(size, 0L)));
+        return FolderIndex.of("/data", segments, embeddings, manifest, "fp");
+    }
+
+    private static FolderIndex fileModifiedAt(String name, int rows, long modifiedMillis) {
+        FolderIndex plain = file(name, rows, 0, 1);
+        List<TextSegment> segments = plain.segments().stream()
+                .map(s -> TextSegment.from(s.text(), s.metadata().copy()
+                        .put("directory", "/data/reports").put("last_modified", modifiedMillis)))
+                .toList();
+        List<Embedding> embeddings = new ArrayList<>();
+        for (int i = 0; i < rows; i++) embeddings.add(Embedding.from(axis(0)));
+        return FolderIndex.of("/data", segments, embeddings, plain.manifest(), "fp");
+    }
+
+    private static float[] axis(int axis) {
+        float[] v = new float[8];
+        v[axis] = 1f;
+        return v;
+    }
+
+    @Test
+    @DisplayName("Replaced and removed files are tombstoned and new rows are searchable at once")
+    void appliesFileChanges() {
+        SegmentedIndex index = new SegmentedIndex(file("a.txt", 10, 0, 1), 16, 8);
+
+        index.apply(file("b.txt", 5, 1, 1), Set.of());
+        assertThat(index.search(axis(1), 3)).extracting(ScoredSegment::fileName).containsOnly("b.txt");
+        assertThat(index.size()).isEqualTo(15);
+
+        index.apply(file("a.txt", 2, 2, 2), Set.of());
+        assertThat(index.size()).isEqualTo(7);
+        assertThat(index.search(axis(0), 10)).extracting(s -> s.segment().text()).doesNotContain("a.txt part 9");
+        assertThat(index.search(axis(2), 2)).extracting(s -> s.segment().text())
+                .containsExactlyInAnyOrder("a.txt part 0", "a.txt part 1");
+
+        index.apply(FolderIndex.of("/data", List.of(), List.of()), Set.of("b.txt"));
+        assertThat(index.size()).isEqualTo(2);
+        assertThat(index.manifest().files()).containsOnlyKeys("a.txt");
+        assertThat(index.toFolderIndex().segments()).extracting(TextSegment::text)
+                .containsExactly("a.txt part 0", "a.txt part 1");
+    }
+
+    @Test
+    @DisplayName("Full buffers are sealed and the merger compacts segments without changing results")
+    void sealsBufferAndMerges() {
+        SegmentedIndex index = new SegmentedIndex(file("base.txt", 4, 0, 1), 4, 2);
+        for (int f = 0; f < 6; f++) index.apply(file("f" + f + ".txt", 4, f % 8, 1), Set.of());
+        List<ScoredSegment> before = index.search(axis(3), 5, ParallelScan.sequential());
+
+        while (index.compactOnce()) {
+            // drain the merge plan synchronously; the background merger may already have done some
+        }
+
+        assertThat(index.segmentCount()).isLessThanOrEqualTo(2);
+        assertThat(index.size()).isEqualTo(28);
+        assertThat(index.search(axis(3), 5, ParallelScan.sequential())).isEqualTo(before);
+    }
+
+    @Test
+    @DisplayName("Searches run concurrently with ingestion and always see a consistent view")
+    void searchesDuringIngestion() throws InterruptedException {
+        SegmentedIndex index = new SegmentedIndex(file("stable.txt", 50, 0, 1), 8, 2);
+        AtomicBoolean done = new AtomicBoolean();
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        Thread reader = Thread.ofVirtual().start(() -> {
+            try {
+                while (!done.get()) {
+                    assertThat(index.search(axis(0), 5)).hasSize(5)
+                            .allSatisfy(hit -> assertThat(hit.fileName()).isEqualTo("stable.txt"));
+                }
+            } catch (Throwable t) {
+                failure.set(t);
+            }
+        });
+
+        for (int round = 0; round < 200; round++) {
+            index.apply(file("churn.txt", 1 + round % 12, 4, round), Set.of());
+        }
+        done.set(true);
+        reader.join();
+
+        assertThat(failure.get()).isNull();
+        assertThat(index.size()).isEqualTo(50 + 1 + 199 % 12);
+    }
+
+    @Test
+    @DisplayName("Off-heap segments rank like heap ones and reuse the slots of expunged rows")
+    void offHeapMatchesHeap() {
+        SegmentedIndex heap = new SegmentedIndex(file("base.txt", 20, 0, 1), 4, 2, false);
+        SegmentedIndex offHeap = new SegmentedIndex(file("base.txt", 20, 0, 1), 4, 2, true);
+        for (int round = 0; round < 30; round++) {
+            FolderIndex change = file("f" + round % 5 + ".txt", 3, round % 8, round);
+            heap.apply(change, Set.of());
+            offHeap.apply(change, Set.of());
+        }
+        while (offHeap.compactOnce()) {
+            // drain merges so every dead row has been expunged
+        }
+
+        for (int axis = 0; axis < 8; axis++) {
+            // Rows tied at zero may come back in a different segment order, so compare the scores
+            assertThat(offHeap.search(axis(axis), 6, ParallelScan.sequential())).extracting(ScoredSegment::score)
+                    .isEqualTo(heap.search(axis(axis), 6, ParallelScan.sequential()).stream().map(ScoredSegment::score).toList());
+        }
+        assertThat(offHeap.toFolderIndex().segments()).hasSize(heap.size());
+        assertThat(offHeap.toFolderIndex().vectors()).hasSize(heap.size() * 8);
+        // 20 base rows + 5 files of 3 live; without reuse the arena would hold all 110 appended rows
+        assertThat(offHeap.arena().liveSlots()).isLessThan(110);
+        assertThat(offHeap.arena().liveSlots()).isGreaterThanOrEqualTo(offHeap.size());
+    }
+
+    @Test
+    @DisplayName("Compressed segments rank like heap ones and only decompress the returned hits")
+    void compressedTextMatchesHeap() {
+        SegmentedIndex heap = new SegmentedIndex(file("base.txt", 40, 0, 1), 8, 2, false, false);
+        SegmentedIndex compressed = new SegmentedIndex(file("base.txt", 40, 0, 1), 8, 2, true, true);
+        for (int round = 0; round < 12; round++) {
+            FolderIndex change = file("f" + round % 4 + ".txt", 5, round % 8, round);
+            heap.apply(change, Set.of());
+            compressed.apply(change, Set.of());
+        }
+        while (compressed.compactOnce()) {
+            // drain merges so sealed segments are rewritten into new stores
+        }
+
+        long before = textsRead(compressed);
+        for (int axis = 0; axis < 8; axis++) {
+            assertThat(compressed.search(axis(axis), 4, ParallelScan.sequential())).extracting(ScoredSegment::score)
+                    .isEqualTo(heap.search(axis(axis), 4, ParallelScan.sequential()).stream().map(ScoredSegment::score).toList());
+        }
+        // At most the 4 returned hits per query are decompressed, never the other candidates
+        assertThat(textsRead(compressed) - before).isLessThanOrEqualTo(8 * 4);
+        assertThat(compressed.toFolderIndex().segments()).extracting(TextSegment::text)
+                .containsExactlyInAnyOrderElementsOf(heap.toFolderIndex().segments().stream().map(TextSegment::text).toList());
+    }
+
+    private static long textsRead(SegmentedIndex index) {
+        return index.view().all().stream().map(s -> s.index().texts()).filter(Objects::nonNull)
+                .mapToLong(SegmentTextStore::textsRead).sum();
+    }
+
+    @Test
+    @DisplayName("Filters resolve through bitmap indexes and skip tombstoned rows")
+    void filtersBeforeScoring() {
+        long now = System.currentTimeMillis();
+        SegmentedIndex index = new SegmentedIndex(fileModifiedAt("roadmap.docx", 6, now), 4, 8);
+        index.apply(fileModifiedAt("old.pdf", 3, now - Duration.ofDays(30).toMillis()), Set.of());
+        index.apply(fileModifiedAt("new.pdf", 3, now), Set.of());
+
+        long unfilteredBytes = index.view().all().stream().mapToLong(s -> s.index().estimatedBytes()).sum();
+        assertThat(index.search(axis(0), 10, ParallelScan.sequential(), SearchFilter.NONE)).hasSize(10);
+        assertThat(index.view().all().stream().mapToLong(s -> s.index().estimatedBytes()).sum())
+                .as("no attribute index built for an unfiltered search").isEqualTo(unfilteredBytes);
+
+        assertThat(SearchFilter.parse("file:new.pdf,new.pdf dir:/data/reports,/data/reports").fileNames())
+                .containsExactly("new.pdf");
+        // Whole seconds, so the same expression parsed twice is the same filter (and cache key)
+        assertThat(SearchFilter.parse("modified:7d").modifiedAfter().getNano()).isZero();
+        assertThat(index.search(axis(0), 10, ParallelScan.sequential(), SearchFilter.parse("ext:pdf")))
+                .extracting(ScoredSegment::fileName).hasSize(6).containsOnly("old.pdf", "new.pdf");
+        assertThat(index.search(axis(0), 10, ParallelScan.sequential(), SearchFilter.parse("file:Roadmap.docx")))
+                .hasSize(6);
+        assertThat(index.search(axis(0), 10, ParallelScan.of(2, 1), SearchFilter.parse("ext:pdf modified:7d")))
+                .extracting(ScoredSegment::fileName).hasSize(3).containsOnly("new.pdf");
+        assertThat(index.search(axis(0), 10, ParallelScan.sequential(), SearchFilter.parse("dir:reports ext:md")))
+                .isEmpty();
+
+        index.apply(FolderIndex.of("/data", List.of(), List.of()), Set.of("new.pdf"));
+        assertThat(index.search(axis(0), 10, ParallelScan.sequential(), SearchFilter.parse("ext:pdf")))
+                .extracting(ScoredSegment::fileName).containsOnly("old.pdf");
+    }
+
+    @Test
+    @DisplayName("Batched search scores each query exactly as a single search, on heap and off heap")
+    void batchMatchesSingleSearch() {
+        for (boolean offHeap : List.of(false, true)) {
+            SegmentedIndex index = new SegmentedIndex(file("base.txt", 40, 0, 1), 8, 2, offHeap);
+            for (int round = 0; round < 10; round++) index.apply(file("f" + round % 4 + ".txt", 5, round % 8, round), Set.of());
+            // Seven queries: one tile of four, then three scored one by one
+            float[][] queries = new float[7][];
+            for (int q = 0; q < queries.length; q++) {
+                queries[q] = axis(q);
+                queries[q][(q + 3) % 8] = 0.5f;
+            }
+            for (ParallelScan scan : List.of(ParallelScan.sequential(), ParallelScan.of(2, 1))) {
+                for (SearchFilter filter : List.of(SearchFilter.NONE, SearchFilter.parse("file:f1.txt,base.txt"))) {
+                    List<List<ScoredSegment>> batch = index.searchBatch(queries, 6, scan, filter);
+                    for (int q = 0; q < queries.length; q++) {
+                        // A background merge may reorder segments between the two calls, and with them tied rows
+                        assertThat(batch.get(q)).extracting(ScoredSegment::score).isEqualTo(index.search(queries[q], 6,
+                                ParallelScan.sequential(), filter).stream().map(ScoredSegment::score).toList());
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    @DisplayName("Filter expressions parse into criteria and reject unknown keys")
+    void parsesFilterExpressions() {
+        SearchFilter filter = SearchFilter.parse("ext:.PDF,docx file:roadmap.docx after:2026-01-01");
+
+        assertThat(filter.extensions()).containsExactlyInAnyOrder("pdf", "docx");
+        assertThat(filter.fileNames()).containsExactly("roadmap.docx");
+        assertThat(filter.modifiedAfter()).isNotNull();
+        assertThat(SearchFilter.parse("  ")).isEqualTo(SearchFilter.NONE);
+        assertThatThrownBy(() -> SearchFilter.parse("color:red")).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> SearchFilter.parse("modified:soon")).isInstanceOf(IllegalArgumentException.class);
+    }
+}
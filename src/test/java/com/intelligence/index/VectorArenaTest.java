@@ -0,0 +1,47 @@
+package com.intelligence.index;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+class VectorArenaTest {
+
+    @Test
+    @DisplayName("Rows round-trip, score like the heap index and freed slots are reused")
+    void appendsScoresAndReusesSlots() {
+        VectorArena arena = new VectorArena(3);
+        int a = arena.append(new float[]{1f, 0f, 0f});
+        int b = arena.append(new float[]{3f, 4f, 0f});
+
+        float[] copy = new float[4];
+        arena.copy(b, copy, 1);
+        assertThat(copy).containsExactly(0f, 3f, 4f, 0f);
+        assertThat(arena.norm(b)).isEqualTo(5f);
+        assertThat(arena.cosine(b, new float[]{1f, 0f, 0f}, 1f)).isCloseTo(0.6, within(1e-6));
+        assertThat(arena.cosine(a, new float[3], 0f)).isZero();
+
+        arena.free(a);
+        assertThat(arena.append(new float[]{0f, 0f, 2f})).isEqualTo(a);
+        assertThat(arena.liveSlots()).isEqualTo(2);
+    }
+
+    @Test
+    @DisplayName("Rows spill onto new pages without moving earlier ones")
+    void growsAcrossPages() {
+        int dimension = 1024;
+        VectorArena arena = new VectorArena(dimension);
+        int rowsPerPage = VectorArena.PAGE_BYTES / (dimension * Float.BYTES + Float.BYTES);
+        float[] v = new float[dimension];
+        for (int i = 0; i <= rowsPerPage; i++) {
+            v[i % dimension] = i + 1;
+            assertThat(arena.append(v)).isEqualTo(i);
+            v[i % dimension] = 0;
+        }
+        float[] last = new float[dimension];
+        arena.copy(rowsPerPage, last, 0);
+        assertThat(last[rowsPerPage % dimension]).isEqualTo(rowsPerPage + 1);
+        assertThat(arena.reservedBytes()).isGreaterThanOrEqualTo(2L * rowsPerPage * dimension * Float.BYTES);
+    }
+}
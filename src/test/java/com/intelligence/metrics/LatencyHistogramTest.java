@@ -0,0 +1,47 @@
+package com.intelligence.metrics;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+class LatencyHistogramTest {
+
+    @Test
+    @DisplayName("Percentiles stay within the bucket's relative error")
+    void percentilesAreAccurate() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (long v = 1; v <= 100_000; v++) histogram.record(v * 1_000);
+
+        assertThat(histogram.count()).isEqualTo(100_000);
+        assertThat((double) histogram.percentile(50)).isCloseTo(50_000_000, within(50_000_000 * 0.02));
+        assertThat((double) histogram.percentile(99)).isCloseTo(99_000_000, within(99_000_000 * 0.02));
+        assertThat(histogram.percentile(100)).isEqualTo(100_000_000);
+    }
+
+    @Test
+    @DisplayName("Bucket index round-trips to an upper bound of the recorded value")
+    void bucketUpperBoundCoversValue() {
+        for (long v : new long[]{0, 1, 127, 128, 129, 1_000, 65_535, 1L << 40, Long.MAX_VALUE / 2}) {
+            long upper = LatencyHistogram.highestEquivalentValue(LatencyHistogram.indexOf(v));
+            assertThat(upper).isGreaterThanOrEqualTo(v);
+            assertThat((double) upper).isLessThanOrEqualTo(Math.max(v * 1.02, 127));
+        }
+    }
+
+    @Test
+    @DisplayName("Timers are exported in Prometheus text format and captured by the active trace")
+    void timersExportAndTrace() {
+        QueryTrace trace = QueryTrace.begin("test-session", "what is pasta?");
+        Metrics.timer("test.stage").recordNanos(2_000_000);
+        QueryTrace.finish(trace);
+
+        assertThat(trace.stageNanos()).containsEntry("test.stage", 2_000_000L);
+        assertThat(QueryTrace.last("test-session").format()).contains("test.stage");
+        assertThat(MetricsExporter.toPrometheus())
+                .contains("# TYPE docintel_test_stage_seconds summary")
+                .contains("docintel_test_stage_seconds_count 1");
+        assertThat(MetricsExporter.toJson()).contains("\"test.stage\"");
+    }
+}
@@ -0,0 +1,40 @@
+package com.intelligence.metrics;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class QueryTraceTest {
+
+    @Test
+    @DisplayName("Overlapping requests of one session keep and finish their own traces")
+    void tracesPerRequest() {
+        QueryTrace first = QueryTrace.begin("shared-session", "first question");
+        QueryTrace second = QueryTrace.begin("shared-session", "second question");
+
+        QueryTrace.finish(first);
+        assertThat(QueryTrace.last("shared-session")).isSameAs(first);
+        try (QueryTrace.Scope scope = QueryTrace.join("shared-session")) {
+            assertThat(QueryTrace.current()).isSameAs(second);
+        }
+        QueryTrace.finish(second);
+        QueryTrace.finish(second);
+
+        assertThat(QueryTrace.last("shared-session")).isSameAs(second);
+        try (QueryTrace.Scope scope = QueryTrace.join("shared-session")) {
+            assertThat(QueryTrace.current()).isNull();
+        }
+    }
+
+    @Test
+    @DisplayName("Only the most recently finished sessions keep their last trace")
+    void retainsRecentSessions() {
+        for (int i = 0; i <= QueryTrace.MAX_RETAINED; i++) {
+            QueryTrace.finish(QueryTrace.begin("session-" + i, "question " + i));
+        }
+
+        assertThat(QueryTrace.last("session-0")).isNull();
+        assertThat(QueryTrace.last("session-" + QueryTrace.MAX_RETAINED)).isNotNull();
+    }
+}
@@ -0,0 +1,50 @@
+package com.intelligence.model;
+
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.model.output.Response;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class PrioritizedEmbeddingModelTest {
+
+    @Test
+    @DisplayName("A query waits for at most the bulk batch in flight, not the whole bulk job")
+    void queriesOvertakeBulkBatches() throws Exception {
+        List<String> calls = Collections.synchronizedList(new ArrayList<>());
+        CountDownLatch firstBatchStarted = new CountDownLatch(1);
+        EmbeddingModel recording = new EmbeddingModel() {
+            @Override
+            public Response<List<Embedding>> embedAll(List<TextSegment> segments) {
+                calls.add(segments.size() == 1 && segments.get(0).text().equals("query") ? "query" : "bulk");
+                firstBatchStarted.countDown();
+                try {
+                    Thread.sleep(20);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return Response.from(segments.stream().map(s -> Embedding.from(new float[]{1f})).toList());
+            }
+        };
+        PrioritizedEmbeddingModel model = new PrioritizedEmbeddingModel(recording, 1, 2);
+        List<TextSegment> bulk = new ArrayList<>();
+        for (int i = 0; i < 20; i++) bulk.add(TextSegment.from("segment " + i));
+
+        Thread ingestion = Thread.ofVirtual().start(() -> assertThat(model.embedAll(bulk).content()).hasSize(20));
+        assertThat(firstBatchStarted.await(5, TimeUnit.SECONDS)).isTrue();
+        model.embed("query");
+        ingestion.join();
+
+        assertThat(calls).hasSize(11);
+        assertThat(calls.indexOf("query")).isLessThanOrEqualTo(2);
+    }
+}
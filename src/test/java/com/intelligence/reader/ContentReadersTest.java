@@ -0,0 +1,155 @@
+package com.intelligence.reader;
+
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.PDPageContentStream;
+import org.apache.pdfbox.pdmodel.font.PDType1Font;
+import org.apache.pdfbox.pdmodel.font.Standard14Fonts;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.tuple;
+
+class ContentReadersTest {
+
+    @TempDir
+    Path tempDir;
+
+    private static List<TextBlock> read(Path file) throws IOException {
+        List<TextBlock> blocks = new ArrayList<>();
+        ContentReaders.defaults().read(file, blocks::add);
+        return blocks;
+    }
+
+    private static void writePdf(Path file, String... pages) throws IOException {
+        try (PDDocument doc = new PDDocument()) {
+            PDType1Font font = new PDType1Font(Standard14Fonts.FontName.HELVETICA);
+            for (String text : pages) {
+                PDPage page = new PDPage();
+                doc.addPage(page);
+                try (PDPageContentStream content = new PDPageContentStream(doc, page)) {
+                    content.beginText();
+                    content.setFont(font, 12);
+                    content.newLineAtOffset(50, 700);
+                    content.showText(text);
+                    content.endText();
+                }
+            }
+            doc.save(file.toFile());
+        }
+    }
+
+    private static void writeZip(Path file, Map<String, String> entries) throws IOException {
+        try (OutputStream out = Files.newOutputStream(file); ZipOutputStream zip = new ZipOutputStream(out)) {
+            for (Map.Entry<String, String> entry : entries.entrySet()) {
+                zip.putNextEntry(new ZipEntry(entry.getKey()));
+                zip.write(entry.getValue().getBytes(StandardCharsets.UTF_8));
+                zip.closeEntry();
+            }
+        }
+    }
+
+    @Test
+    @DisplayName("Readers are discovered by ServiceLoader and chosen by magic bytes before extension")
+    void choosesReaderBySignature() throws IOException {
+        assertThat(ContentReaders.defaults().readers()).extracting(ContentReader::format)
+                .containsExactlyInAnyOrder("pdf", "docx", "csv", "json", "md", "txt");
+        assertThat(ContentReaders.defaults().supports(Path.of("Notes.MARKDOWN"))).isTrue();
+        assertThat(ContentReaders.defaults().supports(Path.of("sheet.xlsx"))).isFalse();
+
+        Path mislabelled = tempDir.resolve("scan.txt");
+        writePdf(mislabelled, "Quarterly revenue", "Hiring plan");
+        assertThat(ContentReaders.defaults().readerFor(mislabelled)).get()
+                .isInstanceOf(PdfContentReader.class);
+        assertThat(read(mislabelled)).filteredOn(b -> !b.text().isBlank())
+                .extracting(TextBlock::text, b -> b.position().get(TextBlock.PAGE))
+                .containsExactly(tuple("Quarterly revenue", 1),
+                        tuple("Hiring plan", 2));
+
+        Path notPdf = tempDir.resolve("report.pdf");
+        Files.writeString(notPdf, "just text");
+        assertThat(ContentReaders.defaults().readerFor(notPdf)).isEmpty();
+        assertThatThrownBy(() -> read(notPdf)).isInstanceOf(IOException.class);
+    }
+
+    @Test
+    @DisplayName("Blocks carry their row, JSON path or heading and the collector maps offsets back to them")
+    void emitsPositions() throws IOException {
+        Path csv = tempDir.resolve("people.csv");
+        Files.writeString(csv, "name,role\n,\nAda,engineer\n");
+        assertThat(read(csv)).extracting(b -> b.position().get(TextBlock.ROW)).containsExactly(1, 3);
+
+        Path json = tempDir.resolve("order.json");
+        Files.writeString(json, "{\"items\": [{\"name\": \"Pasta\", \"qty\": 2}], \"note\": \"Fragile\"}");
+        assertThat(read(json)).extracting(TextBlock::text, b -> b.position().get(TextBlock.JSON_PATH))
+                .containsExactly(tuple("Pasta", "/items/0/name"),
+                        tuple("Fragile", "/note"));
+
+        Path markdown = tempDir.resolve("guide.md");
+        Files.writeString(markdown, "Intro\n\n# Setup\n\n## Install\n\nRun [it](http://x).\n\n# Usage\n\nCall it.\n");
+        List<TextBlock> blocks = read(markdown);
+        assertThat(blocks).extracting(b -> b.position().get(TextBlock.HEADING))
+                .containsExactly(null, "Setup", "Setup > Install", "Setup > Install", "Usage", "Usage");
+        assertThat(blocks.get(3).text()).contains("it").doesNotContain("http");
+
+        TextCollector collector = ContentReaders.defaults().extract(markdown, " ");
+        assertThat(collector.positionAt(collector.text().indexOf("Call"))).isEqualTo(Map.of(TextBlock.HEADING, "Usage"));
+        assertThat(collector.positionAt(0)).isEmpty();
+    }
+
+    @Test
+    @DisplayName("Word documents stream paragraphs and table rows under their headings, including localized heading styles")
+    void streamsWordDocuments() throws IOException {
+        String w = "xmlns:w=\"http://schemas.openxmlformats.org/wordprocessingml/2006/main\" "
+                + "xmlns:mc=\"http://schemas.openxmlformats.org/markup-compatibility/2006\"";
+        Path docx = tempDir.resolve("contract.docx");
+        writeZip(docx, Map.of(
+                "_rels/.rels", "<Relationships xmlns=\"http://schemas.openxmlformats.org/package/2006/relationships\">"
+                        + "<Relationship Id=\"r1\" Target=\"word/main.xml\" Type=\"http://schemas.openxmlformats.org/"
+                        + "officeDocument/2006/relationships/officeDocument\"/></Relationships>",
+                "word/_rels/main.xml.rels", "<Relationships xmlns=\"http://schemas.openxmlformats.org/package/2006/relationships\">"
+                        + "<Relationship Id=\"r1\" Target=\"styles.xml\" Type=\"http://schemas.openxmlformats.org/"
+                        + "officeDocument/2006/relationships/styles\"/></Relationships>",
+                "word/styles.xml", "<w:styles " + w + "><w:style w:type=\"paragraph\" w:styleId=\"berschrift1\">"
+                        + "<w:name w:val=\"heading 1\"/></w:style></w:styles>",
+                "word/main.xml", "<w:document " + w + "><w:body>"
+                        + "<w:p><w:r><w:t>Preamble</w:t></w:r></w:p>"
+                        + "<w:p><w:pPr><w:pStyle w:val=\"berschrift1\"/><w:tabs><w:tab w:val=\"left\"/></w:tabs></w:pPr>"
+                        + "<w:r><w:t>Terms</w:t></w:r></w:p>"
+                        + "<w:p><w:pPr><w:pStyle w:val=\"Heading2\"/></w:pPr><w:r><w:t>Fees</w:t></w:r></w:p>"
+                        + "<w:p><w:r><w:t xml:space=\"preserve\">Net </w:t></w:r><w:r><w:tab/><w:t>30</w:t></w:r>"
+                        + "<w:r><mc:AlternateContent><mc:Choice><w:txbxContent><w:p><w:r><w:t>Boxed</w:t></w:r></w:p>"
+                        + "</w:txbxContent></mc:Choice><mc:Fallback><w:txbxContent><w:p><w:r><w:t>Boxed</w:t></w:r></w:p>"
+                        + "</w:txbxContent></mc:Fallback></mc:AlternateContent></w:r></w:p>"
+                        + "<w:tbl><w:tr><w:tc><w:p><w:r><w:t>Item</w:t></w:r></w:p></w:tc><w:tc><w:p><w:r><w:t>Price</w:t></w:r></w:p></w:tc></w:tr>"
+                        + "<w:tr><w:tc><w:p><w:r><w:t>Audit</w:t></w:r></w:p><w:p><w:r><w:t>(annual)</w:t></w:r></w:p></w:tc>"
+                        + "<w:tc><w:p/></w:tc><w:tc><w:p><w:r><w:t>900</w:t></w:r></w:p></w:tc></w:tr></w:tbl>"
+                        + "<w:p><w:pPr><w:pStyle w:val=\"berschrift1\"/></w:pPr><w:r><w:t>Term</w:t></w:r></w:p>"
+                        + "<w:p><w:r><w:t>Two years.</w:t></w:r></w:p>"
+                        + "</w:body></w:document>"));
+
+        assertThat(read(docx)).extracting(TextBlock::text, b -> b.position().get(TextBlock.HEADING))
+                .containsExactly(tuple("Preamble", null),
+                        tuple("Terms", "Terms"),
+                        tuple("Fees", "Terms > Fees"),
+                        tuple("Net \t30 Boxed", "Terms > Fees"),
+                        tuple("Item | Price", "Terms > Fees"),
+                        tuple("Audit\n(annual) | 900", "Terms > Fees"),
+                        tuple("Term", "Term"),
+                        tuple("Two years.", "Term"));
+    }
+}
@@ -0,0 +1,258 @@
+package com.intelligence.server;
+
+import com.intelligence.agent.ContextRetriever;
+import com.intelligence.agent.DocumentIndexer;
+import com.intelligence.agent.DocumentAssistantAgent;
+import com.intelligence.agent.KnowledgeBaseTools;
+import com.intelligence.index.IndexRegistry;
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.message.AiMessage;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.memory.chat.MessageWindowChatMemory;
+import dev.langchain4j.model.chat.StreamingChatModel;
+import dev.langchain4j.model.chat.request.ChatRequest;
+import dev.langchain4j.model.chat.response.ChatResponse;
+import dev.langchain4j.model.chat.response.StreamingChatResponseHandler;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.model.output.Response;
+import dev.langchain4j.service.AiServices;
+import dev.langchain4j.store.memory.chat.InMemoryChatMemoryStore;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class DocumentQueryServerTest {
+
+    @TempDir
+    Path dataRoot;
+
+    private DocumentQueryServer server;
+    private IndexRegistry registry;
+    private final InMemoryChatMemoryStore store = new InMemoryChatMemoryStore();
+    private final Map<Object, Integer> memoriesCreated = new ConcurrentHashMap<>();
+    private final HttpClient client = HttpClient.newHttpClient();
+
+    /**
+     * Streams a fixed answer, optionally holding the stream open until released.
+     */
+    private static class StubStreamingChatModel implements StreamingChatModel {
+        private final CountDownLatch release;
+
+        StubStreamingChatModel(CountDownLatch release) {
+            this.release = release;
+        }
+
+        @Override
+        public void doChat(ChatRequest request, StreamingChatResponseHandler handler) {
+            CompletableFuture.runAsync(() -> {
+                try {
+                    release.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                handler.onPartialResponse("Pasta is ");
+                handler.onPartialResponse("a fruit (Source: data.txt)");
+                handler.onCompleteResponse(ChatResponse.builder()
+                        .aiMessage(AiMessage.from("Pasta is a fruit (Source: data.txt)"))
+                        .build());
+            });
+        }
+    }
+
+    private static class LengthBasedEmbeddingModel implements EmbeddingModel {
+        @Override
+        public Response<List<Embedding>> embedAll(List<TextSegment> segments) {
+            return Response.from(segments.stream()
+                    .map(s -> Embedding.from(new float[]{(float) s.text().length(), 1.0f}))
+                    .toList());
+        }
+    }
+
+    private void startServer(CountDownLatch release, int maxConcurrentLlmCalls) throws IOException {
+        startServer(release, maxConcurrentLlmCalls, Duration.ofSeconds(30));
+    }
+
+    private void startServer(CountDownLatch release, int maxConcurrentLlmCalls, Duration streamTimeout) throws IOException {
+        startServer(release, maxConcurrentLlmCalls, streamTimeout, Duration.ofMinutes(30));
+    }
+
+    private void startServer(CountDownLatch release, int maxConcurrentLlmCalls, Duration streamTimeout,
+                             Duration conversationIdle) throws IOException {
+        Files.createDirectories(dataRoot.resolve("kb"));
+        Files.writeString(dataRoot.resolve("kb/data.txt"), "Tomato is a fruit and pasta is a dish.");
+        Files.writeString(dataRoot.resolve("kb/notes.md"), "# Notes\nTelescopes collect light.");
+
+        StreamingChatModel chatModel = new StubStreamingChatModel(release);
+        EmbeddingModel embeddingModel = new LengthBasedEmbeddingModel();
+        registry = new IndexRegistry(64 * 1024 * 1024, dataRoot.resolve("spill"),
+                new DocumentIndexer(embeddingModel));
+        server = new DocumentQueryServer(dataRoot, embeddingModel, registry,
+                retriever -> AiServices.builder(DocumentAssistantAgent.class)
+                        .streamingChatModel(chatModel)
+                        .tools(new KnowledgeBaseTools(retriever, retriever.directoryPath()))
+                        .chatMemoryProvider(id -> {
+                            memoriesCreated.merge(id, 1, Integer::sum);
+                            return MessageWindowChatMemory.builder().id(id).maxMessages(10).chatMemoryStore(store).build();
+                        })
+                        .build(),
+                new Semaphore(maxConcurrentLlmCalls, true), Duration.ofMillis(200), streamTimeout, conversationIdle);
+        server.start(new InetSocketAddress("127.0.0.1", 0));
+    }
+
+    @AfterEach
+    void stop() {
+        if (server != null) server.close();
+        if (registry != null) registry.close();
+    }
+
+    private HttpResponse<String> get(String pathAndQuery) throws Exception {
+        return client.send(HttpRequest.newBuilder(URI.create("http://127.0.0.1:" + server.port() + pathAndQuery)).build(),
+                HttpResponse.BodyHandlers.ofString());
+    }
+
+    private CompletableFuture<HttpResponse<String>> ask(String question, String memoryId) {
+        String query = "folder=kb&memoryId=" + memoryId + "&q=" + URLEncoder.encode(question, StandardCharsets.UTF_8);
+        HttpRequest request = HttpRequest.newBuilder(URI.create("http://127.0.0.1:" + server.port() + "/ask?" + query))
+                .POST(HttpRequest.BodyPublishers.noBody())
+                .build();
+        return client.sendAsync(request, HttpResponse.BodyHandlers.ofString());
+    }
+
+    @Test
+    @DisplayName("Search returns ranked segments from the shared folder index")
+    void searchReturnsRankedSegments() throws Exception {
+        startServer(new CountDownLatch(0), 2);
+
+        HttpResponse<String> response = get("/search?folder=kb&q=pasta&k=2");
+
+        assertThat(response.statusCode()).isEqualTo(200);
+        assertThat(response.body()).contains("\"results\"", "data.txt");
+    }
+
+    @Test
+    @DisplayName("Ask streams tokens as server-sent events")
+    void askStreamsTokens() throws Exception {
+        startServer(new CountDownLatch(0), 2);
+
+        HttpResponse<String> response = ask("What is pasta?", "alice").get(10, TimeUnit.SECONDS);
+
+        assertThat(response.statusCode()).isEqualTo(200);
+        assertThat(response.headers().firstValue("Content-Type")).hasValueSatisfying(v -> assertThat(v).startsWith("text/event-stream"));
+        assertThat(response.body()).contains("event: token", "data: Pasta is ", "event: done");
+    }
+
+    @Test
+    @DisplayName("A request without a memory id starts its own conversation and gets the id back")
+    void assignsMemoryIdPerRequest() throws Exception {
+        startServer(new CountDownLatch(0), 2);
+
+        HttpResponse<String> first = ask("What is pasta?", "").get(10, TimeUnit.SECONDS);
+        HttpResponse<String> second = ask("What is pasta?", "").get(10, TimeUnit.SECONDS);
+        HttpResponse<String> named = ask("What is pasta?", "alice").get(10, TimeUnit.SECONDS);
+
+        assertThat(first.headers().firstValue("X-Memory-Id")).isPresent();
+        assertThat(second.headers().firstValue("X-Memory-Id")).isPresent().isNotEqualTo(first.headers().firstValue("X-Memory-Id"));
+        assertThat(named.headers().firstValue("X-Memory-Id")).hasValue("alice");
+    }
+
+    @Test
+    @DisplayName("An idle conversation is evicted from the assistant and the chat memory store")
+    void evictsIdleConversations() throws Exception {
+        startServer(new CountDownLatch(0), 2, Duration.ofSeconds(30), Duration.ofMillis(200));
+
+        ask("What is pasta?", "alice").get(10, TimeUnit.SECONDS);
+        assertThat(store.getMessages("alice")).isNotEmpty();
+        Thread.sleep(400);
+        ask("What is pasta?", "bob").get(10, TimeUnit.SECONDS);
+
+        assertThat(store.getMessages("alice")).isEmpty();
+        assertThat(store.getMessages("bob")).isNotEmpty();
+        ask("What is pasta?", "alice").get(10, TimeUnit.SECONDS);
+        assertThat(memoriesCreated).containsEntry("alice", 2).containsEntry("bob", 1);
+    }
+
+    @Test
+    @DisplayName("Admission control rejects streams beyond the concurrent LLM limit")
+    void rejectsWhenSaturated() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        startServer(release, 1);
+
+        CompletableFuture<HttpResponse<String>> first = ask("first", "alice");
+        Thread.sleep(300); // let the first stream take the only permit
+        HttpResponse<String> second = ask("second", "bob").get(10, TimeUnit.SECONDS);
+        release.countDown();
+
+        assertThat(second.statusCode()).isEqualTo(503);
+        assertThat(second.headers().firstValue("Retry-After")).isPresent();
+        assertThat(first.get(10, TimeUnit.SECONDS).statusCode()).isEqualTo(200);
+    }
+
+    @Test
+    @DisplayName("A stream the client gave up on keeps its permit until the model finishes")
+    void timedOutStreamHoldsPermit() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        startServer(release, 1, Duration.ofMillis(200));
+
+        HttpResponse<String> timedOut = ask("first", "alice").get(10, TimeUnit.SECONDS);
+        assertThat(timedOut.body()).contains("event: error", "Timed out");
+
+        // The model is still streaming the first answer, so the only permit is taken
+        assertThat(ask("second", "bob").get(10, TimeUnit.SECONDS).statusCode()).isEqualTo(503);
+
+        release.countDown();
+        assertThat(ask("third", "carol").get(10, TimeUnit.SECONDS).body()).contains("event: done");
+    }
+
+    @Test
+    @DisplayName("Folders outside the data root and missing parameters are rejected")
+    void rejectsBadRequests() throws Exception {
+        startServer(new CountDownLatch(0), 1);
+
+        assertThat(get("/search?folder=../..&q=x").statusCode()).isEqualTo(400);
+        assertThat(get("/search?folder=kb").statusCode()).isEqualTo(400);
+        assertThat(get("/metrics").body()).contains("docintel_");
+    }
+
+    @Test
+    @DisplayName("Summarize only reads files inside the requested folder")
+    void rejectsPathTraversal() throws Exception {
+        startServer(new CountDownLatch(0), 1);
+        Files.writeString(dataRoot.resolve("secret.txt"), "top secret");
+
+        for (String file : List.of("../secret.txt", "../../etc/passwd", "..", "..\\secret.txt")) {
+            HttpRequest request = HttpRequest.newBuilder(URI.create("http://127.0.0.1:" + server.port()
+                            + "/summarize?folder=kb&memoryId=alice&file=" + URLEncoder.encode(file, StandardCharsets.UTF_8)))
+                    .POST(HttpRequest.BodyPublishers.noBody())
+                    .build();
+            assertThat(client.send(request, HttpResponse.BodyHandlers.ofString()).statusCode()).as(file).isEqualTo(400);
+        }
+        // A name the model picks itself goes through the same check in the tool
+        KnowledgeBaseTools tools = new KnowledgeBaseTools(
+                new ContextRetriever(new LengthBasedEmbeddingModel(), dataRoot.resolve("kb").toString(), registry),
+                dataRoot.resolve("kb").toString());
+        assertThat(tools.summarizeDocument("alice", "../secret.txt")).startsWith("Error").doesNotContain("top secret");
+        assertThat(tools.summarizeDocument("alice", "data.txt")).contains("Tomato is a fruit");
+    }
+}
@@ -0,0 +1,44 @@
+package com.intelligence.shard;
+
+import com.intelligence.agent.DocumentIndexer;
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.model.output.Response;
+
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Shard worker process for tests: embeds with {@link LetterCountModel}, so it needs no Ollama.
+ * Takes {@code --snapshots=} besides the options {@link ShardWorker#run} reads.
+ */
+public class LetterCountWorker {
+
+    /**
+     * Letter-count vectors: deterministic, and different texts rarely tie.
+     */
+    static class LetterCountModel implements EmbeddingModel {
+        @Override
+        public Response<List<Embedding>> embedAll(List<TextSegment> segments) {
+            return Response.from(segments.stream().map(s -> Embedding.from(vector(s.text()))).toList());
+        }
+
+        static float[] vector(String text) {
+            float[] v = new float[26];
+            for (char c : text.toLowerCase().toCharArray()) if (c >= 'a' && c <= 'z') v[c - 'a']++;
+            return v;
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            int eq = arg.indexOf('=');
+            if (arg.startsWith("--") && eq > 2) options.put(arg.substring(2, eq), arg.substring(eq + 1));
+        }
+        ShardWorker.run(options, new DocumentIndexer(new LetterCountModel()), Path.of(options.get("snapshots")));
+    }
+}
@@ -0,0 +1,146 @@
+package com.intelligence.shard;
+
+import com.intelligence.agent.ContextRetriever;
+import com.intelligence.agent.RetrievalPolicy;
+import com.intelligence.index.ScoredSegment;
+import com.intelligence.index.SearchFilter;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ShardClusterTest {
+    private static final int SHARDS = 3;
+    private static final List<String> TOPICS = List.of(
+            "Carbonara needs guanciale, pecorino and eggs.",
+            "The quarterly budget covers hiring and travel.",
+            "Flights to Lisbon are booked for the offsite in June.",
+            "Two engineers join the platform team in March.",
+            "The roadmap puts search latency work in the second quarter.",
+            "Invoices above five thousand euros need two approvals.");
+    // Spelled out so no two notes have the same letter counts and tie at the k-th place
+    private static final List<String> NUMBERS = List.of(
+            "zero", "one", "two", "three", "four", "five", "six", "seven", "eight", "nine", "ten", "eleven");
+
+    @TempDir
+    static Path workDir;
+
+    static Path folder;
+    static ShardCluster cluster;
+    static ContextRetriever single;
+
+    @BeforeAll
+    static void startWorkers() throws IOException {
+        folder = Files.createDirectories(workDir.resolve("docs"));
+        for (int i = 0; i < 12; i++) {
+            Files.writeString(folder.resolve("note" + i + ".txt"), TOPICS.get(i % TOPICS.size()) + " Note " + NUMBERS.get(i) + ".");
+        }
+        cluster = ShardCluster.launch(folder.toString(), SHARDS,
+                List.of(LetterCountWorker.class.getName(), "--snapshots=" + workDir.resolve("snapshots")),
+                Duration.ofMinutes(2));
+        single = new ContextRetriever(new LetterCountWorker.LetterCountModel(), folder.toString(), null,
+                new RetrievalPolicy(Duration.ZERO, 10, Duration.ofSeconds(30)));
+    }
+
+    @AfterAll
+    static void stopWorkers() {
+        if (cluster != null) cluster.close();
+    }
+
+    @Test
+    @DisplayName("Files are split across the shards and the merged top-k equals one index's")
+    void mergesLikeOneIndex() {
+        Set<Integer> shardsUsed = new HashSet<>();
+        for (int i = 0; i < 12; i++) shardsUsed.add(ShardWorker.shardOf("note" + i + ".txt", SHARDS));
+        assertThat(shardsUsed).hasSizeGreaterThan(1);
+
+        ContextRetriever sharded = ContextRetriever.sharded(new LetterCountWorker.LetterCountModel(), folder.toString(),
+                cluster.coordinator(), new RetrievalPolicy(Duration.ZERO, 10, Duration.ofSeconds(30)));
+        for (String query : List.of("carbonara with pecorino", "hiring budget", "Lisbon offsite", "invoice approvals")) {
+            List<ScoredSegment> expected = single.search(query, 5, SearchFilter.NONE);
+            List<ScoredSegment> actual = sharded.search(query, 5, SearchFilter.NONE);
+            assertThat(actual).extracting(ScoredSegment::score).isEqualTo(expected.stream().map(ScoredSegment::score).toList());
+            assertThat(actual).extracting(ScoredSegment::fileName)
+                    .containsExactlyInAnyOrderElementsOf(expected.stream().map(ScoredSegment::fileName).toList());
+        }
+        assertThat(sharded.search("budget", 12, SearchFilter.parse("file:note1.txt,note7.txt")))
+                .extracting(ScoredSegment::fileName).containsExactlyInAnyOrder("note1.txt", "note7.txt");
+        assertThat(cluster.coordinator().lexicalSearch("guanciale", 3, SearchFilter.NONE).hits())
+                .extracting(ScoredSegment::fileName).containsOnly("note0.txt", "note6.txt");
+    }
+
+    @Test
+    @DisplayName("A stalled shard is left out after the deadline and answers again once it resumes")
+    void toleratesStalledShard() throws Exception {
+        int stalled = ShardWorker.shardOf("note0.txt", SHARDS);
+        long pid = cluster.workers().get(stalled).pid();
+        float[] query = LetterCountWorker.LetterCountModel.vector("carbonara with pecorino");
+        try (ShardCoordinator coordinator = new ShardCoordinator(cluster.addresses(), Duration.ofMillis(300))) {
+            assertThat(coordinator.search(query, 12, SearchFilter.NONE).partial()).isFalse();
+
+            signal("STOP", pid);
+            try {
+                long start = System.nanoTime();
+                ShardCoordinator.Result result = coordinator.search(query, 12, SearchFilter.NONE);
+
+                assertThat(Duration.ofNanos(System.nanoTime() - start)).isLessThan(Duration.ofSeconds(2));
+                assertThat(result.partial()).isTrue();
+                assertThat(result.answered()).isEqualTo(SHARDS - 1);
+                assertThat(result.hits()).isNotEmpty().allSatisfy(
+                        hit -> assertThat(ShardWorker.shardOf(hit.fileName(), SHARDS)).isNotEqualTo(stalled));
+            } finally {
+                signal("CONT", pid);
+            }
+            ShardCoordinator.Result resumed = coordinator.search(query, 12, SearchFilter.NONE);
+            assertThat(resumed.partial()).isFalse();
+            assertThat(resumed.hits()).extracting(ScoredSegment::fileName).contains("note0.txt");
+        }
+    }
+
+    @Test
+    @DisplayName("A shard whose process died fails fast and the others still answer (over loopback TCP)")
+    void toleratesDeadShard() throws Exception {
+        ShardCluster doomed;
+        System.setProperty(ShardCluster.TRANSPORT_PROPERTY, "tcp");
+        try {
+            doomed = ShardCluster.launch(folder.toString(), SHARDS,
+                    List.of(LetterCountWorker.class.getName(), "--snapshots=" + workDir.resolve("snapshots")),
+                    Duration.ofMinutes(2));
+        } finally {
+            System.clearProperty(ShardCluster.TRANSPORT_PROPERTY);
+        }
+        try (doomed;
+             ShardCoordinator coordinator = new ShardCoordinator(doomed.addresses(), Duration.ofSeconds(10))) {
+            assertThat(doomed.addresses()).allSatisfy(address -> assertThat(address).isInstanceOf(InetSocketAddress.class));
+            float[] query = LetterCountWorker.LetterCountModel.vector("hiring budget");
+            assertThat(coordinator.search(query, 5, SearchFilter.NONE).answered()).isEqualTo(SHARDS);
+
+            Process victim = doomed.workers().get(1);
+            victim.destroyForcibly();
+            victim.waitFor();
+            long start = System.nanoTime();
+            ShardCoordinator.Result result = coordinator.search(query, 5, SearchFilter.NONE);
+
+            // Well inside the deadline: the broken connection fails the request instead of timing it out
+            assertThat(Duration.ofNanos(System.nanoTime() - start)).isLessThan(Duration.ofSeconds(5));
+            assertThat(result.answered()).isEqualTo(SHARDS - 1);
+            assertThat(result.hits()).isNotEmpty();
+        }
+    }
+
+    private static void signal(String signal, long pid) throws Exception {
+        assertThat(new ProcessBuilder("kill", "-" + signal, Long.toString(pid)).start().waitFor()).isZero();
+    }
+}
@@ -0,0 +1,109 @@
+package com.intelligence.shard;
+
+import com.intelligence.index.SearchFilter;
+import com.intelligence.metrics.Metrics;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ShardCoordinatorTest {
+    private static final float[] QUERY = {1f, 0f};
+
+    private ServerSocketChannel server;
+    private final List<SocketChannel> accepted = new ArrayList<>();
+    private final CountDownLatch disconnected = new CountDownLatch(1);
+
+    /**
+     * A shard that reads every request and never answers, and notices when the coordinator hangs up.
+     */
+    @BeforeEach
+    void startSilentShard() throws IOException {
+        server = ServerSocketChannel.open().bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+        Thread.ofVirtual().start(() -> {
+            try {
+                while (true) {
+                    SocketChannel channel = server.accept();
+                    accepted.add(channel);
+                    Thread.ofVirtual().start(() -> {
+                        ByteBuffer buffer = ByteBuffer.allocate(8192);
+                        try {
+                            while (channel.read(buffer.clear()) >= 0) {
+                                // swallow the request
+                            }
+                        } catch (IOException ignored) {
+                            // closed by the test
+                        }
+                        disconnected.countDown();
+                    });
+                }
+            } catch (IOException ignored) {
+                // server closed
+            }
+        });
+    }
+
+    @AfterEach
+    void stopSilentShard() throws IOException {
+        server.close();
+        for (SocketChannel channel : accepted) channel.close();
+    }
+
+    @Test
+    @DisplayName("A shard that keeps missing its deadline is dropped and left out without waiting")
+    void dropsUnhealthyShard() throws Exception {
+        long rejected = Metrics.counter("shard.rejected").count();
+        try (ShardCoordinator coordinator = new ShardCoordinator(List.of(server.getLocalAddress()),
+                Duration.ofMillis(100), 16, 2, Duration.ofSeconds(30))) {
+            for (int i = 0; i < 2; i++) {
+                assertThat(coordinator.search(QUERY, 3, SearchFilter.NONE).answered()).isZero();
+            }
+            assertThat(disconnected.await(5, TimeUnit.SECONDS)).isTrue();
+
+            long start = System.nanoTime();
+            ShardCoordinator.Result result = coordinator.search(QUERY, 3, SearchFilter.NONE);
+
+            assertThat(Duration.ofNanos(System.nanoTime() - start)).isLessThan(Duration.ofMillis(80));
+            assertThat(result.answered()).isZero();
+            assertThat(Metrics.counter("shard.rejected").count()).isEqualTo(rejected + 1);
+        }
+    }
+
+    @Test
+    @DisplayName("Requests beyond a shard's in-flight limit leave it out at once instead of queueing")
+    void capsRequestsInFlight() throws Exception {
+        long rejected = Metrics.counter("shard.rejected").count();
+        try (ShardCoordinator coordinator = new ShardCoordinator(List.of(server.getLocalAddress()),
+                Duration.ofSeconds(2), 2, 100, Duration.ofSeconds(30));
+             ExecutorService callers = Executors.newVirtualThreadPerTaskExecutor()) {
+            List<Future<ShardCoordinator.Result>> waiting = new ArrayList<>();
+            for (int i = 0; i < 2; i++) waiting.add(callers.submit(() -> coordinator.search(QUERY, 3, SearchFilter.NONE)));
+            Thread.sleep(300);
+
+            long start = System.nanoTime();
+            ShardCoordinator.Result result = coordinator.search(QUERY, 3, SearchFilter.NONE);
+
+            assertThat(Duration.ofNanos(System.nanoTime() - start)).isLessThan(Duration.ofMillis(500));
+            assertThat(result.answered()).isZero();
+            assertThat(Metrics.counter("shard.rejected").count()).isEqualTo(rejected + 1);
+            assertThat(waiting).noneMatch(Future::isDone);
+        }
+    }
+}